@@ -0,0 +1,69 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Description : Passage d'une alerte binaire dans la boîte d'envoi : enregistrement (écriture
+ * forcée sur le disque, comme sur la montre), lecture du lot à envoyer et accusé de réception.
+ * Le résultat dépend fortement du support de stockage de la machine de mesure.
+ * </p>
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlertOutboxBenchmark {
+
+    private File mFile;
+    private AlertOutbox mOutbox;
+    private byte[] mAlert;
+    private int mAlertLength;
+
+    @Setup
+    public void setUp() throws IOException {
+        AlertPayload payload = new AlertPayload();
+        AlertPathState.buildPayload(payload, AlertPathState.newTracker(),
+                AlertPathState.newTrajectory(), 1);
+        BinaryAlertEncoder encoder = new BinaryAlertEncoder();
+        mAlertLength = encoder.encode(payload);
+        mAlert = encoder.buffer();
+        mFile = File.createTempFile("outbox", ".journal");
+        mOutbox = AlertOutbox.open(mFile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mOutbox.close();
+        if (!mFile.delete()) {
+            mFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public long appendDrainAck() throws IOException {
+        long id = mOutbox.append(AlertOutbox.KIND_BINARY, mAlert, 0, mAlertLength);
+        List<AlertOutbox.Entry> batch = mOutbox.nextBatch(1);
+        mOutbox.ack(batch.get(0).id);
+        return id;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Données communes aux benchmarks : un suivi de position alimenté comme après
+ * quelques minutes de marche, et une alerte construite comme dans
+ * {@code MainActivity.getCurrentInformation()}.
+ * </p>
+ *
+ * @version 1.0
+ */
+final class AlertPathState {
+
+    /**
+     * Nombre de positions de la trace jointe à une alerte (comme sur la montre).
+     */
+    static final int TRAIL_MAX_POINTS = 16;
+    static final int TRAIL_CAPACITY = 32;
+    static final int TRAJECTORY_CAPACITY = 64;
+
+    static final long START_NANOS = 1000000000000L;
+    static final long START_MS = 1457000000000L;
+    static final long FIX_INTERVAL_MS = 15000;
+
+    private AlertPathState() {
+    }
+
+    /**
+     * @return trajectoire configurée comme sur la montre
+     */
+    static Trajectory newTrajectory() {
+        return new Trajectory(TRAJECTORY_CAPACITY, Trajectory.DEFAULT_TOLERANCE_METERS);
+    }
+
+    /**
+     * @return suivi de position contenant une trace complète
+     */
+    static FixTracker newTracker() {
+        FixTracker tracker = new FixTracker(TRAIL_CAPACITY, new SamplingContext(),
+                new SamplingStats(0));
+        for (int i = 0; i < TRAIL_CAPACITY; i++) {
+            addFix(tracker, i);
+        }
+        return tracker;
+    }
+
+    /**
+     * Ajoute la i-ème position d'un trajet à pied (aller-retour de 1024 positions).
+     */
+    static void addFix(FixTracker tracker, int i) {
+        int step = i & 1023;
+        tracker.onFix(START_MS + i * FIX_INTERVAL_MS,
+                START_NANOS + i * FIX_INTERVAL_MS * 1000000L,
+                43.6107691 + step * 0.0001, 3.8767159 + step * 0.00015, 8f + (i & 7), Float.NaN);
+    }
+
+    /**
+     * Construit une alerte comme {@code MainActivity.getCurrentInformation()}.
+     */
+    static void buildPayload(AlertPayload payload, FixTracker tracker, Trajectory trajectory,
+                             long alertId) {
+        payload.reset();
+        payload.setAlertId(alertId);
+        payload.setProfile(UserProfile.PLACEHOLDER);
+        long now = START_MS + TRAIL_CAPACITY * FIX_INTERVAL_MS;
+        payload.setTimestampCurrent(now);
+        tracker.fillLocation(payload, START_NANOS + TRAIL_CAPACITY * FIX_INTERVAL_MS * 1000000L,
+                now);
+        payload.setDriveLink("");
+        trajectory.reset();
+        trajectory.addTrail(tracker.getTrail(), TRAIL_MAX_POINTS);
+        trajectory.flushTo(payload);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Description : Construction du contenu d'une alerte (profil, position courante et trace des
+ * 16 dernières positions) puis sa sérialisation dans chacun des formats d'envoi.
+ * </p>
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlertPayloadBenchmark {
+
+    private FixTracker mTracker;
+    private final Trajectory mTrajectory = AlertPathState.newTrajectory();
+    private final AlertPayload mPayload = new AlertPayload();
+    private final BinaryAlertEncoder mBinaryEncoder = new BinaryAlertEncoder();
+    private final JsonAlertEncoder mJsonEncoder = new JsonAlertEncoder();
+    private final AlertPayload mDecoded = new AlertPayload();
+    private byte[] mBinary;
+    private int mBinaryLength;
+    private long mAlertId;
+
+    @Setup
+    public void setUp() {
+        mTracker = AlertPathState.newTracker();
+        AlertPathState.buildPayload(mPayload, mTracker, mTrajectory, 1);
+        BinaryAlertEncoder encoder = new BinaryAlertEncoder();
+        mBinaryLength = encoder.encode(mPayload);
+        mBinary = encoder.buffer();
+    }
+
+    @Benchmark
+    public int buildPayload() {
+        AlertPathState.buildPayload(mPayload, mTracker, mTrajectory, ++mAlertId);
+        return mPayload.getTrailSize();
+    }
+
+    @Benchmark
+    public int encodeBinary() {
+        return mBinaryEncoder.encode(mPayload);
+    }
+
+    @Benchmark
+    public int encodeJson() {
+        return mJsonEncoder.encode(mPayload);
+    }
+
+    @Benchmark
+    public int decodeBinary() {
+        BinaryAlertEncoder.decode(mBinary, 0, mBinaryLength, mDecoded);
+        return mDecoded.getTrailSize();
+    }
+}
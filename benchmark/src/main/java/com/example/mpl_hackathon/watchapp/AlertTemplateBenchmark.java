@@ -0,0 +1,111 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Description : Sérialisation d'une alerte dont seuls les horodatages et la position changent
+ * d'une alerte à l'autre : corps construit avec {@link JSONObject} comme le faisait
+ * {@code MainActivity.getCurrentInformation()}, puis converti en octets comme par la requête
+ * Volley, comparé au modèle pré-rendu du profil de {@link JsonAlertEncoder} et au format
+ * binaire. Les allocations par alerte sont mesurées avec {@code -PjmhProfilers=gc}
+ * ({@code gc.alloc.rate.norm}).
+ * </p>
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlertTemplateBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private FixTracker mTracker;
+    private final Trajectory mTrajectory = AlertPathState.newTrajectory();
+    private final AlertPayload mPayload = new AlertPayload();
+    private final JsonAlertEncoder mJsonEncoder = new JsonAlertEncoder();
+    private final BinaryAlertEncoder mBinaryEncoder = new BinaryAlertEncoder();
+    private long mTick;
+
+    @Setup
+    public void setUp() {
+        mTracker = AlertPathState.newTracker();
+        AlertPathState.buildPayload(mPayload, mTracker, mTrajectory, 1);
+    }
+
+    /**
+     * Nouvelle alerte du même porteur : horodatages et position seulement.
+     */
+    private void nextAlert() {
+        long tick = ++mTick & 1023;
+        long now = AlertPathState.START_MS + tick * 1000;
+        mPayload.setTimestampCurrent(now);
+        mPayload.setLocation(43.6107691 + tick * 1e-5, 3.8767159 + tick * 1e-5, now - 2000,
+                8f + (tick & 7), AlertPayload.SOURCE_FUSED);
+    }
+
+    @Benchmark
+    public int jsonObject() throws JSONException {
+        nextAlert();
+        AlertPayload payload = mPayload;
+        JSONObject json = new JSONObject();
+        UserProfile profile = payload.getProfile();
+        json.put("lastname", profile.getLastname());
+        json.put("firstname", profile.getFirstname());
+        json.put("phone_number", profile.getPhoneNumber());
+        json.put("profile_id", payload.getProfileId());
+        json.put("alert_id", Long.toHexString(payload.getAlertId()));
+        json.put("update_seq", payload.getUpdateSeq());
+        json.put("timestamp_current", payload.getTimestampCurrent());
+        json.put("latitude", payload.getLatitude());
+        json.put("longitude", payload.getLongitude());
+        json.put("timestamp_position", payload.getTimestampPosition());
+        json.put("accuracy", (double) payload.getAccuracy());
+        json.put("position_age_ms", payload.getPositionAgeMs());
+        json.put("position_source", payload.getLocationSourceName());
+        json.put("drive_link", payload.getDriveLink());
+        json.put("trail_start", payload.getTrailStartIndex());
+        JSONArray trail = new JSONArray();
+        for (int i = 0; i < payload.getTrailSize(); i++) {
+            JSONObject point = new JSONObject();
+            point.put("latitude", payload.getTrailLatitude(i));
+            point.put("longitude", payload.getTrailLongitude(i));
+            point.put("timestamp_position", payload.getTrailTime(i));
+            point.put("accuracy", (double) payload.getTrailAccuracy(i));
+            trail.put(point);
+        }
+        json.put("trail", trail);
+        return json.toString().getBytes(UTF_8).length;
+    }
+
+    @Benchmark
+    public int jsonTemplate() {
+        nextAlert();
+        return mJsonEncoder.encode(mPayload);
+    }
+
+    @Benchmark
+    public int binary() {
+        nextAlert();
+        return mBinaryEncoder.encode(mPayload);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Description : Traitement d'une minute d'échantillons de l'accéléromètre et du gyroscope à
+ * 50 Hz par le {@link FallDetector} (marche, arrêts et une chute). Le résultat multiplié par 60
+ * donne le temps de calcul de la détection par heure, hors coût de réception des échantillons.
+ * </p>
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FallDetectorBenchmark {
+
+    private static final long PERIOD_NANOS = 20 * 1000000L;
+
+    private final SensorTrace mTrace = new SensorTrace();
+    private FallDetector mDetector;
+    private int mFalls;
+    private long mNow;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < 4; i++) {
+            segment(8000, 1f, 0.4f, 1.5f);
+            segment(4000, 1f, 0.01f, 0.05f);
+        }
+        segment(300, 0.2f, 0f, 2f);
+        segment(60, 3f, 0f, 5f);
+        segment(60000 - 48360, 1f, 0.01f, 0.05f);
+        mDetector = new FallDetector(new FallDetector.Listener() {
+            @Override
+            public void onImpact(long impactNanos) {
+            }
+
+            @Override
+            public void onImpactDismissed(long impactNanos) {
+            }
+
+            @Override
+            public void onFallDetected(long impactNanos, long confirmedNanos) {
+                mFalls++;
+            }
+        }, true);
+    }
+
+    private void segment(long durationMs, float accelerationG, float wobbleG, float rotation) {
+        long end = mNow + durationMs * 1000000L;
+        for (int i = 0; mNow < end; i++) {
+            float g = accelerationG + ((i & 1) == 0 ? wobbleG : -wobbleG);
+            mTrace.add(SensorTrace.ACCELEROMETER, mNow, 0, 0, g * FallDetector.GRAVITY);
+            mTrace.add(SensorTrace.GYROSCOPE, mNow, rotation, 0, 0);
+            mNow += PERIOD_NANOS;
+        }
+    }
+
+    @Benchmark
+    public int replayOneMinute() {
+        mDetector.reset();
+        mTrace.replay(mDetector);
+        return mFalls;
+    }
+}
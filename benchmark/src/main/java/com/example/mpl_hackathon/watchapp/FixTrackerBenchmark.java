@@ -0,0 +1,50 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Description : Traitement d'une nouvelle position tel que fait dans
+ * {@code LocationManager.onLocationChanged()} (trace, mesures, estimation du mouvement) suivi de
+ * la décision d'échantillonnage.
+ * </p>
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixTrackerBenchmark {
+
+    private final SamplingContext mContext = new SamplingContext();
+    private final SamplingPolicy mPolicy = new AdaptiveSamplingPolicy();
+    private FixTracker mTracker;
+    private int mFix;
+
+    @Setup
+    public void setUp() {
+        mTracker = new FixTracker(AlertPathState.TRAIL_CAPACITY, mContext, new SamplingStats(0));
+    }
+
+    @Benchmark
+    public SamplingDecision onLocationChanged() {
+        int fix = mFix++;
+        AlertPathState.addFix(mTracker, fix);
+        mContext.setNowMs(fix * AlertPathState.FIX_INTERVAL_MS);
+        return mPolicy.decide(mContext);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Description : Filtrage d'une heure de positions à 1 Hz (marche avec virages, bruit gaussien
+ * et 1 % de positions aberrantes) par le {@link LocationFilter}. Le résultat est le temps moyen
+ * par position.
+ * </p>
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocationFilterBenchmark {
+
+    private static final int FIXES = 3600;
+    private static final double DEGREES_PER_METER = 1 / 111320.0;
+
+    private final long[] mTimes = new long[FIXES];
+    private final double[] mLatitudes = new double[FIXES];
+    private final double[] mLongitudes = new double[FIXES];
+    private final float[] mAccuracies = new float[FIXES];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        double north = 0;
+        double east = 0;
+        double heading = 0;
+        for (int i = 0; i < FIXES; i++) {
+            if (i % 120 == 0) {
+                heading = random.nextDouble() * 2 * Math.PI;
+            }
+            north += 1.4 * Math.cos(heading);
+            east += 1.4 * Math.sin(heading);
+            float accuracy = 5f + random.nextFloat() * 20f;
+            double noise = random.nextInt(100) == 0 ? 500 : accuracy / 1.5;
+            mTimes[i] = i * 1000000000L;
+            mLatitudes[i] = 43.61 + (north + random.nextGaussian() * noise) * DEGREES_PER_METER;
+            mLongitudes[i] = 3.87 + (east + random.nextGaussian() * noise) * DEGREES_PER_METER;
+            mAccuracies[i] = accuracy;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public double replayOneHour() {
+        LocationFilter filter = new LocationFilter();
+        for (int i = 0; i < FIXES; i++) {
+            filter.update(mTimes[i], mLatitudes[i], mLongitudes[i], mAccuracies[i]);
+        }
+        return filter.getLatitude();
+    }
+}
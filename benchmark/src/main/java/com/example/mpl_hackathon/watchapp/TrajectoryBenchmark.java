@@ -0,0 +1,104 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Description : Envoi d'une heure de trajectoire à 1 Hz (marche avec virages et arrêts) en
+ * morceaux de 15 positions, comme les mises à jour d'une alerte : simplification et encodage
+ * binaire, comparés à l'encodage JSON de la trace brute. Le résultat est le temps moyen par
+ * position.
+ * </p>
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrajectoryBenchmark {
+
+    private static final int FIXES = 3600;
+    private static final int CHUNK = 15;
+    private static final double DEGREES_PER_METER = 1 / 111320.0;
+
+    private final long[] mTimes = new long[FIXES];
+    private final double[] mLatitudes = new double[FIXES];
+    private final double[] mLongitudes = new double[FIXES];
+    private final float[] mAccuracies = new float[FIXES];
+
+    private final Trajectory mTrajectory = AlertPathState.newTrajectory();
+    private final AlertPayload mPayload = new AlertPayload();
+    private final BinaryAlertEncoder mBinaryEncoder = new BinaryAlertEncoder();
+    private final JsonAlertEncoder mJsonEncoder = new JsonAlertEncoder();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(11);
+        double north = 0;
+        double east = 0;
+        double heading = 0;
+        for (int i = 0; i < FIXES; i++) {
+            if (i % 60 == 0) {
+                heading = random.nextDouble() * 2 * Math.PI;
+            }
+            double speed = (i / 300) % 4 == 3 ? 0 : 1.4;
+            north += speed * Math.cos(heading) + random.nextGaussian() * 0.5;
+            east += speed * Math.sin(heading) + random.nextGaussian() * 0.5;
+            mTimes[i] = AlertPathState.START_MS + i * 1000L;
+            mLatitudes[i] = 43.61 + north * DEGREES_PER_METER;
+            mLongitudes[i] = 3.87 + east * DEGREES_PER_METER;
+            mAccuracies[i] = 5f + random.nextFloat() * 10f;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public int encodeOneHour() {
+        mTrajectory.reset();
+        int size = 0;
+        for (int i = 0; i < FIXES; i++) {
+            mTrajectory.add(mTimes[i], mLatitudes[i], mLongitudes[i], mAccuracies[i]);
+            if (i % CHUNK == CHUNK - 1) {
+                mPayload.reset();
+                mPayload.setTimestampCurrent(mTimes[i]);
+                mTrajectory.flushTo(mPayload);
+                size += mBinaryEncoder.encode(mPayload);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Référence : la même trace, sans simplification, en JSON.
+     */
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public int encodeOneHourJson() {
+        int size = 0;
+        for (int i = 0; i < FIXES; i += CHUNK) {
+            mPayload.reset();
+            mPayload.setTimestampCurrent(mTimes[i + CHUNK - 1]);
+            for (int j = i; j < i + CHUNK; j++) {
+                mPayload.addTrailPoint(mTimes[j], mLatitudes[j], mLongitudes[j], mAccuracies[j]);
+            }
+            size += mJsonEncoder.encode(mPayload);
+        }
+        return size;
+    }
+}
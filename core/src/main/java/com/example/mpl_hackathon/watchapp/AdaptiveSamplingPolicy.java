@@ -0,0 +1,141 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Politique d'échantillonnage par défaut :
+ * <ul>
+ * <li>alerte en cours : fréquence maximale en haute précision ;</li>
+ * <li>écran d'alerte en arrière-plan : positions peu fréquentes, en précision équilibrée et
+ * regroupées par le fournisseur, pour que la dernière position reste récente à faible coût ;</li>
+ * <li>sinon, l'intervalle dépend du mouvement (immobile, à pied, en véhicule) ;</li>
+ * <li>une précision dégradée force la haute précision et raccourcit l'intervalle ;</li>
+ * <li>une estimation filtrée précise ({@link LocationFilter}) allonge l'intervalle à pied ou
+ * quand le mouvement est inconnu : le filtre extrapole la position entre deux mesures ;</li>
+ * <li>une batterie faible (hors charge) allonge l'intervalle et réduit la priorité.</li>
+ * </ul>
+ * </p>
+ *
+ * @version 1.0
+ */
+public class AdaptiveSamplingPolicy implements SamplingPolicy {
+
+    /**
+     * Intervalle pendant une alerte.
+     */
+    public static final long ALERT_INTERVAL_MS = 1000;
+    /**
+     * Intervalles selon le mouvement détecté.
+     */
+    public static final long STILL_INTERVAL_MS = 60000;
+    public static final long WALKING_INTERVAL_MS = 15000;
+    public static final long VEHICLE_INTERVAL_MS = 5000;
+    public static final long UNKNOWN_INTERVAL_MS = 10000;
+    /**
+     * Intervalle en arrière-plan.
+     */
+    public static final long BACKGROUND_INTERVAL_MS = 60000;
+    /**
+     * Nombre de positions regroupées en arrière-plan : le fournisseur les livre ensemble, au
+     * plus tard après ce nombre d'intervalles (voir {@link SamplingDecision#getMaxWaitTimeMs()}).
+     */
+    public static final int BACKGROUND_BATCH_SIZE = 5;
+    /**
+     * Intervalle minimal hors alerte.
+     */
+    public static final long MIN_INTERVAL_MS = 5000;
+    /**
+     * Intervalle maximal.
+     */
+    public static final long MAX_INTERVAL_MS = 5 * 60000;
+    /**
+     * Précision (m) au-delà de laquelle une position est considérée comme dégradée.
+     */
+    public static final float POOR_ACCURACY_METERS = 50f;
+    /**
+     * Précision (m) de l'estimation en dessous de laquelle l'intervalle peut être allongé.
+     */
+    public static final float GOOD_ACCURACY_METERS = 15f;
+    /**
+     * Niveaux de batterie (%) à partir desquels l'échantillonnage est réduit.
+     */
+    public static final int LOW_BATTERY_PERCENT = 30;
+    public static final int CRITICAL_BATTERY_PERCENT = 15;
+
+    @Override
+    public SamplingDecision decide(SamplingContext context) {
+        if (context.isAlertActive()) {
+            return new SamplingDecision(ALERT_INTERVAL_MS, ALERT_INTERVAL_MS / 2,
+                    SamplingDecision.PRIORITY_HIGH_ACCURACY);
+        }
+        if (!context.isForeground()) {
+            return decideBackground(context);
+        }
+
+        long interval;
+        int priority;
+        switch (context.getMotion()) {
+            case SamplingContext.MOTION_STILL:
+                interval = STILL_INTERVAL_MS;
+                priority = SamplingDecision.PRIORITY_BALANCED_POWER_ACCURACY;
+                break;
+            case SamplingContext.MOTION_WALKING:
+                interval = WALKING_INTERVAL_MS;
+                priority = SamplingDecision.PRIORITY_HIGH_ACCURACY;
+                break;
+            case SamplingContext.MOTION_VEHICLE:
+                interval = VEHICLE_INTERVAL_MS;
+                priority = SamplingDecision.PRIORITY_HIGH_ACCURACY;
+                break;
+            default:
+                interval = UNKNOWN_INTERVAL_MS;
+                priority = SamplingDecision.PRIORITY_HIGH_ACCURACY;
+                break;
+        }
+
+        float accuracy = context.getAccuracyMeters();
+        if (!Float.isNaN(accuracy) && accuracy > POOR_ACCURACY_METERS) {
+            interval /= 2;
+            priority = SamplingDecision.PRIORITY_HIGH_ACCURACY;
+        } else if (!Float.isNaN(accuracy) && accuracy <= GOOD_ACCURACY_METERS
+                && (context.getMotion() == SamplingContext.MOTION_WALKING
+                || context.getMotion() == SamplingContext.MOTION_UNKNOWN)) {
+            interval *= 2;
+        }
+
+        if (!context.isCharging()) {
+            if (context.getBatteryPercent() <= CRITICAL_BATTERY_PERCENT) {
+                interval *= 4;
+                priority = SamplingDecision.PRIORITY_LOW_POWER;
+            } else if (context.getBatteryPercent() <= LOW_BATTERY_PERCENT) {
+                interval *= 2;
+                if (priority == SamplingDecision.PRIORITY_HIGH_ACCURACY) {
+                    priority = SamplingDecision.PRIORITY_BALANCED_POWER_ACCURACY;
+                }
+            }
+        }
+
+        interval = Math.max(MIN_INTERVAL_MS, Math.min(MAX_INTERVAL_MS, interval));
+        return new SamplingDecision(interval, interval / 2, priority);
+    }
+
+    /**
+     * Positions en arrière-plan : intervalle fixe allongé par une batterie faible, livraison
+     * regroupée. Le mouvement et la précision ne sont pas pris en compte, la position n'étant
+     * utile qu'au déclenchement d'une alerte.
+     */
+    private SamplingDecision decideBackground(SamplingContext context) {
+        long interval = BACKGROUND_INTERVAL_MS;
+        int priority = SamplingDecision.PRIORITY_BALANCED_POWER_ACCURACY;
+        if (!context.isCharging()) {
+            if (context.getBatteryPercent() <= CRITICAL_BATTERY_PERCENT) {
+                interval *= 4;
+                priority = SamplingDecision.PRIORITY_LOW_POWER;
+            } else if (context.getBatteryPercent() <= LOW_BATTERY_PERCENT) {
+                interval *= 2;
+            }
+        }
+        interval = Math.min(MAX_INTERVAL_MS, interval);
+        return new SamplingDecision(interval, interval / 2, priority,
+                interval * BACKGROUND_BATCH_SIZE);
+    }
+}
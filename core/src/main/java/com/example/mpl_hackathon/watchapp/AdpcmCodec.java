@@ -0,0 +1,168 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Compression IMA ADPCM (4 bits par échantillon) du son enregistré lors d'une
+ * alerte, en blocs indépendants :
+ * <pre>
+ * predictor          int16    (little endian, échantillon prédit avant le bloc)
+ * step_index         byte     (0 à 88)
+ * reserved           byte
+ * samples            4 bits par échantillon, quartet de poids faible en premier
+ * </pre>
+ * Chaque bloc porte l'état du codeur : il se décode seul, sans les blocs précédents. Un bloc
+ * perdu ou abandonné faute de place laisse un silence dans l'enregistrement sans corrompre la
+ * suite. Le codeur ne fait aucune allocation.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class AdpcmCodec {
+
+    /**
+     * Type de contenu HTTP des enregistrements (8 kHz, mono, blocs IMA ADPCM).
+     */
+    public static final String CONTENT_TYPE = "audio/x-watchapp-adpcm";
+    /**
+     * Fréquence d'échantillonnage (Hz).
+     */
+    public static final int SAMPLE_RATE = 8000;
+    /**
+     * Taille de l'en-tête d'un bloc.
+     */
+    public static final int BLOCK_HEADER_BYTES = 4;
+
+    private static final int[] INDEX_TABLE = {-1, -1, -1, -1, 2, 4, 6, 8};
+    private static final int[] STEP_TABLE = {7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23,
+            25, 28, 31, 34, 37, 41, 45, 50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157,
+            173, 190, 209, 230, 253, 279, 307, 337, 371, 408, 449, 494, 544, 598, 658, 724, 796,
+            876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066, 2272, 2499, 2749, 3024,
+            3327, 3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442,
+            11487, 12635, 13899, 15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767};
+
+    private int mPredictor;
+    private int mIndex;
+
+    /**
+     * @param samples nombre d'échantillons du bloc
+     * @return taille du bloc compressé
+     */
+    public static int blockBytes(int samples) {
+        return BLOCK_HEADER_BYTES + (samples + 1) / 2;
+    }
+
+    /**
+     * Remet le codeur à zéro, avant un nouvel enregistrement.
+     */
+    public void reset() {
+        mPredictor = 0;
+        mIndex = 0;
+    }
+
+    /**
+     * Compresse un bloc ; l'état du codeur est conservé pour le bloc suivant.
+     *
+     * @param pcm       échantillons 16 bits
+     * @param offset    premier échantillon
+     * @param count     nombre d'échantillons
+     * @param out       destination, d'au moins {@link #blockBytes(int)} octets après outOffset
+     * @param outOffset position du bloc dans la destination
+     * @return taille du bloc écrit
+     */
+    public int encodeBlock(short[] pcm, int offset, int count, byte[] out, int outOffset) {
+        out[outOffset] = (byte) mPredictor;
+        out[outOffset + 1] = (byte) (mPredictor >> 8);
+        out[outOffset + 2] = (byte) mIndex;
+        out[outOffset + 3] = 0;
+        int position = outOffset + BLOCK_HEADER_BYTES;
+        for (int i = 0; i < count; i++) {
+            int code = encodeSample(pcm[offset + i]);
+            if ((i & 1) == 0) {
+                out[position] = (byte) code;
+            } else {
+                out[position++] |= (byte) (code << 4);
+            }
+        }
+        return blockBytes(count);
+    }
+
+    private int encodeSample(int sample) {
+        int step = STEP_TABLE[mIndex];
+        int diff = sample - mPredictor;
+        int code = 0;
+        if (diff < 0) {
+            code = 8;
+            diff = -diff;
+        }
+        // reconstruction identique à celle du décodeur, pour que les erreurs ne s'accumulent pas
+        int delta = step >> 3;
+        if (diff >= step) {
+            code |= 4;
+            diff -= step;
+            delta += step;
+        }
+        if (diff >= step >> 1) {
+            code |= 2;
+            diff -= step >> 1;
+            delta += step >> 1;
+        }
+        if (diff >= step >> 2) {
+            code |= 1;
+            delta += step >> 2;
+        }
+        mPredictor = clamp((code & 8) != 0 ? mPredictor - delta : mPredictor + delta);
+        mIndex = nextIndex(mIndex, code);
+        return code;
+    }
+
+    /**
+     * Décompresse un bloc.
+     *
+     * @param in        bloc compressé
+     * @param offset    début du bloc
+     * @param length    taille du bloc
+     * @param out       destination, d'au moins {@code 2 * (length - 4)} échantillons
+     * @param outOffset premier échantillon écrit
+     * @return nombre d'échantillons écrits (pair : un dernier quartet de bourrage est décodé)
+     * @throws IllegalArgumentException si le bloc est invalide
+     */
+    public static int decodeBlock(byte[] in, int offset, int length, short[] out,
+                                  int outOffset) {
+        if (length < BLOCK_HEADER_BYTES || (in[offset + 2] & 0xff) >= STEP_TABLE.length) {
+            throw new IllegalArgumentException("Invalid ADPCM block");
+        }
+        int predictor = (short) ((in[offset] & 0xff) | in[offset + 1] << 8);
+        int index = in[offset + 2] & 0xff;
+        int count = 0;
+        for (int i = offset + BLOCK_HEADER_BYTES; i < offset + length; i++) {
+            for (int shift = 0; shift <= 4; shift += 4) {
+                int code = in[i] >> shift & 0xf;
+                int step = STEP_TABLE[index];
+                int delta = step >> 3;
+                if ((code & 4) != 0) {
+                    delta += step;
+                }
+                if ((code & 2) != 0) {
+                    delta += step >> 1;
+                }
+                if ((code & 1) != 0) {
+                    delta += step >> 2;
+                }
+                predictor = clamp((code & 8) != 0 ? predictor - delta : predictor + delta);
+                index = nextIndex(index, code);
+                out[outOffset + count++] = (short) predictor;
+            }
+        }
+        return count;
+    }
+
+    private static int nextIndex(int index, int code) {
+        index += INDEX_TABLE[code & 7];
+        return index < 0 ? 0 : index >= STEP_TABLE.length ? STEP_TABLE.length - 1 : index;
+    }
+
+    private static int clamp(int sample) {
+        return sample < Short.MIN_VALUE ? Short.MIN_VALUE
+                : sample > Short.MAX_VALUE ? Short.MAX_VALUE : sample;
+    }
+}
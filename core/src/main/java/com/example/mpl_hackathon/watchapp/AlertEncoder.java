@@ -0,0 +1,35 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Sérialise une alerte dans un tampon réutilisé d'une alerte à l'autre. Le contenu
+ * de {@link #buffer()} n'est valide que jusqu'au prochain appel de {@link #encode(AlertPayload)}.
+ * </p>
+ *
+ * @version 1.0
+ */
+public interface AlertEncoder {
+
+    /**
+     * Sérialise une alerte.
+     *
+     * @param payload contenu de l'alerte
+     * @return nombre d'octets écrits au début de {@link #buffer()}
+     */
+    int encode(AlertPayload payload);
+
+    /**
+     * @return tampon contenant la dernière alerte sérialisée
+     */
+    byte[] buffer();
+
+    /**
+     * @return type de contenu HTTP de l'alerte sérialisée
+     */
+    String contentType();
+
+    /**
+     * @return type de contenu utilisé dans la boîte d'envoi ({@link AlertOutbox})
+     */
+    byte outboxKind();
+}
@@ -0,0 +1,123 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * <p>
+ * Description : Adresse du web service des alertes, partagée par la montre, le téléphone et le
+ * serveur de substitution. Seul l'hôte change d'un environnement à l'autre : serveur de
+ * production, ou serveur local ({@code AlertIngestServer}) pour les essais hors ligne et de
+ * charge. Plusieurs hôtes peuvent être configurés, séparés par des virgules : le premier est
+ * l'hôte principal, les suivants servent au secours et aux requêtes doublées
+ * ({@link EndpointPool}). L'enregistrement joint à une alerte est envoyé au même hôte que
+ * l'alerte ({@link #evidenceUrl(String, long)}). Le canal permanent ({@link PushProtocol}) a
+ * son propre hôte ({@link #pushUrl(String)}) : le serveur local l'écoute sur un autre port. Il
+ * remplace les requêtes HTTP vers l'hôte des alertes de même nom
+ * ({@link #pushEndpoint(String, String)}).
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class AlertEndpoint {
+
+    /**
+     * Hôte du serveur de production.
+     */
+    public static final String DEFAULT_HOST = "vps237273.ovh.net";
+    /**
+     * Chemin du web service de création d'une alerte.
+     */
+    public static final String NEW_ALERT_PATH = "/app-urgence/web/app.php/api/new-alerte";
+    /**
+     * Chemin du web service recevant l'enregistrement joint à une alerte, suivi de
+     * l'identifiant de l'alerte en hexadécimal ({@link EvidenceUpload}).
+     */
+    public static final String EVIDENCE_PATH = "/app-urgence/web/app.php/api/evidence/";
+    /**
+     * Chemin du canal permanent des alertes et des secours.
+     */
+    public static final String PUSH_PATH = "/app-urgence/web/app.php/api/push";
+
+    private AlertEndpoint() {
+    }
+
+    /**
+     * @param host hôte, éventuellement suivi du port ({@code 10.0.2.2:8080})
+     * @return adresse du web service de création d'une alerte
+     */
+    public static String newAlertUrl(String host) {
+        return "http://" + host + NEW_ALERT_PATH;
+    }
+
+    /**
+     * @param host hôte, éventuellement suivi du port
+     * @return adresse du canal permanent
+     */
+    public static String pushUrl(String host) {
+        return "ws://" + host.trim() + PUSH_PATH;
+    }
+
+    /**
+     * @param alertHosts hôtes des alertes séparés par des virgules
+     * @param pushHost   hôte du canal permanent, vide si le canal est désactivé
+     * @return rang du premier hôte des alertes de même nom que l'hôte du canal (le port peut
+     * différer), dont le canal remplace les requêtes HTTP ; -1 si aucun
+     */
+    public static int pushEndpoint(String alertHosts, String pushHost) {
+        String name = hostName(pushHost);
+        if (name.isEmpty()) {
+            return -1;
+        }
+        int index = 0;
+        for (String host : alertHosts.split(",")) {
+            if (host.trim().isEmpty()) {
+                continue;
+            }
+            if (hostName(host).equals(name)) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    private static String hostName(String host) {
+        host = host.trim();
+        int port = host.lastIndexOf(':');
+        return (port < 0 ? host : host.substring(0, port)).toLowerCase(Locale.US);
+    }
+
+    /**
+     * @param alertUrl adresse du web service de création d'une alerte
+     * @param alertId  identifiant de l'alerte
+     * @return adresse de l'enregistrement joint à l'alerte, sur le même hôte : les morceaux y
+     * sont envoyés, et le lien ({@code drive_link}) permet de le lire pendant l'envoi
+     */
+    public static String evidenceUrl(String alertUrl, long alertId) {
+        if (!alertUrl.endsWith(NEW_ALERT_PATH)) {
+            throw new IllegalArgumentException("Not an alert URL : " + alertUrl);
+        }
+        return alertUrl.substring(0, alertUrl.length() - NEW_ALERT_PATH.length())
+                + EVIDENCE_PATH + Long.toHexString(alertId);
+    }
+
+    /**
+     * @param hosts hôtes séparés par des virgules ({@code 10.0.2.2:8080,10.0.2.2:8081})
+     * @return adresses du web service de création d'une alerte, dans l'ordre des hôtes
+     */
+    public static String[] newAlertUrls(String hosts) {
+        String[] urls = hosts.split(",");
+        int count = 0;
+        for (String host : urls) {
+            host = host.trim();
+            if (!host.isEmpty()) {
+                urls[count++] = newAlertUrl(host);
+            }
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("No alert host in \"" + hosts + "\"");
+        }
+        return count == urls.length ? urls : Arrays.copyOf(urls, count);
+    }
+}
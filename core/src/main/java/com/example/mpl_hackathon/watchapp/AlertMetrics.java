@@ -0,0 +1,212 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * Description : Mesures de la chaîne d'alerte, de l'appui sur le bouton à l'accusé de réception
+ * du serveur : compteurs et histogrammes de durées (voir {@link MetricsSnapshot} pour la liste).
+ * L'enregistrement est sans verrou et sans allocation ; les mesures sont régulièrement écrites
+ * dans un fichier que le téléphone peut récupérer.
+ * </p>
+ * <p>
+ * Les alertes sont suivies de leur mise en boîte d'envoi à leur accusé de réception par leur
+ * identifiant dans la boîte d'envoi ({@link #trackAlert(long, long)}). Ce suivi est protégé par
+ * un verrou : les alertes sont enregistrées depuis le thread du pipeline d'alerte, leur envoi est
+ * suivi depuis le thread du réseau.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class AlertMetrics {
+
+    /**
+     * Nombre d'alertes suivies simultanément ; les plus anciennes sont oubliées.
+     */
+    private static final int TRACKED_ALERTS = 16;
+
+    private static final AlertMetrics INSTANCE = new AlertMetrics();
+
+    private final AtomicLongArray mCounters = new AtomicLongArray(MetricsSnapshot.COUNTER_COUNT);
+    private final LatencyHistogram[] mHistograms =
+            new LatencyHistogram[MetricsSnapshot.HISTOGRAM_COUNT];
+
+    private final long[] mTrackedIds = new long[TRACKED_ALERTS];
+    private final long[] mTrackedTapMs = new long[TRACKED_ALERTS];
+    private final boolean[] mTrackedEnqueued = new boolean[TRACKED_ALERTS];
+    private int mNextTracked;
+
+    AlertMetrics() {
+        for (int i = 0; i < mHistograms.length; i++) {
+            mHistograms[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < TRACKED_ALERTS; i++) {
+            mTrackedIds[i] = -1;
+        }
+    }
+
+    /**
+     * @return mesures de l'application
+     */
+    public static AlertMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Incrémente un compteur.
+     *
+     * @param counter compteur ({@link MetricsSnapshot#COUNTER_ALERTS_TAPPED}...)
+     */
+    public void increment(int counter) {
+        mCounters.incrementAndGet(counter);
+    }
+
+    /**
+     * Ajoute une valeur à un compteur.
+     *
+     * @param counter compteur ({@link MetricsSnapshot#COUNTER_SENSOR_CPU_US}...)
+     * @param delta   valeur ajoutée
+     */
+    public void add(int counter, long delta) {
+        mCounters.addAndGet(counter, delta);
+    }
+
+    /**
+     * Enregistre une durée.
+     *
+     * @param histogram histogramme ({@link MetricsSnapshot#HISTOGRAM_TAP_TO_PAYLOAD}...)
+     * @param value     durée en millisecondes (en microsecondes pour les histogrammes suffixés
+     *                  {@code _US})
+     */
+    public void record(int histogram, long value) {
+        mHistograms[histogram].record(value);
+    }
+
+    /**
+     * Commence le suivi d'une alerte enregistrée dans la boîte d'envoi.
+     *
+     * @param outboxId identifiant de l'alerte dans la boîte d'envoi
+     * @param tapMs    date de l'appui (horloge monotone)
+     */
+    public synchronized void trackAlert(long outboxId, long tapMs) {
+        if (outboxId < 0) {
+            return;
+        }
+        int slot = mNextTracked;
+        mNextTracked = (slot + 1) % TRACKED_ALERTS;
+        mTrackedIds[slot] = outboxId;
+        mTrackedTapMs[slot] = tapMs;
+        mTrackedEnqueued[slot] = false;
+    }
+
+    /**
+     * Signale la mise en file d'une requête d'alerte.
+     *
+     * @param outboxId identifiant de l'alerte dans la boîte d'envoi
+     * @param nowMs    date courante (horloge monotone)
+     */
+    public synchronized void onAlertEnqueued(long outboxId, long nowMs) {
+        increment(MetricsSnapshot.COUNTER_REQUESTS_SENT);
+        int slot = find(outboxId);
+        if (slot >= 0 && !mTrackedEnqueued[slot]) {
+            // seule la première tentative compte dans le délai de mise en file
+            mTrackedEnqueued[slot] = true;
+            record(MetricsSnapshot.HISTOGRAM_TAP_TO_ENQUEUE, nowMs - mTrackedTapMs[slot]);
+        }
+    }
+
+    /**
+     * Signale l'accusé de réception d'une alerte par le serveur.
+     *
+     * @param outboxId  identifiant de l'alerte dans la boîte d'envoi
+     * @param requestMs durée de la requête, -1 si inconnue
+     * @param nowMs     date courante (horloge monotone)
+     */
+    public synchronized void onAlertDelivered(long outboxId, long requestMs, long nowMs) {
+        increment(MetricsSnapshot.COUNTER_REQUESTS_DELIVERED);
+        if (requestMs >= 0) {
+            record(MetricsSnapshot.HISTOGRAM_REQUEST, requestMs);
+        }
+        int slot = find(outboxId);
+        if (slot >= 0) {
+            record(MetricsSnapshot.HISTOGRAM_TAP_TO_DELIVERED, nowMs - mTrackedTapMs[slot]);
+            mTrackedIds[slot] = -1;
+        }
+    }
+
+    /**
+     * Reporte le suivi d'une alerte remplacée dans la boîte d'envoi (conversion de format).
+     *
+     * @param oldId ancien identifiant
+     * @param newId nouvel identifiant
+     */
+    public synchronized void moveAlert(long oldId, long newId) {
+        int slot = find(oldId);
+        if (slot >= 0) {
+            mTrackedIds[slot] = newId < 0 ? -1 : newId;
+        }
+    }
+
+    private int find(long outboxId) {
+        if (outboxId < 0) {
+            return -1;
+        }
+        for (int i = 0; i < TRACKED_ALERTS; i++) {
+            if (mTrackedIds[i] == outboxId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param nowMs date courante (ms depuis epoch)
+     * @return photographie des mesures
+     */
+    public MetricsSnapshot snapshot(long nowMs) {
+        MetricsSnapshot snapshot = new MetricsSnapshot(nowMs);
+        for (int i = 0; i < MetricsSnapshot.COUNTER_COUNT; i++) {
+            snapshot.setCounter(i, mCounters.get(i));
+        }
+        for (int i = 0; i < MetricsSnapshot.HISTOGRAM_COUNT; i++) {
+            snapshot.setHistogram(i, mHistograms[i]);
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return somme des compteurs, qui change à chaque nouvelle mesure d'une alerte
+     */
+    public long version() {
+        long version = 0;
+        for (int i = 0; i < MetricsSnapshot.COUNTER_COUNT; i++) {
+            version += mCounters.get(i);
+        }
+        return version;
+    }
+
+    /**
+     * Ecrit une photographie des mesures dans un fichier, remplacé de façon atomique.
+     *
+     * @param file  fichier de destination
+     * @param nowMs date courante (ms depuis epoch)
+     * @throws IOException en cas d'erreur d'écriture
+     */
+    public void writeTo(File file, long nowMs) throws IOException {
+        byte[] data = snapshot(nowMs).encode();
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(data);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+}
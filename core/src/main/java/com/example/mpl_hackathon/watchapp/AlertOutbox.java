@@ -0,0 +1,482 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Description : Boîte d'envoi persistante des alertes. Les alertes sont ajoutées dans un journal
+ * (fichier projeté en mémoire) qui survit à la mort du processus. Une alerte ne quitte le journal
+ * que lorsque le serveur en a accusé réception ({@link #ack(long)}).
+ * </p>
+ * <p>
+ * Format du fichier :
+ * <pre>
+ * en-tête  : magic (int), version (int), head (long), tail (long), nextId (long), check (long)
+ * entrée   : longueur (int), crc (int), id (long), état (byte), type (byte), réservé (short),
+ *            données
+ * </pre>
+ * Les entrées situées avant {@code head} sont toutes acquittées : au redémarrage, seule la zone
+ * {@code [head, tail)} est relue. Elle commence à la plus ancienne entrée en attente et contient
+ * aussi les entrées acquittées qui la suivent : le coût de la reprise dépend de l'ancienneté de
+ * cette entrée, pas de la taille du fichier. Les identifiants des entrées croissent le long du
+ * journal ; la relecture s'arrête à la première entrée invalide ou dont l'identifiant ne croît
+ * pas (reste d'une disposition antérieure au compactage).
+ * </p>
+ * <p>
+ * Lorsque le journal est plein, seules les entrées en attente sont conservées. Si elles tiennent
+ * avant {@code head}, elles y sont recopiées ; sinon (une entrée ancienne reste en attente), le
+ * journal est réécrit dans un nouveau fichier qui remplace l'ancien, afin qu'un arrêt brutal
+ * laisse toujours l'un ou l'autre intact.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class AlertOutbox {
+
+    /**
+     * Type de contenu : alerte JSON.
+     */
+    public static final byte KIND_JSON = 1;
+    /**
+     * Type de contenu : alerte au format binaire ({@link BinaryAlertEncoder}).
+     */
+    public static final byte KIND_BINARY = 2;
+    /**
+     * Taille initiale du journal.
+     */
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+    /**
+     * Taille maximale du journal.
+     */
+    public static final int MAX_CAPACITY = 4 * 1024 * 1024;
+
+    private static final int MAGIC = 0x414c5254; // "ALRT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int OFFSET_HEAD = 8;
+    private static final int OFFSET_TAIL = 16;
+    private static final int OFFSET_NEXT_ID = 24;
+    private static final int OFFSET_CHECK = 32;
+    private static final int ENTRY_HEADER_SIZE = 20;
+    private static final byte STATE_PENDING = 1;
+    private static final byte STATE_ACKED = 2;
+    private static final long CHECK_SALT = 0x5a17c0de5a17c0deL;
+
+    /**
+     * Entrée en attente d'envoi.
+     */
+    public static final class Entry {
+        public final long id;
+        public final byte kind;
+        public final byte[] payload;
+
+        Entry(long id, byte kind, byte[] payload) {
+            this.id = id;
+            this.kind = kind;
+            this.payload = payload;
+        }
+    }
+
+    private final File mPath;
+    private RandomAccessFile mFile;
+    private FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    private int mCapacity;
+    private long mHead;
+    private long mTail;
+    private long mNextId;
+    private final CRC32 mCrc = new CRC32();
+    private final byte[] mCrcChunk = new byte[256];
+    /**
+     * Position dans le journal de chaque entrée en attente, dans l'ordre d'ajout.
+     */
+    private final Map<Long, Integer> mPending = new HashMap<>();
+    private final List<Long> mOrder = new ArrayList<>();
+    /**
+     * Entrées en cours d'envoi (non persisté : tout redevient en attente après un redémarrage).
+     */
+    private final Set<Long> mInFlight = new HashSet<>();
+
+    private AlertOutbox(File file, int capacity) throws IOException {
+        mPath = file;
+        mFile = new RandomAccessFile(file, "rw");
+        mChannel = mFile.getChannel();
+        boolean fresh = mFile.length() < HEADER_SIZE;
+        mCapacity = (int) Math.max(capacity, Math.min(mFile.length(), MAX_CAPACITY));
+        map();
+        if (fresh || mBuffer.getInt(0) != MAGIC || mBuffer.getInt(4) != VERSION) {
+            format();
+        } else {
+            recover();
+        }
+    }
+
+    /**
+     * Ouvre (ou crée) le journal.
+     *
+     * @param file fichier du journal
+     * @return la boîte d'envoi
+     * @throws IOException si le fichier ne peut pas être projeté en mémoire
+     */
+    public static AlertOutbox open(File file) throws IOException {
+        return new AlertOutbox(file, DEFAULT_CAPACITY);
+    }
+
+    private void map() throws IOException {
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, mCapacity);
+    }
+
+    private void format() {
+        mBuffer.putInt(0, MAGIC);
+        mBuffer.putInt(4, VERSION);
+        mHead = HEADER_SIZE;
+        mTail = HEADER_SIZE;
+        mNextId = 1;
+        writeHeader();
+        mBuffer.force();
+    }
+
+    private void writeHeader() {
+        mBuffer.putLong(OFFSET_HEAD, mHead);
+        mBuffer.putLong(OFFSET_TAIL, mTail);
+        mBuffer.putLong(OFFSET_NEXT_ID, mNextId);
+        mBuffer.putLong(OFFSET_CHECK, mHead ^ mTail ^ mNextId ^ CHECK_SALT);
+    }
+
+    private void recover() {
+        long head = mBuffer.getLong(OFFSET_HEAD);
+        long tail = mBuffer.getLong(OFFSET_TAIL);
+        long nextId = mBuffer.getLong(OFFSET_NEXT_ID);
+        boolean valid = mBuffer.getLong(OFFSET_CHECK) == (head ^ tail ^ nextId ^ CHECK_SALT)
+                && head >= HEADER_SIZE && head <= tail && tail <= mCapacity;
+        if (valid) {
+            mHead = head;
+            mTail = tail;
+            mNextId = nextId;
+            scan(true);
+        } else {
+            // en-tête incohérent (arrêt brutal pendant son écriture) : on relit tout le
+            // fichier en s'arrêtant à la première entrée invalide
+            mHead = HEADER_SIZE;
+            mTail = mCapacity;
+            mNextId = 1;
+            scan(false);
+            writeHeader();
+            mBuffer.force();
+        }
+    }
+
+    /**
+     * Relit les entrées de la zone {@code [head, tail)}.
+     *
+     * @param bounded vrai si l'en-tête est valide : la fin du journal est connue, et une entrée
+     *                en attente dont le contenu est altéré est écartée sans interrompre la
+     *                relecture ; sinon, la première entrée altérée marque la fin du journal
+     */
+    private void scan(boolean bounded) {
+        int offset = (int) mHead;
+        long lastId = 0;
+        while (offset + ENTRY_HEADER_SIZE <= mTail) {
+            int length = mBuffer.getInt(offset);
+            int end = offset + ENTRY_HEADER_SIZE + length;
+            byte state = mBuffer.get(offset + 16);
+            if (length < 0 || end > mTail
+                    || (state != STATE_PENDING && state != STATE_ACKED)) {
+                break;
+            }
+            // le contenu des entrées acquittées n'est plus lu : inutile de le vérifier
+            boolean intact = (bounded && state == STATE_ACKED)
+                    || checksum(offset, length) == mBuffer.getInt(offset + 4);
+            if (!intact && !bounded) {
+                // entrée à moitié écrite : fin du journal
+                break;
+            }
+            if (intact) {
+                long id = mBuffer.getLong(offset + 8);
+                if (id <= lastId) {
+                    // entrée déjà lue, reste d'une disposition antérieure au compactage
+                    break;
+                }
+                lastId = id;
+                if (state == STATE_PENDING) {
+                    mPending.put(id, offset);
+                    mOrder.add(id);
+                }
+                mNextId = Math.max(mNextId, id + 1);
+            }
+            offset = end;
+        }
+        mTail = offset;
+        advanceHead();
+    }
+
+    private int checksum(int offset, int length) {
+        mCrc.reset();
+        for (int i = 8; i < 16; i++) {
+            mCrc.update(mBuffer.get(offset + i));
+        }
+        mCrc.update(mBuffer.get(offset + 17));
+        ByteBuffer payload = mBuffer.duplicate();
+        payload.position(offset + ENTRY_HEADER_SIZE);
+        payload.limit(offset + ENTRY_HEADER_SIZE + length);
+        byte[] chunk = mCrcChunk;
+        while (payload.hasRemaining()) {
+            int n = Math.min(chunk.length, payload.remaining());
+            payload.get(chunk, 0, n);
+            mCrc.update(chunk, 0, n);
+        }
+        return (int) mCrc.getValue();
+    }
+
+    /**
+     * Ajoute une alerte dans le journal. L'écriture est forcée sur le disque avant le retour.
+     *
+     * @param kind    type de contenu
+     * @param payload données de l'alerte
+     * @param off     début des données
+     * @param len     longueur des données
+     * @return identifiant de l'entrée
+     * @throws IOException si le journal est plein
+     */
+    public synchronized long append(byte kind, byte[] payload, int off, int len)
+            throws IOException {
+        int size = ENTRY_HEADER_SIZE + len;
+        ensureCapacity(size);
+        int offset = (int) mTail;
+        long id = mNextId++;
+        mBuffer.putInt(offset, len);
+        mBuffer.putLong(offset + 8, id);
+        mBuffer.put(offset + 16, STATE_PENDING);
+        mBuffer.put(offset + 17, kind);
+        mBuffer.putShort(offset + 18, (short) 0);
+        ByteBuffer target = mBuffer.duplicate();
+        target.position(offset + ENTRY_HEADER_SIZE);
+        target.put(payload, off, len);
+        mBuffer.putInt(offset + 4, checksum(offset, len));
+        // l'entrée n'est visible qu'une fois la fin du journal mise à jour
+        mTail = offset + size;
+        writeHeader();
+        mBuffer.force();
+        mPending.put(id, offset);
+        mOrder.add(id);
+        return id;
+    }
+
+    private void ensureCapacity(int size) throws IOException {
+        if (mTail + size <= mCapacity) {
+            return;
+        }
+        int live = 0;
+        for (Long id : mOrder) {
+            live += ENTRY_HEADER_SIZE + mBuffer.getInt(mPending.get(id));
+        }
+        if (HEADER_SIZE + live + size <= mCapacity) {
+            if (HEADER_SIZE + live <= mHead) {
+                // la zone copiée ne recouvre pas les entrées en attente
+                compact(live);
+            } else {
+                rewrite(live);
+            }
+            return;
+        }
+        long required = mTail + size;
+        int capacity = mCapacity;
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        if (capacity > MAX_CAPACITY) {
+            throw new IOException("Alert outbox full");
+        }
+        mCapacity = capacity;
+        map();
+    }
+
+    /**
+     * Recopie les entrées en attente au début du journal, avant {@code head} : jusqu'à l'écriture
+     * de l'en-tête, les entrées d'origine restent intactes.
+     */
+    private void compact(int live) {
+        copyPending(mBuffer, mBuffer, mPending);
+        mBuffer.force();
+        mHead = HEADER_SIZE;
+        mTail = HEADER_SIZE + live;
+        writeHeader();
+        mBuffer.force();
+    }
+
+    /**
+     * Réécrit les entrées en attente dans un nouveau fichier, qui remplace le journal.
+     */
+    private void rewrite(int live) throws IOException {
+        File temp = new File(mPath.getPath() + ".tmp");
+        RandomAccessFile file = new RandomAccessFile(temp, "rw");
+        Map<Long, Integer> offsets = new HashMap<>();
+        try {
+            file.setLength(0);
+            MappedByteBuffer buffer =
+                    file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mCapacity);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            copyPending(mBuffer, buffer, offsets);
+            long tail = HEADER_SIZE + live;
+            buffer.putLong(OFFSET_HEAD, HEADER_SIZE);
+            buffer.putLong(OFFSET_TAIL, tail);
+            buffer.putLong(OFFSET_NEXT_ID, mNextId);
+            buffer.putLong(OFFSET_CHECK, HEADER_SIZE ^ tail ^ mNextId ^ CHECK_SALT);
+            buffer.force();
+            if (!temp.renameTo(mPath)) {
+                // le journal d'origine reste en place
+                throw new IOException("Cannot replace " + mPath);
+            }
+            mBuffer = buffer;
+            mHead = HEADER_SIZE;
+            mTail = tail;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        mPending.putAll(offsets);
+        mChannel.close();
+        mFile.close();
+        mFile = file;
+        mChannel = file.getChannel();
+    }
+
+    /**
+     * Copie les entrées en attente, dans l'ordre, au début de {@code target}. Chaque entrée est
+     * copiée à une position inférieure ou égale à son origine.
+     *
+     * @param offsets reçoit la nouvelle position de chaque entrée
+     */
+    private void copyPending(ByteBuffer source, ByteBuffer target, Map<Long, Integer> offsets) {
+        int position = HEADER_SIZE;
+        for (Long id : mOrder) {
+            int offset = mPending.get(id);
+            int size = ENTRY_HEADER_SIZE + source.getInt(offset);
+            ByteBuffer from = source.duplicate();
+            from.position(offset);
+            from.limit(offset + size);
+            ByteBuffer to = target.duplicate();
+            to.position(position);
+            to.put(from);
+            offsets.put(id, position);
+            position += size;
+        }
+    }
+
+    /**
+     * Renvoie le prochain lot d'alertes à envoyer. Les entrées renvoyées sont marquées en cours
+     * d'envoi jusqu'à l'appel de {@link #ack(long)} ou {@link #release(long)}.
+     *
+     * @param max taille maximale du lot
+     * @return entrées à envoyer, dans l'ordre d'ajout
+     */
+    public synchronized List<Entry> nextBatch(int max) {
+        List<Entry> batch = new ArrayList<>(Math.min(max, mOrder.size()));
+        for (int i = 0; i < mOrder.size() && batch.size() < max; i++) {
+            Long id = mOrder.get(i);
+            if (mInFlight.add(id)) {
+                batch.add(read(id, mPending.get(id)));
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Marque une alerte en cours d'envoi, hors lot, par exemple pour l'envoyer dès son ajout.
+     *
+     * @param id identifiant de l'entrée
+     * @return l'entrée, null si elle a été retirée ou si elle est déjà en cours d'envoi
+     */
+    public synchronized Entry claim(long id) {
+        Integer offset = mPending.get(id);
+        if (offset == null || !mInFlight.add(id)) {
+            return null;
+        }
+        return read(id, offset);
+    }
+
+    private Entry read(long id, int offset) {
+        int length = mBuffer.getInt(offset);
+        byte[] payload = new byte[length];
+        ByteBuffer source = mBuffer.duplicate();
+        source.position(offset + ENTRY_HEADER_SIZE);
+        source.get(payload);
+        return new Entry(id, mBuffer.get(offset + 17), payload);
+    }
+
+    /**
+     * Retire définitivement une alerte du journal suite à l'accusé de réception du serveur, ou
+     * parce qu'elle a été remplacée par un message plus récent.
+     *
+     * @param id identifiant de l'entrée
+     * @return faux si l'entrée avait déjà été retirée
+     */
+    public synchronized boolean ack(long id) {
+        Integer offset = mPending.remove(id);
+        mInFlight.remove(id);
+        if (offset == null) {
+            return false;
+        }
+        mOrder.remove(Long.valueOf(id));
+        mBuffer.put(offset + 16, STATE_ACKED);
+        advanceHead();
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * Remet une alerte en attente après un échec d'envoi.
+     *
+     * @param id identifiant de l'entrée
+     */
+    public synchronized void release(long id) {
+        mInFlight.remove(id);
+    }
+
+    private void advanceHead() {
+        if (mOrder.isEmpty()) {
+            mHead = mTail;
+        } else {
+            mHead = mPending.get(mOrder.get(0));
+        }
+    }
+
+    /**
+     * @return nombre d'alertes non acquittées (y compris celles en cours d'envoi)
+     */
+    public synchronized int pendingCount() {
+        return mOrder.size();
+    }
+
+    /**
+     * @return nombre d'alertes en attente qui ne sont pas en cours d'envoi
+     */
+    public synchronized int readyCount() {
+        return mOrder.size() - mInFlight.size();
+    }
+
+    /**
+     * Ferme le journal.
+     *
+     * @throws IOException en cas d'erreur d'entrée/sortie
+     */
+    public synchronized void close() throws IOException {
+        writeHeader();
+        mBuffer.force();
+        mChannel.close();
+        mFile.close();
+    }
+}
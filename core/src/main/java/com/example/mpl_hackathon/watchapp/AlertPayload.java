@@ -0,0 +1,266 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Contenu d'une alerte, indépendant du format d'envoi. Une seule instance est
+ * réutilisée d'une alerte à l'autre (voir {@link #reset()}) : la trace des dernières positions est
+ * copiée dans des tableaux préalloués.
+ * </p>
+ * <p>
+ * La trace est un morceau de la trajectoire de l'alerte ({@link Trajectory}), dans l'ordre
+ * chronologique : l'alerte initiale porte les positions précédant l'alerte, chaque mise à jour
+ * les positions suivantes, à partir du rang {@link #getTrailStartIndex()}.
+ * </p>
+ * <p>
+ * Le couple ({@link #getAlertId()}, {@link #getUpdateSeq()}) est la clé d'idempotence du
+ * message : un message renvoyé faute d'accusé de réception, ou doublé vers un autre point
+ * d'accès ({@link EndpointPool}), porte la même clé et n'est enregistré qu'une fois par le
+ * serveur.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class AlertPayload implements TrajectoryCodec.Visitor {
+
+    /**
+     * Nombre maximal de positions dans la trace.
+     */
+    public static final int MAX_TRAIL_POINTS = 32;
+
+    /**
+     * Origine de la position : aucune position disponible.
+     */
+    public static final int SOURCE_NONE = 0;
+    /**
+     * Origine de la position : mise à jour du fournisseur de position fusionné.
+     */
+    public static final int SOURCE_FUSED = 1;
+    /**
+     * Origine de la position : dernière position connue du fournisseur fusionné.
+     */
+    public static final int SOURCE_LAST_KNOWN = 2;
+    /**
+     * Origine de la position : dernière position connue du réseau (antennes, Wi-Fi).
+     */
+    public static final int SOURCE_NETWORK = 3;
+
+    private static final String[] SOURCE_NAMES = {"none", "fused", "last_known", "network"};
+
+    private long mAlertId;
+    private int mUpdateSeq;
+    private UserProfile mProfile = UserProfile.PLACEHOLDER;
+    private int mProfileId = UserProfile.PLACEHOLDER.getId();
+    private long mTimestampCurrent;
+    private boolean mHasLocation;
+    private double mLatitude;
+    private double mLongitude;
+    private long mTimestampPosition;
+    private float mAccuracy;
+    private int mLocationSource = SOURCE_NONE;
+    private String mDriveLink = "";
+    private int mTrailStartIndex;
+    private int mTrailSize;
+    private final long[] mTrailTimes = new long[MAX_TRAIL_POINTS];
+    private final double[] mTrailLatitudes = new double[MAX_TRAIL_POINTS];
+    private final double[] mTrailLongitudes = new double[MAX_TRAIL_POINTS];
+    private final float[] mTrailAccuracies = new float[MAX_TRAIL_POINTS];
+
+    /**
+     * Réinitialise le contenu avant la construction d'une nouvelle alerte.
+     */
+    public void reset() {
+        mAlertId = 0;
+        mUpdateSeq = 0;
+        mTimestampCurrent = 0;
+        mHasLocation = false;
+        mLatitude = 0;
+        mLongitude = 0;
+        mTimestampPosition = 0;
+        mAccuracy = 0;
+        mLocationSource = SOURCE_NONE;
+        mDriveLink = "";
+        mTrailStartIndex = 0;
+        mTrailSize = 0;
+    }
+
+    /**
+     * @return identifiant de l'alerte, commun à l'alerte initiale et à ses mises à jour
+     */
+    public long getAlertId() {
+        return mAlertId;
+    }
+
+    public void setAlertId(long alertId) {
+        mAlertId = alertId;
+    }
+
+    /**
+     * @return numéro de la mise à jour de position (0 pour l'alerte initiale)
+     */
+    public int getUpdateSeq() {
+        return mUpdateSeq;
+    }
+
+    public void setUpdateSeq(int updateSeq) {
+        mUpdateSeq = updateSeq;
+    }
+
+    /**
+     * @return profil du porteur, null si seul son identifiant est connu (alerte décodée)
+     */
+    public UserProfile getProfile() {
+        return mProfile;
+    }
+
+    public void setProfile(UserProfile profile) {
+        mProfile = profile;
+        mProfileId = profile.getId();
+    }
+
+    public int getProfileId() {
+        return mProfileId;
+    }
+
+    /**
+     * Définit uniquement l'identifiant du profil (décodage d'une alerte binaire).
+     *
+     * @param profileId identifiant du profil
+     */
+    public void setProfileId(int profileId) {
+        mProfileId = profileId;
+        if (mProfile != null && mProfile.getId() != profileId) {
+            mProfile = null;
+        }
+    }
+
+    public long getTimestampCurrent() {
+        return mTimestampCurrent;
+    }
+
+    public void setTimestampCurrent(long timestampCurrent) {
+        mTimestampCurrent = timestampCurrent;
+    }
+
+    public boolean hasLocation() {
+        return mHasLocation;
+    }
+
+    /**
+     * Définit la position de l'alerte.
+     *
+     * @param latitude          latitude en degrés
+     * @param longitude         longitude en degrés
+     * @param timestampPosition date de la position (ms depuis epoch)
+     * @param accuracy          précision en mètres
+     * @param source            origine de la position ({@link #SOURCE_FUSED}...)
+     */
+    public void setLocation(double latitude, double longitude, long timestampPosition,
+                            float accuracy, int source) {
+        mHasLocation = true;
+        mLocationSource = source;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mTimestampPosition = timestampPosition;
+        mAccuracy = accuracy;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public long getTimestampPosition() {
+        return mTimestampPosition;
+    }
+
+    public float getAccuracy() {
+        return mAccuracy;
+    }
+
+    /**
+     * @return origine de la position ({@link #SOURCE_NONE} sans position)
+     */
+    public int getLocationSource() {
+        return mLocationSource;
+    }
+
+    /**
+     * @return nom de l'origine de la position, tel qu'envoyé dans les alertes JSON
+     */
+    public String getLocationSourceName() {
+        return mLocationSource >= 0 && mLocationSource < SOURCE_NAMES.length
+                ? SOURCE_NAMES[mLocationSource] : SOURCE_NAMES[SOURCE_NONE];
+    }
+
+    /**
+     * @return âge de la position au moment de l'alerte (ms), -1 sans position
+     */
+    public long getPositionAgeMs() {
+        return mHasLocation ? mTimestampCurrent - mTimestampPosition : -1;
+    }
+
+    public String getDriveLink() {
+        return mDriveLink;
+    }
+
+    public void setDriveLink(String driveLink) {
+        mDriveLink = driveLink == null ? "" : driveLink;
+    }
+
+    /**
+     * Ajoute une position à la trace (ignorée si la trace est pleine).
+     */
+    public void addTrailPoint(long timeMs, double latitude, double longitude, float accuracy) {
+        if (mTrailSize == MAX_TRAIL_POINTS) {
+            return;
+        }
+        mTrailTimes[mTrailSize] = timeMs;
+        mTrailLatitudes[mTrailSize] = latitude;
+        mTrailLongitudes[mTrailSize] = longitude;
+        mTrailAccuracies[mTrailSize] = accuracy;
+        mTrailSize++;
+    }
+
+    @Override
+    public void onTrajectoryPoint(int index, long timeMs, double latitude, double longitude,
+                                  float accuracyMeters) {
+        if (mTrailSize == 0) {
+            mTrailStartIndex = index;
+        }
+        addTrailPoint(timeMs, latitude, longitude, accuracyMeters);
+    }
+
+    /**
+     * @return rang du premier point de la trace dans la trajectoire de l'alerte
+     */
+    public int getTrailStartIndex() {
+        return mTrailStartIndex;
+    }
+
+    public void setTrailStartIndex(int trailStartIndex) {
+        mTrailStartIndex = trailStartIndex;
+    }
+
+    public int getTrailSize() {
+        return mTrailSize;
+    }
+
+    public long getTrailTime(int index) {
+        return mTrailTimes[index];
+    }
+
+    public double getTrailLatitude(int index) {
+        return mTrailLatitudes[index];
+    }
+
+    public double getTrailLongitude(int index) {
+        return mTrailLongitudes[index];
+    }
+
+    public float getTrailAccuracy(int index) {
+        return mTrailAccuracies[index];
+    }
+}
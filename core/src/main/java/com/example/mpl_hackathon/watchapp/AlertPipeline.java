@@ -0,0 +1,224 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <p>
+ * Description : Chaîne de construction et d'enregistrement des alertes, exécutée hors du thread
+ * principal. Une alerte (ou une mise à jour) traverse quatre étapes :
+ * <ol>
+ * <li>capture : l'appelant relève sur son thread les données qui n'y sont valides qu'un
+ * instant (date de l'appui, position courante) et les place dans une {@link Task} ;</li>
+ * <li>enrichissement : {@link Task#enrich(AlertPayload)} complète le contenu de l'alerte
+ * (profil, position de repli, trajectoire simplifiée) ;</li>
+ * <li>sérialisation dans le format accepté par le serveur ;</li>
+ * <li>enregistrement dans la boîte d'envoi ({@link Sink}).</li>
+ * </ol>
+ * Les trois dernières étapes s'exécutent sur l'exécuteur du pipeline, qui doit traiter les
+ * tâches une à une et dans l'ordre (un seul thread) : le contenu de l'alerte et les encodeurs
+ * sont réutilisés d'une tâche à l'autre, et l'état des tâches (trajectoire, suivi des mises à
+ * jour) peut leur être confiné. La durée de chaque étape et l'attente dans la file sont mesurées
+ * ({@link MetricsSnapshot#HISTOGRAM_PIPELINE_WAIT_US}...).
+ * </p>
+ * <p>
+ * Le message d'une {@link ReplaceableTask} remplace le précédent message de même clé : la boîte
+ * d'envoi abandonne ce dernier s'il n'a pas encore été acquitté (appuis répétés dont seul le
+ * dernier compte).
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class AlertPipeline {
+
+    /**
+     * Résultat d'une tâche qui n'avait rien à envoyer.
+     */
+    public static final long SKIPPED = -2;
+
+    /**
+     * Alerte capturée, complétée sur le thread du pipeline.
+     */
+    public interface Task {
+        /**
+         * Complète le contenu de l'alerte, remis à zéro avant l'appel.
+         *
+         * @param payload contenu de l'alerte
+         * @return faux si aucun message ne doit être envoyé
+         */
+        boolean enrich(AlertPayload payload);
+    }
+
+    /**
+     * Tâche dont le message remplace le précédent message de même clé.
+     */
+    public interface ReplaceableTask extends Task {
+        /**
+         * Appelée après {@link #enrich(AlertPayload)}.
+         *
+         * @return clé des messages qui se remplacent les uns les autres, -1 si le message ne
+         * remplace aucun autre
+         */
+        long replacementKey();
+    }
+
+    /**
+     * Destination des alertes sérialisées.
+     */
+    public interface Sink {
+        /**
+         * @return vrai si le serveur accepte le format binaire
+         */
+        boolean isBinaryAlertAccepted();
+
+        /**
+         * Enregistre une alerte sérialisée dans la boîte d'envoi et déclenche son envoi.
+         *
+         * @param kind   type de contenu (voir {@link AlertOutbox})
+         * @param data   alerte sérialisée, tampon réutilisé après le retour
+         * @param length longueur de l'alerte au début du tampon
+         * @param tapMs      date de l'appui (horloge monotone) pour le suivi de l'alerte, -1
+         *                   pour une mise à jour qui n'est pas suivie
+         * @param replacedId identifiant dans la boîte d'envoi du message remplacé, à abandonner
+         *                   s'il n'a pas encore été acquitté, -1 si aucun
+         * @return identifiant de l'alerte dans la boîte d'envoi, -1 si elle n'a pas pu y être
+         * enregistrée
+         */
+        long sendAlert(byte kind, byte[] data, int length, long tapMs, long replacedId);
+    }
+
+    /**
+     * Ecouteur de la fin du traitement d'une tâche, appelé sur l'exécuteur des notifications.
+     */
+    public interface Listener {
+        /**
+         * @param outboxId identifiant de l'alerte dans la boîte d'envoi, -1 si elle n'a pas pu y
+         *                 être enregistrée, {@link #SKIPPED} si la tâche n'avait rien à envoyer
+         */
+        void onAlertQueued(long outboxId);
+
+        /**
+         * @param error erreur levée par l'une des étapes
+         */
+        void onAlertFailed(Throwable error);
+    }
+
+    private final Executor mExecutor;
+    private final Executor mCallbackExecutor;
+    private final Sink mSink;
+
+    /**
+     * Contenu de l'alerte et encodeurs, confinés au thread du pipeline.
+     */
+    private final AlertPayload mPayload = new AlertPayload();
+    private final BinaryAlertEncoder mBinaryEncoder = new BinaryAlertEncoder();
+    private final JsonAlertEncoder mJsonEncoder = new JsonAlertEncoder();
+    /**
+     * Dernier message remplaçable enregistré (thread du pipeline).
+     */
+    private long mReplaceableKey = -1;
+    private long mReplaceableId = -1;
+
+    /**
+     * @param executor         exécuteur des étapes, à un seul thread
+     * @param callbackExecutor exécuteur des notifications (thread principal)
+     * @param sink             boîte d'envoi
+     */
+    public AlertPipeline(Executor executor, Executor callbackExecutor, Sink sink) {
+        mExecutor = executor;
+        mCallbackExecutor = callbackExecutor;
+        mSink = sink;
+    }
+
+    /**
+     * Place une alerte capturée dans la file du pipeline.
+     *
+     * @param task     alerte capturée
+     * @param tapMs    date de l'appui (horloge monotone), -1 pour une mise à jour
+     * @param listener écouteur de la fin du traitement, ou null
+     * @return résultat du traitement : identifiant de l'alerte dans la boîte d'envoi (voir
+     * {@link Listener#onAlertQueued(long)})
+     */
+    public Future<Long> submit(final Task task, final long tapMs, final Listener listener) {
+        final long submittedAt = System.nanoTime();
+        FutureTask<Long> future = new FutureTask<Long>(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return process(task, tapMs, submittedAt);
+            }
+        }) {
+            @Override
+            protected void done() {
+                if (listener != null && !isCancelled()) {
+                    notifyListener(this, listener);
+                }
+            }
+        };
+        mExecutor.execute(future);
+        return future;
+    }
+
+    /**
+     * Exécute une opération sur le thread du pipeline, après les tâches déjà en file.
+     *
+     * @param runnable opération
+     */
+    public void execute(Runnable runnable) {
+        mExecutor.execute(runnable);
+    }
+
+    private long process(Task task, long tapMs, long submittedAt) {
+        AlertMetrics metrics = AlertMetrics.get();
+        long start = System.nanoTime();
+        metrics.record(MetricsSnapshot.HISTOGRAM_PIPELINE_WAIT_US, (start - submittedAt) / 1000);
+
+        AlertPayload payload = mPayload;
+        payload.reset();
+        boolean send = task.enrich(payload);
+        long enriched = System.nanoTime();
+        metrics.record(MetricsSnapshot.HISTOGRAM_PIPELINE_ENRICH_US, (enriched - start) / 1000);
+        if (!send) {
+            return SKIPPED;
+        }
+
+        AlertEncoder encoder = mSink.isBinaryAlertAccepted() ? mBinaryEncoder : mJsonEncoder;
+        int length = encoder.encode(payload);
+        long encoded = System.nanoTime();
+        metrics.record(MetricsSnapshot.HISTOGRAM_PIPELINE_ENCODE_US, (encoded - enriched) / 1000);
+
+        long key = task instanceof ReplaceableTask ? ((ReplaceableTask) task).replacementKey() : -1;
+        long replacedId = key >= 0 && key == mReplaceableKey ? mReplaceableId : -1;
+        long id = mSink.sendAlert(encoder.outboxKind(), encoder.buffer(), length, tapMs,
+                replacedId);
+        if (key >= 0) {
+            mReplaceableKey = key;
+            mReplaceableId = id;
+        }
+        metrics.record(MetricsSnapshot.HISTOGRAM_PIPELINE_ENQUEUE_US,
+                (System.nanoTime() - encoded) / 1000);
+        return id;
+    }
+
+    private void notifyListener(final Future<Long> future, final Listener listener) {
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long id;
+                try {
+                    id = future.get();
+                } catch (ExecutionException e) {
+                    listener.onAlertFailed(e.getCause());
+                    return;
+                } catch (InterruptedException e) {
+                    // impossible : le traitement est terminé
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                listener.onAlertQueued(id);
+            }
+        });
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Décide quelles positions reçues après une alerte doivent être envoyées au serveur
+ * comme mises à jour de cette alerte. L'alerte part immédiatement avec la meilleure position
+ * disponible (voire sans position) ; les positions suivantes ne sont transmises que si elles sont
+ * nettement plus précises ou si le porteur s'est déplacé au-delà de l'incertitude de la dernière
+ * position envoyée.
+ * </p>
+ * <p>
+ * L'alerte et ses mises à jour forment un épisode, identifié par l'identifiant de l'alerte. Un
+ * nouvel appui survenant moins de {@link #COALESCE_WINDOW_MS} après le précédent ne crée pas de
+ * nouvelle alerte : il est rattaché à l'épisode en cours ({@link #onRepeatedTap(long)}) et envoyé
+ * comme une mise à jour, quel que soit le nombre d'appuis de l'épisode.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class AlertRefiner {
+
+    /**
+     * Durée pendant laquelle les positions sont transmises après l'alerte.
+     */
+    public static final long REFINE_WINDOW_MS = 2 * 60 * 1000;
+    /**
+     * Intervalle minimal entre deux mises à jour.
+     */
+    public static final long MIN_UPDATE_INTERVAL_MS = 5000;
+    /**
+     * Nombre maximal de mises à jour de position par fenêtre de transmission.
+     */
+    public static final int MAX_UPDATES = 12;
+    /**
+     * Délai, compté depuis le dernier appui, pendant lequel un nouvel appui est rattaché à
+     * l'alerte en cours.
+     */
+    public static final long COALESCE_WINDOW_MS = REFINE_WINDOW_MS;
+    /**
+     * Une position est jugée plus précise si son incertitude est inférieure à cette fraction de
+     * celle de la dernière position envoyée.
+     */
+    private static final float IMPROVEMENT_RATIO = 0.7f;
+    private static final double EARTH_RADIUS_METERS = 6371000;
+
+    private long mAlertId;
+    private boolean mStarted;
+    private long mLastTapMs;
+    private int mTapCount;
+    private long mStartedAtMs;
+    private boolean mActive;
+    private int mUpdateSeq;
+    private int mLocationUpdates;
+    private long mLastSentAtMs;
+    private boolean mHasLocation;
+    private double mLatitude;
+    private double mLongitude;
+    private float mAccuracy;
+
+    /**
+     * Démarre le suivi d'une alerte qui vient d'être envoyée.
+     *
+     * @param alertId identifiant de l'alerte
+     * @param payload contenu de l'alerte envoyée
+     * @param nowMs   date courante (horloge monotone)
+     */
+    public void start(long alertId, AlertPayload payload, long nowMs) {
+        mAlertId = alertId;
+        mStarted = true;
+        mLastTapMs = nowMs;
+        mTapCount = 1;
+        mStartedAtMs = nowMs;
+        mActive = true;
+        mUpdateSeq = 0;
+        mLocationUpdates = 0;
+        mLastSentAtMs = nowMs;
+        mHasLocation = payload.hasLocation();
+        mLatitude = payload.getLatitude();
+        mLongitude = payload.getLongitude();
+        mAccuracy = payload.getAccuracy();
+    }
+
+    /**
+     * Rattache un nouvel appui à l'alerte en cours s'il survient moins de
+     * {@link #COALESCE_WINDOW_MS} après le précédent. L'appui est alors envoyé comme mise à jour
+     * de l'alerte (numéro {@link #getUpdateSeq()}) et la transmission des positions reprend pour
+     * une fenêtre complète.
+     *
+     * @param tapMs date de l'appui (horloge monotone)
+     * @return faux si l'appui doit créer une nouvelle alerte ({@link #start})
+     */
+    public boolean onRepeatedTap(long tapMs) {
+        if (!mStarted || tapMs - mLastTapMs >= COALESCE_WINDOW_MS) {
+            return false;
+        }
+        mLastTapMs = tapMs;
+        mTapCount++;
+        mUpdateSeq++;
+        mStartedAtMs = tapMs;
+        mActive = true;
+        mLocationUpdates = 0;
+        return true;
+    }
+
+    /**
+     * Arrête le suivi de l'alerte en cours.
+     */
+    public void stop() {
+        mActive = false;
+    }
+
+    /**
+     * @param nowMs date courante (horloge monotone)
+     * @return vrai si les positions reçues doivent encore être proposées
+     */
+    public boolean isActive(long nowMs) {
+        if (mActive && (nowMs - mStartedAtMs >= REFINE_WINDOW_MS
+                || mLocationUpdates >= MAX_UPDATES)) {
+            mActive = false;
+        }
+        return mActive;
+    }
+
+    /**
+     * Propose une nouvelle position. Si elle mérite d'être envoyée, elle devient la référence des
+     * positions suivantes et le numéro de mise à jour est incrémenté.
+     *
+     * @param latitude  latitude en degrés
+     * @param longitude longitude en degrés
+     * @param accuracy  précision en mètres (0 ou moins si inconnue)
+     * @param nowMs     date courante (horloge monotone)
+     * @return vrai si la position doit être envoyée comme mise à jour de l'alerte
+     */
+    public boolean offer(double latitude, double longitude, float accuracy, long nowMs) {
+        if (!isActive(nowMs)) {
+            return false;
+        }
+        boolean send;
+        if (!mHasLocation) {
+            // première position connue depuis une alerte partie sans position : sans délai
+            send = true;
+        } else if (nowMs - mLastSentAtMs < MIN_UPDATE_INTERVAL_MS) {
+            send = false;
+        } else {
+            boolean moreAccurate = accuracy > 0
+                    && (!(mAccuracy > 0) || accuracy < mAccuracy * IMPROVEMENT_RATIO);
+            double uncertainty = Math.max(Math.max(accuracy, mAccuracy), 0);
+            boolean moved = distanceMeters(mLatitude, mLongitude, latitude, longitude)
+                    > uncertainty;
+            send = moreAccurate || moved;
+        }
+        if (send) {
+            mHasLocation = true;
+            mLatitude = latitude;
+            mLongitude = longitude;
+            mAccuracy = accuracy;
+            mLastSentAtMs = nowMs;
+            mUpdateSeq++;
+            mLocationUpdates++;
+        }
+        return send;
+    }
+
+    /**
+     * @return identifiant de l'alerte suivie
+     */
+    public long getAlertId() {
+        return mAlertId;
+    }
+
+    /**
+     * @return nombre d'appuis rattachés à l'alerte en cours (1 pour l'appui initial)
+     */
+    public int getTapCount() {
+        return mTapCount;
+    }
+
+    /**
+     * @return numéro de la dernière mise à jour acceptée (0 avant la première)
+     */
+    public int getUpdateSeq() {
+        return mUpdateSeq;
+    }
+
+    /**
+     * Distance approchée (projection équirectangulaire), suffisante aux distances concernées.
+     */
+    static double distanceMeters(double latitude1, double longitude1, double latitude2,
+                                 double longitude2) {
+        double meanLatitude = Math.toRadians((latitude1 + latitude2) / 2);
+        double x = Math.toRadians(longitude2 - longitude1) * Math.cos(meanLatitude);
+        double y = Math.toRadians(latitude2 - latitude1);
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_METERS;
+    }
+}
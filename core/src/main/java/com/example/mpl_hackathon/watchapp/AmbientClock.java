@@ -0,0 +1,63 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Heure affichée en mode ambiant (HH:mm), à la minute près. Le texte est écrit
+ * dans un tableau réutilisé, sans allocation, et n'est recalculé que lorsque la minute change :
+ * la plupart des rafraîchissements du mode ambiant n'ont alors rien à redessiner.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class AmbientClock {
+
+    /**
+     * Texte le plus large possible, pour dimensionner l'affichage.
+     */
+    public static final String WIDEST_TEXT = "00:00";
+
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final char[] mText = WIDEST_TEXT.toCharArray();
+    private long mMinute = Long.MIN_VALUE;
+
+    /**
+     * Met à jour l'heure affichée.
+     *
+     * @param nowMs       date courante (ms depuis epoch)
+     * @param utcOffsetMs décalage du fuseau horaire à cette date
+     * @return vrai si le texte a changé
+     */
+    public boolean update(long nowMs, int utcOffsetMs) {
+        long minute = floorDiv(nowMs + utcOffsetMs, MINUTE_MS);
+        if (minute == mMinute) {
+            return false;
+        }
+        mMinute = minute;
+        int minuteOfDay = (int) (minute - floorDiv(minute, MINUTES_PER_DAY) * MINUTES_PER_DAY);
+        int hours = minuteOfDay / 60;
+        int minutes = minuteOfDay % 60;
+        mText[0] = (char) ('0' + hours / 10);
+        mText[1] = (char) ('0' + hours % 10);
+        mText[3] = (char) ('0' + minutes / 10);
+        mText[4] = (char) ('0' + minutes % 10);
+        return true;
+    }
+
+    /**
+     * @return texte affiché, à lire sur {@link #length()} caractères (ne pas modifier)
+     */
+    public char[] text() {
+        return mText;
+    }
+
+    public int length() {
+        return mText.length;
+    }
+
+    private static long floorDiv(long value, long divisor) {
+        long quotient = value / divisor;
+        return value % divisor < 0 ? quotient - 1 : quotient;
+    }
+}
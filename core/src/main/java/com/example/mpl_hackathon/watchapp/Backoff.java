@@ -0,0 +1,58 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.util.Random;
+
+/**
+ * <p>
+ * Description : Calcule les délais d'attente entre deux tentatives d'envoi selon une progression
+ * exponentielle bornée, avec une part aléatoire pour éviter que plusieurs montres ne réessaient
+ * en même temps.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class Backoff {
+
+    private final long mInitialDelayMs;
+    private final long mMaxDelayMs;
+    private final Random mRandom = new Random();
+    private int mAttempts;
+
+    /**
+     * @param initialDelayMs délai après le premier échec
+     * @param maxDelayMs     délai maximal
+     */
+    public Backoff(long initialDelayMs, long maxDelayMs) {
+        mInitialDelayMs = initialDelayMs;
+        mMaxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * Enregistre un échec et renvoie le délai à attendre avant la prochaine tentative.
+     *
+     * @return délai en millisecondes
+     */
+    public synchronized long nextDelayMs() {
+        long delay = mInitialDelayMs << Math.min(mAttempts, 20);
+        if (delay <= 0 || delay > mMaxDelayMs) {
+            delay = mMaxDelayMs;
+        }
+        mAttempts++;
+        // entre 50 % et 100 % du délai calculé
+        return delay / 2 + (long) (mRandom.nextDouble() * (delay / 2));
+    }
+
+    /**
+     * Réinitialise la progression après un succès.
+     */
+    public synchronized void reset() {
+        mAttempts = 0;
+    }
+
+    /**
+     * @return nombre d'échecs consécutifs
+     */
+    public synchronized int getAttempts() {
+        return mAttempts;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Format binaire compact des alertes (version 3) :
+ * <pre>
+ * version            byte
+ * flags              byte     (bit 0 : position présente)
+ * alert_id           int64    (commun à l'alerte et à ses mises à jour)
+ * update_seq         varint   (0 pour l'alerte initiale)
+ * profile_id         varint
+ * timestamp_current  varint   (ms depuis epoch)
+ * si position :
+ *   latitude         int32    (degrés x 1e7)
+ *   longitude        int32    (degrés x 1e7)
+ *   position_age     zigzag   (timestamp_current - timestamp_position, ms)
+ *   accuracy         varint   (décimètres)
+ *   source           byte     (origine de la position, voir {@link AlertPayload})
+ * drive_link         varint (longueur) + UTF-8
+ * trail              morceau de trajectoire ({@link TrajectoryCodec}), dont le point de base
+ *                    est la position de l'alerte (latitude et longitude x 1e6 arrondies,
+ *                    timestamp_position), ou 0 et timestamp_current en l'absence de position
+ * </pre>
+ * Le serveur annonce qu'il accepte ce format via l'en-tête {@link #ACCEPT_HEADER} ; à défaut,
+ * les alertes sont envoyées en JSON ({@link JsonAlertEncoder}).
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class BinaryAlertEncoder implements AlertEncoder {
+
+    /**
+     * Type de contenu HTTP du format binaire.
+     */
+    public static final String CONTENT_TYPE = "application/vnd.watchapp.alert.v3";
+    /**
+     * En-tête de réponse par lequel le serveur annonce les formats d'alerte acceptés.
+     */
+    public static final String ACCEPT_HEADER = "X-Alert-Accept";
+    /**
+     * Version du format.
+     */
+    public static final int VERSION = 3;
+
+    private static final int FLAG_LOCATION = 1;
+    private static final double FIXED_POINT_SCALE = 1e7;
+    private static final double TRAJECTORY_SCALE_RATIO =
+            FIXED_POINT_SCALE / TrajectoryCodec.FIXED_POINT_SCALE;
+
+    private final WireBuffer mBuffer = new WireBuffer(256);
+
+    @Override
+    public int encode(AlertPayload payload) {
+        WireBuffer out = mBuffer;
+        out.clear();
+        out.writeByte(VERSION);
+        out.writeByte(payload.hasLocation() ? FLAG_LOCATION : 0);
+        out.writeLong(payload.getAlertId());
+        out.writeVarint(payload.getUpdateSeq());
+        out.writeVarint(payload.getProfileId());
+        out.writeVarint(payload.getTimestampCurrent());
+        int baseLatitude = 0;
+        int baseLongitude = 0;
+        long baseTime = payload.getTimestampCurrent();
+        if (payload.hasLocation()) {
+            int latitude = toFixedPoint(payload.getLatitude());
+            int longitude = toFixedPoint(payload.getLongitude());
+            baseLatitude = toTrajectoryBase(latitude);
+            baseLongitude = toTrajectoryBase(longitude);
+            baseTime = payload.getTimestampPosition();
+            out.writeInt(latitude);
+            out.writeInt(longitude);
+            out.writeZigzag(payload.getTimestampCurrent() - baseTime);
+            out.writeVarint(toDecimeters(payload.getAccuracy()));
+            out.writeByte(payload.getLocationSource());
+        }
+        out.writeString(payload.getDriveLink());
+        TrajectoryCodec.write(out, payload, baseLatitude, baseLongitude, baseTime);
+        return out.position();
+    }
+
+    /**
+     * Décode une alerte binaire.
+     *
+     * @param data   données
+     * @param offset début de l'alerte
+     * @param length longueur de l'alerte
+     * @param out    contenu décodé (réinitialisé au préalable)
+     * @throws IllegalArgumentException si les données sont invalides ou d'une version inconnue
+     */
+    public static void decode(byte[] data, int offset, int length, AlertPayload out) {
+        WireBuffer in = WireBuffer.wrap(data, offset);
+        try {
+            int version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported alert version " + version);
+            }
+            out.reset();
+            int flags = in.readByte();
+            out.setAlertId(in.readLong());
+            out.setUpdateSeq((int) in.readVarint());
+            out.setProfileId((int) in.readVarint());
+            out.setTimestampCurrent(in.readVarint());
+            int baseLatitude = 0;
+            int baseLongitude = 0;
+            long baseTime = out.getTimestampCurrent();
+            if ((flags & FLAG_LOCATION) != 0) {
+                int latitude = in.readInt();
+                int longitude = in.readInt();
+                baseLatitude = toTrajectoryBase(latitude);
+                baseLongitude = toTrajectoryBase(longitude);
+                baseTime = out.getTimestampCurrent() - in.readZigzag();
+                float accuracy = in.readVarint() / 10f;
+                out.setLocation(latitude / FIXED_POINT_SCALE, longitude / FIXED_POINT_SCALE,
+                        baseTime, accuracy, in.readByte());
+            }
+            out.setDriveLink(in.readString());
+            TrajectoryCodec.read(in, baseLatitude, baseLongitude, baseTime, out);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated alert", e);
+        }
+        if (in.position() != offset + length) {
+            throw new IllegalArgumentException("Unexpected alert length");
+        }
+    }
+
+    private static int toFixedPoint(double degrees) {
+        return (int) Math.round(degrees * FIXED_POINT_SCALE);
+    }
+
+    /**
+     * @return coordonnée x 1e7 ramenée à l'échelle de la trajectoire, calculée de la même façon
+     * à l'encodage et au décodage
+     */
+    private static int toTrajectoryBase(int fixedPoint) {
+        return (int) Math.round(fixedPoint / TRAJECTORY_SCALE_RATIO);
+    }
+
+    private static long toDecimeters(float meters) {
+        if (!(meters > 0)) {
+            return 0;
+        }
+        return Math.round(meters * 10.0);
+    }
+
+    @Override
+    public byte[] buffer() {
+        return mBuffer.data();
+    }
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte outboxKind() {
+        return AlertOutbox.KIND_BINARY;
+    }
+}
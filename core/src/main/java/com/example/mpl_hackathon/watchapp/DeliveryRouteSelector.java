@@ -0,0 +1,112 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Choisit le chemin d'envoi d'une alerte : directement depuis la montre
+ * ({@link #ROUTE_DIRECT}) ou relayée par le téléphone appairé ({@link #ROUTE_RELAY}). Le choix
+ * se fait sur la latence estimée de chaque chemin (moyenne mobile exponentielle des envois
+ * précédents, pénalisée en cas d'échec). Les mesures trop anciennes sont ignorées.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class DeliveryRouteSelector {
+
+    /**
+     * Envoi direct au web serveur.
+     */
+    public static final int ROUTE_DIRECT = 0;
+    /**
+     * Envoi relayé par le téléphone.
+     */
+    public static final int ROUTE_RELAY = 1;
+
+    /**
+     * Poids d'une nouvelle mesure dans la moyenne mobile.
+     */
+    private static final double ALPHA = 0.3;
+    /**
+     * Latence attribuée à un échec.
+     */
+    private static final double FAILURE_PENALTY_MS = 30000;
+    /**
+     * Durée de validité d'une mesure.
+     */
+    private static final long STALE_AFTER_MS = 10 * 60 * 1000;
+    /**
+     * Latence supposée d'un chemin qui n'a jamais été mesuré.
+     */
+    private static final double UNKNOWN_LATENCY_MS = 2000;
+
+    private final double[] mEstimateMs = {Double.NaN, Double.NaN};
+    private final long[] mUpdatedAtMs = {Long.MIN_VALUE, Long.MIN_VALUE};
+    private double mLinkRttMs = Double.NaN;
+    private long mLinkUpdatedAtMs = Long.MIN_VALUE;
+
+    /**
+     * Enregistre le résultat d'un envoi.
+     *
+     * @param route     chemin utilisé
+     * @param latencyMs durée entre l'envoi et la réponse
+     * @param success   vrai si le serveur a accusé réception
+     * @param nowMs     date courante
+     */
+    public synchronized void record(int route, long latencyMs, boolean success, long nowMs) {
+        double sample = success ? latencyMs : Math.max(latencyMs, FAILURE_PENALTY_MS);
+        double previous = isFresh(mUpdatedAtMs[route], nowMs) ? mEstimateMs[route] : Double.NaN;
+        mEstimateMs[route] = Double.isNaN(previous) ? sample
+                : previous + ALPHA * (sample - previous);
+        mUpdatedAtMs[route] = nowMs;
+    }
+
+    /**
+     * Enregistre le temps d'aller-retour mesuré entre la montre et le téléphone.
+     *
+     * @param rttMs temps d'aller-retour
+     * @param nowMs date courante
+     */
+    public synchronized void recordLinkRtt(long rttMs, long nowMs) {
+        mLinkRttMs = isFresh(mLinkUpdatedAtMs, nowMs) && !Double.isNaN(mLinkRttMs)
+                ? mLinkRttMs + ALPHA * (rttMs - mLinkRttMs) : rttMs;
+        mLinkUpdatedAtMs = nowMs;
+    }
+
+    /**
+     * Renvoie la latence estimée d'un chemin.
+     *
+     * @param route chemin
+     * @param nowMs date courante
+     * @return latence estimée en millisecondes
+     */
+    public synchronized double estimate(int route, long nowMs) {
+        if (isFresh(mUpdatedAtMs[route], nowMs)) {
+            return mEstimateMs[route];
+        }
+        if (route == ROUTE_RELAY) {
+            // chemin relayé jamais mesuré : lien montre-téléphone puis envoi par le téléphone,
+            // dont la latence est supposée égale à celle d'un envoi direct
+            double link = isFresh(mLinkUpdatedAtMs, nowMs) ? mLinkRttMs : UNKNOWN_LATENCY_MS;
+            return link + estimate(ROUTE_DIRECT, nowMs);
+        }
+        return UNKNOWN_LATENCY_MS;
+    }
+
+    /**
+     * Choisit le chemin d'envoi le plus rapide.
+     *
+     * @param relayAvailable vrai si un téléphone est connecté
+     * @param nowMs          date courante
+     * @return {@link #ROUTE_DIRECT} ou {@link #ROUTE_RELAY}
+     */
+    public synchronized int select(boolean relayAvailable, long nowMs) {
+        if (!relayAvailable) {
+            return ROUTE_DIRECT;
+        }
+        return estimate(ROUTE_RELAY, nowMs) < estimate(ROUTE_DIRECT, nowMs) ? ROUTE_RELAY
+                : ROUTE_DIRECT;
+    }
+
+    private static boolean isFresh(long updatedAtMs, long nowMs) {
+        return updatedAtMs != Long.MIN_VALUE && nowMs - updatedAtMs <= STALE_AFTER_MS;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Description : Adresses du web service des alertes et état de santé de chacune. Les alertes
+ * partent vers le premier point d'accès en bonne santé, dans l'ordre de la configuration. Après
+ * {@link #FAILURES_BEFORE_COOLDOWN} échecs consécutifs, un point d'accès est écarté pendant un
+ * délai qui double à chaque nouvel échec ; le premier succès le rétablit.
+ * </p>
+ * <p>
+ * Une requête sans réponse au bout de {@link #hedgeDelayMs()} est doublée vers un autre point
+ * d'accès ({@link #alternate(int, long)}) : le délai est le 95e centile des dernières durées
+ * de réponse, si bien qu'environ une requête sur vingt seulement est doublée. Le
+ * serveur reconnaît le doublon grâce à la clé d'idempotence de l'alerte (identifiant et numéro
+ * de mise à jour, voir {@link AlertPayload}).
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class EndpointPool {
+
+    /**
+     * Nombre d'échecs consécutifs avant d'écarter un point d'accès.
+     */
+    public static final int FAILURES_BEFORE_COOLDOWN = 2;
+    /**
+     * Délai avant de doubler une requête tant que trop peu de durées ont été mesurées.
+     */
+    public static final long DEFAULT_HEDGE_DELAY_MS = 1000;
+    /**
+     * Nombre minimal de durées mesurées pour estimer le délai avant de doubler une requête.
+     */
+    static final int MIN_SAMPLES = 8;
+
+    private static final double HEDGE_QUANTILE = 0.95;
+    /**
+     * Nombre de durées récentes conservées pour l'estimation du centile.
+     */
+    private static final int WINDOW = 64;
+    private static final long COOLDOWN_INITIAL_MS = 5000;
+    private static final long COOLDOWN_MAX_MS = 5 * 60 * 1000;
+
+    private final String[] mUrls;
+    private final int[] mFailures;
+    private final long[] mDownUntilMs;
+    private final long mMinHedgeDelayMs;
+    private final long mMaxHedgeDelayMs;
+    private final long[] mLatenciesMs = new long[WINDOW];
+    private final long[] mSortedMs = new long[WINDOW];
+    private int mLatencyCount;
+    private int mNextLatency;
+
+    /**
+     * @param urls            adresses du web service, la première étant la principale
+     * @param minHedgeDelayMs délai minimal avant de doubler une requête
+     * @param maxHedgeDelayMs délai maximal avant de doubler une requête
+     */
+    public EndpointPool(String[] urls, long minHedgeDelayMs, long maxHedgeDelayMs) {
+        if (urls.length == 0) {
+            throw new IllegalArgumentException("No endpoint");
+        }
+        mUrls = urls.clone();
+        mFailures = new int[urls.length];
+        mDownUntilMs = new long[urls.length];
+        mMinHedgeDelayMs = minHedgeDelayMs;
+        mMaxHedgeDelayMs = maxHedgeDelayMs;
+    }
+
+    public int size() {
+        return mUrls.length;
+    }
+
+    /**
+     * @param endpoint point d'accès
+     * @return adresse du web service
+     */
+    public String getUrl(int endpoint) {
+        return mUrls[endpoint];
+    }
+
+    /**
+     * @param endpoint point d'accès
+     * @param nowMs    date courante
+     * @return faux si le point d'accès est écarté après des échecs répétés
+     */
+    public synchronized boolean isHealthy(int endpoint, long nowMs) {
+        return nowMs >= mDownUntilMs[endpoint];
+    }
+
+    /**
+     * Choisit le point d'accès d'une nouvelle requête : le premier en bonne santé, ou, si tous
+     * sont écartés, celui qui sera rétabli le plus tôt.
+     *
+     * @param nowMs date courante
+     * @return point d'accès
+     */
+    public synchronized int primary(long nowMs) {
+        int earliest = 0;
+        for (int i = 0; i < mUrls.length; i++) {
+            if (nowMs >= mDownUntilMs[i]) {
+                return i;
+            }
+            if (mDownUntilMs[i] < mDownUntilMs[earliest]) {
+                earliest = i;
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * Choisit le point d'accès d'une requête doublée ou d'un secours.
+     *
+     * @param exclude point d'accès déjà utilisé
+     * @param nowMs   date courante
+     * @return premier autre point d'accès en bonne santé, -1 si aucun
+     */
+    public synchronized int alternate(int exclude, long nowMs) {
+        for (int i = 0; i < mUrls.length; i++) {
+            if (i != exclude && nowMs >= mDownUntilMs[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return délai sans réponse après lequel une requête est doublée
+     */
+    public synchronized long hedgeDelayMs() {
+        long delay = DEFAULT_HEDGE_DELAY_MS;
+        if (mLatencyCount >= MIN_SAMPLES) {
+            System.arraycopy(mLatenciesMs, 0, mSortedMs, 0, mLatencyCount);
+            Arrays.sort(mSortedMs, 0, mLatencyCount);
+            int rank = (int) Math.ceil(HEDGE_QUANTILE * mLatencyCount);
+            delay = mSortedMs[rank - 1];
+        }
+        return Math.min(mMaxHedgeDelayMs, Math.max(mMinHedgeDelayMs, delay));
+    }
+
+    /**
+     * Enregistre le résultat d'une requête.
+     *
+     * @param endpoint  point d'accès utilisé
+     * @param latencyMs durée de la requête
+     * @param success   vrai si le serveur a répondu, même par une erreur 4xx (les erreurs 5xx
+     *                  et les requêtes sans réponse sont des échecs)
+     * @param nowMs     date courante
+     */
+    public synchronized void record(int endpoint, long latencyMs, boolean success, long nowMs) {
+        if (success) {
+            mFailures[endpoint] = 0;
+            mDownUntilMs[endpoint] = 0;
+            mLatenciesMs[mNextLatency] = latencyMs;
+            mNextLatency = (mNextLatency + 1) % WINDOW;
+            mLatencyCount = Math.min(mLatencyCount + 1, WINDOW);
+            return;
+        }
+        int failures = ++mFailures[endpoint];
+        if (failures >= FAILURES_BEFORE_COOLDOWN) {
+            int doublings = Math.min(failures - FAILURES_BEFORE_COOLDOWN, 20);
+            long cooldown = Math.min(COOLDOWN_INITIAL_MS << doublings, COOLDOWN_MAX_MS);
+            mDownUntilMs[endpoint] = nowMs + cooldown;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.util.ArrayDeque;
+
+/**
+ * <p>
+ * Description : Envoi au fil de l'eau de l'enregistrement joint à une alerte, par morceaux
+ * reprenables. Chaque morceau est envoyé avec sa position dans l'enregistrement
+ * ({@link #OFFSET_HEADER}) ; le serveur répond avec le nombre d'octets reçus, qui indique d'où
+ * reprendre après une requête perdue ou refusée ({@link #HTTP_CONFLICT}). Le dernier morceau
+ * porte l'en-tête {@link #COMPLETE_HEADER}.
+ * </p>
+ * <p>
+ * La mémoire est bornée : les morceaux sont écrits dans un nombre fixe de tampons réutilisés,
+ * rendus dès que le serveur en a accusé réception. Si l'envoi prend trop de retard, le
+ * producteur ne reçoit plus de tampon et abandonne les morceaux suivants
+ * ({@link #getDroppedChunks()}) plutôt que de garder tout l'enregistrement en mémoire. Le
+ * producteur (thread de capture) et l'envoi (thread du réseau) peuvent appeler les méthodes
+ * depuis des threads différents ; un seul morceau est envoyé à la fois.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class EvidenceUpload {
+
+    /**
+     * En-tête de requête : position du morceau ; en-tête de réponse : octets reçus par le
+     * serveur.
+     */
+    public static final String OFFSET_HEADER = "X-Evidence-Offset";
+    /**
+     * En-tête de requête : dernier morceau ; en-tête de réponse : enregistrement complet.
+     */
+    public static final String COMPLETE_HEADER = "X-Evidence-Complete";
+    /**
+     * Code HTTP d'un morceau refusé car il ne suit pas les octets déjà reçus.
+     */
+    public static final int HTTP_CONFLICT = 409;
+
+    /**
+     * Morceau de l'enregistrement.
+     */
+    public static final class Chunk {
+        private final byte[] mData;
+        private int mLength;
+        private long mOffset;
+        private boolean mLast;
+
+        Chunk(int capacity) {
+            mData = new byte[capacity];
+        }
+
+        /**
+         * @return tampon du morceau, à lire sur {@link #length()} octets
+         */
+        public byte[] data() {
+            return mData;
+        }
+
+        public int length() {
+            return mLength;
+        }
+
+        /**
+         * @return position du morceau dans l'enregistrement
+         */
+        public long offset() {
+            return mOffset;
+        }
+
+        public boolean isLast() {
+            return mLast;
+        }
+    }
+
+    private final long mAlertId;
+    private final long mStartedAtMs;
+    private final int mChunkCapacity;
+    /**
+     * Tampons libres.
+     */
+    private final ArrayDeque<Chunk> mFree = new ArrayDeque<>();
+    /**
+     * Morceaux produits, non acquittés, dans l'ordre de l'enregistrement.
+     */
+    private final ArrayDeque<Chunk> mPending = new ArrayDeque<>();
+    private long mProducedBytes;
+    private long mAcknowledgedBytes;
+    private boolean mInFlight;
+    private boolean mProducerDone;
+    private boolean mComplete;
+    private boolean mAbandoned;
+    private int mFailures;
+    private int mDroppedChunks;
+    private int mBufferedBytes;
+    private int mPeakBufferedBytes;
+    private long mFirstChunkAckMs = -1;
+
+    /**
+     * @param alertId       identifiant de l'alerte
+     * @param startedAtMs   début de l'enregistrement (horloge monotone)
+     * @param maxChunks     nombre maximal de morceaux en mémoire
+     * @param chunkCapacity taille maximale d'un morceau
+     */
+    public EvidenceUpload(long alertId, long startedAtMs, int maxChunks, int chunkCapacity) {
+        if (maxChunks < 1 || chunkCapacity < 1) {
+            throw new IllegalArgumentException("Invalid evidence buffer size");
+        }
+        mAlertId = alertId;
+        mStartedAtMs = startedAtMs;
+        mChunkCapacity = chunkCapacity;
+        for (int i = 0; i < maxChunks; i++) {
+            mFree.add(new Chunk(chunkCapacity));
+        }
+    }
+
+    public long getAlertId() {
+        return mAlertId;
+    }
+
+    /**
+     * Fournit un tampon libre au producteur.
+     *
+     * @return tampon de {@code chunkCapacity} octets, null si tous les tampons attendent leur
+     * envoi : le morceau doit alors être abandonné ({@link #drop()})
+     */
+    public synchronized Chunk obtain() {
+        return mAbandoned ? null : mFree.poll();
+    }
+
+    /**
+     * Confie un morceau rempli à l'envoi.
+     *
+     * @param chunk  tampon obtenu par {@link #obtain()}
+     * @param length taille du morceau
+     * @param last   vrai pour le dernier morceau de l'enregistrement
+     */
+    public synchronized void submit(Chunk chunk, int length, boolean last) {
+        if (length > mChunkCapacity || mProducerDone) {
+            throw new IllegalStateException("Invalid evidence chunk");
+        }
+        chunk.mLength = length;
+        chunk.mOffset = mProducedBytes;
+        chunk.mLast = last;
+        mProducedBytes += length;
+        mProducerDone = last;
+        if (mAbandoned) {
+            mFree.add(chunk);
+            return;
+        }
+        mPending.add(chunk);
+        mBufferedBytes += length;
+        mPeakBufferedBytes = Math.max(mPeakBufferedBytes, mBufferedBytes);
+        notifyAll();
+    }
+
+    /**
+     * Signale un morceau abandonné faute de tampon libre.
+     */
+    public synchronized void drop() {
+        mDroppedChunks++;
+    }
+
+    /**
+     * Termine l'enregistrement sans nouveau morceau : un morceau vide marqué comme dernier
+     * sera envoyé si le dernier morceau envoyé ne l'était pas.
+     */
+    public synchronized void finish() {
+        if (mProducerDone) {
+            return;
+        }
+        mProducerDone = true;
+        Chunk last = mPending.peekLast();
+        if (last != null && (!mInFlight || mPending.size() > 1)) {
+            last.mLast = true;
+        } else if (!mAbandoned) {
+            // morceau vide : uniquement pour marquer la fin de l'enregistrement
+            Chunk end = mFree.poll();
+            if (end == null) {
+                end = new Chunk(0);
+            }
+            end.mLength = 0;
+            end.mOffset = mProducedBytes;
+            end.mLast = true;
+            mPending.add(end);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Renvoie le prochain morceau à envoyer, et le marque en cours d'envoi.
+     *
+     * @return morceau non encore acquitté, null si un morceau est déjà en cours d'envoi ou si
+     * aucun n'est prêt
+     */
+    public synchronized Chunk next() {
+        if (mInFlight || mAbandoned || mPending.isEmpty()) {
+            return null;
+        }
+        mInFlight = true;
+        return mPending.peekFirst();
+    }
+
+    /**
+     * Attend le prochain morceau à envoyer.
+     *
+     * @param timeoutMs attente maximale
+     * @return morceau à envoyer, null si aucun n'est prêt dans le délai ou si l'envoi est
+     * terminé
+     * @throws InterruptedException si l'attente est interrompue
+     */
+    public synchronized Chunk awaitNext(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMs * 1000000L;
+        Chunk chunk;
+        while ((chunk = next()) == null && !isDone()) {
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0 || mInFlight) {
+                return null;
+            }
+            wait(Math.max(1, remainingNanos / 1000000L));
+        }
+        return chunk;
+    }
+
+    /**
+     * Prend en compte la réponse du serveur au morceau en cours d'envoi, ou un refus indiquant
+     * d'où reprendre : les morceaux entièrement reçus sont rendus au producteur.
+     *
+     * @param receivedBytes octets de l'enregistrement reçus par le serveur
+     * @param complete      vrai si le serveur a reçu tout l'enregistrement
+     * @param nowMs         date de la réponse (horloge monotone)
+     */
+    public synchronized void onAcknowledged(long receivedBytes, boolean complete, long nowMs) {
+        mInFlight = false;
+        mFailures = 0;
+        if (receivedBytes > mAcknowledgedBytes) {
+            mAcknowledgedBytes = Math.min(receivedBytes, mProducedBytes);
+            if (mFirstChunkAckMs < 0) {
+                mFirstChunkAckMs = nowMs;
+            }
+        }
+        while (!mPending.isEmpty()) {
+            Chunk chunk = mPending.peekFirst();
+            boolean received = chunk.mLength > 0
+                    ? chunk.mOffset + chunk.mLength <= mAcknowledgedBytes
+                    : complete && chunk.mLast;
+            if (!received) {
+                break;
+            }
+            mPending.pollFirst();
+            mBufferedBytes -= chunk.mLength;
+            if (chunk.mData.length == mChunkCapacity) {
+                mFree.add(chunk);
+            }
+        }
+        mComplete = complete && mProducerDone && mPending.isEmpty();
+        notifyAll();
+    }
+
+    /**
+     * Prend en compte l'échec de l'envoi du morceau en cours : il sera renvoyé.
+     *
+     * @param maxFailures nombre d'échecs consécutifs au-delà duquel l'envoi est abandonné
+     * @return faux si l'envoi est abandonné
+     */
+    public synchronized boolean onFailed(int maxFailures) {
+        mInFlight = false;
+        if (++mFailures >= maxFailures) {
+            abandon();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Abandonne l'envoi : les tampons sont libérés et le producteur n'en reçoit plus.
+     */
+    public synchronized void abandon() {
+        mAbandoned = true;
+        mPending.clear();
+        mBufferedBytes = 0;
+        notifyAll();
+    }
+
+    /**
+     * @return vrai si l'enregistrement a été entièrement reçu ou si l'envoi est abandonné
+     */
+    public synchronized boolean isDone() {
+        return mComplete || mAbandoned;
+    }
+
+    public synchronized boolean isComplete() {
+        return mComplete;
+    }
+
+    public synchronized boolean isAbandoned() {
+        return mAbandoned;
+    }
+
+    public synchronized long getProducedBytes() {
+        return mProducedBytes;
+    }
+
+    public synchronized long getAcknowledgedBytes() {
+        return mAcknowledgedBytes;
+    }
+
+    public synchronized int getDroppedChunks() {
+        return mDroppedChunks;
+    }
+
+    /**
+     * @return nombre maximal d'octets de l'enregistrement en attente d'envoi à un même instant
+     */
+    public synchronized int getPeakBufferedBytes() {
+        return mPeakBufferedBytes;
+    }
+
+    /**
+     * @return délai entre le début de l'enregistrement et le premier accusé de réception du
+     * serveur (ms), -1 si aucun
+     */
+    public synchronized long getTimeToFirstChunkMs() {
+        return mFirstChunkAckMs < 0 ? -1 : mFirstChunkAckMs - mStartedAtMs;
+    }
+}
@@ -0,0 +1,325 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Détection de chute à partir des échantillons de l'accéléromètre et du
+ * gyroscope, indépendante d'Android. Le traitement est incrémental, sans allocation ni verrou :
+ * chaque échantillon met à jour une fenêtre glissante de la norme de l'accélération et une
+ * machine à états :
+ * <ol>
+ * <li>chute libre : norme inférieure à {@link #FREE_FALL_G} g pendant au moins
+ * {@link #FREE_FALL_MIN_NANOS} ;</li>
+ * <li>choc : norme supérieure à {@link #IMPACT_G} g peu après une chute libre, ou supérieure à
+ * {@link #HARD_IMPACT_G} g accompagnée d'une rotation du poignet ;</li>
+ * <li>immobilité après le choc : une fois {@link #SETTLE_NANOS} écoulées, norme stable et proche
+ * de la gravité, sans rotation, pendant {@link #STILLNESS_NANOS}. Le porteur qui bouge à nouveau
+ * dans les {@link #STILLNESS_TIMEOUT_NANOS} qui suivent le choc annule la détection.</li>
+ * </ol>
+ * Les dates sont celles des échantillons (ns) : le résultat ne dépend pas du moment où ils sont
+ * reçus, ce qui permet de traiter des lots d'échantillons et de rejouer des enregistrements
+ * ({@link SensorTrace}). Toutes les méthodes doivent être appelées depuis le même thread.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class FallDetector {
+
+    /**
+     * Etapes de la détection, signalées sur le thread de traitement des échantillons.
+     */
+    public interface Listener {
+        /**
+         * Un choc a été détecté, l'immobilité du porteur est en cours de vérification.
+         *
+         * @param impactNanos date du choc
+         */
+        void onImpact(long impactNanos);
+
+        /**
+         * Le porteur a bougé après le choc : ce n'est pas une chute.
+         *
+         * @param impactNanos date du choc
+         */
+        void onImpactDismissed(long impactNanos);
+
+        /**
+         * Chute confirmée.
+         *
+         * @param impactNanos    date du choc
+         * @param confirmedNanos date de l'échantillon ayant confirmé la chute
+         */
+        void onFallDetected(long impactNanos, long confirmedNanos);
+    }
+
+    public static final float GRAVITY = 9.80665f;
+
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_IMPACT = 1;
+    public static final int STATE_COOLDOWN = 2;
+
+    static final float FREE_FALL_G = 0.6f;
+    static final long FREE_FALL_MIN_NANOS = 80 * 1000000L;
+    /**
+     * Délai maximal entre la fin de la chute libre et le choc.
+     */
+    static final long IMPACT_WINDOW_NANOS = 1000 * 1000000L;
+    static final float IMPACT_G = 2.5f;
+    static final float HARD_IMPACT_G = 3.5f;
+    /**
+     * Vitesse de rotation (rad/s) accompagnant un choc sans chute libre préalable.
+     */
+    static final float IMPACT_ROTATION = 3f;
+    /**
+     * Ecart maximal entre le choc et la rotation qui l'accompagne.
+     */
+    static final long ROTATION_WINDOW_NANOS = 500 * 1000000L;
+    /**
+     * Durée ignorée après le choc (rebonds, chocs secondaires).
+     */
+    static final long SETTLE_NANOS = 1000 * 1000000L;
+    static final long STILLNESS_NANOS = 2000 * 1000000L;
+    static final long STILLNESS_TIMEOUT_NANOS = 8000 * 1000000L;
+    /**
+     * Ecart-type maximal de la norme (g) pour un porteur immobile.
+     */
+    static final float STILL_STD_G = 0.08f;
+    /**
+     * Ecart maximal de la norme moyenne à la gravité (g) pour un porteur immobile.
+     */
+    static final float STILL_MEAN_TOLERANCE_G = 0.2f;
+    /**
+     * Vitesse de rotation (rad/s) au-delà de laquelle le porteur n'est pas immobile.
+     */
+    static final float STILL_ROTATION = 0.6f;
+    /**
+     * Nombre minimal d'échantillons dans la fenêtre pour juger de l'immobilité.
+     */
+    static final int STILL_MIN_SAMPLES = 10;
+    /**
+     * Durée après une chute confirmée pendant laquelle aucune autre n'est signalée.
+     */
+    static final long COOLDOWN_NANOS = 30 * 1000000000L;
+    /**
+     * Nombre d'échantillons de la fenêtre glissante, suffisant pour {@link #STILLNESS_NANOS} à
+     * 200 Hz.
+     */
+    static final int WINDOW_CAPACITY = 512;
+
+    private final Listener mListener;
+    private final boolean mUseGyroscope;
+
+    // fenêtre glissante de la norme de l'accélération (m/s²)
+    private final long[] mWindowTimes = new long[WINDOW_CAPACITY];
+    private final float[] mWindowValues = new float[WINDOW_CAPACITY];
+    private int mWindowStart;
+    private int mWindowSize;
+    private double mWindowSum;
+    private double mWindowSumSquares;
+
+    private int mState = STATE_IDLE;
+    private long mFreeFallStartNanos = -1;
+    private long mFreeFallEndNanos = -1;
+    private long mStrongRotationNanos = Long.MIN_VALUE / 2;
+    private long mMovementNanos = Long.MIN_VALUE / 2;
+    private long mImpactNanos;
+    private boolean mImpactAfterFreeFall;
+    private boolean mImpactRotated;
+    private float mImpactPeak;
+    private long mCooldownUntilNanos;
+    private long mSampleCount;
+
+    /**
+     * @param listener     destinataire des étapes de la détection
+     * @param useGyroscope faux si la montre n'a pas de gyroscope : un choc violent suffit alors
+     *                     sans chute libre préalable
+     */
+    public FallDetector(Listener listener, boolean useGyroscope) {
+        mListener = listener;
+        mUseGyroscope = useGyroscope;
+    }
+
+    /**
+     * Traite un échantillon de l'accéléromètre.
+     *
+     * @param timestampNanos date de l'échantillon
+     * @param x              accélération selon x (m/s²)
+     * @param y              accélération selon y (m/s²)
+     * @param z              accélération selon z (m/s²)
+     */
+    public void onAccelerometer(long timestampNanos, float x, float y, float z) {
+        mSampleCount++;
+        float magnitude = (float) Math.sqrt(x * x + y * y + z * z);
+        addToWindow(timestampNanos, magnitude);
+        float g = magnitude / GRAVITY;
+
+        switch (mState) {
+            case STATE_IMPACT:
+                onImpactSample(timestampNanos, g);
+                return;
+            case STATE_COOLDOWN:
+                if (timestampNanos < mCooldownUntilNanos) {
+                    return;
+                }
+                mState = STATE_IDLE;
+                break;
+            default:
+                break;
+        }
+
+        if (g < FREE_FALL_G) {
+            if (mFreeFallStartNanos < 0) {
+                mFreeFallStartNanos = timestampNanos;
+            }
+            return;
+        }
+        if (mFreeFallStartNanos >= 0) {
+            if (timestampNanos - mFreeFallStartNanos >= FREE_FALL_MIN_NANOS) {
+                mFreeFallEndNanos = timestampNanos;
+            }
+            mFreeFallStartNanos = -1;
+        }
+        if (g < IMPACT_G) {
+            return;
+        }
+        boolean afterFreeFall = mFreeFallEndNanos >= 0
+                && timestampNanos - mFreeFallEndNanos <= IMPACT_WINDOW_NANOS;
+        if (!afterFreeFall && g < HARD_IMPACT_G) {
+            return;
+        }
+        mState = STATE_IMPACT;
+        mImpactNanos = timestampNanos;
+        mImpactPeak = g;
+        mImpactAfterFreeFall = afterFreeFall;
+        mImpactRotated = timestampNanos - mStrongRotationNanos <= ROTATION_WINDOW_NANOS;
+        mFreeFallEndNanos = -1;
+        mListener.onImpact(timestampNanos);
+    }
+
+    /**
+     * Traite un échantillon du gyroscope.
+     *
+     * @param timestampNanos date de l'échantillon
+     * @param x              vitesse de rotation autour de x (rad/s)
+     * @param y              vitesse de rotation autour de y (rad/s)
+     * @param z              vitesse de rotation autour de z (rad/s)
+     */
+    public void onGyroscope(long timestampNanos, float x, float y, float z) {
+        mSampleCount++;
+        float squared = x * x + y * y + z * z;
+        if (squared >= STILL_ROTATION * STILL_ROTATION) {
+            mMovementNanos = timestampNanos;
+        }
+        if (squared >= IMPACT_ROTATION * IMPACT_ROTATION) {
+            mStrongRotationNanos = timestampNanos;
+            // la rotation peut être reçue juste après le choc
+            if (mState == STATE_IMPACT
+                    && timestampNanos - mImpactNanos <= ROTATION_WINDOW_NANOS) {
+                mImpactRotated = true;
+            }
+        }
+    }
+
+    private void onImpactSample(long timestampNanos, float g) {
+        long sinceImpact = timestampNanos - mImpactNanos;
+        if (sinceImpact < SETTLE_NANOS) {
+            mImpactPeak = Math.max(mImpactPeak, g);
+            return;
+        }
+        if (sinceImpact > STILLNESS_TIMEOUT_NANOS) {
+            mState = STATE_IDLE;
+            mListener.onImpactDismissed(mImpactNanos);
+            return;
+        }
+        if (sinceImpact < SETTLE_NANOS + STILLNESS_NANOS || !isStill(timestampNanos)) {
+            return;
+        }
+        if (!mImpactAfterFreeFall && mUseGyroscope && !mImpactRotated) {
+            // choc violent sans chute libre ni rotation : main posée brutalement, porteur qui
+            // s'assoit lourdement...
+            mState = STATE_IDLE;
+            mListener.onImpactDismissed(mImpactNanos);
+            return;
+        }
+        mState = STATE_COOLDOWN;
+        mCooldownUntilNanos = timestampNanos + COOLDOWN_NANOS;
+        mListener.onFallDetected(mImpactNanos, timestampNanos);
+    }
+
+    /**
+     * @return vrai si la fenêtre glissante décrit un porteur immobile
+     */
+    private boolean isStill(long timestampNanos) {
+        if (mWindowSize < STILL_MIN_SAMPLES) {
+            return false;
+        }
+        if (mUseGyroscope && timestampNanos - mMovementNanos < STILLNESS_NANOS) {
+            return false;
+        }
+        double mean = mWindowSum / mWindowSize;
+        double variance = Math.max(0, mWindowSumSquares / mWindowSize - mean * mean);
+        float tolerance = STILL_STD_G * GRAVITY;
+        return variance <= tolerance * tolerance
+                && Math.abs(mean - GRAVITY) <= STILL_MEAN_TOLERANCE_G * GRAVITY;
+    }
+
+    /**
+     * Ajoute un échantillon à la fenêtre glissante et retire ceux qui en sont sortis.
+     */
+    private void addToWindow(long timestampNanos, float value) {
+        while (mWindowSize > 0 && (mWindowSize == WINDOW_CAPACITY
+                || timestampNanos - mWindowTimes[mWindowStart] > STILLNESS_NANOS)) {
+            float removed = mWindowValues[mWindowStart];
+            mWindowSum -= removed;
+            mWindowSumSquares -= removed * removed;
+            mWindowStart = (mWindowStart + 1) % WINDOW_CAPACITY;
+            mWindowSize--;
+        }
+        if (mWindowSize == 0) {
+            // évite l'accumulation des erreurs d'arrondi
+            mWindowSum = 0;
+            mWindowSumSquares = 0;
+        }
+        int index = (mWindowStart + mWindowSize) % WINDOW_CAPACITY;
+        mWindowTimes[index] = timestampNanos;
+        mWindowValues[index] = value;
+        mWindowSum += value;
+        mWindowSumSquares += value * value;
+        mWindowSize++;
+    }
+
+    /**
+     * Oublie les échantillons reçus, par exemple après une interruption des capteurs.
+     */
+    public void reset() {
+        mWindowStart = 0;
+        mWindowSize = 0;
+        mWindowSum = 0;
+        mWindowSumSquares = 0;
+        mState = STATE_IDLE;
+        mFreeFallStartNanos = -1;
+        mFreeFallEndNanos = -1;
+        mStrongRotationNanos = Long.MIN_VALUE / 2;
+        mMovementNanos = Long.MIN_VALUE / 2;
+    }
+
+    /**
+     * @return étape de la détection ({@link #STATE_IDLE}...)
+     */
+    public int getState() {
+        return mState;
+    }
+
+    /**
+     * @return plus forte accélération (g) mesurée lors du dernier choc
+     */
+    public float getImpactPeak() {
+        return mImpactPeak;
+    }
+
+    /**
+     * @return nombre d'échantillons traités
+     */
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * Description : Tampon circulaire de capacité fixe conservant les dernières positions reçues
+ * dans des tableaux de types primitifs (aucun objet {@code Location} n'est retenu).
+ * </p>
+ * <p>
+ * Un seul thread écrit ({@link #add(long, double, double, float)}, sans verrou ni allocation),
+ * les lectures ({@link #visit(Visitor, int)}) peuvent être faites depuis n'importe quel thread,
+ * sans verrou : une entrée écrasée pendant la lecture est ignorée. Chaque emplacement porte le
+ * numéro de la position qu'il contient, effacé avant l'écriture et rétabli après ; le lecteur
+ * le vérifie avant et après la lecture des champs. Tous ces accès sont volatils (un
+ * {@link AtomicLongArray}), donc ordonnés entre eux sur tous les processeurs : une position
+ * transmise au visiteur n'est jamais un mélange de deux écritures.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class FixRingBuffer {
+
+    /**
+     * Reçoit les positions lues dans le tampon, de la plus récente à la plus ancienne.
+     */
+    public interface Visitor {
+        /**
+         * @param timeMs         date de la position (ms depuis epoch)
+         * @param latitude       latitude en degrés
+         * @param longitude      longitude en degrés
+         * @param accuracyMeters précision en mètres
+         */
+        void visit(long timeMs, double latitude, double longitude, float accuracyMeters);
+    }
+
+    /**
+     * Champs d'un emplacement dans {@link #mData} : numéro de la position plus un (0 pendant
+     * l'écriture), date, puis latitude, longitude et précision sous forme de bits.
+     */
+    private static final int FIELD_STAMP = 0;
+    private static final int FIELD_TIME = 1;
+    private static final int FIELD_LATITUDE = 2;
+    private static final int FIELD_LONGITUDE = 3;
+    private static final int FIELD_ACCURACY = 4;
+    private static final int FIELDS = 5;
+
+    private final int mCapacity;
+    /**
+     * Nombre d'emplacements : au moins un de plus que la capacité, afin que l'emplacement en
+     * cours d'écriture ne soit pas lu tant que le lecteur suit l'écrivain.
+     */
+    private final int mSlots;
+    private final int mMask;
+    private final AtomicLongArray mData;
+    /**
+     * Nombre total de positions écrites. L'écriture volatile publie l'entrée correspondante.
+     */
+    private volatile long mSequence;
+
+    /**
+     * @param capacity nombre de positions conservées
+     */
+    public FixRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        mCapacity = capacity;
+        mSlots = Integer.highestOneBit(capacity) << 1;
+        mMask = mSlots - 1;
+        mData = new AtomicLongArray(mSlots * FIELDS);
+    }
+
+    /**
+     * Ajoute une position. Doit toujours être appelée depuis le même thread.
+     *
+     * @param timeMs         date de la position (ms depuis epoch)
+     * @param latitude       latitude en degrés
+     * @param longitude      longitude en degrés
+     * @param accuracyMeters précision en mètres
+     */
+    public void add(long timeMs, double latitude, double longitude, float accuracyMeters) {
+        long sequence = mSequence;
+        int slot = (int) (sequence & mMask) * FIELDS;
+        mData.set(slot + FIELD_STAMP, 0);
+        mData.set(slot + FIELD_TIME, timeMs);
+        mData.set(slot + FIELD_LATITUDE, Double.doubleToRawLongBits(latitude));
+        mData.set(slot + FIELD_LONGITUDE, Double.doubleToRawLongBits(longitude));
+        mData.set(slot + FIELD_ACCURACY, Float.floatToRawIntBits(accuracyMeters));
+        mData.set(slot + FIELD_STAMP, sequence + 1);
+        mSequence = sequence + 1;
+    }
+
+    /**
+     * Parcourt les positions conservées, de la plus récente à la plus ancienne, directement dans
+     * le tampon (aucune copie).
+     *
+     * @param visitor reçoit les positions
+     * @param max     nombre maximal de positions parcourues
+     * @return nombre de positions transmises au visiteur
+     */
+    public int visit(Visitor visitor, int max) {
+        long end = mSequence;
+        long start = Math.max(0, end - Math.min(max, mCapacity));
+        int count = 0;
+        for (long sequence = end - 1; sequence >= start; sequence--) {
+            int slot = (int) (sequence & mMask) * FIELDS;
+            if (mData.get(slot + FIELD_STAMP) != sequence + 1) {
+                // entrée déjà écrasée : les plus anciennes le sont aussi
+                break;
+            }
+            long time = mData.get(slot + FIELD_TIME);
+            double latitude = Double.longBitsToDouble(mData.get(slot + FIELD_LATITUDE));
+            double longitude = Double.longBitsToDouble(mData.get(slot + FIELD_LONGITUDE));
+            float accuracy = Float.intBitsToFloat((int) mData.get(slot + FIELD_ACCURACY));
+            // l'entrée a été écrasée pendant la lecture : les plus anciennes le seront aussi
+            if (mData.get(slot + FIELD_STAMP) != sequence + 1) {
+                break;
+            }
+            visitor.visit(time, latitude, longitude, accuracy);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return nombre de positions conservées
+     */
+    public int size() {
+        return (int) Math.min(mSequence, mCapacity);
+    }
+
+    /**
+     * @return capacité du tampon
+     */
+    public int capacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return nombre total de positions ajoutées depuis la création du tampon
+     */
+    public long totalCount() {
+        return mSequence;
+    }
+}
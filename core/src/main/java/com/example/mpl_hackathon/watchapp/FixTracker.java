@@ -0,0 +1,189 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Suivi des positions reçues, indépendant d'Android : trace des dernières
+ * positions, mesures de l'échantillonnage, estimation du mouvement du porteur transmise à la
+ * politique d'échantillonnage et position courante utilisée par les alertes. Les positions sont
+ * reçues sous forme de valeurs primitives (aucun objet {@code Location} n'est retenu).
+ * </p>
+ * <p>
+ * Les positions du fournisseur passent par un {@link LocationFilter} : la trace, la position
+ * courante et la précision transmise à la politique d'échantillonnage sont celles de
+ * l'estimation filtrée, et les positions aberrantes sont écartées.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class FixTracker {
+
+    private final FixRingBuffer mTrail;
+    private final SamplingContext mSamplingContext;
+    private final SamplingStats mSamplingStats;
+    private final LocationFilter mFilter = new LocationFilter();
+
+    private boolean mHasFix;
+    private double mLatitude;
+    private double mLongitude;
+    private float mAccuracy;
+    private long mElapsedRealtimeNanos;
+    private int mSource = AlertPayload.SOURCE_NONE;
+
+    /**
+     * @param trailCapacity   nombre de positions conservées pour la trace
+     * @param samplingContext état transmis à la politique d'échantillonnage
+     * @param samplingStats   mesures de l'échantillonnage
+     */
+    public FixTracker(int trailCapacity, SamplingContext samplingContext,
+                      SamplingStats samplingStats) {
+        mTrail = new FixRingBuffer(trailCapacity);
+        mSamplingContext = samplingContext;
+        mSamplingStats = samplingStats;
+    }
+
+    /**
+     * Enregistre une nouvelle position fournie par les mises à jour.
+     *
+     * @param timeMs               date de la position (ms depuis epoch)
+     * @param elapsedRealtimeNanos date de la position (horloge monotone, ns)
+     * @param latitude             latitude en degrés
+     * @param longitude            longitude en degrés
+     * @param accuracy             précision en mètres, NaN si inconnue
+     * @param speed                vitesse fournie par le GPS en m/s, NaN si inconnue
+     * @return faux si la position a été rejetée par le filtre
+     */
+    public boolean onFix(long timeMs, long elapsedRealtimeNanos, double latitude,
+                         double longitude, float accuracy, float speed) {
+        AlertMetrics.get().increment(MetricsSnapshot.COUNTER_LOCATION_FIXES);
+        if (!mFilter.update(elapsedRealtimeNanos, latitude, longitude, accuracy)) {
+            AlertMetrics.get().increment(MetricsSnapshot.COUNTER_LOCATION_FIXES_REJECTED);
+            return false;
+        }
+        latitude = mFilter.getLatitude();
+        longitude = mFilter.getLongitude();
+        accuracy = mFilter.getAccuracy();
+        mTrail.add(timeMs, latitude, longitude, accuracy);
+        mSamplingStats.onFix();
+        if (Float.isNaN(speed)) {
+            speed = mFilter.getSpeed();
+        }
+        mSamplingContext.setMotion(SamplingContext.motionFromSpeed(speed));
+        mSamplingContext.setAccuracyMeters(accuracy);
+        setCurrent(elapsedRealtimeNanos, latitude, longitude, accuracy, AlertPayload.SOURCE_FUSED);
+        return true;
+    }
+
+    /**
+     * Définit la position courante sans l'ajouter à la trace (dernière position connue).
+     *
+     * @param elapsedRealtimeNanos date de la position (horloge monotone, ns)
+     * @param latitude             latitude en degrés
+     * @param longitude            longitude en degrés
+     * @param accuracy             précision en mètres, NaN si inconnue
+     * @param source               origine de la position ({@link AlertPayload#SOURCE_FUSED}...)
+     */
+    public void setCurrent(long elapsedRealtimeNanos, double latitude, double longitude,
+                           float accuracy, int source) {
+        mHasFix = true;
+        mElapsedRealtimeNanos = elapsedRealtimeNanos;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mAccuracy = accuracy;
+        mSource = source;
+    }
+
+    /**
+     * @return vrai si une position courante est connue
+     */
+    public boolean hasFix() {
+        return mHasFix;
+    }
+
+    /**
+     * @return latitude de la position courante
+     */
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    /**
+     * @return longitude de la position courante
+     */
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * @return précision de la position courante, NaN si inconnue ou sans position
+     */
+    public float getAccuracy() {
+        return mHasFix ? mAccuracy : Float.NaN;
+    }
+
+    /**
+     * @param nowElapsedRealtimeNanos date courante (horloge monotone, ns)
+     * @return âge de la position courante (ms), -1 sans position
+     */
+    public long getAgeMs(long nowElapsedRealtimeNanos) {
+        return mHasFix ? (nowElapsedRealtimeNanos - mElapsedRealtimeNanos) / 1000000 : -1;
+    }
+
+    /**
+     * Renseigne la position d'une alerte avec la position courante. Une position issue du
+     * filtre est extrapolée à la date de l'alerte.
+     *
+     * @param payload                 contenu de l'alerte
+     * @param nowElapsedRealtimeNanos date de l'alerte (horloge monotone, ns)
+     * @param nowMs                   date de l'alerte (ms depuis epoch)
+     * @return vrai si une position courante est connue
+     */
+    public boolean fillLocation(AlertPayload payload, long nowElapsedRealtimeNanos, long nowMs) {
+        if (!mHasFix) {
+            return false;
+        }
+        if (mSource != AlertPayload.SOURCE_FUSED
+                || !mFilter.extrapolate(nowElapsedRealtimeNanos)) {
+            fillLocation(payload, mLatitude, mLongitude, mAccuracy, mElapsedRealtimeNanos,
+                    mSource, nowElapsedRealtimeNanos, nowMs);
+            return true;
+        }
+        // l'âge mesuré reste celui de la dernière position reçue
+        AlertMetrics.get().record(MetricsSnapshot.HISTOGRAM_FIX_AGE,
+                Math.max(0, (nowElapsedRealtimeNanos - mElapsedRealtimeNanos) / 1000000));
+        long ageMs = Math.max(0,
+                (nowElapsedRealtimeNanos - mFilter.getExtrapolatedTimeNanos()) / 1000000);
+        payload.setLocation(mFilter.getExtrapolatedLatitude(),
+                mFilter.getExtrapolatedLongitude(), nowMs - ageMs,
+                mFilter.getExtrapolatedAccuracy(), mSource);
+        return true;
+    }
+
+    /**
+     * Renseigne la position d'une alerte et mesure son âge. L'âge est calculé sur l'horloge
+     * monotone, insensible aux réglages de l'heure.
+     *
+     * @param payload                 contenu de l'alerte
+     * @param latitude                latitude en degrés
+     * @param longitude               longitude en degrés
+     * @param accuracy                précision en mètres, NaN si inconnue
+     * @param elapsedRealtimeNanos    date de la position (horloge monotone, ns)
+     * @param source                  origine de la position
+     * @param nowElapsedRealtimeNanos date courante (horloge monotone, ns)
+     * @param nowMs                   date courante (ms depuis epoch)
+     */
+    public static void fillLocation(AlertPayload payload, double latitude, double longitude,
+                                    float accuracy, long elapsedRealtimeNanos, int source,
+                                    long nowElapsedRealtimeNanos, long nowMs) {
+        long ageMs = Math.max(0, (nowElapsedRealtimeNanos - elapsedRealtimeNanos) / 1000000);
+        AlertMetrics.get().record(MetricsSnapshot.HISTOGRAM_FIX_AGE, ageMs);
+        payload.setLocation(latitude, longitude, nowMs - ageMs,
+                Float.isNaN(accuracy) ? 0 : accuracy, source);
+    }
+
+    /**
+     * @return dernières positions reçues
+     */
+    public FixRingBuffer getTrail() {
+        return mTrail;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Description : Format JSON des alertes, accepté par toutes les versions du serveur. Les champs
+ * reprennent ceux du web service {@code new-alerte}, complétés par l'identifiant du profil
+ * ({@code profile_id}) qui permet au serveur d'associer les alertes binaires au porteur, et par
+ * l'identifiant de l'alerte ({@code alert_id}, {@code update_seq}) qui lui permet de fusionner
+ * les mises à jour de position d'une même alerte.
+ * </p>
+ * <p>
+ * Les champs du profil changent rarement : ils sont rendus une fois en UTF-8 dans un modèle
+ * reconstruit seulement quand le profil change, et recopiés tels quels en tête de chaque
+ * alerte. Les nombres sont écrits sans allocation, les coordonnées en virgule fixe avec la
+ * précision du format binaire (1e-7 degré pour la position, 1e-6 pour la trajectoire).
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class JsonAlertEncoder implements AlertEncoder {
+
+    /**
+     * Type de contenu HTTP du format JSON.
+     */
+    public static final String CONTENT_TYPE = "application/json; charset=utf-8";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /**
+     * Nombre de décimales des coordonnées de la position et de la trajectoire, et de la
+     * précision.
+     */
+    private static final int LOCATION_DECIMALS = 7;
+    private static final int TRAIL_DECIMALS = 6;
+    private static final int ACCURACY_DECIMALS = 1;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000,
+            10000000};
+
+    private final StringBuilder mText = new StringBuilder(512);
+    private final WireBuffer mBuffer = new WireBuffer(512);
+    /**
+     * Début pré-rendu des alertes du profil {@link #mTemplateProfile}, jusqu'à l'identifiant du
+     * profil inclus.
+     */
+    private byte[] mTemplate;
+    private UserProfile mTemplateProfile;
+    private int mTemplateProfileId;
+
+    @Override
+    public int encode(AlertPayload payload) {
+        UserProfile profile = payload.getProfile();
+        if (mTemplate == null || profile != mTemplateProfile
+                || payload.getProfileId() != mTemplateProfileId) {
+            renderTemplate(profile, payload.getProfileId());
+        }
+        StringBuilder json = mText;
+        json.setLength(0);
+        json.append(",\"alert_id\":\"");
+        appendHex(json, payload.getAlertId());
+        json.append("\",\"update_seq\":").append(payload.getUpdateSeq());
+        json.append(",\"timestamp_current\":").append(payload.getTimestampCurrent());
+        if (payload.hasLocation()) {
+            json.append(",\"latitude\":");
+            appendFixed(json, payload.getLatitude(), LOCATION_DECIMALS);
+            json.append(",\"longitude\":");
+            appendFixed(json, payload.getLongitude(), LOCATION_DECIMALS);
+            json.append(",\"timestamp_position\":").append(payload.getTimestampPosition());
+            json.append(",\"accuracy\":");
+            appendFixed(json, payload.getAccuracy(), ACCURACY_DECIMALS);
+            json.append(",\"position_age_ms\":").append(payload.getPositionAgeMs());
+        }
+        json.append(",\"position_source\":\"").append(payload.getLocationSourceName())
+                .append('"');
+        json.append(',');
+        appendString(json, "drive_link", payload.getDriveLink());
+        json.append(",\"trail_start\":").append(payload.getTrailStartIndex());
+        json.append(",\"trail\":[");
+        for (int i = 0; i < payload.getTrailSize(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"latitude\":");
+            appendFixed(json, payload.getTrailLatitude(i), TRAIL_DECIMALS);
+            json.append(",\"longitude\":");
+            appendFixed(json, payload.getTrailLongitude(i), TRAIL_DECIMALS);
+            json.append(",\"timestamp_position\":").append(payload.getTrailTime(i));
+            json.append(",\"accuracy\":");
+            appendFixed(json, payload.getTrailAccuracy(i), ACCURACY_DECIMALS);
+            json.append('}');
+        }
+        json.append("]}");
+        mBuffer.clear();
+        mBuffer.writeBytes(mTemplate, 0, mTemplate.length);
+        mBuffer.writeUtf8(json);
+        return mBuffer.position();
+    }
+
+    /**
+     * Rend le début des alertes d'un profil : ses champs, s'il est connu, et son identifiant.
+     *
+     * @param profile   profil, null si seul son identifiant est connu
+     * @param profileId identifiant du profil
+     */
+    private void renderTemplate(UserProfile profile, int profileId) {
+        StringBuilder json = mText;
+        json.setLength(0);
+        json.append('{');
+        if (profile != null) {
+            appendString(json, "lastname", profile.getLastname()).append(',');
+            appendString(json, "firstname", profile.getFirstname()).append(',');
+            appendString(json, "phone_number", profile.getPhoneNumber()).append(',');
+        }
+        json.append("\"profile_id\":").append(profileId);
+        mBuffer.clear();
+        mBuffer.writeUtf8(json);
+        mTemplate = Arrays.copyOf(mBuffer.data(), mBuffer.position());
+        mTemplateProfile = profile;
+        mTemplateProfileId = profileId;
+    }
+
+    /**
+     * Ecrit un entier en hexadécimal, comme {@link Long#toHexString(long)}.
+     */
+    private static void appendHex(StringBuilder json, long value) {
+        int shift = 60;
+        while (shift > 0 && (value >>> shift) == 0) {
+            shift -= 4;
+        }
+        for (; shift >= 0; shift -= 4) {
+            json.append(HEX[(int) (value >>> shift) & 0xf]);
+        }
+    }
+
+    /**
+     * Ecrit un nombre en virgule fixe ; une valeur non finie est écrite 0.
+     *
+     * @param decimals nombre de décimales
+     */
+    private static void appendFixed(StringBuilder json, double value, int decimals) {
+        long unit = POWERS_OF_TEN[decimals];
+        long scaled = Double.isNaN(value) || Double.isInfinite(value) ? 0
+                : Math.round(value * unit);
+        if (scaled < 0) {
+            json.append('-');
+            scaled = -scaled;
+        }
+        json.append(scaled / unit).append('.');
+        long fraction = scaled % unit;
+        for (long digit = unit / 10; digit > 0; digit /= 10) {
+            json.append((char) ('0' + fraction / digit % 10));
+        }
+    }
+
+    private static StringBuilder appendString(StringBuilder json, String key, String value) {
+        json.append('"').append(key).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xf]);
+                    } else {
+                        json.append(c);
+                    }
+                    break;
+            }
+        }
+        return json.append('"');
+    }
+
+    @Override
+    public byte[] buffer() {
+        return mBuffer.data();
+    }
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte outboxKind() {
+        return AlertOutbox.KIND_JSON;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * Description : Histogramme de durées à précision relative constante (à la manière de
+ * HdrHistogram) : les valeurs inférieures à {@link #SUB_BUCKETS} sont comptées exactement, les
+ * suivantes dans {@link #SUB_BUCKETS} intervalles par puissance de deux, soit une erreur relative
+ * inférieure à 6,25 %. L'enregistrement est sans verrou et sans allocation.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    /**
+     * Nombre d'intervalles par puissance de deux.
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Exposant de la plus grande puissance de deux mesurée (2^24 ms, environ 4 h 40) ; les
+     * valeurs supérieures sont comptées dans le dernier intervalle.
+     */
+    private static final int MAX_EXPONENT = 24;
+    /**
+     * Nombre total d'intervalles.
+     */
+    public static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    /**
+     * Plus grande valeur distinguée.
+     */
+    public static final long MAX_VALUE = (2L << MAX_EXPONENT) - 1;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Enregistre une durée.
+     *
+     * @param value durée (les valeurs négatives sont comptées comme nulles)
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mCounts.incrementAndGet(indexOf(value));
+        mSum.addAndGet(value);
+        long max = mMax.get();
+        while (value > max && !mMax.compareAndSet(max, value)) {
+            max = mMax.get();
+        }
+    }
+
+    /**
+     * Copie les effectifs de chaque intervalle.
+     *
+     * @param out tableau d'au moins {@link #BUCKET_COUNT} éléments
+     */
+    public void copyCounts(long[] out) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            out[i] = mCounts.get(i);
+        }
+    }
+
+    /**
+     * @return somme des durées enregistrées
+     */
+    public long getSum() {
+        return mSum.get();
+    }
+
+    /**
+     * @return plus grande durée enregistrée
+     */
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * @return nombre de durées enregistrées
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += mCounts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param quantile quantile entre 0 et 1
+     * @return borne haute de l'intervalle contenant le quantile (au plus la durée maximale), 0
+     * si aucune durée
+     */
+    public long getPercentile(double quantile) {
+        long[] counts = new long[BUCKET_COUNT];
+        copyCounts(counts);
+        return percentile(counts, getMax(), quantile);
+    }
+
+    /**
+     * @param counts   effectifs de chaque intervalle
+     * @param max      plus grande durée enregistrée
+     * @param quantile quantile entre 0 et 1
+     * @return borne haute de l'intervalle contenant le quantile (au plus la durée maximale), 0
+     * si aucune durée
+     */
+    static long percentile(long[] counts, long max, double quantile) {
+        long count = 0;
+        for (long bucket : counts) {
+            count += bucket;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueAt(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @param value durée positive ou nulle
+     * @return intervalle contenant la durée
+     */
+    public static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param index intervalle
+     * @return plus petite durée de l'intervalle
+     */
+    public static long lowestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @param index intervalle
+     * @return plus grande durée de l'intervalle
+     */
+    public static long highestValueAt(int index) {
+        return index + 1 < BUCKET_COUNT ? lowestValueAt(index + 1) - 1 : MAX_VALUE;
+    }
+}
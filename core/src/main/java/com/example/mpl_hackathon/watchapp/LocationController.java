@@ -0,0 +1,262 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Pilotage de la géolocalisation, indépendant d'Android : réévalue la politique
+ * d'échantillonnage, transmet ses décisions au {@link LocationSource}, suit les positions reçues
+ * ({@link FixTracker}) et renseigne la position des alertes. Toutes les dates sont lues sur
+ * l'horloge de la source : sur la montre celle du système, en rejeu une horloge virtuelle.
+ * Doit être utilisé depuis le thread qui reçoit les positions.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class LocationController implements LocationSource.Listener {
+
+    /**
+     * Durée pendant laquelle la fréquence maximale de mise à jour est demandée après une alerte.
+     */
+    public static final long ALERT_BOOST_WINDOW_MS = 2 * 60 * 1000;
+    /**
+     * Nombre de positions conservées pour la trace jointe aux alertes.
+     */
+    public static final int TRAIL_CAPACITY = 32;
+
+    /**
+     * Prévenu des réévaluations de l'échantillonnage et des positions acceptées.
+     */
+    public interface Listener {
+
+        /**
+         * Appelé avant chaque réévaluation de la politique : occasion de mettre à jour l'état
+         * de la montre (batterie).
+         *
+         * @param context état transmis à la politique
+         * @param nowMs   date courante (horloge de la source)
+         */
+        void onSampling(SamplingContext context, long nowMs);
+
+        /**
+         * Appelé lorsque les paramètres de mise à jour changent.
+         *
+         * @param decision nouveaux paramètres
+         */
+        void onSamplingChanged(SamplingDecision decision);
+
+        /**
+         * Appelé pour chaque position acceptée par le filtre, après la mise à jour de la
+         * position courante.
+         *
+         * @param timeMs               date de la position (ms depuis epoch)
+         * @param elapsedRealtimeNanos date de la position (horloge de la source, ns)
+         * @param speed                vitesse fournie par la source en m/s, NaN si inconnue
+         */
+        void onFix(long timeMs, long elapsedRealtimeNanos, float speed);
+    }
+
+    private final LocationSource mSource;
+    private final Listener mListener;
+    private final SamplingContext mSamplingContext = new SamplingContext();
+    private final SamplingStats mSamplingStats;
+    private final FixTracker mFixTracker;
+    private SamplingPolicy mSamplingPolicy = new AdaptiveSamplingPolicy();
+    private SamplingDecision mSamplingDecision;
+    private boolean mStarted;
+    private boolean mProviderAvailable = true;
+    private int mRejectedCount;
+
+    /**
+     * Crée un contrôleur arrêté ; les mises à jour démarrent en arrière-plan
+     * ({@link #setForeground(boolean)}).
+     *
+     * @param source   fournisseur des positions
+     * @param listener prévenu des positions acceptées, null si aucun
+     */
+    public LocationController(LocationSource source, Listener listener) {
+        mSource = source;
+        mListener = listener;
+        long now = source.elapsedRealtimeMs();
+        mSamplingStats = new SamplingStats(now);
+        mFixTracker = new FixTracker(TRAIL_CAPACITY, mSamplingContext, mSamplingStats);
+        mSamplingContext.setForeground(false);
+        mSamplingContext.setNowMs(now);
+        mSamplingDecision = mSamplingPolicy.decide(mSamplingContext);
+    }
+
+    /**
+     * Demande les mises à jour de la position avec les paramètres courants.
+     */
+    public void start() {
+        mStarted = true;
+        mSource.requestUpdates(mSamplingDecision, this);
+    }
+
+    /**
+     * Arrête les mises à jour de la position ; la position courante est conservée.
+     */
+    public void stop() {
+        if (!mStarted) {
+            return;
+        }
+        mStarted = false;
+        mSource.removeUpdates();
+    }
+
+    public boolean isStarted() {
+        return mStarted;
+    }
+
+    /**
+     * Remplace la politique d'échantillonnage de la position.
+     *
+     * @param policy nouvelle politique
+     */
+    public void setSamplingPolicy(SamplingPolicy policy) {
+        mSamplingPolicy = policy;
+        updateSampling();
+    }
+
+    /**
+     * Indique si l'écran d'alerte est au premier plan. Au passage au premier plan, les
+     * positions regroupées en attente sont livrées sans attendre.
+     *
+     * @param foreground vrai si l'écran d'alerte est affiché
+     */
+    public void setForeground(boolean foreground) {
+        if (mSamplingContext.isForeground() == foreground) {
+            return;
+        }
+        mSamplingContext.setForeground(foreground);
+        if (foreground && mStarted) {
+            mSource.flush();
+        }
+        updateSampling();
+    }
+
+    /**
+     * Signale le déclenchement d'une alerte : la position est mise à jour à la fréquence maximale
+     * pendant {@link #ALERT_BOOST_WINDOW_MS}.
+     */
+    public void onAlertDetected() {
+        long now = mSource.elapsedRealtimeMs();
+        mSamplingStats.onAlert(mFixTracker.getAccuracy(), mFixTracker.getAgeMs(now * 1000000L));
+        mSamplingContext.setAlertBoostUntilMs(now + ALERT_BOOST_WINDOW_MS);
+        updateSampling();
+    }
+
+    /**
+     * Réévalue la politique d'échantillonnage et transmet les nouveaux paramètres à la source
+     * s'ils ont changé.
+     */
+    private void updateSampling() {
+        long now = mSource.elapsedRealtimeMs();
+        mSamplingContext.setNowMs(now);
+        if (mListener != null) {
+            mListener.onSampling(mSamplingContext, now);
+        }
+        SamplingDecision decision = mSamplingPolicy.decide(mSamplingContext);
+        if (decision.equals(mSamplingDecision)) {
+            return;
+        }
+        mSamplingDecision = decision;
+        if (mListener != null) {
+            mListener.onSamplingChanged(decision);
+        }
+        if (mStarted) {
+            mSource.requestUpdates(decision, this);
+        }
+    }
+
+    /**
+     * Renseigne la position d'une alerte avec la position courante extrapolée à la date de
+     * l'alerte. En arrière-plan, les positions regroupées en attente sont d'abord livrées : la
+     * dernière peut avoir jusqu'à un intervalle, au lieu d'un lot entier (cinq minutes). Une
+     * source qui les livre plus tard ({@link LocationSource#flush()}) les transmet comme les
+     * positions suivantes, en mises à jour de l'alerte.
+     *
+     * @param payload        contenu de l'alerte
+     * @param alertElapsedMs date de l'alerte (horloge de la source)
+     * @return vrai si une position courante est connue
+     */
+    public boolean captureLocation(AlertPayload payload, long alertElapsedMs) {
+        if (mStarted && !mSamplingContext.isForeground()) {
+            mSource.flush();
+        }
+        long nowMs = mSource.currentTimeMs() - (mSource.elapsedRealtimeMs() - alertElapsedMs);
+        return mFixTracker.fillLocation(payload, alertElapsedMs * 1000000L, nowMs);
+    }
+
+    /**
+     * Définit la position courante sans l'ajouter à la trace, si aucune n'est connue
+     * (dernière position connue du fournisseur au démarrage).
+     *
+     * @param elapsedRealtimeNanos date de la position (horloge de la source, ns)
+     * @param latitude             latitude en degrés
+     * @param longitude            longitude en degrés
+     * @param accuracy             précision en mètres, NaN si inconnue
+     * @return vrai si la position a été retenue
+     */
+    public boolean setLastKnown(long elapsedRealtimeNanos, double latitude, double longitude,
+                                float accuracy) {
+        if (mFixTracker.hasFix()) {
+            return false;
+        }
+        mFixTracker.setCurrent(elapsedRealtimeNanos, latitude, longitude, accuracy,
+                AlertPayload.SOURCE_LAST_KNOWN);
+        return true;
+    }
+
+    @Override
+    public void onFix(long timeMs, long elapsedRealtimeNanos, double latitude, double longitude,
+                      float accuracy, float speed) {
+        if (!mFixTracker.onFix(timeMs, elapsedRealtimeNanos, latitude, longitude, accuracy,
+                speed)) {
+            mRejectedCount++;
+            return;
+        }
+        updateSampling();
+        if (mListener != null) {
+            mListener.onFix(timeMs, elapsedRealtimeNanos, speed);
+        }
+    }
+
+    @Override
+    public void onAvailabilityChanged(boolean available) {
+        mProviderAvailable = available;
+    }
+
+    /**
+     * @return vrai sauf si le fournisseur a signalé qu'il ne peut plus produire de position
+     */
+    public boolean isProviderAvailable() {
+        return mProviderAvailable;
+    }
+
+    /**
+     * @return nombre de positions rejetées par le filtre
+     */
+    public int getRejectedCount() {
+        return mRejectedCount;
+    }
+
+    /**
+     * @return suivi des positions : position courante filtrée et trace
+     */
+    public FixTracker getFixTracker() {
+        return mFixTracker;
+    }
+
+    /**
+     * @return mesures de l'échantillonnage
+     */
+    public SamplingStats getSamplingStats() {
+        return mSamplingStats;
+    }
+
+    /**
+     * @return paramètres de mise à jour courants
+     */
+    public SamplingDecision getSamplingDecision() {
+        return mSamplingDecision;
+    }
+}
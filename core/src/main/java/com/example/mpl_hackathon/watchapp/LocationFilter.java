@@ -0,0 +1,302 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Filtre de Kalman à vitesse constante appliqué aux positions reçues. L'état
+ * (position et vitesse) est exprimé en mètres dans un repère local centré sur une position de
+ * référence. La précision étant la même sur les deux axes, les axes est et nord sont filtrés
+ * indépendamment avec une covariance commune 2x2 : le filtrage ne coûte que quelques
+ * multiplications et n'alloue aucun objet.
+ * </p>
+ * <p>
+ * Une position incompatible avec l'estimation (écart normalisé au-delà de
+ * {@link #OUTLIER_GATE}) est rejetée ; après {@link #MAX_CONSECUTIVE_REJECTIONS} rejets
+ * consécutifs, le filtre considère qu'il a divergé (position réellement très différente) et
+ * repart de la dernière position reçue. L'estimation peut être extrapolée à une date donnée,
+ * par exemple celle d'une alerte.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class LocationFilter {
+
+    /**
+     * Rapport entre la précision Android (rayon contenant la position réelle avec une
+     * probabilité de 68 %) et l'écart-type sur chaque axe.
+     */
+    static final double ACCURACY_PER_SIGMA = 1.5;
+    /**
+     * Précision (m) supposée pour une position qui n'en fournit pas.
+     */
+    static final float DEFAULT_ACCURACY_METERS = 30f;
+    /**
+     * Densité spectrale (m²/s³) des accélérations du porteur, bruit blanc continu du modèle à
+     * vitesse constante (ordre de grandeur d'un piéton).
+     */
+    static final double ACCELERATION_NOISE = 0.5;
+    /**
+     * Ecart-type initial (m/s) de la vitesse.
+     */
+    static final double INITIAL_SPEED_SIGMA = 5.0;
+    /**
+     * Seuil de rejet sur le carré de l'écart normalisé (khi-deux à 2 degrés de liberté, 99,9 %).
+     */
+    static final double OUTLIER_GATE = 13.8;
+    static final int MAX_CONSECUTIVE_REJECTIONS = 3;
+    /**
+     * Intervalle au-delà duquel l'estimation n'est plus utile : le filtre repart de la position
+     * reçue.
+     */
+    static final long MAX_GAP_NANOS = 10 * 60 * 1000000000L;
+    /**
+     * Durée maximale d'extrapolation avec la vitesse estimée.
+     */
+    static final long MAX_EXTRAPOLATION_NANOS = 30 * 1000000000L;
+    /**
+     * Distance (m) à la référence au-delà de laquelle le repère local est recentré.
+     */
+    private static final double MAX_LOCAL_DISTANCE = 10000;
+    private static final double METERS_PER_DEGREE = 111320;
+
+    private boolean mInitialized;
+    private int mUpdatesSinceReset;
+    private int mConsecutiveRejections;
+    private long mTimeNanos;
+
+    // repère local
+    private double mReferenceLatitude;
+    private double mReferenceLongitude;
+    private double mMetersPerDegreeLongitude;
+
+    // état : position (m) et vitesse (m/s) sur chaque axe
+    private double mEast;
+    private double mNorth;
+    private double mVelocityEast;
+    private double mVelocityNorth;
+    // covariance commune aux deux axes
+    private double mP00;
+    private double mP01;
+    private double mP11;
+
+    // dernière extrapolation
+    private double mExtrapolatedLatitude;
+    private double mExtrapolatedLongitude;
+    private float mExtrapolatedAccuracy;
+    private long mExtrapolatedTimeNanos;
+
+    private long mAcceptedCount;
+    private long mRejectedCount;
+
+    /**
+     * Intègre une nouvelle position.
+     *
+     * @param elapsedRealtimeNanos date de la position (horloge monotone, ns)
+     * @param latitude             latitude en degrés
+     * @param longitude            longitude en degrés
+     * @param accuracy             précision en mètres, NaN si inconnue
+     * @return vrai si la position a été prise en compte, faux si elle a été rejetée
+     */
+    public boolean update(long elapsedRealtimeNanos, double latitude, double longitude,
+                          float accuracy) {
+        if (Float.isNaN(accuracy) || accuracy <= 0) {
+            accuracy = DEFAULT_ACCURACY_METERS;
+        }
+        double sigma = accuracy / ACCURACY_PER_SIGMA;
+        double r = sigma * sigma;
+        if (!mInitialized || elapsedRealtimeNanos - mTimeNanos > MAX_GAP_NANOS) {
+            reset(elapsedRealtimeNanos, latitude, longitude, r);
+            return true;
+        }
+        long elapsedNanos = elapsedRealtimeNanos - mTimeNanos;
+        if (elapsedNanos < 0) {
+            // position plus ancienne que l'estimation
+            mRejectedCount++;
+            return false;
+        }
+
+        double dt = elapsedNanos / 1e9;
+        double p00 = predictP00(dt);
+        double p01 = predictP01(dt);
+        double p11 = predictP11(dt);
+        double east = mEast + mVelocityEast * dt;
+        double north = mNorth + mVelocityNorth * dt;
+
+        double innovationEast = (longitude - mReferenceLongitude) * mMetersPerDegreeLongitude
+                - east;
+        double innovationNorth = (latitude - mReferenceLatitude) * METERS_PER_DEGREE - north;
+        double s = p00 + r;
+        double distance = (innovationEast * innovationEast + innovationNorth * innovationNorth)
+                / s;
+        if (distance > OUTLIER_GATE) {
+            if (++mConsecutiveRejections >= MAX_CONSECUTIVE_REJECTIONS) {
+                reset(elapsedRealtimeNanos, latitude, longitude, r);
+                return true;
+            }
+            mRejectedCount++;
+            return false;
+        }
+
+        double k0 = p00 / s;
+        double k1 = p01 / s;
+        mEast = east + k0 * innovationEast;
+        mNorth = north + k0 * innovationNorth;
+        mVelocityEast += k1 * innovationEast;
+        mVelocityNorth += k1 * innovationNorth;
+        mP00 = (1 - k0) * p00;
+        mP01 = (1 - k0) * p01;
+        mP11 = p11 - k1 * p01;
+        mTimeNanos = elapsedRealtimeNanos;
+        mConsecutiveRejections = 0;
+        mUpdatesSinceReset++;
+        mAcceptedCount++;
+        if (Math.abs(mEast) > MAX_LOCAL_DISTANCE || Math.abs(mNorth) > MAX_LOCAL_DISTANCE) {
+            recenter();
+        }
+        return true;
+    }
+
+    private double predictP00(double dt) {
+        return mP00 + 2 * dt * mP01 + dt * dt * mP11 + ACCELERATION_NOISE * dt * dt * dt / 3;
+    }
+
+    private double predictP01(double dt) {
+        return mP01 + dt * mP11 + ACCELERATION_NOISE * dt * dt / 2;
+    }
+
+    private double predictP11(double dt) {
+        return mP11 + ACCELERATION_NOISE * dt;
+    }
+
+    /**
+     * Repart d'une position, vitesse inconnue.
+     */
+    private void reset(long elapsedRealtimeNanos, double latitude, double longitude,
+                       double r) {
+        mInitialized = true;
+        mTimeNanos = elapsedRealtimeNanos;
+        setReference(latitude, longitude);
+        mEast = 0;
+        mNorth = 0;
+        mVelocityEast = 0;
+        mVelocityNorth = 0;
+        mP00 = r;
+        mP01 = 0;
+        mP11 = INITIAL_SPEED_SIGMA * INITIAL_SPEED_SIGMA;
+        mConsecutiveRejections = 0;
+        mUpdatesSinceReset = 1;
+        mAcceptedCount++;
+    }
+
+    /**
+     * Recentre le repère local sur la position estimée.
+     */
+    private void recenter() {
+        setReference(getLatitude(), getLongitude());
+        mEast = 0;
+        mNorth = 0;
+    }
+
+    private void setReference(double latitude, double longitude) {
+        mReferenceLatitude = latitude;
+        mReferenceLongitude = longitude;
+        mMetersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    }
+
+    /**
+     * Extrapole l'estimation à une date donnée, sans modifier le filtre. La vitesse n'est
+     * appliquée que sur {@link #MAX_EXTRAPOLATION_NANOS} ; l'incertitude croît avec toute la
+     * durée écoulée. Le résultat est lu avec {@link #getExtrapolatedLatitude()}...
+     *
+     * @param elapsedRealtimeNanos date visée (horloge monotone, ns)
+     * @return faux si aucune position n'a encore été reçue
+     */
+    public boolean extrapolate(long elapsedRealtimeNanos) {
+        if (!mInitialized) {
+            return false;
+        }
+        long elapsedNanos = Math.max(0, elapsedRealtimeNanos - mTimeNanos);
+        long movingNanos = Math.min(elapsedNanos, MAX_EXTRAPOLATION_NANOS);
+        double moving = mUpdatesSinceReset > 1 ? movingNanos / 1e9 : 0;
+        double east = mEast + mVelocityEast * moving;
+        double north = mNorth + mVelocityNorth * moving;
+        mExtrapolatedLatitude = mReferenceLatitude + north / METERS_PER_DEGREE;
+        mExtrapolatedLongitude = mReferenceLongitude + east / mMetersPerDegreeLongitude;
+        mExtrapolatedAccuracy = (float) (Math.sqrt(predictP00(elapsedNanos / 1e9))
+                * ACCURACY_PER_SIGMA);
+        mExtrapolatedTimeNanos = mTimeNanos + (moving > 0 ? movingNanos : 0);
+        return true;
+    }
+
+    /**
+     * @return vrai si au moins une position a été reçue
+     */
+    public boolean isInitialized() {
+        return mInitialized;
+    }
+
+    /**
+     * @return date de la dernière position prise en compte (horloge monotone, ns)
+     */
+    public long getTimeNanos() {
+        return mTimeNanos;
+    }
+
+    public double getLatitude() {
+        return mReferenceLatitude + mNorth / METERS_PER_DEGREE;
+    }
+
+    public double getLongitude() {
+        return mReferenceLongitude + mEast / mMetersPerDegreeLongitude;
+    }
+
+    /**
+     * @return précision (m) de l'estimation, dans la même convention que la précision Android
+     */
+    public float getAccuracy() {
+        return (float) (Math.sqrt(mP00) * ACCURACY_PER_SIGMA);
+    }
+
+    /**
+     * @return vitesse estimée (m/s), NaN tant que deux positions n'ont pas été reçues
+     */
+    public float getSpeed() {
+        if (mUpdatesSinceReset < 2) {
+            return Float.NaN;
+        }
+        return (float) Math.sqrt(mVelocityEast * mVelocityEast
+                + mVelocityNorth * mVelocityNorth);
+    }
+
+    public double getExtrapolatedLatitude() {
+        return mExtrapolatedLatitude;
+    }
+
+    public double getExtrapolatedLongitude() {
+        return mExtrapolatedLongitude;
+    }
+
+    public float getExtrapolatedAccuracy() {
+        return mExtrapolatedAccuracy;
+    }
+
+    /**
+     * @return date à laquelle correspond la position extrapolée (horloge monotone, ns)
+     */
+    public long getExtrapolatedTimeNanos() {
+        return mExtrapolatedTimeNanos;
+    }
+
+    /**
+     * @return nombre de positions prises en compte
+     */
+    public long getAcceptedCount() {
+        return mAcceptedCount;
+    }
+
+    /**
+     * @return nombre de positions rejetées
+     */
+    public long getRejectedCount() {
+        return mRejectedCount;
+    }
+}
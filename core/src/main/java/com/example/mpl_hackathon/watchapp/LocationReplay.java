@@ -0,0 +1,212 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * <p>
+ * Description : Rejoue un {@link LocationTrace} à travers le {@link LocationController}, sous
+ * l'horloge virtuelle d'un {@link TraceLocationSource}, en déclenchant des alertes à des dates
+ * données. Mesure le coût de l'échantillonnage (positions demandées, réveils) et l'erreur de la
+ * position jointe aux alertes, comparée à la position réelle interpolée dans l'enregistrement.
+ * Le rejeu est déterministe : deux exécutions donnent les mêmes résultats.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class LocationReplay {
+
+    /**
+     * Date (ms depuis epoch) correspondant au début de l'enregistrement.
+     */
+    private static final long EPOCH_OFFSET_MS = 1500000000000L;
+    private static final double METERS_PER_DEGREE = 111320;
+
+    private final LocationTrace mTrace;
+    private SamplingPolicy mSamplingPolicy = new AdaptiveSamplingPolicy();
+    private boolean mForeground;
+    private long[] mAlerts = new long[8];
+    private int mAlertCount;
+
+    private long mFixesRequested;
+    private long mFixesDelivered;
+    private long mWakeups;
+    private int mRejectedCount;
+    private int mLocatedAlerts;
+    private double mErrorSumMeters;
+    private double mMaxErrorMeters;
+    private SamplingStats mSamplingStats;
+    private long mDurationMs;
+
+    /**
+     * @param trace enregistrement rejoué
+     */
+    public LocationReplay(LocationTrace trace) {
+        mTrace = trace;
+    }
+
+    /**
+     * @param policy politique d'échantillonnage rejouée ({@link AdaptiveSamplingPolicy} par
+     *               défaut)
+     */
+    public void setSamplingPolicy(SamplingPolicy policy) {
+        mSamplingPolicy = policy;
+    }
+
+    /**
+     * @param foreground vrai pour rejouer avec l'écran d'alerte affiché pendant tout
+     *                   l'enregistrement
+     */
+    public void setForeground(boolean foreground) {
+        mForeground = foreground;
+    }
+
+    /**
+     * Ajoute une alerte.
+     *
+     * @param elapsedMs date de l'alerte (horloge de l'enregistrement, ms)
+     */
+    public void addAlert(long elapsedMs) {
+        if (mAlertCount == mAlerts.length) {
+            mAlerts = Arrays.copyOf(mAlerts, mAlertCount * 2);
+        }
+        mAlerts[mAlertCount++] = elapsedMs;
+    }
+
+    /**
+     * Rejoue l'enregistrement du début à la fin ; les résultats d'une exécution précédente sont
+     * remplacés.
+     */
+    public void run() {
+        TraceLocationSource source = new TraceLocationSource(mTrace, EPOCH_OFFSET_MS);
+        LocationController controller = new LocationController(source, null);
+        controller.setSamplingPolicy(mSamplingPolicy);
+        controller.setForeground(mForeground);
+        controller.start();
+
+        long[] alerts = Arrays.copyOf(mAlerts, mAlertCount);
+        Arrays.sort(alerts);
+        AlertPayload payload = new AlertPayload();
+        double[] truth = new double[2];
+        mLocatedAlerts = 0;
+        mErrorSumMeters = 0;
+        mMaxErrorMeters = 0;
+        for (long alert : alerts) {
+            long at = Math.max(alert, source.elapsedRealtimeMs());
+            source.advanceTo(at);
+            // même ordre que sur la montre : capture de la position, puis échantillonnage relevé
+            if (controller.captureLocation(payload, at) && mTrace.interpolate(at, truth)) {
+                double error = distanceMeters(payload.getLatitude(), payload.getLongitude(),
+                        truth[0], truth[1]);
+                mLocatedAlerts++;
+                mErrorSumMeters += error;
+                mMaxErrorMeters = Math.max(mMaxErrorMeters, error);
+            }
+            controller.onAlertDetected();
+        }
+        source.advanceTo(Math.max(mTrace.getEndMs(), source.elapsedRealtimeMs()));
+        controller.stop();
+
+        mFixesRequested = source.getFixesRequested();
+        mFixesDelivered = source.getFixesDelivered();
+        mWakeups = source.getWakeups();
+        mRejectedCount = controller.getRejectedCount();
+        mSamplingStats = controller.getSamplingStats();
+        mDurationMs = source.elapsedRealtimeMs() - mTrace.getStartMs();
+    }
+
+    /**
+     * Distance approchée entre deux positions proches (projection équirectangulaire).
+     *
+     * @return distance en mètres
+     */
+    static double distanceMeters(double latitude1, double longitude1, double latitude2,
+                                 double longitude2) {
+        double dy = (latitude2 - latitude1) * METERS_PER_DEGREE;
+        double dx = (longitude2 - longitude1) * METERS_PER_DEGREE
+                * Math.cos(Math.toRadians((latitude1 + latitude2) / 2));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * @return nombre d'interrogations du fournisseur
+     */
+    public long getFixesRequested() {
+        return mFixesRequested;
+    }
+
+    /**
+     * @return nombre de positions livrées
+     */
+    public long getFixesDelivered() {
+        return mFixesDelivered;
+    }
+
+    /**
+     * @return nombre de réveils de l'application par des livraisons de positions
+     */
+    public long getWakeups() {
+        return mWakeups;
+    }
+
+    /**
+     * @return nombre de positions rejetées par le filtre
+     */
+    public int getRejectedCount() {
+        return mRejectedCount;
+    }
+
+    /**
+     * @return nombre d'alertes rejouées
+     */
+    public int getAlertCount() {
+        return mAlertCount;
+    }
+
+    /**
+     * @return nombre d'alertes sans position courante
+     */
+    public int getAlertsWithoutFix() {
+        return mAlertCount - mLocatedAlerts;
+    }
+
+    /**
+     * @return erreur moyenne de la position des alertes (m), 0 sans alerte localisée
+     */
+    public double getMeanAlertErrorMeters() {
+        return mLocatedAlerts == 0 ? 0 : mErrorSumMeters / mLocatedAlerts;
+    }
+
+    /**
+     * @return erreur maximale de la position des alertes (m)
+     */
+    public double getMaxAlertErrorMeters() {
+        return mMaxErrorMeters;
+    }
+
+    /**
+     * @return mesures de l'échantillonnage du dernier rejeu, null avant le premier
+     */
+    public SamplingStats getSamplingStats() {
+        return mSamplingStats;
+    }
+
+    /**
+     * @return durée rejouée (ms)
+     */
+    public long getDurationMs() {
+        return mDurationMs;
+    }
+
+    /**
+     * @return résumé lisible du dernier rejeu
+     */
+    public String summary() {
+        return String.format(Locale.US,
+                "duration=%dmin requested=%d delivered=%d wakeups=%d rejected=%d alerts=%d"
+                        + " withoutFix=%d errorMean=%.1fm errorMax=%.1fm",
+                mDurationMs / 60000, mFixesRequested, mFixesDelivered, mWakeups, mRejectedCount,
+                mAlertCount, getAlertsWithoutFix(), getMeanAlertErrorMeters(),
+                mMaxErrorMeters);
+    }
+}
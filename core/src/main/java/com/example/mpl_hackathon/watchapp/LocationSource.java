@@ -0,0 +1,67 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Fournisseur des positions suivies par le {@link LocationController} : le
+ * fournisseur fusionné des services Google Play sur la montre, ou le rejeu d'un enregistrement
+ * sous une horloge virtuelle ({@link TraceLocationSource}), qui permet d'exécuter
+ * l'échantillonnage, le filtrage et le choix de la position des alertes sur une JVM. Les
+ * positions sont transmises sous forme de valeurs primitives, datées sur l'horloge de la source.
+ * </p>
+ *
+ * @version 1.0
+ */
+public interface LocationSource {
+
+    /**
+     * Reçoit les positions et les changements de disponibilité du fournisseur, sur le thread qui
+     * a demandé les mises à jour.
+     */
+    interface Listener {
+
+        /**
+         * @param timeMs               date de la position (ms depuis epoch)
+         * @param elapsedRealtimeNanos date de la position (horloge de la source, ns)
+         * @param latitude             latitude en degrés
+         * @param longitude            longitude en degrés
+         * @param accuracy             précision en mètres, NaN si inconnue
+         * @param speed                vitesse en m/s, NaN si inconnue
+         */
+        void onFix(long timeMs, long elapsedRealtimeNanos, double latitude, double longitude,
+                   float accuracy, float speed);
+
+        /**
+         * @param available faux si le fournisseur ne peut plus produire de position (signal
+         *                  perdu, localisation désactivée)
+         */
+        void onAvailabilityChanged(boolean available);
+    }
+
+    /**
+     * @return date courante de l'horloge de la source (horloge monotone, ms)
+     */
+    long elapsedRealtimeMs();
+
+    /**
+     * @return date courante (ms depuis epoch)
+     */
+    long currentTimeMs();
+
+    /**
+     * Demande des mises à jour de la position ; une nouvelle demande remplace la précédente.
+     *
+     * @param decision paramètres de mise à jour
+     * @param listener destinataire des positions
+     */
+    void requestUpdates(SamplingDecision decision, Listener listener);
+
+    /**
+     * Arrête les mises à jour ; les positions regroupées en attente sont abandonnées.
+     */
+    void removeUpdates();
+
+    /**
+     * Livre sans attendre les positions regroupées en attente.
+     */
+    void flush();
+}
@@ -0,0 +1,243 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Description : Enregistrement d'un déplacement, rejoué par le {@link TraceLocationSource} pour
+ * mesurer l'échantillonnage et la position des alertes sur une JVM. Format texte, une ligne par
+ * événement, dans l'ordre chronologique :
+ * <pre>
+ * f,elapsed_ms,latitude,longitude,accuracy_m,speed_mps    (position mesurée)
+ * l,elapsed_ms                                            (fournisseur perdu)
+ * r,elapsed_ms                                            (fournisseur retrouvé)
+ * </pre>
+ * La précision et la vitesse peuvent être vides si elles sont inconnues. Une absence de position
+ * pendant plus de {@link TraceLocationSource#MAX_FIX_AGE_MS} est un trou du signal (tunnel,
+ * intérieur). Les lignes vides et celles commençant par {@code #} sont ignorées.
+ * </p>
+ * <p>
+ * Les positions enregistrées servent aussi de référence : la position réelle à une date donnée
+ * est interpolée entre les deux positions qui l'encadrent ({@link #interpolate(long, double[])}).
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class LocationTrace {
+
+    public static final byte FIX = 'f';
+    public static final byte PROVIDER_LOST = 'l';
+    public static final byte PROVIDER_RESTORED = 'r';
+
+    private long[] mTimes = new long[256];
+    private double[] mLatitudes = new double[256];
+    private double[] mLongitudes = new double[256];
+    private float[] mAccuracies = new float[256];
+    private float[] mSpeeds = new float[256];
+    private int mSize;
+
+    private long[] mEventTimes = new long[8];
+    private boolean[] mEventAvailable = new boolean[8];
+    private int mEventCount;
+
+    /**
+     * Ajoute une position mesurée.
+     *
+     * @param elapsedMs date de la position (horloge monotone, ms)
+     * @param latitude  latitude en degrés
+     * @param longitude longitude en degrés
+     * @param accuracy  précision en mètres, NaN si inconnue
+     * @param speed     vitesse en m/s, NaN si inconnue
+     */
+    public void addFix(long elapsedMs, double latitude, double longitude, float accuracy,
+                       float speed) {
+        if (mSize > 0 && elapsedMs < mTimes[mSize - 1]) {
+            throw new IllegalArgumentException("Fix out of order at " + elapsedMs);
+        }
+        if (mSize == mTimes.length) {
+            int capacity = mSize * 2;
+            mTimes = Arrays.copyOf(mTimes, capacity);
+            mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+            mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+            mAccuracies = Arrays.copyOf(mAccuracies, capacity);
+            mSpeeds = Arrays.copyOf(mSpeeds, capacity);
+        }
+        mTimes[mSize] = elapsedMs;
+        mLatitudes[mSize] = latitude;
+        mLongitudes[mSize] = longitude;
+        mAccuracies[mSize] = accuracy;
+        mSpeeds[mSize] = speed;
+        mSize++;
+    }
+
+    /**
+     * Ajoute un changement de disponibilité du fournisseur.
+     *
+     * @param elapsedMs date du changement (horloge monotone, ms)
+     * @param available faux si le fournisseur est perdu
+     */
+    public void addAvailability(long elapsedMs, boolean available) {
+        if (mEventCount > 0 && elapsedMs < mEventTimes[mEventCount - 1]) {
+            throw new IllegalArgumentException("Provider event out of order at " + elapsedMs);
+        }
+        if (mEventCount == mEventTimes.length) {
+            mEventTimes = Arrays.copyOf(mEventTimes, mEventCount * 2);
+            mEventAvailable = Arrays.copyOf(mEventAvailable, mEventCount * 2);
+        }
+        mEventTimes[mEventCount] = elapsedMs;
+        mEventAvailable[mEventCount] = available;
+        mEventCount++;
+    }
+
+    /**
+     * @return nombre de positions
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public long getTime(int index) {
+        return mTimes[index];
+    }
+
+    public double getLatitude(int index) {
+        return mLatitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        return mLongitudes[index];
+    }
+
+    public float getAccuracy(int index) {
+        return mAccuracies[index];
+    }
+
+    public float getSpeed(int index) {
+        return mSpeeds[index];
+    }
+
+    /**
+     * @return nombre de changements de disponibilité du fournisseur
+     */
+    public int getAvailabilityEventCount() {
+        return mEventCount;
+    }
+
+    public long getAvailabilityEventTime(int index) {
+        return mEventTimes[index];
+    }
+
+    public boolean isAvailableAfter(int index) {
+        return mEventAvailable[index];
+    }
+
+    /**
+     * @return date de début de l'enregistrement (ms), 0 s'il est vide
+     */
+    public long getStartMs() {
+        long start = mSize == 0 ? Long.MAX_VALUE : mTimes[0];
+        if (mEventCount > 0) {
+            start = Math.min(start, mEventTimes[0]);
+        }
+        return start == Long.MAX_VALUE ? 0 : start;
+    }
+
+    /**
+     * @return date de fin de l'enregistrement (ms), 0 s'il est vide
+     */
+    public long getEndMs() {
+        long end = mSize == 0 ? 0 : mTimes[mSize - 1];
+        return mEventCount == 0 ? end : Math.max(end, mEventTimes[mEventCount - 1]);
+    }
+
+    /**
+     * @param elapsedMs date (ms)
+     * @return indice de la dernière position enregistrée à cette date ou avant, -1 si aucune
+     */
+    public int indexAt(long elapsedMs) {
+        int index = Arrays.binarySearch(mTimes, 0, mSize, elapsedMs);
+        if (index < 0) {
+            return -index - 2;
+        }
+        // positions de même date : la dernière
+        while (index + 1 < mSize && mTimes[index + 1] == elapsedMs) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Calcule la position réelle à une date, interpolée entre les positions qui l'encadrent ;
+     * avant la première position et après la dernière, la position la plus proche.
+     *
+     * @param elapsedMs date (ms)
+     * @param out       reçoit la latitude puis la longitude
+     * @return faux si l'enregistrement ne contient aucune position
+     */
+    public boolean interpolate(long elapsedMs, double[] out) {
+        if (mSize == 0) {
+            return false;
+        }
+        int index = indexAt(elapsedMs);
+        if (index < 0 || index == mSize - 1) {
+            index = Math.max(0, index);
+            out[0] = mLatitudes[index];
+            out[1] = mLongitudes[index];
+            return true;
+        }
+        double ratio = (double) (elapsedMs - mTimes[index])
+                / (mTimes[index + 1] - mTimes[index]);
+        out[0] = mLatitudes[index] + ratio * (mLatitudes[index + 1] - mLatitudes[index]);
+        out[1] = mLongitudes[index] + ratio * (mLongitudes[index + 1] - mLongitudes[index]);
+        return true;
+    }
+
+    /**
+     * Lit un enregistrement.
+     *
+     * @param reader enregistrement au format texte
+     * @return enregistrement lu
+     * @throws IOException si l'enregistrement ne peut être lu ou est invalide
+     */
+    public static LocationTrace read(Reader reader) throws IOException {
+        LocationTrace trace = new LocationTrace();
+        BufferedReader in = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            // -1 : les champs vides de fin de ligne sont conservés
+            String[] fields = line.split(",", -1);
+            try {
+                if (fields[0].length() == 1 && fields[0].charAt(0) == FIX && fields.length == 6) {
+                    trace.addFix(Long.parseLong(fields[1].trim()),
+                            Double.parseDouble(fields[2]), Double.parseDouble(fields[3]),
+                            parseOptional(fields[4]), parseOptional(fields[5]));
+                } else if (fields.length == 2 && fields[0].length() == 1
+                        && (fields[0].charAt(0) == PROVIDER_LOST
+                        || fields[0].charAt(0) == PROVIDER_RESTORED)) {
+                    trace.addAvailability(Long.parseLong(fields[1].trim()),
+                            fields[0].charAt(0) == PROVIDER_RESTORED);
+                } else {
+                    throw new IOException("Invalid location line " + lineNumber);
+                }
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException comprise
+                throw new IOException("Invalid location line " + lineNumber, e);
+            }
+        }
+        return trace;
+    }
+
+    private static float parseOptional(String field) {
+        field = field.trim();
+        return field.isEmpty() ? Float.NaN : Float.parseFloat(field);
+    }
+}
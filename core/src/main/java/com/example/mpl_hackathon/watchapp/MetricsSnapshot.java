@@ -0,0 +1,422 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>
+ * Description : Photographie des mesures de la chaîne d'alerte, et son format binaire compact
+ * (seuls les intervalles non vides des histogrammes sont écrits) :
+ * <pre>
+ * magic              int      ('WMET')
+ * version            byte
+ * created_at         long     (ms depuis epoch)
+ * counter_count      byte
+ * counters           long * counter_count
+ * histogram_count    byte
+ * histogram          (sum long, max long, bucket_count short,
+ *                     (index short, count long) * bucket_count) * histogram_count
+ * </pre>
+ * Le même format est décodé par l'application du téléphone.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class MetricsSnapshot {
+
+    /**
+     * Alertes déclenchées par le porteur.
+     */
+    public static final int COUNTER_ALERTS_TAPPED = 0;
+    /**
+     * Alertes envoyées sans position.
+     */
+    public static final int COUNTER_ALERTS_WITHOUT_LOCATION = 1;
+    /**
+     * Requêtes d'alerte (alertes et mises à jour) placées dans la file d'envoi.
+     */
+    public static final int COUNTER_REQUESTS_SENT = 2;
+    /**
+     * Requêtes d'alerte dont le serveur a accusé réception.
+     */
+    public static final int COUNTER_REQUESTS_DELIVERED = 3;
+    /**
+     * Requêtes d'alerte en échec.
+     */
+    public static final int COUNTER_REQUESTS_FAILED = 4;
+    /**
+     * Positions reçues du fournisseur de position.
+     */
+    public static final int COUNTER_LOCATION_FIXES = 5;
+    /**
+     * Chutes détectées automatiquement.
+     */
+    public static final int COUNTER_FALLS_DETECTED = 6;
+    /**
+     * Echantillons des capteurs traités par la détection de chute.
+     */
+    public static final int COUNTER_SENSOR_SAMPLES = 7;
+    /**
+     * Temps processeur consommé par la détection de chute (µs).
+     */
+    public static final int COUNTER_SENSOR_CPU_US = 8;
+    /**
+     * Positions écartées par le filtre de position.
+     */
+    public static final int COUNTER_LOCATION_FIXES_REJECTED = 9;
+    /**
+     * Images affichées pendant les fenêtres de mesure de la fluidité qui suivent une alerte.
+     */
+    public static final int COUNTER_FRAMES = 10;
+    /**
+     * Images de ces fenêtres affichées en retard (au moins une synchronisation verticale
+     * manquée).
+     */
+    public static final int COUNTER_FRAMES_JANKY = 11;
+    /**
+     * Temps pendant lequel la radio est restée active du fait de l'application (ms, estimé par
+     * {@link RadioActivityMeter}).
+     */
+    public static final int COUNTER_RADIO_ACTIVE_MS = 12;
+    /**
+     * Réveils de la radio causés par l'application.
+     */
+    public static final int COUNTER_RADIO_WAKEUPS = 13;
+    // 14 et 15 : requêtes différables, retirées ; les positions restent réservées pour que les
+    // compteurs suivants gardent leur place dans le format
+    /**
+     * Requêtes d'alerte doublées vers un autre point d'accès faute de réponse
+     * ({@link EndpointPool#hedgeDelayMs()}).
+     */
+    public static final int COUNTER_HEDGED_REQUESTS = 16;
+    /**
+     * Alertes acquittées grâce à la requête doublée.
+     */
+    public static final int COUNTER_HEDGE_WINS = 17;
+    /**
+     * Requêtes d'alerte renvoyées aussitôt vers un autre point d'accès après un échec.
+     */
+    public static final int COUNTER_FAILOVERS = 18;
+    /**
+     * Appuis rattachés à l'alerte en cours au lieu de créer une nouvelle alerte
+     * ({@link AlertRefiner#onRepeatedTap(long)}).
+     */
+    public static final int COUNTER_TAPS_COALESCED = 19;
+    /**
+     * Messages abandonnés avant leur acquittement car remplacés par un message plus récent.
+     */
+    public static final int COUNTER_REQUESTS_SUPERSEDED = 20;
+    /**
+     * Rafraîchissements du mode ambiant (réveils du processeur pour l'affichage).
+     */
+    public static final int COUNTER_AMBIENT_UPDATES = 21;
+    /**
+     * Rafraîchissements du mode ambiant ayant redessiné l'heure.
+     */
+    public static final int COUNTER_AMBIENT_REDRAWS = 22;
+    /**
+     * Morceaux d'enregistrement acquittés par le serveur ({@link EvidenceUpload}).
+     */
+    public static final int COUNTER_EVIDENCE_CHUNKS = 23;
+    /**
+     * Morceaux d'enregistrement abandonnés faute de tampon libre.
+     */
+    public static final int COUNTER_EVIDENCE_CHUNKS_DROPPED = 24;
+    /**
+     * Reprises d'un envoi d'enregistrement à la position indiquée par le serveur.
+     */
+    public static final int COUNTER_EVIDENCE_RESUMES = 25;
+    /**
+     * Connexions du canal permanent établies ({@link PushConnection}).
+     */
+    public static final int COUNTER_PUSH_CONNECTS = 26;
+    /**
+     * Requêtes d'alerte envoyées par le canal permanent plutôt qu'en HTTP.
+     */
+    public static final int COUNTER_PUSH_ALERTS = 27;
+    /**
+     * Pings envoyés sur le canal permanent inactif.
+     */
+    public static final int COUNTER_PUSH_HEARTBEATS = 28;
+    /**
+     * Evénements de secours reçus du serveur.
+     */
+    public static final int COUNTER_DISPATCH_UPDATES = 29;
+    public static final int COUNTER_COUNT = 30;
+
+    /**
+     * Durée entre l'appui et la construction du contenu de l'alerte.
+     */
+    public static final int HISTOGRAM_TAP_TO_PAYLOAD = 0;
+    /**
+     * Durée entre l'appui et la mise en file de la première requête de l'alerte.
+     */
+    public static final int HISTOGRAM_TAP_TO_ENQUEUE = 1;
+    /**
+     * Durée entre la mise en file d'une requête et la réponse du serveur.
+     */
+    public static final int HISTOGRAM_REQUEST = 2;
+    /**
+     * Durée entre l'appui et l'accusé de réception du serveur.
+     */
+    public static final int HISTOGRAM_TAP_TO_DELIVERED = 3;
+    /**
+     * Age de la position jointe à l'alerte.
+     */
+    public static final int HISTOGRAM_FIX_AGE = 4;
+    /**
+     * Durée entre le choc d'une chute et le déclenchement de l'alerte.
+     */
+    public static final int HISTOGRAM_FALL_DETECTION = 5;
+    /**
+     * Temps passé sur le thread principal pour prendre en compte un appui (µs).
+     */
+    public static final int HISTOGRAM_TAP_HANDLER_US = 6;
+    /**
+     * Attente d'un message dans la file du pipeline d'alerte ({@link AlertPipeline}, µs).
+     */
+    public static final int HISTOGRAM_PIPELINE_WAIT_US = 7;
+    /**
+     * Durée de l'étape de construction du contenu de l'alerte (µs).
+     */
+    public static final int HISTOGRAM_PIPELINE_ENRICH_US = 8;
+    /**
+     * Durée de l'étape de sérialisation (µs).
+     */
+    public static final int HISTOGRAM_PIPELINE_ENCODE_US = 9;
+    /**
+     * Durée de l'étape d'enregistrement dans la boîte d'envoi (µs).
+     */
+    public static final int HISTOGRAM_PIPELINE_ENQUEUE_US = 10;
+    /**
+     * Temps processeur du thread principal pour un rafraîchissement du mode ambiant, dessin
+     * compris (µs).
+     */
+    public static final int HISTOGRAM_AMBIENT_UPDATE_CPU_US = 11;
+    /**
+     * Objets alloués par le thread principal pendant un rafraîchissement du mode ambiant
+     * (compilations de débogage seulement).
+     */
+    public static final int HISTOGRAM_AMBIENT_UPDATE_ALLOCATIONS = 12;
+    /**
+     * Durée entre le début de l'enregistrement joint à une alerte et l'accusé de réception de
+     * son premier morceau.
+     */
+    public static final int HISTOGRAM_EVIDENCE_FIRST_CHUNK = 13;
+    /**
+     * Octets d'un enregistrement en attente d'envoi au plus fort de son envoi.
+     */
+    public static final int HISTOGRAM_EVIDENCE_PEAK_BYTES = 14;
+    /**
+     * Durée de la connexion et de la négociation du canal permanent.
+     */
+    public static final int HISTOGRAM_PUSH_HANDSHAKE = 15;
+    public static final int HISTOGRAM_COUNT = 16;
+
+    private static final String[] COUNTER_NAMES = {"alerts_tapped", "alerts_without_location",
+            "requests_sent", "requests_delivered", "requests_failed", "location_fixes",
+            "falls_detected", "sensor_samples", "sensor_cpu_us", "location_fixes_rejected",
+            "frames", "frames_janky", "radio_active_ms", "radio_wakeups", "bulk_requests",
+            "bulk_piggybacked", "hedged_requests", "hedge_wins", "failovers",
+            "taps_coalesced", "requests_superseded", "ambient_updates", "ambient_redraws",
+            "evidence_chunks", "evidence_chunks_dropped", "evidence_resumes", "push_connects",
+            "push_alerts", "push_heartbeats", "dispatch_updates"};
+    private static final String[] HISTOGRAM_NAMES = {"tap_to_payload", "tap_to_enqueue",
+            "request", "tap_to_delivered", "fix_age", "fall_detection", "tap_handler_us",
+            "pipeline_wait_us", "pipeline_enrich_us", "pipeline_encode_us",
+            "pipeline_enqueue_us", "ambient_update_cpu_us", "ambient_update_allocations",
+            "evidence_first_chunk", "evidence_peak_bytes", "push_handshake"};
+
+    private static final int MAGIC = 0x574d4554;
+    private static final int VERSION = 1;
+
+    private final long mCreatedAtMs;
+    private final long[] mCounters = new long[COUNTER_COUNT];
+    private final long[][] mBuckets = new long[HISTOGRAM_COUNT][LatencyHistogram.BUCKET_COUNT];
+    private final long[] mSums = new long[HISTOGRAM_COUNT];
+    private final long[] mMaxima = new long[HISTOGRAM_COUNT];
+
+    /**
+     * @param createdAtMs date de la photographie (ms depuis epoch)
+     */
+    public MetricsSnapshot(long createdAtMs) {
+        mCreatedAtMs = createdAtMs;
+    }
+
+    /**
+     * Renseigne un compteur.
+     */
+    void setCounter(int counter, long value) {
+        mCounters[counter] = value;
+    }
+
+    /**
+     * Renseigne un histogramme à partir de ses valeurs courantes.
+     */
+    void setHistogram(int histogram, LatencyHistogram source) {
+        source.copyCounts(mBuckets[histogram]);
+        mSums[histogram] = source.getSum();
+        mMaxima[histogram] = source.getMax();
+    }
+
+    public long getCreatedAtMs() {
+        return mCreatedAtMs;
+    }
+
+    /**
+     * @param counter compteur ({@link #COUNTER_ALERTS_TAPPED}...)
+     * @return valeur du compteur
+     */
+    public long getCounter(int counter) {
+        return mCounters[counter];
+    }
+
+    /**
+     * @param histogram histogramme ({@link #HISTOGRAM_TAP_TO_PAYLOAD}...)
+     * @return nombre de durées enregistrées
+     */
+    public long getCount(int histogram) {
+        long count = 0;
+        for (long bucket : mBuckets[histogram]) {
+            count += bucket;
+        }
+        return count;
+    }
+
+    /**
+     * @param histogram histogramme
+     * @return plus grande durée enregistrée
+     */
+    public long getMax(int histogram) {
+        return mMaxima[histogram];
+    }
+
+    /**
+     * @param histogram histogramme
+     * @return durée moyenne, 0 si aucune
+     */
+    public long getMean(int histogram) {
+        long count = getCount(histogram);
+        return count == 0 ? 0 : mSums[histogram] / count;
+    }
+
+    /**
+     * @param histogram histogramme
+     * @param quantile  quantile entre 0 et 1
+     * @return borne haute de l'intervalle contenant le quantile (au plus la durée maximale), 0
+     * si aucune durée
+     */
+    public long getPercentile(int histogram, double quantile) {
+        return LatencyHistogram.percentile(mBuckets[histogram], mMaxima[histogram], quantile);
+    }
+
+    /**
+     * @return résumé lisible des mesures
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            summary.append(COUNTER_NAMES[i]).append('=').append(mCounters[i]).append('\n');
+        }
+        for (int i = 0; i < HISTOGRAM_COUNT; i++) {
+            summary.append(HISTOGRAM_NAMES[i]).append(" n=").append(getCount(i));
+            if (getCount(i) > 0) {
+                summary.append(" p50=").append(getPercentile(i, 0.5))
+                        .append(" p90=").append(getPercentile(i, 0.9))
+                        .append(" p99=").append(getPercentile(i, 0.99))
+                        .append(" max=").append(mMaxima[i])
+                        .append(HISTOGRAM_NAMES[i].endsWith("_us") ? "us" : "ms");
+            }
+            summary.append('\n');
+        }
+        return summary.toString();
+    }
+
+    /**
+     * @return photographie au format binaire
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(mCreatedAtMs);
+            out.writeByte(COUNTER_COUNT);
+            for (long counter : mCounters) {
+                out.writeLong(counter);
+            }
+            out.writeByte(HISTOGRAM_COUNT);
+            for (int i = 0; i < HISTOGRAM_COUNT; i++) {
+                out.writeLong(mSums[i]);
+                out.writeLong(mMaxima[i]);
+                long[] buckets = mBuckets[i];
+                int used = 0;
+                for (long bucket : buckets) {
+                    if (bucket != 0) {
+                        used++;
+                    }
+                }
+                out.writeShort(used);
+                for (int j = 0; j < buckets.length; j++) {
+                    if (buckets[j] != 0) {
+                        out.writeShort(j);
+                        out.writeLong(buckets[j]);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // impossible avec un ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Décode une photographie. Les compteurs et histogrammes inconnus (version plus récente) sont
+     * ignorés, ceux qui manquent restent nuls.
+     *
+     * @param data photographie au format binaire
+     * @return photographie décodée
+     * @throws IOException si les données sont invalides
+     */
+    public static MetricsSnapshot decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+            throw new IOException("Unsupported metrics snapshot");
+        }
+        MetricsSnapshot snapshot = new MetricsSnapshot(in.readLong());
+        int counters = in.readUnsignedByte();
+        for (int i = 0; i < counters; i++) {
+            long value = in.readLong();
+            if (i < COUNTER_COUNT) {
+                snapshot.mCounters[i] = value;
+            }
+        }
+        int histograms = in.readUnsignedByte();
+        for (int i = 0; i < histograms; i++) {
+            long sum = in.readLong();
+            long max = in.readLong();
+            int used = in.readUnsignedShort();
+            boolean known = i < HISTOGRAM_COUNT;
+            if (known) {
+                snapshot.mSums[i] = sum;
+                snapshot.mMaxima[i] = max;
+            }
+            for (int j = 0; j < used; j++) {
+                int index = in.readUnsignedShort();
+                long count = in.readLong();
+                if (index >= LatencyHistogram.BUCKET_COUNT) {
+                    throw new IOException("Invalid bucket " + index);
+                }
+                if (known) {
+                    snapshot.mBuckets[i][index] = count;
+                }
+            }
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * <p>
+ * Description : Connexion cliente du canal permanent ({@link PushProtocol}), sur une socket
+ * simple : négociation WebSocket, envoi de messages et de pings, lecture des trames. Les envois
+ * peuvent être faits depuis n'importe quel thread ; la lecture bloque, elle est faite par un
+ * seul thread ({@link #receive()}), qui répond lui-même aux pings du serveur.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class PushConnection implements Closeable {
+
+    private static final Random RANDOM = new SecureRandom();
+
+    private final Socket mSocket;
+    private final InputStream mIn;
+    private final OutputStream mOut;
+    private final PushProtocol.FrameReader mReader = new PushProtocol.FrameReader();
+    private final long mIdleTimeoutMs;
+    private final long mHandshakeMs;
+
+    private PushConnection(Socket socket, InputStream in, OutputStream out, long idleTimeoutMs,
+                           long handshakeMs) {
+        mSocket = socket;
+        mIn = in;
+        mOut = out;
+        mIdleTimeoutMs = idleTimeoutMs;
+        mHandshakeMs = handshakeMs;
+    }
+
+    /**
+     * Ouvre une connexion et négocie le canal.
+     *
+     * @param url       adresse du canal ({@code ws://hôte[:port]/chemin})
+     * @param timeoutMs délai maximal de la connexion puis de la négociation
+     * @return connexion ouverte
+     * @throws IOException si la connexion ou la négociation échoue
+     */
+    public static PushConnection open(String url, int timeoutMs) throws IOException {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid push URL : " + url, e);
+        }
+        if (!"ws".equals(uri.getScheme()) || uri.getHost() == null) {
+            throw new IllegalArgumentException("Invalid push URL : " + url);
+        }
+        int port = uri.getPort() < 0 ? 80 : uri.getPort();
+        long start = System.nanoTime();
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(uri.getHost(), port), timeoutMs);
+            socket.setSoTimeout(timeoutMs);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            String key = PushProtocol.newKey(RANDOM);
+            Map<String, String> headers = PushProtocol.upgradeHeaders();
+            headers.put("Host", uri.getPort() < 0 ? uri.getHost() : uri.getHost() + ":" + port);
+            headers.put("Sec-WebSocket-Key", key);
+            headers.put("Sec-WebSocket-Version", "13");
+            PushProtocol.writeHead(out, "GET " + uri.getRawPath() + " HTTP/1.1", headers);
+
+            Map<String, String> response = new HashMap<String, String>(8);
+            String status = PushProtocol.readHead(in, response);
+            if (!status.startsWith("HTTP/1.1 101")) {
+                throw new IOException("Push channel refused : " + status);
+            }
+            if (!PushProtocol.acceptKey(key).equals(response.get("sec-websocket-accept"))) {
+                throw new IOException("Invalid push channel handshake");
+            }
+            String idle = response.get(PushProtocol.IDLE_TIMEOUT_HEADER.toLowerCase());
+            long idleTimeoutMs;
+            try {
+                idleTimeoutMs = idle == null ? 0 : Long.parseLong(idle);
+            } catch (NumberFormatException e) {
+                idleTimeoutMs = 0;
+            }
+            // la lecture attend les messages du serveur aussi longtemps que nécessaire : la
+            // coupure est détectée par les pings
+            socket.setSoTimeout(0);
+            return new PushConnection(socket, in, out, idleTimeoutMs,
+                    (System.nanoTime() - start) / 1000000L);
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return délai d'inactivité après lequel le serveur ferme la connexion (ms), 0 si le
+     * serveur ne l'a pas annoncé
+     */
+    public long getIdleTimeoutMs() {
+        return mIdleTimeoutMs;
+    }
+
+    /**
+     * @return durée de la connexion et de la négociation (ms)
+     */
+    public long getHandshakeMs() {
+        return mHandshakeMs;
+    }
+
+    /**
+     * @param timeoutMs délai maximal d'attente d'une trame par {@link #receive()}, 0 pour une
+     *                  attente sans limite
+     * @throws SocketException si la connexion est fermée
+     */
+    public void setReadTimeout(int timeoutMs) throws SocketException {
+        mSocket.setSoTimeout(timeoutMs);
+    }
+
+    /**
+     * Envoie un message.
+     *
+     * @param message message encodé ({@link PushProtocol})
+     * @throws IOException si l'envoi échoue
+     */
+    public void send(byte[] message) throws IOException {
+        write(PushProtocol.OPCODE_BINARY, message, message.length);
+    }
+
+    /**
+     * Envoie un ping ; le pong est signalé par {@link #receive()}.
+     *
+     * @throws IOException si l'envoi échoue
+     */
+    public void ping() throws IOException {
+        write(PushProtocol.OPCODE_PING, null, 0);
+    }
+
+    private synchronized void write(int opcode, byte[] data, int length) throws IOException {
+        // masque non nul : le protocole impose le masquage des trames du client
+        PushProtocol.writeFrame(mOut, opcode, data, length, RANDOM.nextInt() | 1);
+    }
+
+    /**
+     * Attend la trame suivante. Les pings du serveur reçoivent leur réponse ici.
+     *
+     * @return {@link PushProtocol#OPCODE_BINARY} (message lisible par {@link #data()}),
+     * {@link PushProtocol#OPCODE_PONG}, ou -1 si le serveur a fermé la connexion
+     * @throws IOException si la lecture échoue
+     */
+    public int receive() throws IOException {
+        while (true) {
+            int opcode = mReader.read(mIn);
+            switch (opcode) {
+                case PushProtocol.OPCODE_BINARY:
+                case PushProtocol.OPCODE_PONG:
+                    return opcode;
+                case PushProtocol.OPCODE_PING:
+                    write(PushProtocol.OPCODE_PONG, mReader.data(), mReader.length());
+                    break;
+                case PushProtocol.OPCODE_CLOSE:
+                case -1:
+                    return -1;
+                default:
+                    throw new IOException("Unexpected frame " + opcode);
+            }
+        }
+    }
+
+    /**
+     * @return contenu du dernier message reçu, valable jusqu'au prochain appel de
+     * {@link #receive()}
+     */
+    public byte[] data() {
+        return mReader.data();
+    }
+
+    public int length() {
+        return mReader.length();
+    }
+
+    /**
+     * Ferme la connexion ; une lecture en cours se termine par une exception.
+     */
+    @Override
+    public void close() {
+        try {
+            mSocket.close();
+        } catch (IOException e) {
+            // connexion déjà fermée
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Intervalle des pings du canal permanent ({@link PushConnection}). Un ping n'est
+ * utile que si la connexion est restée inactive : chaque ping réveille la radio, l'intervalle
+ * doit donc être le plus long possible sans que le serveur ou un équipement réseau (NAT,
+ * pare-feu) ne ferme la connexion. Cette limite est inconnue : elle est cherchée en allongeant
+ * l'intervalle d'un pas après chaque ping réussi, jusqu'au délai d'inactivité annoncé par le
+ * serveur. Une connexion perdue après une inactivité plus longue que le dernier intervalle
+ * réussi fixe l'intervalle à cette dernière valeur ; une perte plus courte est une coupure du
+ * réseau et ne change rien.
+ * </p>
+ * <p>
+ * Un ping dont l'échéance est proche part plus tôt si la radio est déjà active pour un autre
+ * échange ({@link RadioActivityMeter}) : il ne coûte alors presque rien. Cette classe n'est pas
+ * thread-safe.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class PushHeartbeat {
+
+    /**
+     * Part de l'intervalle après laquelle un ping peut partir avec une radio déjà active.
+     */
+    private static final int EARLY_PING_PERCENT = 50;
+    /**
+     * Marge laissée sous le délai d'inactivité annoncé par le serveur.
+     */
+    private static final int SERVER_IDLE_PERCENT = 80;
+
+    private final long mMinIntervalMs;
+    private final long mMaxIntervalMs;
+    private final long mStepMs;
+    private long mIntervalMs;
+    private long mCeilingMs;
+    private long mLastSuccessMs;
+    private boolean mStable;
+
+    /**
+     * @param minIntervalMs intervalle initial, et minimal
+     * @param maxIntervalMs intervalle maximal
+     * @param stepMs        allongement de l'intervalle après un ping réussi
+     */
+    public PushHeartbeat(long minIntervalMs, long maxIntervalMs, long stepMs) {
+        if (minIntervalMs <= 0 || maxIntervalMs < minIntervalMs || stepMs <= 0) {
+            throw new IllegalArgumentException("Invalid heartbeat intervals");
+        }
+        mMinIntervalMs = minIntervalMs;
+        mMaxIntervalMs = maxIntervalMs;
+        mStepMs = stepMs;
+        mIntervalMs = minIntervalMs;
+        mCeilingMs = maxIntervalMs;
+    }
+
+    /**
+     * Prend en compte le délai d'inactivité annoncé par le serveur d'une nouvelle connexion.
+     *
+     * @param serverIdleTimeoutMs délai annoncé, 0 si inconnu
+     */
+    public void onConnected(long serverIdleTimeoutMs) {
+        mCeilingMs = mMaxIntervalMs;
+        if (serverIdleTimeoutMs > 0) {
+            mCeilingMs = Math.max(mMinIntervalMs, Math.min(mMaxIntervalMs,
+                    serverIdleTimeoutMs * SERVER_IDLE_PERCENT / 100));
+        }
+        mIntervalMs = Math.min(mIntervalMs, mCeilingMs);
+    }
+
+    /**
+     * @return intervalle courant entre la dernière activité et le ping
+     */
+    public long getIntervalMs() {
+        return mIntervalMs;
+    }
+
+    /**
+     * @return vrai si la limite d'inactivité a été trouvée et l'intervalle n'est plus allongé
+     */
+    public boolean isStable() {
+        return mStable;
+    }
+
+    /**
+     * @param lastActivityMs date du dernier échange sur la connexion
+     * @return date à laquelle un ping est nécessaire
+     */
+    public long nextPingAtMs(long lastActivityMs) {
+        return lastActivityMs + mIntervalMs;
+    }
+
+    /**
+     * @param nowMs          date courante
+     * @param lastActivityMs date du dernier échange sur la connexion
+     * @param radioWarm      vrai si la radio est déjà active
+     * @return vrai si un ping doit partir maintenant
+     */
+    public boolean isDue(long nowMs, long lastActivityMs, boolean radioWarm) {
+        long idleMs = nowMs - lastActivityMs;
+        return idleMs >= mIntervalMs
+                || radioWarm && idleMs >= mIntervalMs * EARLY_PING_PERCENT / 100;
+    }
+
+    /**
+     * Prend en compte le pong d'un ping envoyé après une inactivité donnée.
+     *
+     * @param idleMs inactivité de la connexion au moment du ping
+     */
+    public void onPong(long idleMs) {
+        mLastSuccessMs = Math.max(mLastSuccessMs, idleMs);
+        if (!mStable && idleMs >= mIntervalMs) {
+            mIntervalMs = Math.min(mIntervalMs + mStepMs, mCeilingMs);
+        }
+    }
+
+    /**
+     * Prend en compte la perte de la connexion.
+     *
+     * @param idleMs inactivité de la connexion au moment de la perte
+     */
+    public void onLost(long idleMs) {
+        if (mLastSuccessMs > 0 && idleMs > mLastSuccessMs) {
+            // la connexion a été fermée entre le dernier intervalle réussi et celui-ci
+            mIntervalMs = Math.max(mMinIntervalMs, mLastSuccessMs);
+            mStable = true;
+        }
+    }
+}
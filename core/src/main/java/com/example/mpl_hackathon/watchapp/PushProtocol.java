@@ -0,0 +1,548 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * <p>
+ * Description : Canal permanent entre la montre et le web service ({@link PushConnection}) :
+ * une connexion WebSocket (RFC 6455, trames binaires non fragmentées) qui porte les alertes vers
+ * le serveur, et leurs accusés de réception et l'avancement des secours vers la montre. Plusieurs
+ * alertes peuvent être en cours sur la même connexion : chaque accusé porte l'identifiant de la
+ * requête. Ce format est partagé par la montre et le serveur de substitution.
+ * </p>
+ * <pre>
+ * alerte      (TYPE_ALERT, montre)       : version, type, requête (long), type de contenu (UTF),
+ *                                          données
+ * accusé      (TYPE_ACK, serveur)        : version, type, requête (long), alerte (long),
+ *                                          statut HTTP (int), formats acceptés (UTF), réponse (UTF)
+ * abonnement  (TYPE_SUBSCRIBE, montre)   : version, type, dernier événement reçu (long),
+ *                                          nombre d'alertes (short), alertes (long)
+ * secours     (TYPE_DISPATCH, serveur)   : version, type, événement (long), alerte (long),
+ *                                          état (byte), arrivée estimée (int, s), message (UTF)
+ * </pre>
+ * <p>
+ * Les événements de secours sont numérotés par le serveur dans l'ordre de leur création : après
+ * une coupure, la montre se réabonne aux alertes en cours avec le numéro du dernier événement
+ * reçu, et le serveur renvoie ceux qu'elle a manqués. Le maintien de la connexion passe par les
+ * trames ping/pong du protocole ({@link PushHeartbeat}) ; le serveur annonce au moment de la
+ * négociation au bout de combien de temps une connexion inactive est fermée
+ * ({@link #IDLE_TIMEOUT_HEADER}).
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class PushProtocol {
+
+    /**
+     * Sous-protocole négocié ({@code Sec-WebSocket-Protocol}).
+     */
+    public static final String SUBPROTOCOL = "watchapp-push.1";
+    /**
+     * En-tête de la réponse de négociation : délai d'inactivité après lequel le serveur ferme
+     * la connexion (ms).
+     */
+    public static final String IDLE_TIMEOUT_HEADER = "X-Push-Idle-Timeout";
+
+    public static final int OPCODE_BINARY = 0x2;
+    public static final int OPCODE_CLOSE = 0x8;
+    public static final int OPCODE_PING = 0x9;
+    public static final int OPCODE_PONG = 0xa;
+
+    /**
+     * Taille maximale d'une trame : une alerte tient dans quelques kilo-octets.
+     */
+    public static final int MAX_FRAME_BYTES = 64 * 1024;
+
+    public static final int VERSION = 1;
+
+    public static final byte TYPE_ALERT = 1;
+    public static final byte TYPE_ACK = 2;
+    public static final byte TYPE_SUBSCRIBE = 3;
+    public static final byte TYPE_DISPATCH = 4;
+
+    /**
+     * Etats des secours, dans l'ordre où ils se succèdent.
+     */
+    public static final byte STATE_ACKNOWLEDGED = 1;
+    public static final byte STATE_DISPATCHED = 2;
+
+    /**
+     * Nombre maximal d'alertes d'un abonnement.
+     */
+    public static final int MAX_SUBSCRIBED_ALERTS = 64;
+
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final char[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int MAX_HEADER_LINE = 1024;
+
+    private PushProtocol() {
+    }
+
+    /**
+     * Alerte envoyée par la montre.
+     */
+    public static final class Alert {
+        public final long requestId;
+        public final String contentType;
+        public final byte[] payload;
+
+        public Alert(long requestId, String contentType, byte[] payload) {
+            this.requestId = requestId;
+            this.contentType = contentType;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Accusé de réception d'une alerte, équivalent de la réponse HTTP du web service.
+     */
+    public static final class Ack {
+        public final long requestId;
+        /**
+         * Identifiant de l'alerte décodée par le serveur, -1 si inconnu.
+         */
+        public final long alertId;
+        public final int httpStatus;
+        /**
+         * Formats acceptés par le serveur ({@link BinaryAlertEncoder#ACCEPT_HEADER}).
+         */
+        public final String acceptedFormats;
+        /**
+         * Réponse JSON du web service, vide si aucune.
+         */
+        public final String body;
+
+        public Ack(long requestId, long alertId, int httpStatus, String acceptedFormats,
+                   String body) {
+            this.requestId = requestId;
+            this.alertId = alertId;
+            this.httpStatus = httpStatus;
+            this.acceptedFormats = acceptedFormats;
+            this.body = body;
+        }
+
+        /**
+         * @return vrai si le serveur a accepté l'alerte
+         */
+        public boolean isSuccess() {
+            return httpStatus >= 200 && httpStatus < 300;
+        }
+    }
+
+    /**
+     * Abonnement aux événements de secours de quelques alertes.
+     */
+    public static final class Subscribe {
+        /**
+         * Numéro du dernier événement reçu : seuls les suivants sont renvoyés.
+         */
+        public final long lastEventSeq;
+        public final long[] alertIds;
+
+        public Subscribe(long lastEventSeq, long[] alertIds) {
+            this.lastEventSeq = lastEventSeq;
+            this.alertIds = alertIds;
+        }
+    }
+
+    /**
+     * Avancement des secours d'une alerte.
+     */
+    public static final class Dispatch {
+        public final long seq;
+        public final long alertId;
+        public final byte state;
+        /**
+         * Délai estimé avant l'arrivée des secours (s), -1 si inconnu.
+         */
+        public final int etaSeconds;
+        public final String message;
+
+        public Dispatch(long seq, long alertId, byte state, int etaSeconds, String message) {
+            this.seq = seq;
+            this.alertId = alertId;
+            this.state = state;
+            this.etaSeconds = etaSeconds;
+            this.message = message;
+        }
+    }
+
+    /**
+     * @param data   message
+     * @param length taille du message
+     * @return type du message, -1 si le message est trop court
+     */
+    public static int typeOf(byte[] data, int length) {
+        return length < 2 ? -1 : data[1];
+    }
+
+    public static byte[] encodeAlert(Alert alert) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(alert.payload.length + 64);
+            DataOutputStream out = start(bytes, TYPE_ALERT);
+            out.writeLong(alert.requestId);
+            out.writeUTF(alert.contentType);
+            out.write(alert.payload);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Alert decodeAlert(byte[] data, int length) throws IOException {
+        DataInputStream in = open(data, length, TYPE_ALERT);
+        long requestId = in.readLong();
+        String contentType = in.readUTF();
+        byte[] payload = new byte[in.available()];
+        in.readFully(payload);
+        return new Alert(requestId, contentType, payload);
+    }
+
+    public static byte[] encodeAck(Ack ack) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + ack.body.length());
+            DataOutputStream out = start(bytes, TYPE_ACK);
+            out.writeLong(ack.requestId);
+            out.writeLong(ack.alertId);
+            out.writeInt(ack.httpStatus);
+            out.writeUTF(ack.acceptedFormats);
+            out.writeUTF(ack.body);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Ack decodeAck(byte[] data, int length) throws IOException {
+        DataInputStream in = open(data, length, TYPE_ACK);
+        return new Ack(in.readLong(), in.readLong(), in.readInt(), in.readUTF(), in.readUTF());
+    }
+
+    public static byte[] encodeSubscribe(Subscribe subscribe) {
+        if (subscribe.alertIds.length > MAX_SUBSCRIBED_ALERTS) {
+            throw new IllegalArgumentException("Too many alerts : " + subscribe.alertIds.length);
+        }
+        try {
+            ByteArrayOutputStream bytes =
+                    new ByteArrayOutputStream(12 + 8 * subscribe.alertIds.length);
+            DataOutputStream out = start(bytes, TYPE_SUBSCRIBE);
+            out.writeLong(subscribe.lastEventSeq);
+            out.writeShort(subscribe.alertIds.length);
+            for (long alertId : subscribe.alertIds) {
+                out.writeLong(alertId);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Subscribe decodeSubscribe(byte[] data, int length) throws IOException {
+        DataInputStream in = open(data, length, TYPE_SUBSCRIBE);
+        long lastEventSeq = in.readLong();
+        int count = in.readUnsignedShort();
+        if (count > MAX_SUBSCRIBED_ALERTS) {
+            throw new IOException("Too many alerts : " + count);
+        }
+        long[] alertIds = new long[count];
+        for (int i = 0; i < count; i++) {
+            alertIds[i] = in.readLong();
+        }
+        return new Subscribe(lastEventSeq, alertIds);
+    }
+
+    public static byte[] encodeDispatch(Dispatch dispatch) {
+        try {
+            ByteArrayOutputStream bytes =
+                    new ByteArrayOutputStream(32 + dispatch.message.length());
+            DataOutputStream out = start(bytes, TYPE_DISPATCH);
+            out.writeLong(dispatch.seq);
+            out.writeLong(dispatch.alertId);
+            out.writeByte(dispatch.state);
+            out.writeInt(dispatch.etaSeconds);
+            out.writeUTF(dispatch.message);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Dispatch decodeDispatch(byte[] data, int length) throws IOException {
+        DataInputStream in = open(data, length, TYPE_DISPATCH);
+        return new Dispatch(in.readLong(), in.readLong(), in.readByte(), in.readInt(),
+                in.readUTF());
+    }
+
+    private static DataOutputStream start(ByteArrayOutputStream bytes, byte type)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeByte(type);
+        return out;
+    }
+
+    private static DataInputStream open(byte[] data, int length, byte type) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, length));
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported push message version " + version);
+        }
+        int actual = in.readByte();
+        if (actual != type) {
+            throw new IOException("Unexpected push message type " + actual);
+        }
+        return in;
+    }
+
+    /**
+     * @param random générateur aléatoire
+     * @return clé de négociation ({@code Sec-WebSocket-Key})
+     */
+    public static String newKey(Random random) {
+        byte[] nonce = new byte[16];
+        random.nextBytes(nonce);
+        return base64(nonce);
+    }
+
+    /**
+     * @param key clé de négociation envoyée par le client
+     * @return valeur attendue de {@code Sec-WebSocket-Accept}
+     */
+    public static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return base64(sha1.digest((key + ACCEPT_GUID).getBytes(ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String base64(byte[] data) {
+        StringBuilder out = new StringBuilder((data.length + 2) / 3 * 4);
+        for (int i = 0; i < data.length; i += 3) {
+            int remaining = data.length - i;
+            int bits = (data[i] & 0xff) << 16
+                    | (remaining > 1 ? (data[i + 1] & 0xff) << 8 : 0)
+                    | (remaining > 2 ? data[i + 2] & 0xff : 0);
+            out.append(BASE64[bits >> 18 & 0x3f]).append(BASE64[bits >> 12 & 0x3f])
+                    .append(remaining > 1 ? BASE64[bits >> 6 & 0x3f] : '=')
+                    .append(remaining > 2 ? BASE64[bits & 0x3f] : '=');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Ecrit une requête ou une réponse de négociation : première ligne, en-têtes, ligne vide.
+     *
+     * @param out     flux de la connexion
+     * @param line    première ligne, sans fin de ligne
+     * @param headers en-têtes
+     * @throws IOException si l'écriture échoue
+     */
+    public static void writeHead(OutputStream out, String line, Map<String, String> headers)
+            throws IOException {
+        StringBuilder head = new StringBuilder(256).append(line).append("\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        out.write(head.append("\r\n").toString().getBytes(ASCII));
+        out.flush();
+    }
+
+    /**
+     * Lit une requête ou une réponse de négociation, jusqu'à la ligne vide. Le flux doit être
+     * lu octet par octet sans perte (flux tamponné) : les trames suivent immédiatement.
+     *
+     * @param in      flux de la connexion
+     * @param headers en-têtes lus, noms en minuscules
+     * @return première ligne
+     * @throws IOException si la lecture échoue ou si la négociation est invalide
+     */
+    public static String readHead(InputStream in, Map<String, String> headers)
+            throws IOException {
+        String line = readLine(in);
+        String header;
+        while (!(header = readLine(in)).isEmpty()) {
+            int colon = header.indexOf(':');
+            if (colon <= 0) {
+                throw new IOException("Invalid header : " + header);
+            }
+            headers.put(header.substring(0, colon).trim().toLowerCase(),
+                    header.substring(colon + 1).trim());
+        }
+        return line;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new EOFException("Connection closed during handshake");
+            }
+            if (c != '\r') {
+                if (line.length() >= MAX_HEADER_LINE) {
+                    throw new IOException("Header line too long");
+                }
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * @return en-têtes de négociation communs au client et au serveur
+     */
+    static Map<String, String> upgradeHeaders() {
+        Map<String, String> headers = new HashMap<String, String>(8);
+        headers.put("Upgrade", "websocket");
+        headers.put("Connection", "Upgrade");
+        headers.put("Sec-WebSocket-Protocol", SUBPROTOCOL);
+        return headers;
+    }
+
+    /**
+     * Ecrit une trame complète. Les trames du client sont masquées, comme l'exige le
+     * protocole.
+     *
+     * @param out    flux de la connexion
+     * @param opcode type de trame
+     * @param data   contenu
+     * @param length taille du contenu
+     * @param mask   clé de masquage, 0 pour une trame non masquée (serveur)
+     * @throws IOException si l'écriture échoue
+     */
+    public static void writeFrame(OutputStream out, int opcode, byte[] data, int length,
+                                  int mask) throws IOException {
+        byte[] frame = new byte[14 + length];
+        int position = 0;
+        frame[position++] = (byte) (0x80 | opcode);
+        int maskBit = mask != 0 ? 0x80 : 0;
+        if (length < 126) {
+            frame[position++] = (byte) (maskBit | length);
+        } else if (length <= 0xffff) {
+            frame[position++] = (byte) (maskBit | 126);
+            frame[position++] = (byte) (length >> 8);
+            frame[position++] = (byte) length;
+        } else {
+            frame[position++] = (byte) (maskBit | 127);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                frame[position++] = (byte) ((long) length >>> shift);
+            }
+        }
+        if (mask != 0) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                frame[position++] = (byte) (mask >>> shift);
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            frame[position + i] = mask != 0
+                    ? (byte) (data[i] ^ (mask >>> (24 - 8 * (i & 3))))
+                    : data[i];
+        }
+        out.write(frame, 0, position + length);
+        out.flush();
+    }
+
+    /**
+     * Lecteur de trames, dont le tampon est réutilisé d'une trame à l'autre.
+     */
+    public static final class FrameReader {
+        private final byte[] mHeader = new byte[8];
+        private byte[] mData = new byte[256];
+        private int mLength;
+
+        /**
+         * Lit la trame suivante et retire son masque.
+         *
+         * @param in flux de la connexion
+         * @return type de trame, -1 si la connexion a été fermée entre deux trames
+         * @throws IOException si la lecture échoue ou si la trame est invalide
+         */
+        public int read(InputStream in) throws IOException {
+            int first = in.read();
+            if (first < 0) {
+                return -1;
+            }
+            if ((first & 0x80) == 0) {
+                throw new IOException("Fragmented frames are not supported");
+            }
+            int second = readByte(in);
+            long length = second & 0x7f;
+            if (length == 126) {
+                readFully(in, mHeader, 2);
+                length = (mHeader[0] & 0xff) << 8 | mHeader[1] & 0xff;
+            } else if (length == 127) {
+                readFully(in, mHeader, 8);
+                length = 0;
+                for (int i = 0; i < 8; i++) {
+                    length = length << 8 | mHeader[i] & 0xff;
+                }
+            }
+            if (length < 0 || length > MAX_FRAME_BYTES) {
+                throw new IOException("Frame too large : " + length);
+            }
+            int mask = 0;
+            if ((second & 0x80) != 0) {
+                readFully(in, mHeader, 4);
+                mask = (mHeader[0] & 0xff) << 24 | (mHeader[1] & 0xff) << 16
+                        | (mHeader[2] & 0xff) << 8 | mHeader[3] & 0xff;
+            }
+            mLength = (int) length;
+            if (mData.length < mLength) {
+                mData = new byte[Math.max(mLength, mData.length * 2)];
+            }
+            readFully(in, mData, mLength);
+            for (int i = 0; mask != 0 && i < mLength; i++) {
+                mData[i] ^= mask >>> (24 - 8 * (i & 3));
+            }
+            return first & 0x0f;
+        }
+
+        /**
+         * @return contenu de la dernière trame lue, valable jusqu'à la lecture suivante
+         */
+        public byte[] data() {
+            return mData;
+        }
+
+        public int length() {
+            return mLength;
+        }
+
+        private static int readByte(InputStream in) throws IOException {
+            int value = in.read();
+            if (value < 0) {
+                throw new EOFException("Connection closed inside a frame");
+            }
+            return value;
+        }
+
+        private static void readFully(InputStream in, byte[] buffer, int length)
+                throws IOException {
+            int read = 0;
+            while (read < length) {
+                int count = in.read(buffer, read, length - read);
+                if (count < 0) {
+                    throw new EOFException("Connection closed inside a frame");
+                }
+                read += count;
+            }
+        }
+    }
+}
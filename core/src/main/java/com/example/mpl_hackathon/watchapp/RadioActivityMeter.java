@@ -0,0 +1,114 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Estimation du temps pendant lequel la radio reste dans son état de forte
+ * consommation. Après chaque échange, la radio cellulaire ne revient à l'état de veille qu'au
+ * bout d'un délai d'inactivité (la « queue », une dizaine de secondes en LTE) : deux requêtes
+ * espacées de plus de ce délai coûtent deux réveils et deux queues, deux requêtes rapprochées
+ * partagent la même. Le temps actif imputé à l'application est l'union des intervalles
+ * {@code [échange, échange + queue]}.
+ * </p>
+ * <p>
+ * La radio peut aussi être réveillée par une autre application ({@link #onRadioActive(long)}) :
+ * elle est alors disponible sans nouveau réveil, mais ce temps n'est pas imputé à l'application.
+ * Les réveils et le temps actif sont aussi comptés dans {@link AlertMetrics}. Les dates sont
+ * lues sur l'horloge monotone ; la classe n'est pas synchronisée.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class RadioActivityMeter {
+
+    /**
+     * Délai d'inactivité par défaut avant le retour de la radio en veille (LTE).
+     */
+    public static final long DEFAULT_TAIL_MS = 10000;
+
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+
+    private final long mTailMs;
+    private final long mStartMs;
+    /**
+     * Fin de la période active imputée à l'application.
+     */
+    private long mActiveUntilMs;
+    /**
+     * Fin de la période active, quelle qu'en soit l'origine.
+     */
+    private long mWarmUntilMs;
+    private long mActiveMs;
+    private int mWakeups;
+
+    /**
+     * @param tailMs  délai d'inactivité avant le retour en veille
+     * @param startMs début de la mesure
+     */
+    public RadioActivityMeter(long tailMs, long startMs) {
+        mTailMs = tailMs;
+        mStartMs = startMs;
+    }
+
+    /**
+     * Enregistre un échange de l'application (début d'une requête ou réception d'une réponse).
+     *
+     * @param nowMs date courante
+     * @return vrai si l'échange a réveillé la radio
+     */
+    public boolean onTransfer(long nowMs) {
+        long end = nowMs + mTailMs;
+        boolean wakeup = nowMs >= mWarmUntilMs;
+        if (wakeup) {
+            mWakeups++;
+            AlertMetrics.get().increment(MetricsSnapshot.COUNTER_RADIO_WAKEUPS);
+        }
+        long added = nowMs >= mActiveUntilMs ? mTailMs : Math.max(0, end - mActiveUntilMs);
+        mActiveMs += added;
+        // la queue est comptée dès l'échange
+        AlertMetrics.get().add(MetricsSnapshot.COUNTER_RADIO_ACTIVE_MS, added);
+        mActiveUntilMs = Math.max(mActiveUntilMs, end);
+        mWarmUntilMs = Math.max(mWarmUntilMs, end);
+        return wakeup;
+    }
+
+    /**
+     * Signale que la radio est active à l'initiative du système ou d'une autre application.
+     *
+     * @param nowMs date courante
+     */
+    public void onRadioActive(long nowMs) {
+        mWarmUntilMs = Math.max(mWarmUntilMs, nowMs + mTailMs);
+    }
+
+    /**
+     * @param nowMs date courante
+     * @return vrai si la radio est encore active : un échange ne coûte alors aucun réveil
+     */
+    public boolean isWarm(long nowMs) {
+        return nowMs < mWarmUntilMs;
+    }
+
+    /**
+     * @param nowMs date courante
+     * @return temps actif imputé à l'application jusqu'à {@code nowMs}
+     */
+    public long getActiveMs(long nowMs) {
+        return mActiveMs - Math.max(0, mActiveUntilMs - nowMs);
+    }
+
+    /**
+     * @param nowMs date courante
+     * @return temps actif imputé à l'application, ramené à une heure de mesure
+     */
+    public long getActiveMsPerHour(long nowMs) {
+        long elapsed = nowMs - mStartMs;
+        return elapsed <= 0 ? 0 : getActiveMs(nowMs) * HOUR_MS / elapsed;
+    }
+
+    /**
+     * @return nombre de réveils de la radio causés par l'application
+     */
+    public int getWakeups() {
+        return mWakeups;
+    }
+}
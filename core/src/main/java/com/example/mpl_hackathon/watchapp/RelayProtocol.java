@@ -0,0 +1,228 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * <p>
+ * Description : Messages échangés entre la montre et le téléphone pour le relais des alertes via
+ * la MessageApi, et profil du porteur publié par le téléphone via la DataApi. Ce format est
+ * partagé par les applications de la montre et du téléphone.
+ * </p>
+ * <pre>
+ * alerte  (PATH_ALERT) : version, id (long), url (UTF), type de contenu (UTF), données
+ * accusé  (PATH_ACK)   : version, id (long), statut HTTP (int, 0 si pas de réponse),
+ *                        attente sur le téléphone (int, ms), envoi par le téléphone (int, ms)
+ * ping    (PATH_PING)  : version, nonce (long) - renvoyé tel quel sur PATH_PONG
+ * mesures (PATH_METRICS_PULL) : vide - la montre répond sur PATH_METRICS avec une
+ *                        photographie de ses mesures ({@link MetricsSnapshot})
+ * profil  (PATH_PROFILE, DataApi) : version, nom (UTF), prénom (UTF), téléphone (UTF)
+ * </pre>
+ *
+ * @version 1.0
+ */
+public final class RelayProtocol {
+
+    public static final String PATH_ALERT = "/alert/relay";
+    public static final String PATH_ACK = "/alert/relay/ack";
+    public static final String PATH_PING = "/alert/relay/ping";
+    public static final String PATH_PONG = "/alert/relay/pong";
+    public static final String PATH_METRICS_PULL = "/alert/metrics/pull";
+    public static final String PATH_METRICS = "/alert/metrics";
+    public static final String PATH_PROFILE = "/profile";
+
+    public static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private RelayProtocol() {
+    }
+
+    /**
+     * Alerte à relayer.
+     */
+    public static final class Alert {
+        public final long id;
+        public final String url;
+        public final String contentType;
+        public final byte[] payload;
+
+        public Alert(long id, String url, String contentType, byte[] payload) {
+            this.id = id;
+            this.url = url;
+            this.contentType = contentType;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Accusé de réception renvoyé par le téléphone.
+     */
+    public static final class Ack {
+        public final long id;
+        public final int httpStatus;
+        public final int phoneQueueMs;
+        public final int phoneForwardMs;
+
+        public Ack(long id, int httpStatus, int phoneQueueMs, int phoneForwardMs) {
+            this.id = id;
+            this.httpStatus = httpStatus;
+            this.phoneQueueMs = phoneQueueMs;
+            this.phoneForwardMs = phoneForwardMs;
+        }
+
+        /**
+         * @return vrai si le serveur a accepté l'alerte
+         */
+        public boolean isSuccess() {
+            return httpStatus >= 200 && httpStatus < 300;
+        }
+    }
+
+    /**
+     * Renvoie la clé d'idempotence d'une alerte relayée (identifiant de l'alerte et numéro de
+     * mise à jour), qui ne dépend pas de l'identifiant de relais : celui-ci repart de zéro
+     * quand la boîte d'envoi de la montre est recréée.
+     *
+     * @param alert alerte relayée
+     * @return clé de la forme {@code alert_id/update_seq}, null si l'alerte n'en porte pas
+     * (format inconnu, alerte invalide ou ancienne version de la montre)
+     */
+    public static String idempotencyKey(Alert alert) {
+        byte[] payload = alert.payload;
+        if (BinaryAlertEncoder.CONTENT_TYPE.equals(alert.contentType)) {
+            WireBuffer in = WireBuffer.wrap(payload, 0);
+            try {
+                if (in.readByte() != BinaryAlertEncoder.VERSION) {
+                    return null;
+                }
+                // drapeaux
+                in.readByte();
+                return Long.toHexString(in.readLong()) + '/' + in.readVarint();
+            } catch (ArrayIndexOutOfBoundsException e) {
+                return null;
+            }
+        }
+        if (alert.contentType == null || !alert.contentType.startsWith("application/json")) {
+            return null;
+        }
+        String json = new String(payload, UTF_8);
+        String alertId = jsonValue(json, "\"alert_id\":\"", '"');
+        String updateSeq = jsonValue(json, "\"update_seq\":", ',');
+        if (alertId == null || updateSeq == null) {
+            return null;
+        }
+        return alertId.toLowerCase(Locale.US) + '/' + updateSeq.trim();
+    }
+
+    /**
+     * @return valeur qui suit le préfixe jusqu'au délimiteur (ou à la fin de l'objet), null si
+     * le préfixe est absent
+     */
+    private static String jsonValue(String json, String prefix, char end) {
+        int start = json.indexOf(prefix);
+        if (start < 0) {
+            return null;
+        }
+        start += prefix.length();
+        int stop = start;
+        while (stop < json.length() && json.charAt(stop) != end && json.charAt(stop) != '}') {
+            stop++;
+        }
+        return stop > start ? json.substring(start, stop) : null;
+    }
+
+    public static byte[] encodeAlert(Alert alert) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(alert.payload.length + 128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeLong(alert.id);
+            out.writeUTF(alert.url);
+            out.writeUTF(alert.contentType);
+            out.write(alert.payload);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Alert decodeAlert(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        checkVersion(in);
+        long id = in.readLong();
+        String url = in.readUTF();
+        String contentType = in.readUTF();
+        byte[] payload = new byte[in.available()];
+        in.readFully(payload);
+        return new Alert(id, url, contentType, payload);
+    }
+
+    public static byte[] encodeAck(Ack ack) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeLong(ack.id);
+            out.writeInt(ack.httpStatus);
+            out.writeInt(ack.phoneQueueMs);
+            out.writeInt(ack.phoneForwardMs);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Ack decodeAck(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        checkVersion(in);
+        return new Ack(in.readLong(), in.readInt(), in.readInt(), in.readInt());
+    }
+
+    public static byte[] encodePing(long nonce) {
+        byte[] data = new byte[9];
+        data[0] = VERSION;
+        for (int i = 0; i < 8; i++) {
+            data[1 + i] = (byte) (nonce >>> (56 - 8 * i));
+        }
+        return data;
+    }
+
+    public static long decodePing(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        checkVersion(in);
+        return in.readLong();
+    }
+
+    public static byte[] encodeProfile(UserProfile profile) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeUTF(profile.getLastname());
+            out.writeUTF(profile.getFirstname());
+            out.writeUTF(profile.getPhoneNumber());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static UserProfile decodeProfile(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        checkVersion(in);
+        return new UserProfile(in.readUTF(), in.readUTF(), in.readUTF());
+    }
+
+    private static void checkVersion(DataInputStream in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported relay message version " + version);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Etat de la montre utilisé par une {@link SamplingPolicy} : mouvement détecté,
+ * niveau de batterie, précision de la dernière position, alerte en cours et présence de
+ * l'écran d'alerte au premier plan. Les dates sont
+ * exprimées dans une même base de temps monotone (par exemple
+ * {@code SystemClock.elapsedRealtime()}).
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class SamplingContext {
+
+    /**
+     * Mouvement inconnu (aucune position reçue).
+     */
+    public static final int MOTION_UNKNOWN = 0;
+    /**
+     * Porteur immobile.
+     */
+    public static final int MOTION_STILL = 1;
+    /**
+     * Porteur à pied.
+     */
+    public static final int MOTION_WALKING = 2;
+    /**
+     * Porteur en véhicule.
+     */
+    public static final int MOTION_VEHICLE = 3;
+
+    /**
+     * Vitesses (m/s) séparant les différents types de mouvement.
+     */
+    private static final float STILL_MAX_SPEED = 0.5f;
+    private static final float WALKING_MAX_SPEED = 3f;
+
+    private long mNowMs;
+    private int mMotion = MOTION_UNKNOWN;
+    private int mBatteryPercent = 100;
+    private boolean mCharging;
+    private float mAccuracyMeters = Float.NaN;
+    private long mAlertBoostUntilMs = Long.MIN_VALUE;
+    private boolean mForeground = true;
+
+    /**
+     * Détermine le type de mouvement à partir d'une vitesse.
+     *
+     * @param speedMetersPerSecond vitesse en m/s
+     * @return type de mouvement
+     */
+    public static int motionFromSpeed(float speedMetersPerSecond) {
+        if (Float.isNaN(speedMetersPerSecond) || speedMetersPerSecond < 0) {
+            return MOTION_UNKNOWN;
+        }
+        if (speedMetersPerSecond < STILL_MAX_SPEED) {
+            return MOTION_STILL;
+        }
+        if (speedMetersPerSecond < WALKING_MAX_SPEED) {
+            return MOTION_WALKING;
+        }
+        return MOTION_VEHICLE;
+    }
+
+    public long getNowMs() {
+        return mNowMs;
+    }
+
+    public void setNowMs(long nowMs) {
+        mNowMs = nowMs;
+    }
+
+    public int getMotion() {
+        return mMotion;
+    }
+
+    public void setMotion(int motion) {
+        mMotion = motion;
+    }
+
+    public int getBatteryPercent() {
+        return mBatteryPercent;
+    }
+
+    public void setBatteryPercent(int batteryPercent) {
+        mBatteryPercent = batteryPercent;
+    }
+
+    public boolean isCharging() {
+        return mCharging;
+    }
+
+    public void setCharging(boolean charging) {
+        mCharging = charging;
+    }
+
+    /**
+     * @return précision (m) de la dernière position, NaN si aucune position n'a été reçue
+     */
+    public float getAccuracyMeters() {
+        return mAccuracyMeters;
+    }
+
+    public void setAccuracyMeters(float accuracyMeters) {
+        mAccuracyMeters = accuracyMeters;
+    }
+
+    /**
+     * Indique qu'une alerte vient d'être déclenchée : la fréquence maximale est demandée
+     * jusqu'à la date donnée.
+     *
+     * @param untilMs fin de la fenêtre de fréquence maximale
+     */
+    public void setAlertBoostUntilMs(long untilMs) {
+        mAlertBoostUntilMs = untilMs;
+    }
+
+    public long getAlertBoostUntilMs() {
+        return mAlertBoostUntilMs;
+    }
+
+    /**
+     * @return vrai si une alerte est en cours à la date courante
+     */
+    public boolean isAlertActive() {
+        return mNowMs < mAlertBoostUntilMs;
+    }
+
+    /**
+     * @return vrai si l'écran d'alerte est au premier plan
+     */
+    public boolean isForeground() {
+        return mForeground;
+    }
+
+    public void setForeground(boolean foreground) {
+        mForeground = foreground;
+    }
+}
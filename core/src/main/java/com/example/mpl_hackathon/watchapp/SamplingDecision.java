@@ -0,0 +1,104 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Paramètres de mise à jour de la position choisis par une
+ * {@link SamplingPolicy}. Les priorités reprennent les valeurs des constantes de
+ * {@code com.google.android.gms.location.LocationRequest} afin de pouvoir être appliquées
+ * directement.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class SamplingDecision {
+
+    /**
+     * Equivalent de {@code LocationRequest.PRIORITY_HIGH_ACCURACY}.
+     */
+    public static final int PRIORITY_HIGH_ACCURACY = 100;
+    /**
+     * Equivalent de {@code LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY}.
+     */
+    public static final int PRIORITY_BALANCED_POWER_ACCURACY = 102;
+    /**
+     * Equivalent de {@code LocationRequest.PRIORITY_LOW_POWER}.
+     */
+    public static final int PRIORITY_LOW_POWER = 104;
+
+    private final long mIntervalMs;
+    private final long mFastestIntervalMs;
+    private final int mPriority;
+    private final long mMaxWaitTimeMs;
+
+    /**
+     * @param intervalMs        intervalle désiré entre deux mises à jour
+     * @param fastestIntervalMs intervalle minimal entre deux mises à jour
+     * @param priority          priorité de la requête
+     */
+    public SamplingDecision(long intervalMs, long fastestIntervalMs, int priority) {
+        this(intervalMs, fastestIntervalMs, priority, 0);
+    }
+
+    /**
+     * @param intervalMs        intervalle désiré entre deux mises à jour
+     * @param fastestIntervalMs intervalle minimal entre deux mises à jour
+     * @param priority          priorité de la requête
+     * @param maxWaitTimeMs     délai maximal de livraison des positions, regroupées par le
+     *                          fournisseur (0 pour une livraison immédiate)
+     */
+    public SamplingDecision(long intervalMs, long fastestIntervalMs, int priority,
+                            long maxWaitTimeMs) {
+        mIntervalMs = intervalMs;
+        mFastestIntervalMs = fastestIntervalMs;
+        mPriority = priority;
+        mMaxWaitTimeMs = maxWaitTimeMs;
+    }
+
+    public long getIntervalMs() {
+        return mIntervalMs;
+    }
+
+    public long getFastestIntervalMs() {
+        return mFastestIntervalMs;
+    }
+
+    public int getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * @return délai maximal de livraison des positions (0 pour une livraison immédiate)
+     */
+    public long getMaxWaitTimeMs() {
+        return mMaxWaitTimeMs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SamplingDecision)) {
+            return false;
+        }
+        SamplingDecision other = (SamplingDecision) o;
+        return mIntervalMs == other.mIntervalMs
+                && mFastestIntervalMs == other.mFastestIntervalMs
+                && mPriority == other.mPriority
+                && mMaxWaitTimeMs == other.mMaxWaitTimeMs;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (mIntervalMs ^ (mIntervalMs >>> 32));
+        result = 31 * result + (int) (mFastestIntervalMs ^ (mFastestIntervalMs >>> 32));
+        result = 31 * result + mPriority;
+        return 31 * result + (int) (mMaxWaitTimeMs ^ (mMaxWaitTimeMs >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "SamplingDecision{interval=" + mIntervalMs + ", fastest=" + mFastestIntervalMs
+                + ", priority=" + mPriority + ", maxWait=" + mMaxWaitTimeMs + "}";
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Politique d'échantillonnage de la position. A partir de l'état courant de la
+ * montre (mouvement, batterie, précision, alerte en cours), détermine l'intervalle et la priorité
+ * des mises à jour de la position. Une implémentation doit être déterministe : la même
+ * entrée produit toujours la même décision.
+ * </p>
+ *
+ * @version 1.0
+ */
+public interface SamplingPolicy {
+
+    /**
+     * Détermine les paramètres de mise à jour de la position.
+     *
+     * @param context état courant de la montre
+     * @return paramètres de mise à jour à appliquer
+     */
+    SamplingDecision decide(SamplingContext context);
+}
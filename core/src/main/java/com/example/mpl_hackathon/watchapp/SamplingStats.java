@@ -0,0 +1,102 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.util.Locale;
+
+/**
+ * <p>
+ * Description : Mesure le coût et la qualité de l'échantillonnage de la position : nombre de
+ * positions reçues par heure et précision (ainsi que l'âge) de la position disponible au moment
+ * des alertes.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class SamplingStats {
+
+    private static final long MS_PER_HOUR = 3600 * 1000L;
+
+    private final long mStartMs;
+    private long mFixCount;
+    private int mAlertCount;
+    private double mAlertAccuracySum;
+    private long mAlertFixAgeSumMs;
+    private int mAlertWithoutFixCount;
+
+    /**
+     * @param startMs début de la mesure
+     */
+    public SamplingStats(long startMs) {
+        mStartMs = startMs;
+    }
+
+    /**
+     * Enregistre la réception d'une position.
+     */
+    public synchronized void onFix() {
+        mFixCount++;
+    }
+
+    /**
+     * Enregistre la position disponible au moment d'une alerte.
+     *
+     * @param accuracyMeters précision de la position, NaN si aucune position
+     * @param fixAgeMs       âge de la position
+     */
+    public synchronized void onAlert(float accuracyMeters, long fixAgeMs) {
+        mAlertCount++;
+        if (Float.isNaN(accuracyMeters)) {
+            mAlertWithoutFixCount++;
+        } else {
+            mAlertAccuracySum += accuracyMeters;
+            mAlertFixAgeSumMs += fixAgeMs;
+        }
+    }
+
+    /**
+     * @param nowMs date courante
+     * @return nombre de positions reçues par heure depuis le début de la mesure
+     */
+    public synchronized double getFixesPerHour(long nowMs) {
+        long elapsed = Math.max(1, nowMs - mStartMs);
+        return mFixCount * (double) MS_PER_HOUR / elapsed;
+    }
+
+    /**
+     * @return précision moyenne (m) de la position au moment des alertes, NaN si aucune
+     */
+    public synchronized double getMeanAlertAccuracy() {
+        int withFix = mAlertCount - mAlertWithoutFixCount;
+        return withFix == 0 ? Double.NaN : mAlertAccuracySum / withFix;
+    }
+
+    /**
+     * @return âge moyen (ms) de la position au moment des alertes, -1 si aucune
+     */
+    public synchronized long getMeanAlertFixAgeMs() {
+        int withFix = mAlertCount - mAlertWithoutFixCount;
+        return withFix == 0 ? -1 : mAlertFixAgeSumMs / withFix;
+    }
+
+    public synchronized long getFixCount() {
+        return mFixCount;
+    }
+
+    public synchronized int getAlertCount() {
+        return mAlertCount;
+    }
+
+    public synchronized int getAlertWithoutFixCount() {
+        return mAlertWithoutFixCount;
+    }
+
+    /**
+     * @param nowMs date courante
+     * @return résumé lisible des mesures
+     */
+    public synchronized String summary(long nowMs) {
+        return String.format(Locale.US,
+                "fixes/h=%.1f alerts=%d withoutFix=%d meanAccuracy=%.1fm meanFixAge=%dms",
+                getFixesPerHour(nowMs), mAlertCount, mAlertWithoutFixCount,
+                getMeanAlertAccuracy(), getMeanAlertFixAgeMs());
+    }
+}
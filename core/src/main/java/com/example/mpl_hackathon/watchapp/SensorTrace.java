@@ -0,0 +1,124 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Description : Enregistrement d'échantillons de l'accéléromètre et du gyroscope, rejoué sur le
+ * {@link FallDetector} pour le tester ou le mesurer sur une JVM. Format texte, une ligne par
+ * échantillon, dans l'ordre de réception :
+ * <pre>
+ * a,timestamp_ns,x,y,z    (accéléromètre, m/s²)
+ * g,timestamp_ns,x,y,z    (gyroscope, rad/s)
+ * </pre>
+ * Les lignes vides et celles commençant par {@code #} sont ignorées.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class SensorTrace {
+
+    public static final byte ACCELEROMETER = 'a';
+    public static final byte GYROSCOPE = 'g';
+
+    private byte[] mTypes = new byte[256];
+    private long[] mTimestamps = new long[256];
+    private float[] mValues = new float[3 * 256];
+    private int mSize;
+
+    /**
+     * Ajoute un échantillon.
+     *
+     * @param type           {@link #ACCELEROMETER} ou {@link #GYROSCOPE}
+     * @param timestampNanos date de l'échantillon
+     * @param x              valeur selon x
+     * @param y              valeur selon y
+     * @param z              valeur selon z
+     */
+    public void add(byte type, long timestampNanos, float x, float y, float z) {
+        if (type != ACCELEROMETER && type != GYROSCOPE) {
+            throw new IllegalArgumentException("Unknown sensor " + (char) type);
+        }
+        if (mSize == mTypes.length) {
+            int capacity = mSize * 2;
+            mTypes = Arrays.copyOf(mTypes, capacity);
+            mTimestamps = Arrays.copyOf(mTimestamps, capacity);
+            mValues = Arrays.copyOf(mValues, 3 * capacity);
+        }
+        mTypes[mSize] = type;
+        mTimestamps[mSize] = timestampNanos;
+        mValues[3 * mSize] = x;
+        mValues[3 * mSize + 1] = y;
+        mValues[3 * mSize + 2] = z;
+        mSize++;
+    }
+
+    /**
+     * Transmet les échantillons au détecteur, dans l'ordre d'enregistrement.
+     *
+     * @param detector détecteur de chute
+     */
+    public void replay(FallDetector detector) {
+        for (int i = 0; i < mSize; i++) {
+            float x = mValues[3 * i];
+            float y = mValues[3 * i + 1];
+            float z = mValues[3 * i + 2];
+            if (mTypes[i] == ACCELEROMETER) {
+                detector.onAccelerometer(mTimestamps[i], x, y, z);
+            } else {
+                detector.onGyroscope(mTimestamps[i], x, y, z);
+            }
+        }
+    }
+
+    /**
+     * @return nombre d'échantillons
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return durée couverte par l'enregistrement (ns)
+     */
+    public long getDurationNanos() {
+        return mSize == 0 ? 0 : mTimestamps[mSize - 1] - mTimestamps[0];
+    }
+
+    /**
+     * Lit un enregistrement.
+     *
+     * @param reader enregistrement au format texte
+     * @return échantillons lus
+     * @throws IOException si l'enregistrement ne peut être lu ou est invalide
+     */
+    public static SensorTrace read(Reader reader) throws IOException {
+        SensorTrace trace = new SensorTrace();
+        BufferedReader in = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length != 5 || fields[0].length() != 1) {
+                throw new IOException("Invalid sample line " + lineNumber);
+            }
+            try {
+                trace.add((byte) fields[0].charAt(0), Long.parseLong(fields[1].trim()),
+                        Float.parseFloat(fields[2]), Float.parseFloat(fields[3]),
+                        Float.parseFloat(fields[4]));
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException comprise
+                throw new IOException("Invalid sample line " + lineNumber, e);
+            }
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Mesure le démarrage à froid de l'application : durée entre la création de
+ * l'activité et l'affichage de la première image, puis jusqu'au moment où une alerte peut être
+ * envoyée avec tous les services initialisés. Chaque étape n'est enregistrée qu'une fois.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class StartupTrace {
+
+    /**
+     * Première image de l'activité dessinée : le bouton d'alerte est visible et interactif.
+     */
+    public static final int PHASE_FIRST_FRAME = 0;
+    /**
+     * Services de localisation et d'envoi initialisés.
+     */
+    public static final int PHASE_ALERT_READY = 1;
+
+    private static final String[] PHASE_NAMES = {"first_frame", "alert_ready"};
+
+    private final long mStartMs;
+    private final long[] mPhaseMs = new long[PHASE_NAMES.length];
+
+    /**
+     * @param startMs date de début du démarrage (horloge monotone)
+     */
+    public StartupTrace(long startMs) {
+        mStartMs = startMs;
+        for (int i = 0; i < mPhaseMs.length; i++) {
+            mPhaseMs[i] = -1;
+        }
+    }
+
+    /**
+     * Enregistre la fin d'une étape.
+     *
+     * @param phase étape ({@link #PHASE_FIRST_FRAME}...)
+     * @param nowMs date courante (horloge monotone)
+     * @return vrai si l'étape n'avait pas encore été enregistrée
+     */
+    public synchronized boolean mark(int phase, long nowMs) {
+        if (mPhaseMs[phase] >= 0) {
+            return false;
+        }
+        mPhaseMs[phase] = Math.max(0, nowMs - mStartMs);
+        return true;
+    }
+
+    /**
+     * @param phase étape
+     * @return durée entre le début du démarrage et la fin de l'étape (ms), -1 si non atteinte
+     */
+    public synchronized long elapsedMs(int phase) {
+        return mPhaseMs[phase];
+    }
+
+    /**
+     * @return résumé des étapes atteintes, pour les logs
+     */
+    public synchronized String summary() {
+        StringBuilder summary = new StringBuilder("Startup :");
+        for (int i = 0; i < mPhaseMs.length; i++) {
+            summary.append(' ').append(PHASE_NAMES[i]).append('=');
+            if (mPhaseMs[i] >= 0) {
+                summary.append(mPhaseMs[i]).append("ms");
+            } else {
+                summary.append('-');
+            }
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Description : Source de positions rejouant un {@link LocationTrace} sous une horloge
+ * virtuelle, avancée par {@link #advanceTo(long)} : des heures de déplacement sont rejouées en
+ * quelques millisecondes, toujours de la même façon. Le fournisseur est interrogé à l'intervalle
+ * demandé ; chaque interrogation est une position demandée, et fournit la dernière position
+ * enregistrée si elle est récente, le fournisseur disponible et la position pas encore livrée.
+ * </p>
+ * <p>
+ * Comme pour le fournisseur fusionné, les positions sont regroupées lorsque l'attente maximale
+ * demandée atteint deux intervalles, et livrées ensemble à son expiration ou à un
+ * {@link #flush()} : chaque livraison est un réveil de l'application. La priorité demandée n'a
+ * pas d'effet : la précision des positions est celle de l'enregistrement.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class TraceLocationSource implements LocationSource {
+
+    /**
+     * Âge maximal de la dernière position enregistrée pour qu'une interrogation la fournisse ;
+     * au-delà, l'enregistrement présente un trou du signal.
+     */
+    public static final long MAX_FIX_AGE_MS = 5000;
+
+    private final LocationTrace mTrace;
+    private final long mEpochOffsetMs;
+    private long mNowMs;
+
+    private SamplingDecision mDecision;
+    private LocationSource.Listener mListener;
+    private long mNextPollMs;
+    private long mLastPollMs = Long.MIN_VALUE;
+    private int mLastIndex = -1;
+    private boolean mAvailable = true;
+    private int mNextEvent;
+
+    private int[] mPending = new int[16];
+    private int mPendingCount;
+    private long mDeliveryMs;
+
+    private long mFixesRequested;
+    private long mFixesDelivered;
+    private long mWakeups;
+    private int mProviderLosses;
+
+    /**
+     * Crée une source dont l'horloge virtuelle est au début de l'enregistrement.
+     *
+     * @param trace         enregistrement rejoué
+     * @param epochOffsetMs date (ms depuis epoch) correspondant à la date 0 de l'enregistrement
+     */
+    public TraceLocationSource(LocationTrace trace, long epochOffsetMs) {
+        mTrace = trace;
+        mEpochOffsetMs = epochOffsetMs;
+        mNowMs = trace.getStartMs();
+    }
+
+    @Override
+    public long elapsedRealtimeMs() {
+        return mNowMs;
+    }
+
+    @Override
+    public long currentTimeMs() {
+        return mEpochOffsetMs + mNowMs;
+    }
+
+    @Override
+    public void requestUpdates(SamplingDecision decision, LocationSource.Listener listener) {
+        boolean requesting = mListener != null;
+        mDecision = decision;
+        mListener = listener;
+        // première position aussitôt ; ensuite, l'intervalle le plus court reste respecté
+        mNextPollMs = requesting && mLastPollMs != Long.MIN_VALUE
+                ? Math.max(mNowMs, mLastPollMs + decision.getFastestIntervalMs()) : mNowMs;
+        if (!isBatching(decision)) {
+            deliver();
+        }
+    }
+
+    @Override
+    public void removeUpdates() {
+        mListener = null;
+        mDecision = null;
+        mPendingCount = 0;
+    }
+
+    @Override
+    public void flush() {
+        deliver();
+    }
+
+    /**
+     * Avance l'horloge virtuelle en rejouant, dans l'ordre, les interrogations du fournisseur,
+     * les livraisons et les changements de disponibilité de l'enregistrement.
+     *
+     * @param elapsedMs nouvelle date de l'horloge (ms), pas antérieure à la date courante
+     */
+    public void advanceTo(long elapsedMs) {
+        if (elapsedMs < mNowMs) {
+            throw new IllegalArgumentException("Cannot go back to " + elapsedMs);
+        }
+        while (true) {
+            long event = mNextEvent < mTrace.getAvailabilityEventCount()
+                    ? mTrace.getAvailabilityEventTime(mNextEvent) : Long.MAX_VALUE;
+            long delivery = mPendingCount > 0 ? mDeliveryMs : Long.MAX_VALUE;
+            long poll = mListener != null ? mNextPollMs : Long.MAX_VALUE;
+            long next = Math.min(event, Math.min(delivery, poll));
+            if (next > elapsedMs) {
+                break;
+            }
+            mNowMs = Math.max(mNowMs, next);
+            if (event == next) {
+                onAvailabilityChanged(mTrace.isAvailableAfter(mNextEvent++));
+            } else if (delivery == next) {
+                deliver();
+            } else {
+                poll();
+            }
+        }
+        mNowMs = elapsedMs;
+    }
+
+    private void onAvailabilityChanged(boolean available) {
+        if (available == mAvailable) {
+            return;
+        }
+        mAvailable = available;
+        if (!available) {
+            mProviderLosses++;
+        }
+        if (mListener != null) {
+            mListener.onAvailabilityChanged(available);
+        }
+    }
+
+    private void poll() {
+        mFixesRequested++;
+        mLastPollMs = mNowMs;
+        mNextPollMs = mNowMs + Math.max(1, mDecision.getIntervalMs());
+        if (!mAvailable) {
+            return;
+        }
+        int index = mTrace.indexAt(mNowMs);
+        if (index < 0 || index == mLastIndex || mNowMs - mTrace.getTime(index) > MAX_FIX_AGE_MS) {
+            return;
+        }
+        mLastIndex = index;
+        if (mPendingCount == mPending.length) {
+            mPending = Arrays.copyOf(mPending, mPendingCount * 2);
+        }
+        mPending[mPendingCount++] = index;
+        if (!isBatching(mDecision)) {
+            deliver();
+        } else if (mPendingCount == 1) {
+            mDeliveryMs = mNowMs + mDecision.getMaxWaitTimeMs();
+        }
+    }
+
+    private static boolean isBatching(SamplingDecision decision) {
+        return decision.getMaxWaitTimeMs() >= 2 * decision.getIntervalMs();
+    }
+
+    private void deliver() {
+        int count = mPendingCount;
+        if (count == 0 || mListener == null) {
+            return;
+        }
+        // la livraison peut entraîner une nouvelle demande (changement d'échantillonnage) : les
+        // positions en attente sont retirées avant ; seule une interrogation en ajoute
+        mPendingCount = 0;
+        mWakeups++;
+        for (int i = 0; i < count && mListener != null; i++) {
+            int index = mPending[i];
+            long time = mTrace.getTime(index);
+            mFixesDelivered++;
+            mListener.onFix(mEpochOffsetMs + time, time * 1000000L, mTrace.getLatitude(index),
+                    mTrace.getLongitude(index), mTrace.getAccuracy(index),
+                    mTrace.getSpeed(index));
+        }
+    }
+
+    /**
+     * @return nombre d'interrogations du fournisseur
+     */
+    public long getFixesRequested() {
+        return mFixesRequested;
+    }
+
+    /**
+     * @return nombre de positions livrées
+     */
+    public long getFixesDelivered() {
+        return mFixesDelivered;
+    }
+
+    /**
+     * @return nombre de livraisons, chacune réveillant l'application
+     */
+    public long getWakeups() {
+        return mWakeups;
+    }
+
+    /**
+     * @return nombre de pertes du fournisseur rejouées
+     */
+    public int getProviderLosses() {
+        return mProviderLosses;
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Trajectoire d'une alerte en cours d'envoi. Les positions reçues sont accumulées
+ * puis simplifiées au moment de l'envoi ({@link #flushTo(AlertPayload)}) par l'algorithme de
+ * Douglas-Peucker, avec la distance synchronisée : un point supprimé est à moins de la tolérance
+ * de la position interpolée dans le temps entre les points conservés qui l'entourent. Le
+ * dernier point envoyé sert d'origine à la simplification suivante : les morceaux successifs
+ * prolongent la trajectoire déjà envoyée sans la réencoder, avec la même garantie d'erreur.
+ * </p>
+ * <p>
+ * Les tableaux sont alloués à la construction ; l'ajout de points et la simplification
+ * n'allouent aucun objet. Toutes les méthodes doivent être appelées depuis le même thread.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class Trajectory implements FixRingBuffer.Visitor {
+
+    /**
+     * Tolérance par défaut (m), du même ordre que la précision des positions.
+     */
+    public static final double DEFAULT_TOLERANCE_METERS = 5;
+
+    private static final double METERS_PER_DEGREE = 111320;
+
+    private final double mToleranceMeters;
+    private final int mCapacity;
+    /**
+     * Points en attente d'envoi, dans l'ordre chronologique, à partir de l'indice 1 ; l'indice
+     * 0 contient le dernier point envoyé.
+     */
+    private final long[] mTimes;
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+    private final float[] mAccuracies;
+    private int mPendingCount;
+    /**
+     * Rang du dernier point en attente déjà simplifié (0 pour l'origine).
+     */
+    private int mSimplifiedCount;
+    private boolean mHasAnchor;
+    private int mSentCount;
+
+    private final boolean[] mKeep;
+    private final int[] mStack;
+
+    // points de la trace, du plus récent au plus ancien (voir addTrail)
+    private final long[] mTrailTimes;
+    private final double[] mTrailLatitudes;
+    private final double[] mTrailLongitudes;
+    private final float[] mTrailAccuracies;
+    private int mTrailCount;
+
+    /**
+     * @param capacity        nombre maximal de points en attente d'envoi
+     * @param toleranceMeters écart maximal (m) entre la trajectoire simplifiée et les positions
+     */
+    public Trajectory(int capacity, double toleranceMeters) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2");
+        }
+        mCapacity = capacity;
+        mToleranceMeters = toleranceMeters;
+        mTimes = new long[capacity + 1];
+        mLatitudes = new double[capacity + 1];
+        mLongitudes = new double[capacity + 1];
+        mAccuracies = new float[capacity + 1];
+        mKeep = new boolean[capacity + 1];
+        mStack = new int[2 * (capacity + 1)];
+        mTrailTimes = new long[capacity];
+        mTrailLatitudes = new double[capacity];
+        mTrailLongitudes = new double[capacity];
+        mTrailAccuracies = new float[capacity];
+    }
+
+    /**
+     * Commence une nouvelle trajectoire.
+     */
+    public void reset() {
+        mPendingCount = 0;
+        mSimplifiedCount = 0;
+        mHasAnchor = false;
+        mSentCount = 0;
+    }
+
+    /**
+     * Ajoute une position. Une position qui n'est pas postérieure à la précédente est ignorée.
+     * Si la capacité est atteinte, les points en attente sont simplifiés ; s'ils sont tous
+     * nécessaires, le plus ancien est abandonné.
+     *
+     * @param timeMs         date de la position (ms depuis epoch)
+     * @param latitude       latitude en degrés
+     * @param longitude      longitude en degrés
+     * @param accuracyMeters précision en mètres
+     */
+    public void add(long timeMs, double latitude, double longitude, float accuracyMeters) {
+        int last = mPendingCount;
+        if ((last > 0 || mHasAnchor) && timeMs <= mTimes[last]) {
+            return;
+        }
+        if (mPendingCount == mCapacity) {
+            compact();
+            if (mPendingCount == mCapacity) {
+                dropOldest();
+            }
+        }
+        int index = ++mPendingCount;
+        mTimes[index] = timeMs;
+        mLatitudes[index] = latitude;
+        mLongitudes[index] = longitude;
+        mAccuracies[index] = accuracyMeters;
+    }
+
+    /**
+     * Ajoute les dernières positions d'une trace, dans l'ordre chronologique.
+     *
+     * @param trail trace des positions
+     * @param max   nombre maximal de positions ajoutées
+     */
+    public void addTrail(FixRingBuffer trail, int max) {
+        mTrailCount = 0;
+        trail.visit(this, Math.min(max, mCapacity));
+        for (int i = mTrailCount - 1; i >= 0; i--) {
+            add(mTrailTimes[i], mTrailLatitudes[i], mTrailLongitudes[i], mTrailAccuracies[i]);
+        }
+    }
+
+    @Override
+    public void visit(long timeMs, double latitude, double longitude, float accuracyMeters) {
+        int i = mTrailCount++;
+        mTrailTimes[i] = timeMs;
+        mTrailLatitudes[i] = latitude;
+        mTrailLongitudes[i] = longitude;
+        mTrailAccuracies[i] = accuracyMeters;
+    }
+
+    /**
+     * Simplifie les points en attente et place ceux qui sont conservés dans la trace d'une
+     * alerte (au plus {@link AlertPayload#MAX_TRAIL_POINTS}, les suivants restent en attente).
+     *
+     * @param payload alerte dont la trace est vide
+     * @return nombre de points placés dans la trace
+     */
+    public int flushTo(AlertPayload payload) {
+        compact();
+        int count = Math.min(mPendingCount, AlertPayload.MAX_TRAIL_POINTS);
+        payload.setTrailStartIndex(mSentCount);
+        for (int i = 1; i <= count; i++) {
+            payload.addTrailPoint(mTimes[i], mLatitudes[i], mLongitudes[i], mAccuracies[i]);
+        }
+        if (count > 0) {
+            mSentCount += count;
+            mHasAnchor = true;
+            removePending(count);
+        }
+        return count;
+    }
+
+    /**
+     * Retire les {@code count} premiers points en attente ; le dernier retiré devient
+     * l'origine des points suivants.
+     */
+    private void removePending(int count) {
+        int remaining = mPendingCount - count;
+        System.arraycopy(mTimes, count, mTimes, 0, remaining + 1);
+        System.arraycopy(mLatitudes, count, mLatitudes, 0, remaining + 1);
+        System.arraycopy(mLongitudes, count, mLongitudes, 0, remaining + 1);
+        System.arraycopy(mAccuracies, count, mAccuracies, 0, remaining + 1);
+        mPendingCount = remaining;
+        mSimplifiedCount = Math.max(0, mSimplifiedCount - count);
+    }
+
+    /**
+     * Abandonne le plus ancien point en attente ; l'origine est conservée.
+     */
+    private void dropOldest() {
+        int remaining = mPendingCount - 1;
+        System.arraycopy(mTimes, 2, mTimes, 1, remaining);
+        System.arraycopy(mLatitudes, 2, mLatitudes, 1, remaining);
+        System.arraycopy(mLongitudes, 2, mLongitudes, 1, remaining);
+        System.arraycopy(mAccuracies, 2, mAccuracies, 1, remaining);
+        mPendingCount = remaining;
+        mSimplifiedCount = Math.max(0, mSimplifiedCount - 1);
+    }
+
+    /**
+     * Simplifie, en place, les points en attente reçus depuis la simplification précédente. Les
+     * points déjà simplifiés ne sont pas simplifiés de nouveau : l'écart d'un point supprimé
+     * n'est mesuré qu'une fois, par rapport aux points conservés qui l'entourent.
+     */
+    private void compact() {
+        int from = mSimplifiedCount > 0 || mHasAnchor ? mSimplifiedCount : 1;
+        if (mPendingCount - from >= 2) {
+            simplify(mTimes, mLatitudes, mLongitudes, from, mPendingCount, mToleranceMeters,
+                    mKeep, mStack);
+            int kept = from;
+            for (int i = from + 1; i <= mPendingCount; i++) {
+                if (mKeep[i]) {
+                    kept++;
+                    mTimes[kept] = mTimes[i];
+                    mLatitudes[kept] = mLatitudes[i];
+                    mLongitudes[kept] = mLongitudes[i];
+                    mAccuracies[kept] = mAccuracies[i];
+                }
+            }
+            mPendingCount = kept;
+        }
+        mSimplifiedCount = mPendingCount;
+    }
+
+    /**
+     * @return nombre de points déjà placés dans une trace
+     */
+    public int getSentCount() {
+        return mSentCount;
+    }
+
+    /**
+     * @return nombre de points en attente d'envoi
+     */
+    public int getPendingCount() {
+        return mPendingCount;
+    }
+
+    /**
+     * Algorithme de Douglas-Peucker (itératif) avec la distance synchronisée : marque dans
+     * {@code keep} les points de {@code from} à {@code to} (inclus) à conserver. Les extrémités
+     * sont toujours conservées.
+     *
+     * @param times           dates des points, strictement croissantes
+     * @param latitudes       latitudes des points
+     * @param longitudes      longitudes des points
+     * @param from            premier point
+     * @param to              dernier point
+     * @param toleranceMeters écart maximal toléré (m)
+     * @param keep            résultat
+     * @param stack           pile de travail, d'au moins {@code 2 * (to - from + 1)} entiers
+     * @return nombre de points conservés
+     */
+    static int simplify(long[] times, double[] latitudes, double[] longitudes, int from, int to,
+                        double toleranceMeters, boolean[] keep, int[] stack) {
+        for (int i = from; i <= to; i++) {
+            keep[i] = false;
+        }
+        keep[from] = true;
+        keep[to] = true;
+        int kept = from == to ? 1 : 2;
+        double metersPerDegreeLongitude = METERS_PER_DEGREE
+                * Math.cos(Math.toRadians(latitudes[from]));
+        double tolerance = toleranceMeters * toleranceMeters;
+        int top = 0;
+        stack[top++] = from;
+        stack[top++] = to;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            if (last - first < 2) {
+                continue;
+            }
+            double duration = times[last] - times[first];
+            double deltaLatitude = latitudes[last] - latitudes[first];
+            double deltaLongitude = longitudes[last] - longitudes[first];
+            double maxDistance = -1;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                double ratio = (times[i] - times[first]) / duration;
+                double north = (latitudes[i] - latitudes[first] - ratio * deltaLatitude)
+                        * METERS_PER_DEGREE;
+                double east = (longitudes[i] - longitudes[first] - ratio * deltaLongitude)
+                        * metersPerDegreeLongitude;
+                double distance = north * north + east * east;
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+            if (maxDistance > tolerance) {
+                keep[farthest] = true;
+                kept++;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.mpl_hackathon.watchapp;
+
+/**
+ * <p>
+ * Description : Format binaire d'un morceau de trajectoire, utilisé pour la trace des alertes :
+ * <pre>
+ * start_index        varint   (rang du premier point dans la trajectoire de l'alerte)
+ * count              varint
+ * pour chaque point, dans l'ordre chronologique, écart avec le point précédent (avec le point
+ * de base pour le premier) :
+ *   d_latitude       zigzag   (degrés x 1e6)
+ *   d_longitude      zigzag   (degrés x 1e6)
+ *   d_time           zigzag   (ms)
+ *   accuracy         varint   (mètres, arrondi supérieur)
+ * </pre>
+ * Le point de base (la position de l'alerte, ou 0) est connu des deux côtés : chaque morceau se
+ * décode seul, et les morceaux envoyés avec les mises à jour d'une alerte prolongent la
+ * trajectoire déjà envoyée sans la réencoder. Le décodage est fait au fil de l'eau, point par
+ * point ({@link Visitor}), sans construire la trajectoire en mémoire.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class TrajectoryCodec {
+
+    /**
+     * Reçoit les points décodés, dans l'ordre chronologique.
+     */
+    public interface Visitor {
+        /**
+         * @param index          rang du point dans la trajectoire de l'alerte
+         * @param timeMs         date du point (ms depuis epoch)
+         * @param latitude       latitude en degrés
+         * @param longitude      longitude en degrés
+         * @param accuracyMeters précision en mètres
+         */
+        void onTrajectoryPoint(int index, long timeMs, double latitude, double longitude,
+                               float accuracyMeters);
+    }
+
+    /**
+     * Echelle des coordonnées en virgule fixe (environ 11 cm), inférieure à la précision des
+     * positions.
+     */
+    public static final double FIXED_POINT_SCALE = 1e6;
+
+    private TrajectoryCodec() {
+    }
+
+    /**
+     * @param degrees coordonnée en degrés
+     * @return coordonnée en virgule fixe
+     */
+    public static int toFixedPoint(double degrees) {
+        return (int) Math.round(degrees * FIXED_POINT_SCALE);
+    }
+
+    /**
+     * Ecrit la trace d'une alerte.
+     *
+     * @param out           tampon de destination
+     * @param payload       alerte dont la trace est écrite
+     * @param baseLatitude  latitude du point de base (virgule fixe)
+     * @param baseLongitude longitude du point de base (virgule fixe)
+     * @param baseTime      date du point de base (ms depuis epoch)
+     */
+    public static void write(WireBuffer out, AlertPayload payload, int baseLatitude,
+                             int baseLongitude, long baseTime) {
+        int count = payload.getTrailSize();
+        out.writeVarint(payload.getTrailStartIndex());
+        out.writeVarint(count);
+        int previousLatitude = baseLatitude;
+        int previousLongitude = baseLongitude;
+        long previousTime = baseTime;
+        for (int i = 0; i < count; i++) {
+            int latitude = toFixedPoint(payload.getTrailLatitude(i));
+            int longitude = toFixedPoint(payload.getTrailLongitude(i));
+            long time = payload.getTrailTime(i);
+            out.writeZigzag((long) latitude - previousLatitude);
+            out.writeZigzag((long) longitude - previousLongitude);
+            out.writeZigzag(time - previousTime);
+            float accuracy = payload.getTrailAccuracy(i);
+            out.writeVarint(accuracy > 0 ? (long) Math.ceil(accuracy) : 0);
+            previousLatitude = latitude;
+            previousLongitude = longitude;
+            previousTime = time;
+        }
+    }
+
+    /**
+     * Lit un morceau de trajectoire.
+     *
+     * @param in            tampon positionné au début du morceau
+     * @param baseLatitude  latitude du point de base (virgule fixe)
+     * @param baseLongitude longitude du point de base (virgule fixe)
+     * @param baseTime      date du point de base (ms depuis epoch)
+     * @param visitor       reçoit chaque point décodé
+     * @return nombre de points lus
+     * @throws IllegalArgumentException si les données sont invalides
+     */
+    public static int read(WireBuffer in, int baseLatitude, int baseLongitude, long baseTime,
+                           Visitor visitor) {
+        long startIndex = in.readVarint();
+        long count = in.readVarint();
+        if (startIndex > Integer.MAX_VALUE || count > Integer.MAX_VALUE - startIndex) {
+            throw new IllegalArgumentException("Invalid trajectory header");
+        }
+        int latitude = baseLatitude;
+        int longitude = baseLongitude;
+        long time = baseTime;
+        for (int i = 0; i < count; i++) {
+            latitude += (int) in.readZigzag();
+            longitude += (int) in.readZigzag();
+            time += in.readZigzag();
+            visitor.onTrajectoryPoint((int) startIndex + i, time,
+                    latitude / FIXED_POINT_SCALE, longitude / FIXED_POINT_SCALE,
+                    in.readVarint());
+        }
+        return (int) count;
+    }
+}
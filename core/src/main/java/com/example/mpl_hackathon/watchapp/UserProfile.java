@@ -0,0 +1,67 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Description : Informations personnelles du porteur de la montre jointes aux alertes. Le profil
+ * est identifié par un entier stable calculé à partir de son contenu : le format binaire des
+ * alertes n'envoie que cet identifiant, le serveur l'associe au profil reçu dans les alertes
+ * JSON.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class UserProfile {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Profil utilisé tant que les informations personnelles ne sont pas renseignées.
+     */
+    public static final UserProfile PLACEHOLDER = new UserProfile("Paul", "Jean", "0645751254");
+
+    private final String mLastname;
+    private final String mFirstname;
+    private final String mPhoneNumber;
+    private final int mId;
+
+    /**
+     * @param lastname    nom
+     * @param firstname   prénom
+     * @param phoneNumber numéro de téléphone
+     */
+    public UserProfile(String lastname, String firstname, String phoneNumber) {
+        mLastname = lastname;
+        mFirstname = firstname;
+        mPhoneNumber = phoneNumber;
+        mId = computeId(lastname, firstname, phoneNumber);
+    }
+
+    private static int computeId(String lastname, String firstname, String phoneNumber) {
+        CRC32 crc = new CRC32();
+        crc.update((lastname + '\n' + firstname + '\n' + phoneNumber).getBytes(UTF_8));
+        // identifiant positif pour un encodage compact en varint
+        return (int) (crc.getValue() & 0x7fffffff);
+    }
+
+    public String getLastname() {
+        return mLastname;
+    }
+
+    public String getFirstname() {
+        return mFirstname;
+    }
+
+    public String getPhoneNumber() {
+        return mPhoneNumber;
+    }
+
+    /**
+     * @return identifiant du profil, dérivé de son contenu
+     */
+    public int getId() {
+        return mId;
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Description : Tampon d'octets extensible utilisé pour la sérialisation des alertes : entiers à
+ * taille fixe, varints (LEB128), varints zigzag et chaînes UTF-8, sans allocation une fois le
+ * tampon dimensionné. Les méthodes de lecture travaillent sur un tableau quelconque à partir de
+ * la position courante.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class WireBuffer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private byte[] mData;
+    private int mPosition;
+
+    /**
+     * @param initialCapacity taille initiale du tampon
+     */
+    public WireBuffer(int initialCapacity) {
+        mData = new byte[initialCapacity];
+    }
+
+    /**
+     * Prépare la lecture d'un tableau existant.
+     *
+     * @param data   données à lire
+     * @param offset position de départ
+     * @return ce tampon, positionné au début des données
+     */
+    public static WireBuffer wrap(byte[] data, int offset) {
+        WireBuffer buffer = new WireBuffer(0);
+        buffer.mData = data;
+        buffer.mPosition = offset;
+        return buffer;
+    }
+
+    /**
+     * Vide le tampon (la capacité est conservée).
+     */
+    public void clear() {
+        mPosition = 0;
+    }
+
+    public byte[] data() {
+        return mData;
+    }
+
+    public int position() {
+        return mPosition;
+    }
+
+    public void position(int position) {
+        mPosition = position;
+    }
+
+    private void ensure(int extra) {
+        if (mPosition + extra > mData.length) {
+            mData = Arrays.copyOf(mData, Math.max(mData.length * 2, mPosition + extra));
+        }
+    }
+
+    public void writeByte(int value) {
+        ensure(1);
+        mData[mPosition++] = (byte) value;
+    }
+
+    /**
+     * Ecrit un entier sur 4 octets (grand-boutiste).
+     */
+    public void writeInt(int value) {
+        ensure(4);
+        mData[mPosition++] = (byte) (value >>> 24);
+        mData[mPosition++] = (byte) (value >>> 16);
+        mData[mPosition++] = (byte) (value >>> 8);
+        mData[mPosition++] = (byte) value;
+    }
+
+    /**
+     * Ecrit un entier sur 8 octets (grand-boutiste).
+     */
+    public void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    /**
+     * Ecrit un entier non signé en varint (7 bits par octet).
+     */
+    public void writeVarint(long value) {
+        ensure(10);
+        while ((value & ~0x7fL) != 0) {
+            mData[mPosition++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        mData[mPosition++] = (byte) value;
+    }
+
+    /**
+     * Ecrit un entier signé en varint zigzag.
+     */
+    public void writeZigzag(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Ecrit des octets tels quels.
+     */
+    public void writeBytes(byte[] value, int offset, int length) {
+        ensure(length);
+        System.arraycopy(value, offset, mData, mPosition, length);
+        mPosition += length;
+    }
+
+    /**
+     * Ecrit une chaîne UTF-8 précédée de sa longueur en octets (varint).
+     */
+    public void writeString(String value) {
+        int length = utf8Length(value);
+        writeVarint(length);
+        ensure(length);
+        writeUtf8(value);
+    }
+
+    /**
+     * Ecrit les caractères d'une séquence en UTF-8, sans longueur.
+     */
+    public void writeUtf8(CharSequence value) {
+        int count = value.length();
+        ensure(count * 3);
+        for (int i = 0; i < count; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                mData[mPosition++] = (byte) c;
+            } else if (c < 0x800) {
+                mData[mPosition++] = (byte) (0xc0 | (c >> 6));
+                mData[mPosition++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < count
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                mData[mPosition++] = (byte) (0xf0 | (codePoint >> 18));
+                mData[mPosition++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                mData[mPosition++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                mData[mPosition++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else {
+                mData[mPosition++] = (byte) (0xe0 | (c >> 12));
+                mData[mPosition++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                mData[mPosition++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private static int utf8Length(CharSequence value) {
+        int length = 0;
+        int count = value.length();
+        for (int i = 0; i < count; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < count
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    public int readByte() {
+        return mData[mPosition++] & 0xff;
+    }
+
+    public int readInt() {
+        return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+    }
+
+    public long readLong() {
+        return ((long) readInt() << 32) | (readInt() & 0xffffffffL);
+    }
+
+    public long readVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    public long readZigzag() {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public String readString() {
+        int length = (int) readVarint();
+        if (length < 0 || mPosition + length > mData.length) {
+            throw new IllegalArgumentException("Malformed string");
+        }
+        String value = new String(mData, mPosition, length, UTF_8);
+        mPosition += length;
+        return value;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveSamplingPolicyTest {
+
+    private AdaptiveSamplingPolicy mPolicy;
+    private SamplingContext mContext;
+
+    @Before
+    public void setUp() {
+        mPolicy = new AdaptiveSamplingPolicy();
+        mContext = new SamplingContext();
+        mContext.setNowMs(1000);
+    }
+
+    @Test
+    public void alert_forcesMaximumRateUntilWindowEnds() {
+        mContext.setMotion(SamplingContext.MOTION_STILL);
+        mContext.setBatteryPercent(5);
+        mContext.setAlertBoostUntilMs(5000);
+        SamplingDecision decision = mPolicy.decide(mContext);
+        assertEquals(AdaptiveSamplingPolicy.ALERT_INTERVAL_MS, decision.getIntervalMs());
+        assertEquals(SamplingDecision.PRIORITY_HIGH_ACCURACY, decision.getPriority());
+
+        mContext.setNowMs(5000);
+        assertNotEquals(AdaptiveSamplingPolicy.ALERT_INTERVAL_MS,
+                mPolicy.decide(mContext).getIntervalMs());
+    }
+
+    @Test
+    public void motion_drivesInterval() {
+        mContext.setMotion(SamplingContext.MOTION_STILL);
+        long still = mPolicy.decide(mContext).getIntervalMs();
+        mContext.setMotion(SamplingContext.MOTION_WALKING);
+        long walking = mPolicy.decide(mContext).getIntervalMs();
+        mContext.setMotion(SamplingContext.MOTION_VEHICLE);
+        long vehicle = mPolicy.decide(mContext).getIntervalMs();
+        assertTrue(still > walking);
+        assertTrue(walking > vehicle);
+        assertEquals(SamplingContext.MOTION_VEHICLE, SamplingContext.motionFromSpeed(10f));
+        assertEquals(SamplingContext.MOTION_STILL, SamplingContext.motionFromSpeed(0f));
+    }
+
+    @Test
+    public void poorAccuracy_forcesHighAccuracy() {
+        mContext.setMotion(SamplingContext.MOTION_STILL);
+        mContext.setAccuracyMeters(200f);
+        SamplingDecision decision = mPolicy.decide(mContext);
+        assertEquals(SamplingDecision.PRIORITY_HIGH_ACCURACY, decision.getPriority());
+        assertEquals(AdaptiveSamplingPolicy.STILL_INTERVAL_MS / 2, decision.getIntervalMs());
+    }
+
+    @Test
+    public void goodFilteredAccuracy_lengthensWalkingInterval() {
+        mContext.setMotion(SamplingContext.MOTION_WALKING);
+        mContext.setAccuracyMeters(30f);
+        assertEquals(AdaptiveSamplingPolicy.WALKING_INTERVAL_MS,
+                mPolicy.decide(mContext).getIntervalMs());
+        mContext.setAccuracyMeters(6f);
+        assertEquals(AdaptiveSamplingPolicy.WALKING_INTERVAL_MS * 2,
+                mPolicy.decide(mContext).getIntervalMs());
+    }
+
+    @Test
+    public void lowBattery_reducesSamplingUnlessCharging() {
+        mContext.setMotion(SamplingContext.MOTION_WALKING);
+        mContext.setBatteryPercent(10);
+        SamplingDecision decision = mPolicy.decide(mContext);
+        assertEquals(SamplingDecision.PRIORITY_LOW_POWER, decision.getPriority());
+        assertEquals(AdaptiveSamplingPolicy.WALKING_INTERVAL_MS * 4, decision.getIntervalMs());
+
+        mContext.setCharging(true);
+        assertEquals(AdaptiveSamplingPolicy.WALKING_INTERVAL_MS,
+                mPolicy.decide(mContext).getIntervalMs());
+    }
+
+    @Test
+    public void background_batchesBalancedFixesUntilForegroundOrAlert() {
+        mContext.setMotion(SamplingContext.MOTION_VEHICLE);
+        mContext.setForeground(false);
+        SamplingDecision decision = mPolicy.decide(mContext);
+        assertEquals(AdaptiveSamplingPolicy.BACKGROUND_INTERVAL_MS, decision.getIntervalMs());
+        assertEquals(SamplingDecision.PRIORITY_BALANCED_POWER_ACCURACY, decision.getPriority());
+        assertEquals(AdaptiveSamplingPolicy.BACKGROUND_INTERVAL_MS
+                * AdaptiveSamplingPolicy.BACKGROUND_BATCH_SIZE, decision.getMaxWaitTimeMs());
+
+        // l'écran d'alerte revient au premier plan : positions livrées immédiatement
+        mContext.setForeground(true);
+        decision = mPolicy.decide(mContext);
+        assertEquals(AdaptiveSamplingPolicy.VEHICLE_INTERVAL_MS, decision.getIntervalMs());
+        assertEquals(0, decision.getMaxWaitTimeMs());
+
+        // une alerte en cours l'emporte sur l'arrière-plan
+        mContext.setForeground(false);
+        mContext.setAlertBoostUntilMs(5000);
+        decision = mPolicy.decide(mContext);
+        assertEquals(AdaptiveSamplingPolicy.ALERT_INTERVAL_MS, decision.getIntervalMs());
+        assertEquals(0, decision.getMaxWaitTimeMs());
+    }
+
+    @Test
+    public void decisions_areDeterministic() {
+        mContext.setMotion(SamplingContext.MOTION_WALKING);
+        mContext.setAccuracyMeters(12f);
+        assertEquals(mPolicy.decide(mContext), mPolicy.decide(mContext));
+    }
+
+    @Test
+    public void samplingStats_reportFixesPerHourAndAlertAccuracy() {
+        SamplingStats stats = new SamplingStats(0);
+        for (int i = 0; i < 30; i++) {
+            stats.onFix();
+        }
+        stats.onAlert(10f, 2000);
+        stats.onAlert(20f, 4000);
+        stats.onAlert(Float.NaN, -1);
+        assertEquals(60.0, stats.getFixesPerHour(30 * 60 * 1000L), 1e-9);
+        assertEquals(15.0, stats.getMeanAlertAccuracy(), 1e-9);
+        assertEquals(3000, stats.getMeanAlertFixAgeMs());
+        assertEquals(1, stats.getAlertWithoutFixCount());
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdpcmCodecTest {
+
+    private static short[] tone(int samples) {
+        short[] pcm = new short[samples];
+        for (int i = 0; i < samples; i++) {
+            pcm[i] = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / AdpcmCodec.SAMPLE_RATE));
+        }
+        return pcm;
+    }
+
+    @Test
+    public void blocks_decodeIndependentlyCloseToTheSource() {
+        short[] pcm = tone(1600);
+        AdpcmCodec codec = new AdpcmCodec();
+        byte[] first = new byte[AdpcmCodec.blockBytes(800)];
+        byte[] second = new byte[AdpcmCodec.blockBytes(800)];
+        assertEquals(404, codec.encodeBlock(pcm, 0, 800, first, 0));
+        assertEquals(404, codec.encodeBlock(pcm, 800, 800, second, 0));
+
+        // le second bloc se décode sans le premier
+        short[] decoded = new short[800];
+        assertEquals(800, AdpcmCodec.decodeBlock(second, 0, second.length, decoded, 0));
+        double error = 0;
+        double signal = 0;
+        // après l'adaptation du pas au début de l'enregistrement
+        for (int i = 0; i < 800; i++) {
+            error += Math.pow(decoded[i] - pcm[800 + i], 2);
+            signal += Math.pow(pcm[800 + i], 2);
+        }
+        assertTrue("SNR " + 10 * Math.log10(signal / error), signal / error > 100);
+    }
+
+    @Test
+    public void invalidBlock_isRejected() {
+        try {
+            AdpcmCodec.decodeBlock(new byte[]{0, 0, 89, 0, 0}, 0, 5, new short[2], 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // index hors de la table des pas
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AlertMetricsTest {
+
+    @Test
+    public void histogram_bucketsKeepRelativePrecision() {
+        for (long value = 0; value < 1000000; value = value * 3 / 2 + 1) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.lowestValueAt(index) <= value);
+            assertTrue(LatencyHistogram.highestValueAt(index) >= value);
+            long width = LatencyHistogram.highestValueAt(index)
+                    - LatencyHistogram.lowestValueAt(index);
+            assertTrue("value=" + value, width <= value / LatencyHistogram.SUB_BUCKETS);
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500, histogram.getPercentile(0.5), 500 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(1000, histogram.getPercentile(0.999), 1000 / LatencyHistogram.SUB_BUCKETS);
+    }
+
+    @Test
+    public void snapshot_percentilesAndRoundTrip() throws Exception {
+        AlertMetrics metrics = new AlertMetrics();
+        for (int i = 1; i <= 100; i++) {
+            metrics.record(MetricsSnapshot.HISTOGRAM_REQUEST, i * 10);
+        }
+        metrics.increment(MetricsSnapshot.COUNTER_ALERTS_TAPPED);
+
+        MetricsSnapshot decoded = MetricsSnapshot.decode(metrics.snapshot(1234).encode());
+        assertEquals(1234, decoded.getCreatedAtMs());
+        assertEquals(1, decoded.getCounter(MetricsSnapshot.COUNTER_ALERTS_TAPPED));
+        assertEquals(100, decoded.getCount(MetricsSnapshot.HISTOGRAM_REQUEST));
+        assertEquals(1000, decoded.getMax(MetricsSnapshot.HISTOGRAM_REQUEST));
+        assertEquals(505, decoded.getMean(MetricsSnapshot.HISTOGRAM_REQUEST));
+        assertEquals(500, decoded.getPercentile(MetricsSnapshot.HISTOGRAM_REQUEST, 0.5), 32);
+        assertEquals(990, decoded.getPercentile(MetricsSnapshot.HISTOGRAM_REQUEST, 0.99), 64);
+        assertEquals(0, decoded.getCount(MetricsSnapshot.HISTOGRAM_FIX_AGE));
+    }
+
+    @Test
+    public void trackedAlert_recordsStagesFromTap() {
+        AlertMetrics metrics = new AlertMetrics();
+        metrics.trackAlert(7, 1000);
+        metrics.onAlertEnqueued(7, 1040);
+        metrics.onAlertEnqueued(7, 5000);
+        metrics.moveAlert(7, 8);
+        metrics.onAlertDelivered(8, 300, 5300);
+        metrics.onAlertDelivered(8, 200, 9000);
+
+        MetricsSnapshot snapshot = metrics.snapshot(0);
+        assertEquals(2, snapshot.getCounter(MetricsSnapshot.COUNTER_REQUESTS_SENT));
+        assertEquals(2, snapshot.getCounter(MetricsSnapshot.COUNTER_REQUESTS_DELIVERED));
+        assertEquals(1, snapshot.getCount(MetricsSnapshot.HISTOGRAM_TAP_TO_ENQUEUE));
+        assertEquals(40, snapshot.getMax(MetricsSnapshot.HISTOGRAM_TAP_TO_ENQUEUE));
+        assertEquals(1, snapshot.getCount(MetricsSnapshot.HISTOGRAM_TAP_TO_DELIVERED));
+        assertEquals(4300, snapshot.getMax(MetricsSnapshot.HISTOGRAM_TAP_TO_DELIVERED));
+        assertEquals(2, snapshot.getCount(MetricsSnapshot.HISTOGRAM_REQUEST));
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AlertOutboxTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void pendingAlerts_surviveReopen() throws Exception {
+        File file = mFolder.newFile("outbox.journal");
+        AlertOutbox outbox = AlertOutbox.open(file);
+        long first = outbox.append(AlertOutbox.KIND_JSON, bytes("a"), 0, 1);
+        long second = outbox.append(AlertOutbox.KIND_JSON, bytes("b"), 0, 1);
+        outbox.ack(first);
+        outbox.close();
+
+        AlertOutbox reopened = AlertOutbox.open(file);
+        assertEquals(1, reopened.pendingCount());
+        List<AlertOutbox.Entry> batch = reopened.nextBatch(10);
+        assertEquals(1, batch.size());
+        assertEquals(second, batch.get(0).id);
+        assertEquals("b", new String(batch.get(0).payload, "UTF-8"));
+        assertTrue(reopened.append(AlertOutbox.KIND_JSON, bytes("c"), 0, 1) > second);
+        reopened.close();
+    }
+
+    @Test
+    public void nextBatch_skipsInFlightUntilReleased() throws Exception {
+        AlertOutbox outbox = AlertOutbox.open(mFolder.newFile("outbox.journal"));
+        long id = outbox.append(AlertOutbox.KIND_JSON, bytes("a"), 0, 1);
+        assertEquals(1, outbox.nextBatch(10).size());
+        assertTrue(outbox.nextBatch(10).isEmpty());
+        outbox.release(id);
+        assertEquals(id, outbox.nextBatch(10).get(0).id);
+        outbox.ack(id);
+        assertEquals(0, outbox.pendingCount());
+        outbox.close();
+    }
+
+    @Test
+    public void claim_takesEntryOutsideBatch() throws Exception {
+        AlertOutbox outbox = AlertOutbox.open(mFolder.newFile("outbox.journal"));
+        long first = outbox.append(AlertOutbox.KIND_JSON, bytes("a"), 0, 1);
+        long second = outbox.append(AlertOutbox.KIND_JSON, bytes("b"), 0, 1);
+        assertEquals("b", new String(outbox.claim(second).payload, "UTF-8"));
+        assertNull(outbox.claim(second));
+        List<AlertOutbox.Entry> batch = outbox.nextBatch(10);
+        assertEquals(1, batch.size());
+        assertEquals(first, batch.get(0).id);
+        outbox.ack(second);
+        assertNull(outbox.claim(second));
+        outbox.close();
+    }
+
+    @Test
+    public void append_compactsAndGrowsWhenFull() throws Exception {
+        File file = mFolder.newFile("outbox.journal");
+        AlertOutbox outbox = AlertOutbox.open(file);
+        byte[] payload = new byte[1000];
+        long last = -1;
+        for (int i = 0; i < 500; i++) {
+            payload[0] = (byte) i;
+            long id = outbox.append(AlertOutbox.KIND_JSON, payload, 0, payload.length);
+            if (last >= 0 && i % 10 != 0) {
+                outbox.ack(last);
+            }
+            last = id;
+        }
+        int pending = outbox.pendingCount();
+        outbox.close();
+
+        AlertOutbox reopened = AlertOutbox.open(file);
+        assertEquals(pending, reopened.pendingCount());
+        List<AlertOutbox.Entry> batch = reopened.nextBatch(pending);
+        assertEquals(last, batch.get(batch.size() - 1).id);
+        assertEquals((byte) 499, batch.get(batch.size() - 1).payload[0]);
+        reopened.close();
+    }
+
+    @Test
+    public void append_compactsAroundStuckEntry() throws Exception {
+        File file = mFolder.newFile("outbox.journal");
+        AlertOutbox outbox = AlertOutbox.open(file);
+        byte[] payload = new byte[1000];
+        // la plus ancienne entrée reste en attente : elle fixe head au début du journal
+        long stuck = outbox.append(AlertOutbox.KIND_JSON, payload, 0, payload.length);
+        long last = -1;
+        for (int i = 0; i < 5000; i++) {
+            payload[0] = (byte) i;
+            last = outbox.append(AlertOutbox.KIND_JSON, payload, 0, payload.length);
+            outbox.ack(last - 1 == stuck ? -1 : last - 1);
+        }
+        assertEquals(2, outbox.pendingCount());
+        // 5 Mo ajoutés : le journal n'a pas grandi au-delà de sa taille initiale
+        assertEquals(AlertOutbox.DEFAULT_CAPACITY, file.length());
+        outbox.close();
+
+        AlertOutbox reopened = AlertOutbox.open(file);
+        List<AlertOutbox.Entry> batch = reopened.nextBatch(10);
+        assertEquals(2, batch.size());
+        assertEquals(stuck, batch.get(0).id);
+        assertEquals(last, batch.get(1).id);
+        assertEquals((byte) 4999, batch.get(1).payload[0]);
+        reopened.close();
+    }
+
+    @Test
+    public void corruptHeader_rescansWithoutDuplicates() throws Exception {
+        File file = mFolder.newFile("outbox.journal");
+        AlertOutbox outbox = AlertOutbox.open(file);
+        byte[] payload = new byte[1000];
+        long kept = -1;
+        long previous = -1;
+        for (int i = 0; i < 70; i++) {
+            long id = outbox.append(AlertOutbox.KIND_JSON, payload, 0, payload.length);
+            if (i == 60) {
+                kept = id;
+            }
+            if (previous >= 0 && previous != kept) {
+                outbox.ack(previous);
+            }
+            previous = id;
+        }
+        outbox.close();
+        // le compactage a recopié l'entrée conservée au début du journal : son original, valide,
+        // est resté plus loin
+        corrupt(file, 32);
+
+        AlertOutbox reopened = AlertOutbox.open(file);
+        assertEquals(2, reopened.pendingCount());
+        List<AlertOutbox.Entry> batch = reopened.nextBatch(10);
+        assertEquals(2, batch.size());
+        assertEquals(kept, batch.get(0).id);
+        assertEquals(previous, batch.get(1).id);
+        assertTrue(reopened.ack(kept));
+        assertTrue(reopened.ack(previous));
+        assertEquals(0, reopened.pendingCount());
+        assertTrue(reopened.append(AlertOutbox.KIND_JSON, payload, 0, 1) > previous);
+        reopened.close();
+    }
+
+    @Test
+    public void tornLastEntry_isDroppedWithCorruptHeader() throws Exception {
+        File file = mFolder.newFile("outbox.journal");
+        AlertOutbox outbox = AlertOutbox.open(file);
+        long first = outbox.append(AlertOutbox.KIND_JSON, bytes("complete"), 0, 8);
+        outbox.append(AlertOutbox.KIND_JSON, bytes("torn"), 0, 4);
+        outbox.close();
+        // arrêt brutal : contenu de la dernière entrée à moitié écrit, en-tête incohérent
+        corrupt(file, 64 + 28 + 20 + 2);
+        corrupt(file, 8);
+
+        AlertOutbox reopened = AlertOutbox.open(file);
+        List<AlertOutbox.Entry> batch = reopened.nextBatch(10);
+        assertEquals(1, batch.size());
+        assertEquals(first, batch.get(0).id);
+        assertEquals("complete", new String(batch.get(0).payload, "UTF-8"));
+        reopened.close();
+    }
+
+    @Test
+    public void checksumMismatch_dropsOnlyAlteredEntry() throws Exception {
+        File file = mFolder.newFile("outbox.journal");
+        AlertOutbox outbox = AlertOutbox.open(file);
+        long first = outbox.append(AlertOutbox.KIND_JSON, bytes("a"), 0, 1);
+        outbox.append(AlertOutbox.KIND_JSON, bytes("b"), 0, 1);
+        long third = outbox.append(AlertOutbox.KIND_JSON, bytes("c"), 0, 1);
+        outbox.close();
+        // contenu de la deuxième entrée altéré, en-tête valide
+        corrupt(file, 64 + 21 + 20);
+
+        AlertOutbox reopened = AlertOutbox.open(file);
+        List<AlertOutbox.Entry> batch = reopened.nextBatch(10);
+        assertEquals(2, batch.size());
+        assertEquals(first, batch.get(0).id);
+        assertEquals(third, batch.get(1).id);
+        reopened.close();
+    }
+
+    private static void corrupt(File file, long offset) throws Exception {
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        try {
+            raw.seek(offset);
+            int value = raw.read();
+            raw.seek(offset);
+            raw.write(~value);
+        } finally {
+            raw.close();
+        }
+    }
+
+    private static byte[] bytes(String value) throws Exception {
+        return value.getBytes("UTF-8");
+    }
+}
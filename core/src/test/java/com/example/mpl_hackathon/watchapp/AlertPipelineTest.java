@@ -0,0 +1,201 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class AlertPipelineTest {
+
+    private ExecutorService mExecutor;
+    private final List<Runnable> mCallbacks = new ArrayList<Runnable>();
+    private final FakeSink mSink = new FakeSink();
+    private AlertPipeline mPipeline;
+
+    private static final class FakeSink implements AlertPipeline.Sink {
+        volatile boolean binary = true;
+        final List<Byte> kinds = new ArrayList<Byte>();
+        final List<Long> taps = new ArrayList<Long>();
+        final List<Long> replaced = new ArrayList<Long>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        AlertPayload last = new AlertPayload();
+
+        @Override
+        public boolean isBinaryAlertAccepted() {
+            return binary;
+        }
+
+        @Override
+        public synchronized long sendAlert(byte kind, byte[] data, int length, long tapMs,
+                                           long replacedId) {
+            kinds.add(kind);
+            taps.add(tapMs);
+            replaced.add(replacedId);
+            threads.add(Thread.currentThread());
+            if (kind == AlertOutbox.KIND_BINARY) {
+                BinaryAlertEncoder.decode(data, 0, length, last);
+            }
+            return kinds.size() - 1;
+        }
+    }
+
+    private static AlertPipeline.Task alert(final long alertId) {
+        return new AlertPipeline.Task() {
+            @Override
+            public boolean enrich(AlertPayload payload) {
+                payload.setAlertId(alertId);
+                payload.setProfile(UserProfile.PLACEHOLDER);
+                payload.setTimestampCurrent(1000);
+                payload.setLocation(43.6, 3.87, 1000, 8f, AlertPayload.SOURCE_FUSED);
+                payload.setDriveLink("");
+                return true;
+            }
+        };
+    }
+
+    private static AlertPipeline.Task tap(final long alertId, final long key) {
+        final AlertPipeline.Task alert = alert(alertId);
+        return new AlertPipeline.ReplaceableTask() {
+            @Override
+            public long replacementKey() {
+                return key;
+            }
+
+            @Override
+            public boolean enrich(AlertPayload payload) {
+                return alert.enrich(payload);
+            }
+        };
+    }
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newSingleThreadExecutor();
+        // notifications exécutées à la demande, comme sur le thread principal
+        Executor callbacks = new Executor() {
+            @Override
+            public synchronized void execute(Runnable command) {
+                mCallbacks.add(command);
+            }
+        };
+        mPipeline = new AlertPipeline(mExecutor, callbacks, mSink);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    private synchronized void runCallbacks() {
+        for (Runnable callback : mCallbacks) {
+            callback.run();
+        }
+        mCallbacks.clear();
+    }
+
+    @Test
+    public void stages_runOffCallerThreadAndCompleteFuture() throws Exception {
+        Future<Long> first = mPipeline.submit(alert(7L), 100, null);
+        assertEquals(0L, (long) first.get());
+        // format refusé par le serveur : les alertes suivantes partent en JSON
+        mSink.binary = false;
+        Future<Long> second = mPipeline.submit(alert(8L), -1, null);
+        assertEquals(1L, (long) second.get());
+        assertEquals(7L, mSink.last.getAlertId());
+        assertEquals(AlertOutbox.KIND_BINARY, (byte) mSink.kinds.get(0));
+        assertEquals(AlertOutbox.KIND_JSON, (byte) mSink.kinds.get(1));
+        assertEquals(100L, (long) mSink.taps.get(0));
+        assertEquals(-1L, (long) mSink.taps.get(1));
+        assertNotSame(Thread.currentThread(), mSink.threads.get(0));
+        assertSame(mSink.threads.get(0), mSink.threads.get(1));
+    }
+
+    @Test
+    public void replaceableTask_replacesPreviousMessageWithSameKey() throws Exception {
+        mPipeline.submit(tap(5L, -1), 0, null);
+        mPipeline.submit(tap(5L, 5L), 0, null);
+        mPipeline.submit(alert(5L), 0, null);
+        mPipeline.submit(tap(5L, 5L), 0, null);
+        mPipeline.submit(tap(6L, 6L), 0, null);
+        mPipeline.submit(tap(5L, 5L), 0, null).get();
+        // une nouvelle alerte ne remplace rien, un appui répété remplace le précédent de la
+        // même alerte, même après une mise à jour intercalée
+        assertEquals(-1L, (long) mSink.replaced.get(0));
+        assertEquals(-1L, (long) mSink.replaced.get(1));
+        assertEquals(-1L, (long) mSink.replaced.get(2));
+        assertEquals(1L, (long) mSink.replaced.get(3));
+        assertEquals(-1L, (long) mSink.replaced.get(4));
+        assertEquals(-1L, (long) mSink.replaced.get(5));
+    }
+
+    @Test
+    public void skippedTask_isNotEnqueued() throws Exception {
+        Future<Long> future = mPipeline.submit(new AlertPipeline.Task() {
+            @Override
+            public boolean enrich(AlertPayload payload) {
+                return false;
+            }
+        }, -1, null);
+        assertEquals(AlertPipeline.SKIPPED, (long) future.get());
+        assertTrue(mSink.kinds.isEmpty());
+    }
+
+    @Test
+    public void listener_isNotifiedOnCallbackExecutor() throws Exception {
+        final long[] queued = {Long.MIN_VALUE};
+        final Throwable[] failed = {null};
+        AlertPipeline.Listener listener = new AlertPipeline.Listener() {
+            @Override
+            public void onAlertQueued(long outboxId) {
+                queued[0] = outboxId;
+            }
+
+            @Override
+            public void onAlertFailed(Throwable error) {
+                failed[0] = error;
+            }
+        };
+        mPipeline.submit(alert(1L), 0, listener).get();
+        Future<Long> failing = mPipeline.submit(new AlertPipeline.Task() {
+            @Override
+            public boolean enrich(AlertPayload payload) {
+                throw new IllegalStateException("no profile");
+            }
+        }, 0, listener);
+        try {
+            failing.get();
+            fail();
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+        // done() est appelé juste après la fin du traitement
+        mPipeline.submit(alert(2L), 0, null).get();
+
+        assertEquals(Long.MIN_VALUE, queued[0]);
+        runCallbacks();
+        assertEquals(0L, queued[0]);
+        assertTrue(failed[0] instanceof IllegalStateException);
+    }
+
+    @Test
+    public void stageDurations_areRecorded() throws Exception {
+        MetricsSnapshot before = AlertMetrics.get().snapshot(0);
+        mPipeline.submit(alert(3L), 0, null).get();
+        MetricsSnapshot after = AlertMetrics.get().snapshot(0);
+        for (int histogram : new int[]{MetricsSnapshot.HISTOGRAM_PIPELINE_WAIT_US,
+                MetricsSnapshot.HISTOGRAM_PIPELINE_ENRICH_US,
+                MetricsSnapshot.HISTOGRAM_PIPELINE_ENCODE_US,
+                MetricsSnapshot.HISTOGRAM_PIPELINE_ENQUEUE_US}) {
+            assertEquals(before.getCount(histogram) + 1, after.getCount(histogram));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AlertRefinerTest {
+
+    @Test
+    public void alertWithoutLocation_sendsFirstFixImmediately() {
+        AlertRefiner refiner = new AlertRefiner();
+        refiner.start(7, new AlertPayload(), 1000);
+        assertTrue(refiner.offer(43.61, 3.87, 30f, 1001));
+        assertEquals(1, refiner.getUpdateSeq());
+        assertEquals(7, refiner.getAlertId());
+        // trop tôt après la mise à jour précédente
+        assertFalse(refiner.offer(43.61, 3.87, 5f, 2000));
+    }
+
+    @Test
+    public void offer_sendsOnlyBetterOrMovedFixes() {
+        AlertPayload payload = new AlertPayload();
+        payload.setLocation(43.61, 3.87, 0, 40f, AlertPayload.SOURCE_NETWORK);
+        AlertRefiner refiner = new AlertRefiner();
+        refiner.start(1, payload, 0);
+
+        // précision à peine meilleure, même endroit
+        assertFalse(refiner.offer(43.61, 3.87, 35f, 10000));
+        // nettement plus précise
+        assertTrue(refiner.offer(43.61, 3.87, 8f, 20000));
+        // déplacement de ~110 m, au-delà de l'incertitude
+        assertTrue(refiner.offer(43.611, 3.87, 8f, 30000));
+        assertEquals(2, refiner.getUpdateSeq());
+    }
+
+    @Test
+    public void offer_stopsAfterWindow() {
+        AlertRefiner refiner = new AlertRefiner();
+        refiner.start(1, new AlertPayload(), 0);
+        assertFalse(refiner.offer(43.61, 3.87, 5f, AlertRefiner.REFINE_WINDOW_MS));
+        assertFalse(refiner.isActive(AlertRefiner.REFINE_WINDOW_MS));
+    }
+
+    @Test
+    public void repeatedTap_isCoalescedIntoCurrentAlert() {
+        AlertRefiner refiner = new AlertRefiner();
+        assertFalse(refiner.onRepeatedTap(0));
+        refiner.start(9, new AlertPayload(), 0);
+        assertTrue(refiner.offer(43.61, 3.87, 30f, 1000));
+
+        assertTrue(refiner.onRepeatedTap(2000));
+        assertEquals(9, refiner.getAlertId());
+        assertEquals(2, refiner.getUpdateSeq());
+        assertEquals(2, refiner.getTapCount());
+        // la fenêtre est comptée depuis le dernier appui
+        long late = 2000 + AlertRefiner.COALESCE_WINDOW_MS - 1;
+        assertTrue(refiner.isActive(late));
+        assertTrue(refiner.onRepeatedTap(late));
+        assertEquals(3, refiner.getUpdateSeq());
+        assertFalse(refiner.onRepeatedTap(late + AlertRefiner.COALESCE_WINDOW_MS));
+        assertEquals(3, refiner.getTapCount());
+    }
+
+    @Test
+    public void repeatedTaps_stayInOneEpisode() {
+        AlertRefiner refiner = new AlertRefiner();
+        refiner.start(9, new AlertPayload(), 0);
+        long now = 0;
+        double latitude = 43.61;
+        // appuis répétés pendant plusieurs minutes, chaque fenêtre épuisée par des déplacements
+        for (int tap = 2; tap <= 30; tap++) {
+            now += 1000;
+            assertTrue(refiner.onRepeatedTap(now));
+            while (refiner.offer(latitude, 3.87, 10f, now)) {
+                latitude += 0.001;
+                now += AlertRefiner.MIN_UPDATE_INTERVAL_MS;
+            }
+        }
+        assertEquals(9, refiner.getAlertId());
+        assertEquals(30, refiner.getTapCount());
+        // au-delà des 64 numéros du masque du serveur
+        assertTrue(refiner.getUpdateSeq() > 64);
+    }
+
+    @Test
+    public void distanceMeters_matchesKnownDistance() {
+        // un millième de degré de latitude vaut ~111 m
+        assertEquals(111.2, AlertRefiner.distanceMeters(43.61, 3.87, 43.611, 3.87), 0.5);
+    }
+}
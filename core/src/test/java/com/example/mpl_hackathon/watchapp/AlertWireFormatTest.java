@@ -0,0 +1,205 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AlertWireFormatTest {
+
+    private AlertPayload mPayload;
+
+    @Before
+    public void setUp() {
+        mPayload = new AlertPayload();
+        mPayload.setAlertId(0x7edcba9876543210L);
+        mPayload.setUpdateSeq(3);
+        mPayload.setProfile(UserProfile.PLACEHOLDER);
+        mPayload.setTimestampCurrent(1457000000000L);
+        mPayload.setLocation(43.6107691, 3.8767159, 1456999998000L, 12.5f,
+                AlertPayload.SOURCE_LAST_KNOWN);
+        mPayload.setDriveLink("https://example.org/clip?id=é");
+        // trace chronologique, la dernière position est celle de l'alerte
+        mPayload.setTrailStartIndex(5);
+        for (int i = 15; i >= 0; i--) {
+            mPayload.addTrailPoint(1456999998000L - i * 10000L, 43.6107691 - i * 0.0001,
+                    3.8767159 + i * 0.00015, 8.5f + i);
+        }
+    }
+
+    @Test
+    public void binary_roundTrip() {
+        BinaryAlertEncoder encoder = new BinaryAlertEncoder();
+        int length = encoder.encode(mPayload);
+
+        AlertPayload decoded = new AlertPayload();
+        BinaryAlertEncoder.decode(encoder.buffer(), 0, length, decoded);
+
+        assertEquals(mPayload.getAlertId(), decoded.getAlertId());
+        assertEquals(3, decoded.getUpdateSeq());
+        assertEquals(mPayload.getProfileId(), decoded.getProfileId());
+        assertEquals(mPayload.getTimestampCurrent(), decoded.getTimestampCurrent());
+        assertTrue(decoded.hasLocation());
+        assertEquals(mPayload.getLatitude(), decoded.getLatitude(), 1e-7);
+        assertEquals(mPayload.getLongitude(), decoded.getLongitude(), 1e-7);
+        assertEquals(mPayload.getTimestampPosition(), decoded.getTimestampPosition());
+        assertEquals(mPayload.getAccuracy(), decoded.getAccuracy(), 0.05);
+        assertEquals(AlertPayload.SOURCE_LAST_KNOWN, decoded.getLocationSource());
+        assertEquals(mPayload.getDriveLink(), decoded.getDriveLink());
+        assertEquals(5, decoded.getTrailStartIndex());
+        assertEquals(mPayload.getTrailSize(), decoded.getTrailSize());
+        for (int i = 0; i < decoded.getTrailSize(); i++) {
+            assertEquals(mPayload.getTrailTime(i), decoded.getTrailTime(i));
+            assertEquals(mPayload.getTrailLatitude(i), decoded.getTrailLatitude(i), 1e-6);
+            assertEquals(mPayload.getTrailLongitude(i), decoded.getTrailLongitude(i), 1e-6);
+            // précision de la trace arrondie au mètre supérieur
+            assertEquals(mPayload.getTrailAccuracy(i) + 0.5f, decoded.getTrailAccuracy(i),
+                    1e-6);
+        }
+    }
+
+    @Test
+    public void binary_roundTripWithoutLocation() {
+        AlertPayload payload = new AlertPayload();
+        payload.setTimestampCurrent(42);
+        BinaryAlertEncoder encoder = new BinaryAlertEncoder();
+        int length = encoder.encode(payload);
+
+        AlertPayload decoded = new AlertPayload();
+        BinaryAlertEncoder.decode(encoder.buffer(), 0, length, decoded);
+        assertFalse(decoded.hasLocation());
+        assertEquals(AlertPayload.SOURCE_NONE, decoded.getLocationSource());
+        assertEquals(42, decoded.getTimestampCurrent());
+        assertEquals(0, decoded.getTrailSize());
+    }
+
+    @Test
+    public void binary_rejectsTruncatedOrUnknownVersion() {
+        BinaryAlertEncoder encoder = new BinaryAlertEncoder();
+        int length = encoder.encode(mPayload);
+        byte[] data = Arrays.copyOf(encoder.buffer(), length);
+        try {
+            BinaryAlertEncoder.decode(Arrays.copyOf(data, length / 2), 0, length / 2,
+                    new AlertPayload());
+            fail("truncated alert accepted");
+        } catch (IllegalArgumentException expected) {
+            // attendu
+        }
+        data[0] = 99;
+        try {
+            BinaryAlertEncoder.decode(data, 0, length, new AlertPayload());
+            fail("unknown version accepted");
+        } catch (IllegalArgumentException expected) {
+            // attendu
+        }
+    }
+
+    @Test
+    public void binary_isMuchSmallerThanJson() {
+        int binary = new BinaryAlertEncoder().encode(mPayload);
+        int json = new JsonAlertEncoder().encode(mPayload);
+        assertTrue("binary=" + binary + " json=" + json, binary * 5 < json);
+    }
+
+    @Test
+    public void json_keepsWebServiceFields() throws Exception {
+        JsonAlertEncoder encoder = new JsonAlertEncoder();
+        int length = encoder.encode(mPayload);
+        String json = new String(encoder.buffer(), 0, length, "UTF-8");
+        assertTrue(json.startsWith("{\"lastname\":\"Paul\",\"firstname\":\"Jean\","));
+        assertTrue(json.contains("\"phone_number\":\"0645751254\""));
+        assertTrue(json.contains("\"timestamp_current\":1457000000000"));
+        assertTrue(json.contains("\"alert_id\":\"7edcba9876543210\",\"update_seq\":3"));
+        assertTrue(json.contains("\"position_age_ms\":2000,\"position_source\":\"last_known\""));
+        assertTrue(json.contains("\"drive_link\":\"https://example.org/clip?id=é\""));
+        assertTrue(json.contains("\"trail_start\":5,\"trail\":["));
+        assertTrue(json.endsWith("}]}"));
+    }
+
+    @Test
+    public void withoutEvidence_linkIsEmpty() throws Exception {
+        // enregistrement impossible (autorisation refusée) : EvidenceRecorder.prepare() rend ""
+        mPayload.setDriveLink("");
+        BinaryAlertEncoder binary = new BinaryAlertEncoder();
+        AlertPayload decoded = new AlertPayload();
+        BinaryAlertEncoder.decode(binary.buffer(), 0, binary.encode(mPayload), decoded);
+        assertEquals("", decoded.getDriveLink());
+        assertEquals(mPayload.getTrailSize(), decoded.getTrailSize());
+
+        JsonAlertEncoder json = new JsonAlertEncoder();
+        int length = json.encode(mPayload);
+        assertTrue(new String(json.buffer(), 0, length, "UTF-8").contains("\"drive_link\":\"\","));
+    }
+
+    @Test
+    public void json_rebuildsProfileTemplateWhenProfileChanges() throws Exception {
+        JsonAlertEncoder encoder = new JsonAlertEncoder();
+        encoder.encode(mPayload);
+        mPayload.setProfile(new UserProfile("Martin", "Léa \"Lou\"", "0611223344"));
+        mPayload.setLocation(-0.05, 3.8767159, 1456999998000L, Float.NaN,
+                AlertPayload.SOURCE_FUSED);
+        int length = encoder.encode(mPayload);
+        String json = new String(encoder.buffer(), 0, length, "UTF-8");
+        assertTrue(json.startsWith("{\"lastname\":\"Martin\",\"firstname\":\"Léa \\\"Lou\\\"\","
+                + "\"phone_number\":\"0611223344\",\"profile_id\":"
+                + mPayload.getProfileId() + ",\"alert_id\":"));
+        // coordonnées en virgule fixe, précision non renseignée écrite 0
+        assertTrue(json.contains("\"latitude\":-0.0500000,\"longitude\":3.8767159,"));
+        assertTrue(json.contains("\"accuracy\":0.0,"));
+        assertTrue(json.contains("{\"latitude\":43.609269,\"longitude\":3.878966,"));
+
+        // profil connu par son seul identifiant (alerte binaire décodée)
+        mPayload.setProfileId(42);
+        length = encoder.encode(mPayload);
+        json = new String(encoder.buffer(), 0, length, "UTF-8");
+        assertTrue(json.startsWith("{\"profile_id\":42,\"alert_id\":\"7edcba9876543210\""));
+    }
+
+    @Test
+    public void relay_idempotencyKeyIgnoresRelayId() {
+        BinaryAlertEncoder binary = new BinaryAlertEncoder();
+        int length = binary.encode(mPayload);
+        RelayProtocol.Alert first = new RelayProtocol.Alert(12, "http://localhost/alert",
+                binary.contentType(), Arrays.copyOf(binary.buffer(), length));
+        JsonAlertEncoder json = new JsonAlertEncoder();
+        length = json.encode(mPayload);
+        // même alerte, identifiant de relais réutilisé après la réinstallation de la montre
+        RelayProtocol.Alert resent = new RelayProtocol.Alert(0, "http://localhost/alert",
+                json.contentType(), Arrays.copyOf(json.buffer(), length));
+
+        assertEquals("7edcba9876543210/3", RelayProtocol.idempotencyKey(first));
+        assertEquals("7edcba9876543210/3", RelayProtocol.idempotencyKey(resent));
+
+        mPayload.setUpdateSeq(4);
+        length = binary.encode(mPayload);
+        assertEquals("7edcba9876543210/4", RelayProtocol.idempotencyKey(new RelayProtocol.Alert(
+                12, "http://localhost/alert", binary.contentType(),
+                Arrays.copyOf(binary.buffer(), length))));
+    }
+
+    @Test
+    public void relay_idempotencyKeyAbsentFromUnknownAlerts() throws Exception {
+        assertNull(RelayProtocol.idempotencyKey(new RelayProtocol.Alert(1, "", "text/plain",
+                new byte[]{1, 2})));
+        assertNull(RelayProtocol.idempotencyKey(new RelayProtocol.Alert(1, "",
+                JsonAlertEncoder.CONTENT_TYPE, "{\"lastname\":\"Paul\"}".getBytes("UTF-8"))));
+        assertNull(RelayProtocol.idempotencyKey(new RelayProtocol.Alert(1, "",
+                BinaryAlertEncoder.CONTENT_TYPE, new byte[]{BinaryAlertEncoder.VERSION, 0, 1})));
+    }
+
+    @Test
+    public void wireBuffer_varintsRoundTrip() {
+        WireBuffer out = new WireBuffer(1);
+        long[] values = {0, 1, -1, 63, -64, 300, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            out.writeZigzag(value);
+        }
+        WireBuffer in = WireBuffer.wrap(out.data(), 0);
+        for (long value : values) {
+            assertEquals(value, in.readZigzag());
+        }
+        assertEquals(out.position(), in.position());
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AmbientClockTest {
+
+    private static String text(AmbientClock clock) {
+        return new String(clock.text(), 0, clock.length());
+    }
+
+    @Test
+    public void text_changesOnlyWithTheMinute() {
+        AmbientClock clock = new AmbientClock();
+        // 2016-03-03 10:13:20 UTC
+        long now = 1457000000000L;
+        assertTrue(clock.update(now, 0));
+        assertEquals("10:13", text(clock));
+        assertFalse(clock.update(now + 39999, 0));
+        assertTrue(clock.update(now + 40000, 0));
+        assertEquals("10:14", text(clock));
+    }
+
+    @Test
+    public void offset_wrapsAroundMidnight() {
+        AmbientClock clock = new AmbientClock();
+        assertTrue(clock.update(1457000000000L, 14 * 3600 * 1000));
+        assertEquals("00:13", text(clock));
+        assertTrue(clock.update(1457000000000L, -11 * 3600 * 1000));
+        assertEquals("23:13", text(clock));
+        // avant 1970
+        assertTrue(clock.update(-60 * 1000, 0));
+        assertEquals("23:59", text(clock));
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DeliveryRouteSelectorTest {
+
+    @Test
+    public void noPhone_alwaysDirect() {
+        DeliveryRouteSelector selector = new DeliveryRouteSelector();
+        selector.record(DeliveryRouteSelector.ROUTE_DIRECT, 60000, false, 0);
+        assertEquals(DeliveryRouteSelector.ROUTE_DIRECT, selector.select(false, 0));
+    }
+
+    @Test
+    public void unmeasuredRelay_preferredOnlyWhenDirectIsSlow() {
+        DeliveryRouteSelector selector = new DeliveryRouteSelector();
+        selector.recordLinkRtt(80, 0);
+        selector.record(DeliveryRouteSelector.ROUTE_DIRECT, 400, true, 0);
+        assertEquals(DeliveryRouteSelector.ROUTE_DIRECT, selector.select(true, 0));
+
+        selector.record(DeliveryRouteSelector.ROUTE_DIRECT, 0, false, 0);
+        selector.record(DeliveryRouteSelector.ROUTE_RELAY, 900, true, 0);
+        assertEquals(DeliveryRouteSelector.ROUTE_RELAY, selector.select(true, 0));
+    }
+
+    @Test
+    public void staleMeasurements_areForgotten() {
+        DeliveryRouteSelector selector = new DeliveryRouteSelector();
+        selector.record(DeliveryRouteSelector.ROUTE_DIRECT, 0, false, 0);
+        selector.record(DeliveryRouteSelector.ROUTE_RELAY, 500, true, 0);
+        assertEquals(DeliveryRouteSelector.ROUTE_RELAY, selector.select(true, 1000));
+        // une heure plus tard, le chemin direct n'est plus pénalisé
+        assertEquals(DeliveryRouteSelector.ROUTE_DIRECT, selector.select(true, 3600 * 1000L));
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EndpointPoolTest {
+
+    private static final String[] URLS = AlertEndpoint.newAlertUrls("a:8080, b:8080,,c:8080");
+
+    @Test
+    public void hosts_areParsedInOrder() {
+        assertEquals(3, URLS.length);
+        assertEquals(AlertEndpoint.newAlertUrl("a:8080"), URLS[0]);
+        assertEquals(AlertEndpoint.newAlertUrl("b:8080"), URLS[1]);
+        assertEquals(AlertEndpoint.newAlertUrl("c:8080"), URLS[2]);
+        assertEquals(1, AlertEndpoint.newAlertUrls("a").length);
+    }
+
+    @Test
+    public void pushEndpoint_matchesHostNameWhateverThePort() {
+        assertEquals(1, AlertEndpoint.pushEndpoint("a:8080, b:8080,,c:8080", "B:8090"));
+        assertEquals(0, AlertEndpoint.pushEndpoint("10.0.2.2:8080", "10.0.2.2:8090"));
+        // canal désactivé, ou servi par un autre serveur : aucun point d'accès
+        assertEquals(-1, AlertEndpoint.pushEndpoint("a:8080", ""));
+        assertEquals(-1, AlertEndpoint.pushEndpoint("a:8080,b:8080", "push.example.org"));
+    }
+
+    @Test
+    public void emptyHostList_isRejected() {
+        try {
+            AlertEndpoint.newAlertUrls(" , ");
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // aucun hôte
+        }
+    }
+
+    @Test
+    public void failingEndpoint_isSkippedUntilCooldownEnds() {
+        EndpointPool pool = new EndpointPool(URLS, 10, 5000);
+        assertEquals(0, pool.primary(0));
+        assertEquals(1, pool.alternate(0, 0));
+
+        // un échec isolé ne suffit pas
+        pool.record(0, 10000, false, 1000);
+        assertEquals(0, pool.primary(1000));
+        pool.record(0, 10000, false, 2000);
+        assertFalse(pool.isHealthy(0, 2000));
+        assertEquals(1, pool.primary(2000));
+        assertEquals(2, pool.alternate(1, 2000));
+        assertEquals(0, pool.primary(7000));
+
+        // nouvel échec à l'essai : délai doublé
+        pool.record(0, 10000, false, 7000);
+        assertEquals(1, pool.primary(16999));
+        assertEquals(0, pool.primary(17000));
+        pool.record(0, 20, true, 17000);
+        pool.record(0, 10000, false, 18000);
+        assertTrue(pool.isHealthy(0, 18000));
+    }
+
+    @Test
+    public void allEndpointsDown_picksEarliestRecovery() {
+        EndpointPool pool = new EndpointPool(URLS, 10, 5000);
+        for (int i = 0; i < EndpointPool.FAILURES_BEFORE_COOLDOWN; i++) {
+            pool.record(1, 0, false, 100);
+            pool.record(0, 0, false, 200);
+            pool.record(2, 0, false, 300);
+        }
+        assertEquals(1, pool.primary(400));
+        assertEquals(-1, pool.alternate(1, 400));
+        // une erreur 4xx est une réponse
+        pool.record(2, 30, true, 500);
+        assertEquals(2, pool.primary(500));
+    }
+
+    @Test
+    public void hedgeDelay_followsP95OfRecentLatencies() {
+        EndpointPool pool = new EndpointPool(URLS, 10, 5000);
+        assertEquals(EndpointPool.DEFAULT_HEDGE_DELAY_MS, pool.hedgeDelayMs());
+        for (int i = 1; i <= 100; i++) {
+            pool.record(i % 2, i, true, i);
+        }
+        // 64 dernières durées : 37..100, 95e centile au rang 61
+        assertEquals(97, pool.hedgeDelayMs());
+
+        EndpointPool clamped = new EndpointPool(URLS, 200, 5000);
+        for (int i = 0; i < EndpointPool.MIN_SAMPLES; i++) {
+            clamped.record(0, 3, true, i);
+        }
+        assertEquals(200, clamped.hedgeDelayMs());
+        for (int i = 0; i < 64; i++) {
+            clamped.record(0, 60000, true, i);
+        }
+        assertEquals(5000, clamped.hedgeDelayMs());
+    }
+}
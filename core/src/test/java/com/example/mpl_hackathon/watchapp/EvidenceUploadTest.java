@@ -0,0 +1,74 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EvidenceUploadTest {
+
+    private static void produce(EvidenceUpload upload, int length, boolean last) {
+        EvidenceUpload.Chunk chunk = upload.obtain();
+        assertNotNull(chunk);
+        upload.submit(chunk, length, last);
+    }
+
+    @Test
+    public void buffers_areBoundedAndRecycledOnAcknowledgement() {
+        EvidenceUpload upload = new EvidenceUpload(1, 0, 2, 100);
+        produce(upload, 100, false);
+        produce(upload, 100, false);
+        // l'envoi est en retard : le morceau suivant est abandonné
+        assertNull(upload.obtain());
+        upload.drop();
+        assertEquals(200, upload.getPeakBufferedBytes());
+
+        EvidenceUpload.Chunk chunk = upload.next();
+        assertEquals(0, chunk.offset());
+        assertNull(upload.next());
+        upload.onAcknowledged(100, false, 250);
+        assertEquals(250, upload.getTimeToFirstChunkMs());
+        produce(upload, 60, true);
+        assertEquals(100, upload.next().offset());
+        upload.onAcknowledged(200, false, 300);
+        chunk = upload.next();
+        assertEquals(200, chunk.offset());
+        assertTrue(chunk.isLast());
+        upload.onAcknowledged(260, true, 350);
+        assertTrue(upload.isComplete());
+        assertEquals(1, upload.getDroppedChunks());
+        assertEquals(200, upload.getPeakBufferedBytes());
+    }
+
+    @Test
+    public void refusedChunk_resumesFromServerOffset() {
+        EvidenceUpload upload = new EvidenceUpload(1, 0, 4, 100);
+        produce(upload, 100, false);
+        produce(upload, 100, false);
+        // réponse perdue : le serveur a pourtant reçu le premier morceau
+        upload.next();
+        assertTrue(upload.onFailed(3));
+        assertEquals(0, upload.next().offset());
+        // le serveur indique d'où reprendre
+        upload.onAcknowledged(100, false, 10);
+        assertEquals(100, upload.next().offset());
+        assertFalse(upload.onFailed(1));
+        assertTrue(upload.isAbandoned());
+        assertNull(upload.obtain());
+    }
+
+    @Test
+    public void finish_sendsEmptyLastChunkAfterInFlightChunk() {
+        EvidenceUpload upload = new EvidenceUpload(1, 0, 1, 100);
+        produce(upload, 100, false);
+        EvidenceUpload.Chunk chunk = upload.next();
+        upload.finish();
+        assertFalse(chunk.isLast());
+        upload.onAcknowledged(100, false, 10);
+        chunk = upload.next();
+        assertTrue(chunk.isLast());
+        assertEquals(0, chunk.length());
+        assertEquals(100, chunk.offset());
+        upload.onAcknowledged(100, true, 20);
+        assertTrue(upload.isDone());
+    }
+}
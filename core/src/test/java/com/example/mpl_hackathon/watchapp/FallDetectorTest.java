@@ -0,0 +1,139 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class FallDetectorTest {
+
+    private static final long PERIOD_NANOS = 20 * 1000000L;
+    private static final float G = FallDetector.GRAVITY;
+
+    private static final class RecordingListener implements FallDetector.Listener {
+        int impacts;
+        int dismissed;
+        int falls;
+        long impactNanos = -1;
+        long confirmedNanos = -1;
+
+        @Override
+        public void onImpact(long impactNanos) {
+            impacts++;
+        }
+
+        @Override
+        public void onImpactDismissed(long impactNanos) {
+            dismissed++;
+        }
+
+        @Override
+        public void onFallDetected(long impactNanos, long confirmedNanos) {
+            falls++;
+            this.impactNanos = impactNanos;
+            this.confirmedNanos = confirmedNanos;
+        }
+    }
+
+    /**
+     * Enregistrement synthétique à 50 Hz, accéléromètre et gyroscope entrelacés.
+     */
+    private static final class TraceBuilder {
+        final SensorTrace trace = new SensorTrace();
+        long now = 1000000000L;
+
+        TraceBuilder segment(long durationMs, float accelerationG, float wobbleG,
+                             float rotation) {
+            long end = now + durationMs * 1000000L;
+            int i = 0;
+            while (now < end) {
+                float wobble = (i++ & 1) == 0 ? wobbleG : -wobbleG;
+                trace.add(SensorTrace.ACCELEROMETER, now, 0, 0, (accelerationG + wobble) * G);
+                trace.add(SensorTrace.GYROSCOPE, now + 1000, rotation, 0, 0);
+                now += PERIOD_NANOS;
+            }
+            return this;
+        }
+
+        TraceBuilder standing(long durationMs) {
+            return segment(durationMs, 1f, 0.01f, 0.05f);
+        }
+
+        TraceBuilder walking(long durationMs) {
+            return segment(durationMs, 1f, 0.4f, 1.5f);
+        }
+    }
+
+    private static RecordingListener replay(TraceBuilder builder, boolean useGyroscope) {
+        RecordingListener listener = new RecordingListener();
+        builder.trace.replay(new FallDetector(listener, useGyroscope));
+        return listener;
+    }
+
+    @Test
+    public void fall_detectedOnceAfterStillness() {
+        TraceBuilder builder = new TraceBuilder().standing(2000)
+                .segment(300, 0.2f, 0f, 2f)     // chute libre
+                .segment(60, 3f, 0f, 5f)        // choc
+                .standing(10000);               // porteur à terre
+        long impactAt = builder.now - 10060 * 1000000L;
+        RecordingListener listener = replay(builder, true);
+
+        assertEquals(1, listener.falls);
+        assertEquals(impactAt, listener.impactNanos);
+        long latencyMs = (listener.confirmedNanos - listener.impactNanos) / 1000000;
+        assertTrue("latency=" + latencyMs, latencyMs >= 3000 && latencyMs < 3500);
+    }
+
+    @Test
+    public void walking_isNotAFall() {
+        RecordingListener listener = replay(new TraceBuilder().walking(60000), true);
+        assertEquals(0, listener.impacts);
+        assertEquals(0, listener.falls);
+    }
+
+    @Test
+    public void impactFollowedByMovement_isDismissed() {
+        TraceBuilder builder = new TraceBuilder().standing(2000)
+                .segment(300, 0.2f, 0f, 2f)
+                .segment(60, 3f, 0f, 5f)
+                .walking(10000);
+        RecordingListener listener = replay(builder, true);
+        assertEquals(1, listener.impacts);
+        assertEquals(1, listener.dismissed);
+        assertEquals(0, listener.falls);
+    }
+
+    @Test
+    public void hardImpactWithoutFreeFallOrRotation_isDismissed() {
+        // main posée brutalement sur une table
+        TraceBuilder builder = new TraceBuilder().standing(2000)
+                .segment(40, 4f, 0f, 0.05f)
+                .standing(5000);
+        assertEquals(0, replay(builder, true).falls);
+        // sans gyroscope, le choc violent suffit
+        assertEquals(1, replay(builder, false).falls);
+    }
+
+    @Test
+    public void read_parsesRecordedTrace() throws Exception {
+        SensorTrace trace = SensorTrace.read(new StringReader(
+                "# montre posée\n"
+                        + "a,1000,0.1,0.2,9.8\n"
+                        + "\n"
+                        + "g,2000,0,0,0.01\n"));
+        assertEquals(2, trace.size());
+        assertEquals(1000, trace.getDurationNanos());
+        FallDetector detector = new FallDetector(new RecordingListener(), true);
+        trace.replay(detector);
+        assertEquals(2, detector.getSampleCount());
+
+        try {
+            SensorTrace.read(new StringReader("x,1000,0,0,0\n"));
+            fail();
+        } catch (java.io.IOException e) {
+            // capteur inconnu
+        }
+    }
+}
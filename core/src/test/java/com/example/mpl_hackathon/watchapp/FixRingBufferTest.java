@@ -0,0 +1,79 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FixRingBufferTest {
+
+    private static List<Long> times(FixRingBuffer buffer, int max) {
+        final List<Long> times = new ArrayList<>();
+        buffer.visit(new FixRingBuffer.Visitor() {
+            @Override
+            public void visit(long timeMs, double latitude, double longitude,
+                              float accuracyMeters) {
+                times.add(timeMs);
+                assertEquals(timeMs / 10.0, latitude, 0);
+            }
+        }, max);
+        return times;
+    }
+
+    @Test
+    public void visit_returnsNewestFirst() {
+        FixRingBuffer buffer = new FixRingBuffer(4);
+        for (long t = 1; t <= 3; t++) {
+            buffer.add(t, t / 10.0, 0, 5f);
+        }
+        assertEquals(3, buffer.size());
+        assertEquals(Arrays.asList(3L, 2L, 1L), times(buffer, 10));
+    }
+
+    @Test
+    public void add_overwritesOldestBeyondCapacity() {
+        FixRingBuffer buffer = new FixRingBuffer(5);
+        for (long t = 1; t <= 12; t++) {
+            buffer.add(t, t / 10.0, 0, 5f);
+        }
+        assertEquals(5, buffer.size());
+        assertEquals(12, buffer.totalCount());
+        assertEquals(Arrays.asList(12L, 11L, 10L, 9L, 8L), times(buffer, 10));
+        assertEquals(Arrays.asList(12L, 11L), times(buffer, 2));
+    }
+
+    @Test
+    public void visit_neverMixesTwoFixesWhileWriting() throws Exception {
+        final FixRingBuffer buffer = new FixRingBuffer(4);
+        final int fixes = 200000;
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (long t = 1; t <= fixes; t++) {
+                    buffer.add(t, t / 10.0, -t, t % 1000);
+                }
+            }
+        });
+        writer.start();
+        final long[] visited = new long[1];
+        FixRingBuffer.Visitor check = new FixRingBuffer.Visitor() {
+            @Override
+            public void visit(long timeMs, double latitude, double longitude,
+                              float accuracyMeters) {
+                assertEquals(timeMs / 10.0, latitude, 0);
+                assertEquals(-timeMs, longitude, 0);
+                assertEquals(timeMs % 1000, accuracyMeters, 0);
+                visited[0]++;
+            }
+        };
+        while (writer.isAlive()) {
+            buffer.visit(check, 4);
+        }
+        writer.join();
+        assertEquals(4, buffer.visit(check, 10));
+        assertTrue(visited[0] >= 4);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FixTrackerTest {
+
+    private static final long SECOND_NANOS = 1000000000L;
+
+    @Test
+    public void onFix_estimatesMotionWithoutGpsSpeed() {
+        SamplingContext context = new SamplingContext();
+        FixTracker tracker = new FixTracker(8, context, new SamplingStats(0));
+        tracker.onFix(0, 0, 43.61, 3.87, 10f, Float.NaN);
+        // ~111 m en 10 s : vitesse d'un véhicule
+        tracker.onFix(10000, 10 * SECOND_NANOS, 43.611, 3.87, 10f, Float.NaN);
+        assertEquals(SamplingContext.MOTION_VEHICLE, context.getMotion());
+        assertEquals(2, tracker.getTrail().size());
+    }
+
+    @Test
+    public void fillLocation_usesMonotonicAge() {
+        FixTracker tracker = new FixTracker(8, new SamplingContext(), new SamplingStats(0));
+        AlertPayload payload = new AlertPayload();
+        assertFalse(tracker.fillLocation(payload, 0, 0));
+
+        tracker.setCurrent(SECOND_NANOS, 43.61, 3.87, Float.NaN, AlertPayload.SOURCE_LAST_KNOWN);
+        assertTrue(tracker.fillLocation(payload, 4 * SECOND_NANOS, 100000));
+        assertEquals(3000, tracker.getAgeMs(4 * SECOND_NANOS));
+        assertEquals(97000, payload.getTimestampPosition());
+        assertEquals(AlertPayload.SOURCE_LAST_KNOWN, payload.getLocationSource());
+    }
+
+    @Test
+    public void onFix_rejectedOutlierIsNotTracked() {
+        FixTracker tracker = new FixTracker(8, new SamplingContext(), new SamplingStats(0));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(tracker.onFix(i * 1000, i * SECOND_NANOS, 43.61, 3.87, 10f, Float.NaN));
+        }
+        assertFalse(tracker.onFix(3000, 3 * SECOND_NANOS, 43.7, 3.87, 10f, Float.NaN));
+        assertEquals(3, tracker.getTrail().size());
+        assertEquals(43.61, tracker.getLatitude(), 1e-6);
+    }
+}
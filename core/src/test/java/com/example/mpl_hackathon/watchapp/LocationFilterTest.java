@@ -0,0 +1,80 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LocationFilterTest {
+
+    private static final double LATITUDE = 43.61;
+    private static final double LONGITUDE = 3.87;
+    private static final double DEGREES_PER_METER = 1 / 111320.0;
+    private static final long SECOND_NANOS = 1000000000L;
+
+    @Test
+    public void noisyFixes_estimateIsCloserThanRawFixes() {
+        Random random = new Random(42);
+        LocationFilter filter = new LocationFilter();
+        double rawError = 0;
+        double filteredError = 0;
+        for (int i = 0; i < 60; i++) {
+            double noise = random.nextGaussian() * 13;
+            double latitude = LATITUDE + noise * DEGREES_PER_METER;
+            assertTrue(filter.update(i * 5 * SECOND_NANOS, latitude, LONGITUDE, 20f));
+            if (i >= 10) {
+                rawError += Math.abs(latitude - LATITUDE);
+                filteredError += Math.abs(filter.getLatitude() - LATITUDE);
+            }
+        }
+        assertTrue("raw=" + rawError + " filtered=" + filteredError,
+                filteredError < rawError * 0.8);
+        assertTrue(filter.getAccuracy() < 20f);
+    }
+
+    @Test
+    public void outlier_isRejectedUntilConfirmed() {
+        LocationFilter filter = new LocationFilter();
+        for (int i = 0; i < 5; i++) {
+            filter.update(i * SECOND_NANOS, LATITUDE, LONGITUDE, 10f);
+        }
+        // saut de 1 km avec une précision annoncée de 10 m
+        double jumped = LATITUDE + 1000 * DEGREES_PER_METER;
+        assertFalse(filter.update(5 * SECOND_NANOS, jumped, LONGITUDE, 10f));
+        assertEquals(LATITUDE, filter.getLatitude(), 1e-9);
+        assertFalse(filter.update(6 * SECOND_NANOS, jumped, LONGITUDE, 10f));
+        // la position est confirmée : le filtre repart de celle-ci
+        assertTrue(filter.update(7 * SECOND_NANOS, jumped, LONGITUDE, 10f));
+        assertEquals(jumped, filter.getLatitude(), 1e-9);
+        assertEquals(2, filter.getRejectedCount());
+        // une position plus ancienne que l'estimation est ignorée
+        assertFalse(filter.update(6 * SECOND_NANOS, jumped, LONGITUDE, 10f));
+    }
+
+    @Test
+    public void constantVelocity_isEstimatedAndExtrapolated() {
+        LocationFilter filter = new LocationFilter();
+        assertFalse(filter.extrapolate(0));
+        // 1,5 m/s vers le nord, une position toutes les 5 s
+        for (int i = 0; i <= 40; i++) {
+            filter.update(i * 5 * SECOND_NANOS, LATITUDE + i * 7.5 * DEGREES_PER_METER,
+                    LONGITUDE, 8f);
+        }
+        assertEquals(1.5, filter.getSpeed(), 0.1);
+
+        long last = 200 * SECOND_NANOS;
+        assertTrue(filter.extrapolate(last + 10 * SECOND_NANOS));
+        double metersAhead = (filter.getExtrapolatedLatitude() - filter.getLatitude())
+                / DEGREES_PER_METER;
+        assertEquals(15, metersAhead, 1.5);
+        assertEquals(last + 10 * SECOND_NANOS, filter.getExtrapolatedTimeNanos());
+        assertTrue(filter.getExtrapolatedAccuracy() > filter.getAccuracy());
+
+        // au-delà de la durée maximale, la vitesse n'est plus appliquée
+        filter.extrapolate(last + 10 * LocationFilter.MAX_EXTRAPOLATION_NANOS);
+        metersAhead = (filter.getExtrapolatedLatitude() - filter.getLatitude())
+                / DEGREES_PER_METER;
+        assertEquals(45, metersAhead, 4.5);
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LocationReplayTest {
+
+    private static final long MINUTE_MS = 60 * 1000L;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final double METERS_PER_DEGREE = 111320;
+    private static final double METERS_PER_DEGREE_LONGITUDE =
+            METERS_PER_DEGREE * Math.cos(Math.toRadians(43.61));
+
+    /**
+     * Journée de six heures, une position par seconde : une heure immobile, une heure à pied
+     * (tunnel de trois minutes à 1h30), une heure en voiture (fournisseur perdu dix minutes à
+     * 2h40), puis trois heures immobile.
+     */
+    private static LocationTrace day() {
+        LocationTrace trace = new LocationTrace();
+        Random random = new Random(42);
+        double north = 0;
+        double east = 0;
+        for (long t = 0; t <= 6 * HOUR_MS; t += 1000) {
+            float speed = 0;
+            if (t >= HOUR_MS && t < 2 * HOUR_MS) {
+                speed = 1.4f;
+                north += speed;
+            } else if (t >= 2 * HOUR_MS && t < 3 * HOUR_MS) {
+                speed = 15f;
+                east += speed;
+            }
+            boolean tunnel = t >= 90 * MINUTE_MS && t < 93 * MINUTE_MS;
+            if (!tunnel) {
+                // bruit de mesure de quelques mètres
+                trace.addFix(t, 43.61 + (north + random.nextGaussian() * 3) / METERS_PER_DEGREE,
+                        3.87 + (east + random.nextGaussian() * 3) / METERS_PER_DEGREE_LONGITUDE,
+                        5f, speed);
+            }
+        }
+        trace.addAvailability(160 * MINUTE_MS, false);
+        trace.addAvailability(170 * MINUTE_MS, true);
+        return trace;
+    }
+
+    private static LocationReplay replay(LocationTrace trace, boolean foreground,
+                                         long... alerts) {
+        LocationReplay replay = new LocationReplay(trace);
+        replay.setForeground(foreground);
+        for (long alert : alerts) {
+            replay.addAlert(alert);
+        }
+        replay.run();
+        return replay;
+    }
+
+    @Test
+    public void run_replaysHoursDeterministically() {
+        LocationTrace trace = day();
+        long[] alerts = {30 * MINUTE_MS, 75 * MINUTE_MS, 135 * MINUTE_MS, 5 * HOUR_MS};
+        LocationReplay first = replay(trace, true, alerts);
+        LocationReplay second = replay(trace, true, alerts);
+
+        assertEquals(6 * HOUR_MS, first.getDurationMs());
+        assertEquals(first.getFixesRequested(), second.getFixesRequested());
+        assertEquals(first.getWakeups(), second.getWakeups());
+        assertEquals(first.summary(), second.summary());
+        assertEquals(4, first.getSamplingStats().getAlertCount());
+    }
+
+    @Test
+    public void run_adaptsSamplingAndLocatesAlerts() {
+        LocationTrace trace = day();
+        LocationReplay replay = replay(trace, true,
+                30 * MINUTE_MS, 75 * MINUTE_MS, 135 * MINUTE_MS, 5 * HOUR_MS);
+
+        // bien moins d'interrogations que de positions enregistrées
+        assertTrue(replay.summary(), replay.getFixesRequested() < trace.size() / 5);
+        assertTrue(replay.getFixesRequested() > 6 * 60);
+        // au premier plan, chaque position est livrée aussitôt
+        assertEquals(replay.getFixesDelivered(), replay.getWakeups());
+        assertEquals(0, replay.getAlertsWithoutFix());
+        // en voiture, 5 s entre deux positions, compensées par l'extrapolation
+        assertTrue(replay.summary(), replay.getMaxAlertErrorMeters() < 50);
+    }
+
+    @Test
+    public void run_samplesLessThanFixedIntervalWithoutLosingAccuracy() {
+        LocationTrace trace = day();
+        // alertes hors des dates des positions à 10 s
+        long[] alerts = {30 * MINUTE_MS + 4300, 75 * MINUTE_MS + 4300, 135 * MINUTE_MS + 4300,
+                5 * HOUR_MS + 4300};
+        LocationReplay adaptive = replay(trace, true, alerts);
+        // ancienne requête : une position haute précision toutes les 10 s
+        LocationReplay fixed = new LocationReplay(trace);
+        fixed.setSamplingPolicy(new SamplingPolicy() {
+            @Override
+            public SamplingDecision decide(SamplingContext context) {
+                return new SamplingDecision(10000, 10000,
+                        SamplingDecision.PRIORITY_HIGH_ACCURACY);
+            }
+        });
+        fixed.setForeground(true);
+        for (long alert : alerts) {
+            fixed.addAlert(alert);
+        }
+        fixed.run();
+
+        String summary = adaptive.summary() + " / " + fixed.summary();
+        // 255 contre 360 positions par heure, 6,5 m contre 8 m d'erreur moyenne
+        assertTrue(summary, adaptive.getFixesRequested() * 4 < fixed.getFixesRequested() * 3);
+        assertTrue(summary,
+                adaptive.getMeanAlertErrorMeters() <= fixed.getMeanAlertErrorMeters());
+        assertTrue(summary,
+                adaptive.getMaxAlertErrorMeters() <= fixed.getMaxAlertErrorMeters());
+        // sans alerte, à peine plus de la moitié des positions (180 par heure)
+        LocationReplay idle = replay(trace, true);
+        assertTrue(idle.summary(), idle.getFixesRequested() * 3 < fixed.getFixesRequested() * 2);
+    }
+
+    @Test
+    public void run_backgroundBatchesDeliveries() {
+        LocationReplay replay = replay(day(), false);
+
+        assertTrue(replay.getFixesDelivered() > 0);
+        // une seule livraison par lot
+        assertTrue(replay.summary(), replay.getWakeups() * (
+                AdaptiveSamplingPolicy.BACKGROUND_BATCH_SIZE - 1) <= replay.getFixesDelivered());
+    }
+
+    @Test
+    public void run_backgroundAlertFlushesBatchedFixes() {
+        // sans livraison du lot en attente, jusqu'à 1,8 km d'erreur (position de 5 min)
+        LocationReplay replay = replay(day(), false, 30 * MINUTE_MS + 4300,
+                75 * MINUTE_MS + 4300, 135 * MINUTE_MS + 4300, 5 * HOUR_MS + 4300);
+
+        assertEquals(0, replay.getAlertsWithoutFix());
+        assertTrue(replay.summary(), replay.getMaxAlertErrorMeters() < 50);
+    }
+
+    @Test
+    public void run_providerLossLeavesStalePosition() {
+        LocationTrace trace = day();
+        // 5 min après la perte du fournisseur, en voiture : 4,5 km parcourus sans position,
+        // dont 30 s seulement extrapolées
+        LocationReplay lost = replay(trace, true, 165 * MINUTE_MS);
+        LocationReplay available = replay(trace, true, 155 * MINUTE_MS);
+
+        assertEquals(0, lost.getAlertsWithoutFix());
+        assertTrue(lost.summary(), lost.getMaxAlertErrorMeters() > 4000);
+        assertTrue(available.summary(), available.getMaxAlertErrorMeters() < 50);
+    }
+
+    @Test
+    public void source_gapAndProviderLossDeliverNothing() {
+        LocationTrace trace = new LocationTrace();
+        for (long t = 0; t <= 60000; t += 1000) {
+            // trou du signal entre 10 et 30 s
+            if (t < 10000 || t > 30000) {
+                trace.addFix(t, 43.61, 3.87, 5f, 0f);
+            }
+        }
+        trace.addAvailability(40000, false);
+        trace.addAvailability(50000, true);
+        TraceLocationSource source = new TraceLocationSource(trace, 0);
+        final int[] received = new int[2];
+        SamplingDecision decision =
+                new SamplingDecision(1000, 1000, SamplingDecision.PRIORITY_HIGH_ACCURACY);
+        source.requestUpdates(decision, new LocationSource.Listener() {
+            @Override
+            public void onFix(long timeMs, long elapsedRealtimeNanos, double latitude,
+                              double longitude, float accuracy, float speed) {
+                received[0]++;
+            }
+
+            @Override
+            public void onAvailabilityChanged(boolean available) {
+                received[1]++;
+            }
+        });
+
+        source.advanceTo(60000);
+        assertEquals(61, source.getFixesRequested());
+        // 0..9 s, 31..39 s, 50..60 s : une position déjà livrée ne l'est pas deux fois
+        assertEquals(10 + 9 + 11, received[0]);
+        assertEquals(received[0], source.getFixesDelivered());
+        assertEquals(2, received[1]);
+        assertEquals(1, source.getProviderLosses());
+        assertEquals(60000, source.elapsedRealtimeMs());
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class LocationTraceTest {
+
+    @Test
+    public void read_parsesFixesAndProviderEvents() throws IOException {
+        LocationTrace trace = LocationTrace.read(new StringReader(
+                "# trajet\n"
+                        + "f,0,43.61,3.87,5,1.5\n"
+                        + "f,1000,43.62,3.87,,\n"
+                        + "\n"
+                        + "l,2000\n"
+                        + "r,9000\n"));
+        assertEquals(2, trace.size());
+        assertEquals(43.62, trace.getLatitude(1), 1e-9);
+        assertTrue(Float.isNaN(trace.getAccuracy(1)));
+        assertTrue(Float.isNaN(trace.getSpeed(1)));
+        assertEquals(2, trace.getAvailabilityEventCount());
+        assertFalse(trace.isAvailableAfter(0));
+        assertTrue(trace.isAvailableAfter(1));
+        assertEquals(0, trace.getStartMs());
+        assertEquals(9000, trace.getEndMs());
+    }
+
+    @Test
+    public void read_rejectsInvalidLine() {
+        try {
+            LocationTrace.read(new StringReader("f,0,43.61,3.87,5,1.5\nf,1000,43.62\n"));
+            fail();
+        } catch (IOException e) {
+            assertEquals("Invalid location line 2", e.getMessage());
+        }
+    }
+
+    @Test
+    public void interpolate_betweenSurroundingFixes() {
+        LocationTrace trace = new LocationTrace();
+        trace.addFix(0, 43.60, 3.80, 5f, Float.NaN);
+        trace.addFix(10000, 43.70, 3.90, 5f, Float.NaN);
+        double[] position = new double[2];
+
+        assertTrue(trace.interpolate(2500, position));
+        assertEquals(43.625, position[0], 1e-9);
+        assertEquals(3.825, position[1], 1e-9);
+        assertEquals(0, trace.indexAt(9999));
+        assertEquals(-1, trace.indexAt(-1));
+
+        // après la dernière position : la dernière position
+        assertTrue(trace.interpolate(60000, position));
+        assertEquals(43.70, position[0], 1e-9);
+        assertFalse(new LocationTrace().interpolate(0, position));
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PushHeartbeatTest {
+
+    @Test
+    public void interval_growsUntilServerIdleTimeout() {
+        PushHeartbeat heartbeat = new PushHeartbeat(1000, 60000, 1000);
+        heartbeat.onConnected(4000);
+        assertEquals(1000, heartbeat.getIntervalMs());
+        for (int i = 0; i < 5; i++) {
+            heartbeat.onPong(heartbeat.getIntervalMs());
+        }
+        // 80 % du délai annoncé par le serveur
+        assertEquals(3200, heartbeat.getIntervalMs());
+        assertFalse(heartbeat.isStable());
+    }
+
+    @Test
+    public void lostAfterLongerIdle_fixesIntervalAtLastSuccess() {
+        PushHeartbeat heartbeat = new PushHeartbeat(1000, 60000, 1000);
+        heartbeat.onConnected(0);
+        heartbeat.onPong(1000);
+        heartbeat.onPong(2000);
+        assertEquals(3000, heartbeat.getIntervalMs());
+        // coupure pendant l'inactivité plus courte qu'un intervalle réussi : réseau, pas NAT
+        heartbeat.onLost(1500);
+        assertFalse(heartbeat.isStable());
+        heartbeat.onLost(3000);
+        assertTrue(heartbeat.isStable());
+        assertEquals(2000, heartbeat.getIntervalMs());
+        heartbeat.onPong(2000);
+        assertEquals(2000, heartbeat.getIntervalMs());
+    }
+
+    @Test
+    public void warmRadio_allowsEarlyPing() {
+        PushHeartbeat heartbeat = new PushHeartbeat(10000, 60000, 1000);
+        heartbeat.onConnected(0);
+        assertEquals(10000, heartbeat.nextPingAtMs(0));
+        assertFalse(heartbeat.isDue(4000, 0, true));
+        assertFalse(heartbeat.isDue(6000, 0, false));
+        assertTrue(heartbeat.isDue(6000, 0, true));
+        assertTrue(heartbeat.isDue(10000, 0, false));
+    }
+}
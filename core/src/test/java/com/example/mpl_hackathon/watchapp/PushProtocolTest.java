@@ -0,0 +1,121 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PushProtocolTest {
+
+    private static byte[] bytes(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + 7);
+        }
+        return data;
+    }
+
+    @Test
+    public void acceptKey_matchesRfcExample() {
+        assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=",
+                PushProtocol.acceptKey("dGhlIHNhbXBsZSBub25jZQ=="));
+    }
+
+    @Test
+    public void frames_roundTripMaskedAndUnmaskedAtEveryLengthEncoding() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] lengths = {0, 125, 126, 1000, PushProtocol.MAX_FRAME_BYTES};
+        for (int length : lengths) {
+            PushProtocol.writeFrame(out, PushProtocol.OPCODE_BINARY, bytes(length), length, 0);
+            PushProtocol.writeFrame(out, PushProtocol.OPCODE_BINARY, bytes(length), length,
+                    0x5a3c01ff);
+        }
+        PushProtocol.writeFrame(out, PushProtocol.OPCODE_PING, null, 0, 0x12345679);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        PushProtocol.FrameReader reader = new PushProtocol.FrameReader();
+        for (int length : lengths) {
+            for (int i = 0; i < 2; i++) {
+                assertEquals(PushProtocol.OPCODE_BINARY, reader.read(in));
+                assertEquals(length, reader.length());
+                assertArrayEquals(bytes(length), Arrays.copyOf(reader.data(), length));
+            }
+        }
+        assertEquals(PushProtocol.OPCODE_PING, reader.read(in));
+        assertEquals(0, reader.length());
+        assertEquals(-1, reader.read(in));
+    }
+
+    @Test
+    public void oversizedFrame_isRejected() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int length = PushProtocol.MAX_FRAME_BYTES + 1;
+        PushProtocol.writeFrame(out, PushProtocol.OPCODE_BINARY, bytes(length), length, 0);
+        try {
+            new PushProtocol.FrameReader().read(new ByteArrayInputStream(out.toByteArray()));
+            fail("frame larger than the limit should be rejected");
+        } catch (IOException expected) {
+            // trame refusée avant l'allocation de son contenu
+        }
+    }
+
+    @Test
+    public void messages_roundTrip() throws IOException {
+        byte[] data = PushProtocol.encodeAlert(new PushProtocol.Alert(7,
+                BinaryAlertEncoder.CONTENT_TYPE, bytes(40)));
+        assertEquals(PushProtocol.TYPE_ALERT, PushProtocol.typeOf(data, data.length));
+        PushProtocol.Alert alert = PushProtocol.decodeAlert(data, data.length);
+        assertEquals(7, alert.requestId);
+        assertEquals(BinaryAlertEncoder.CONTENT_TYPE, alert.contentType);
+        assertArrayEquals(bytes(40), alert.payload);
+
+        data = PushProtocol.encodeAck(new PushProtocol.Ack(7, 0xabcL, 200, "json", "{}"));
+        PushProtocol.Ack ack = PushProtocol.decodeAck(data, data.length);
+        assertEquals(7, ack.requestId);
+        assertEquals(0xabcL, ack.alertId);
+        assertTrue(ack.isSuccess());
+        assertEquals("json", ack.acceptedFormats);
+        assertEquals("{}", ack.body);
+
+        data = PushProtocol.encodeSubscribe(new PushProtocol.Subscribe(12, new long[]{1, 2}));
+        PushProtocol.Subscribe subscribe = PushProtocol.decodeSubscribe(data, data.length);
+        assertEquals(12, subscribe.lastEventSeq);
+        assertArrayEquals(new long[]{1, 2}, subscribe.alertIds);
+
+        data = PushProtocol.encodeDispatch(new PushProtocol.Dispatch(13, 0xabcL,
+                PushProtocol.STATE_DISPATCHED, 600, "Help is on the way"));
+        PushProtocol.Dispatch dispatch = PushProtocol.decodeDispatch(data, data.length);
+        assertEquals(13, dispatch.seq);
+        assertEquals(0xabcL, dispatch.alertId);
+        assertEquals(PushProtocol.STATE_DISPATCHED, dispatch.state);
+        assertEquals(600, dispatch.etaSeconds);
+        assertEquals("Help is on the way", dispatch.message);
+
+        try {
+            PushProtocol.decodeAck(data, data.length);
+            fail("a dispatch should not decode as an acknowledgement");
+        } catch (IOException expected) {
+            // type de message vérifié
+        }
+    }
+
+    @Test
+    public void head_roundTripsWithLowerCaseNames() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Map<String, String> headers = PushProtocol.upgradeHeaders();
+        headers.put(PushProtocol.IDLE_TIMEOUT_HEADER, "30000");
+        PushProtocol.writeHead(out, "HTTP/1.1 101 Switching Protocols", headers);
+
+        Map<String, String> read = new HashMap<String, String>();
+        assertEquals("HTTP/1.1 101 Switching Protocols", PushProtocol.readHead(
+                new ByteArrayInputStream(out.toByteArray()), read));
+        assertEquals("websocket", read.get("upgrade"));
+        assertEquals("30000", read.get(PushProtocol.IDLE_TIMEOUT_HEADER.toLowerCase()));
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StartupTraceTest {
+
+    @Test
+    public void mark_recordsEachPhaseOnce() {
+        StartupTrace trace = new StartupTrace(1000);
+        assertEquals(-1, trace.elapsedMs(StartupTrace.PHASE_FIRST_FRAME));
+        assertEquals("Startup : first_frame=- alert_ready=-", trace.summary());
+
+        assertTrue(trace.mark(StartupTrace.PHASE_FIRST_FRAME, 1180));
+        assertFalse(trace.mark(StartupTrace.PHASE_FIRST_FRAME, 1500));
+        assertTrue(trace.mark(StartupTrace.PHASE_ALERT_READY, 1650));
+
+        assertEquals(180, trace.elapsedMs(StartupTrace.PHASE_FIRST_FRAME));
+        assertEquals(650, trace.elapsedMs(StartupTrace.PHASE_ALERT_READY));
+        assertEquals("Startup : first_frame=180ms alert_ready=650ms", trace.summary());
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TrajectoryTest {
+
+    private static final double LATITUDE = 43.61;
+    private static final double LONGITUDE = 3.87;
+    private static final double METERS_PER_DEGREE = 111320;
+    private static final long START_MS = 1457000000000L;
+    private static final int POINTS = 600;
+    private static final double TOLERANCE = 5;
+
+    private final long[] mTimes = new long[POINTS];
+    private final double[] mLatitudes = new double[POINTS];
+    private final double[] mLongitudes = new double[POINTS];
+
+    /**
+     * Marche de 10 minutes à 1 Hz : virages toutes les 40 s, arrêts et faible bruit.
+     */
+    private void walk() {
+        Random random = new Random(3);
+        double north = 0;
+        double east = 0;
+        double heading = 0;
+        for (int i = 0; i < POINTS; i++) {
+            if (i % 40 == 0) {
+                heading = random.nextDouble() * 2 * Math.PI;
+            }
+            double speed = (i / 100) % 3 == 2 ? 0 : 1.4;
+            north += speed * Math.cos(heading) + random.nextGaussian() * 0.3;
+            east += speed * Math.sin(heading) + random.nextGaussian() * 0.3;
+            mTimes[i] = START_MS + i * 1000L;
+            mLatitudes[i] = LATITUDE + north / METERS_PER_DEGREE;
+            mLongitudes[i] = LONGITUDE + east / (METERS_PER_DEGREE
+                    * Math.cos(Math.toRadians(LATITUDE)));
+        }
+    }
+
+    /**
+     * Trajectoire reconstituée côté serveur à partir des morceaux reçus.
+     */
+    private static final class Receiver implements TrajectoryCodec.Visitor {
+        final long[] times = new long[POINTS];
+        final double[] latitudes = new double[POINTS];
+        final double[] longitudes = new double[POINTS];
+        int count;
+
+        @Override
+        public void onTrajectoryPoint(int index, long timeMs, double latitude, double longitude,
+                                      float accuracyMeters) {
+            assertEquals("points must follow each other", count, index);
+            times[count] = timeMs;
+            latitudes[count] = latitude;
+            longitudes[count] = longitude;
+            count++;
+        }
+
+        /**
+         * @return écart maximal (m) entre une position et la trajectoire interpolée
+         */
+        double maxError(long[] t, double[] lat, double[] lon, int n) {
+            double cos = Math.cos(Math.toRadians(LATITUDE));
+            double max = 0;
+            int segment = 0;
+            for (int i = 0; i < n; i++) {
+                while (segment < count - 2 && times[segment + 1] < t[i]) {
+                    segment++;
+                }
+                double ratio = (t[i] - times[segment])
+                        / (double) (times[segment + 1] - times[segment]);
+                double north = (lat[i] - latitudes[segment]
+                        - ratio * (latitudes[segment + 1] - latitudes[segment]))
+                        * METERS_PER_DEGREE;
+                double east = (lon[i] - longitudes[segment]
+                        - ratio * (longitudes[segment + 1] - longitudes[segment]))
+                        * METERS_PER_DEGREE * cos;
+                max = Math.max(max, Math.sqrt(north * north + east * east));
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Envoie un morceau comme une mise à jour d'alerte et le décode comme le serveur.
+     */
+    private static int sendChunk(Trajectory trajectory, Receiver receiver) {
+        AlertPayload payload = new AlertPayload();
+        payload.setTimestampCurrent(START_MS);
+        int count = trajectory.flushTo(payload);
+        BinaryAlertEncoder encoder = new BinaryAlertEncoder();
+        int length = encoder.encode(payload);
+        AlertPayload decoded = new AlertPayload();
+        BinaryAlertEncoder.decode(encoder.buffer(), 0, length, decoded);
+        for (int i = 0; i < decoded.getTrailSize(); i++) {
+            receiver.onTrajectoryPoint(decoded.getTrailStartIndex() + i,
+                    decoded.getTrailTime(i), decoded.getTrailLatitude(i),
+                    decoded.getTrailLongitude(i), decoded.getTrailAccuracy(i));
+        }
+        return count;
+    }
+
+    @Test
+    public void simplify_keepsEveryPointWithinTolerance() {
+        walk();
+        boolean[] keep = new boolean[POINTS];
+        int kept = Trajectory.simplify(mTimes, mLatitudes, mLongitudes, 0, POINTS - 1, TOLERANCE,
+                keep, new int[2 * POINTS]);
+        assertTrue(keep[0] && keep[POINTS - 1]);
+        assertTrue("kept=" + kept, kept < POINTS / 4);
+
+        Receiver receiver = new Receiver();
+        for (int i = 0; i < POINTS; i++) {
+            if (keep[i]) {
+                receiver.onTrajectoryPoint(receiver.count, mTimes[i], mLatitudes[i],
+                        mLongitudes[i], 0);
+            }
+        }
+        assertEquals(kept, receiver.count);
+        assertTrue(receiver.maxError(mTimes, mLatitudes, mLongitudes, POINTS) <= TOLERANCE);
+    }
+
+    @Test
+    public void flushTo_sendsContinuousChunksWithinTolerance() {
+        walk();
+        Trajectory trajectory = new Trajectory(64, TOLERANCE);
+        Receiver receiver = new Receiver();
+        int chunks = 0;
+        for (int i = 0; i < POINTS; i++) {
+            trajectory.add(mTimes[i], mLatitudes[i], mLongitudes[i], 8f);
+            if (i % 15 == 14) {
+                sendChunk(trajectory, receiver);
+                chunks++;
+            }
+        }
+        while (trajectory.getPendingCount() > 0) {
+            assertTrue(sendChunk(trajectory, receiver) > 0);
+        }
+        assertTrue(chunks > 1);
+        assertEquals(receiver.count, trajectory.getSentCount());
+        assertEquals(mTimes[0], receiver.times[0]);
+        assertEquals(mTimes[POINTS - 1], receiver.times[receiver.count - 1]);
+        // tolérance augmentée de l'arrondi des coordonnées (environ 10 cm)
+        double error = receiver.maxError(mTimes, mLatitudes, mLongitudes, POINTS);
+        assertTrue("error=" + error, error <= TOLERANCE + 0.2);
+    }
+
+    @Test
+    public void add_ignoresPointsOlderThanTheLastOne() {
+        Trajectory trajectory = new Trajectory(8, TOLERANCE);
+        trajectory.add(START_MS, LATITUDE, LONGITUDE, 8f);
+        trajectory.add(START_MS, LATITUDE, LONGITUDE, 8f);
+        trajectory.add(START_MS - 1000, LATITUDE, LONGITUDE, 8f);
+        assertEquals(1, trajectory.getPendingCount());
+        trajectory.flushTo(new AlertPayload());
+        trajectory.add(START_MS, LATITUDE, LONGITUDE, 8f);
+        assertEquals(0, trajectory.getPendingCount());
+    }
+
+    @Test
+    public void addTrail_isChronological() {
+        FixRingBuffer trail = new FixRingBuffer(8);
+        for (int i = 0; i < 8; i++) {
+            // positions alignées à vitesse constante : seules les extrémités sont utiles
+            trail.add(START_MS + i * 1000L, LATITUDE + i * 1e-4, LONGITUDE, 8f);
+        }
+        Trajectory trajectory = new Trajectory(16, TOLERANCE);
+        trajectory.addTrail(trail, 4);
+        AlertPayload payload = new AlertPayload();
+        assertEquals(2, trajectory.flushTo(payload));
+        assertEquals(0, payload.getTrailStartIndex());
+        assertEquals(START_MS + 4000L, payload.getTrailTime(0));
+        assertEquals(START_MS + 7000L, payload.getTrailTime(1));
+    }
+
+    @Test
+    public void read_streamsPointsWithTheirIndex() {
+        AlertPayload payload = new AlertPayload();
+        payload.setTrailStartIndex(7);
+        payload.addTrailPoint(START_MS, LATITUDE, LONGITUDE, 4.2f);
+        payload.addTrailPoint(START_MS + 5000L, LATITUDE + 1e-4, LONGITUDE - 1e-4, 6f);
+        WireBuffer out = new WireBuffer(16);
+        int baseLatitude = TrajectoryCodec.toFixedPoint(LATITUDE);
+        int baseLongitude = TrajectoryCodec.toFixedPoint(LONGITUDE);
+        TrajectoryCodec.write(out, payload, baseLatitude, baseLongitude, START_MS);
+        // 2 octets d'en-tête, puis quelques octets par point
+        assertTrue("size=" + out.position(), out.position() <= 2 + 2 * 6);
+
+        AlertPayload decoded = new AlertPayload();
+        int count = TrajectoryCodec.read(WireBuffer.wrap(out.data(), 0), baseLatitude,
+                baseLongitude, START_MS, decoded);
+        assertEquals(2, count);
+        assertEquals(7, decoded.getTrailStartIndex());
+        assertEquals(START_MS + 5000L, decoded.getTrailTime(1));
+        assertEquals(LATITUDE + 1e-4, decoded.getTrailLatitude(1), 1e-6);
+        assertEquals(LONGITUDE - 1e-4, decoded.getTrailLongitude(1), 1e-6);
+        assertEquals(5f, decoded.getTrailAccuracy(0), 0);
+    }
+
+    @Test
+    public void binaryChunk_isMuchSmallerThanRawJsonTrail() throws Exception {
+        walk();
+        Trajectory trajectory = new Trajectory(POINTS, TOLERANCE);
+        for (int i = 0; i < 60; i++) {
+            trajectory.add(mTimes[i], mLatitudes[i], mLongitudes[i], 8f);
+        }
+        AlertPayload simplified = new AlertPayload();
+        trajectory.flushTo(simplified);
+
+        AlertPayload raw = new AlertPayload();
+        for (int i = 60 - AlertPayload.MAX_TRAIL_POINTS; i < 60; i++) {
+            raw.addTrailPoint(mTimes[i], mLatitudes[i], mLongitudes[i], 8f);
+        }
+        int binary = new BinaryAlertEncoder().encode(simplified);
+        int json = new JsonAlertEncoder().encode(raw);
+        assertTrue("binary=" + binary + " json=" + json, binary * 10 < json);
+    }
+}
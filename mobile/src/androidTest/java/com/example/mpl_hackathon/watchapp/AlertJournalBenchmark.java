@@ -0,0 +1,115 @@
+package com.example.mpl_hackathon.watchapp;
+
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <p>
+ * Description : Mesure du journal des alertes sur l'appareil : écriture d'un million de
+ * positions (62 500 alertes binaires de 16 positions sur 20 jours), puis latence des lectures
+ * par intervalle de temps et par zone. Les résultats sont écrits dans les logs (tag
+ * AlertJournalBenchmark) ; seuls les nombres de lignes sont vérifiés.
+ * </p>
+ *
+ * @version 1.0
+ */
+public class AlertJournalBenchmark extends AndroidTestCase {
+
+    private static final String TAG = AlertJournalBenchmark.class.getSimpleName();
+    private static final String DATABASE_NAME = "alert-journal-benchmark";
+    private static final int ALERTS = 62500;
+    private static final int TRAIL_POINTS = 15;
+    private static final int FIXES = ALERTS * (TRAIL_POINTS + 1);
+    private static final long SPAN_MS = 20L * 24 * 60 * 60 * 1000;
+    private static final int QUERIES = 200;
+    private static final double LATITUDE = 43.6;
+    private static final double LONGITUDE = 3.88;
+
+    private AlertJournal mJournal;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        getContext().deleteDatabase(DATABASE_NAME + ".db");
+        mJournal = new AlertJournal(getContext(), DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mJournal.close();
+        getContext().deleteDatabase(DATABASE_NAME + ".db");
+        super.tearDown();
+    }
+
+    public void testIngestAndQuery() throws Exception {
+        long end = System.currentTimeMillis();
+        long start = end - SPAN_MS;
+        Random random = new Random(42);
+        AlertPayload payload = new AlertPayload();
+        BinaryAlertEncoder encoder = new BinaryAlertEncoder();
+
+        long ingestStart = SystemClock.elapsedRealtime();
+        for (int i = 0; i < ALERTS; i++) {
+            long time = start + SPAN_MS * i / ALERTS;
+            double latitude = LATITUDE + (random.nextDouble() - 0.5) * 0.2;
+            double longitude = LONGITUDE + (random.nextDouble() - 0.5) * 0.2;
+            payload.reset();
+            payload.setAlertId(random.nextLong());
+            payload.setTimestampCurrent(time + TRAIL_POINTS * 1000);
+            for (int p = 0; p < TRAIL_POINTS; p++) {
+                payload.addTrailPoint(time + p * 1000, latitude + p * 1e-5,
+                        longitude + p * 1e-5, 10);
+            }
+            payload.setLocation(latitude + TRAIL_POINTS * 1e-5, longitude + TRAIL_POINTS * 1e-5,
+                    time + TRAIL_POINTS * 1000, 8, AlertPayload.SOURCE_FUSED);
+            int length = encoder.encode(payload);
+            mJournal.recordAlert("node", new RelayProtocol.Alert(i, "http://localhost/alert",
+                    encoder.contentType(), Arrays.copyOf(encoder.buffer(), length)), time);
+        }
+        mJournal.sync();
+        long ingestMs = SystemClock.elapsedRealtime() - ingestStart;
+        Log.i(TAG, "Ingested " + FIXES + " fixes in " + ingestMs + " ms ("
+                + FIXES * 1000L / Math.max(1, ingestMs) + " fixes/s)");
+        assertEquals(FIXES, mJournal.countFixes());
+
+        long[] timeRange = new long[QUERIES];
+        long[] box = new long[QUERIES];
+        int rows = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            long from = start + (long) (random.nextDouble() * (SPAN_MS - 3600 * 1000));
+            long queryStart = System.nanoTime();
+            rows += count(mJournal.queryFixes(from, from + 3600 * 1000, 1000));
+            timeRange[q] = System.nanoTime() - queryStart;
+
+            double south = LATITUDE - 0.1 + random.nextDouble() * 0.19;
+            double west = LONGITUDE - 0.1 + random.nextDouble() * 0.19;
+            queryStart = System.nanoTime();
+            rows += count(mJournal.queryFixesInBox(south, west, south + 0.01, west + 0.01,
+                    from, from + 24 * 3600 * 1000, 1000));
+            box[q] = System.nanoTime() - queryStart;
+        }
+        Log.i(TAG, "Time range (1 h) : " + percentiles(timeRange));
+        Log.i(TAG, "Bounding box (0.01 deg, 24 h) : " + percentiles(box));
+        assertTrue(rows > 0);
+    }
+
+    private static int count(Cursor cursor) {
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String percentiles(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return "p50=" + sorted[sorted.length / 2] / 1000 + "us p99="
+                + sorted[sorted.length * 99 / 100] / 1000 + "us";
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.mpl_hackathon.watchapp;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+
+public class AlertJournalTest extends AndroidTestCase {
+
+    private static final String DATABASE_NAME = "alert-journal-test";
+    private static final String NODE = "node";
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final long DAY_MS = 24 * 60 * MINUTE_MS;
+
+    private AlertJournal mJournal;
+    private final AlertPayload mPayload = new AlertPayload();
+    private final BinaryAlertEncoder mEncoder = new BinaryAlertEncoder();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        getContext().deleteDatabase(DATABASE_NAME + ".db");
+        getContext().getSharedPreferences(DATABASE_NAME, Context.MODE_PRIVATE).edit().clear()
+                .commit();
+        mJournal = new AlertJournal(getContext(), DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mJournal.close();
+        getContext().deleteDatabase(DATABASE_NAME + ".db");
+        super.tearDown();
+    }
+
+    /**
+     * Alerte binaire dont la trajectoire compte une position toutes les {@code stepMs} depuis
+     * {@code startMs}.
+     */
+    private RelayProtocol.Alert alert(long relayId, long alertId, int updateSeq, long startMs,
+                                      int points, long stepMs) {
+        mPayload.reset();
+        mPayload.setAlertId(alertId);
+        mPayload.setUpdateSeq(updateSeq);
+        mPayload.setTimestampCurrent(startMs + points * stepMs);
+        for (int i = 0; i < points; i++) {
+            mPayload.addTrailPoint(startMs + i * stepMs, 43.61 + i * 1e-5, 3.87, 10);
+        }
+        int length = mEncoder.encode(mPayload);
+        return new RelayProtocol.Alert(relayId, "http://localhost/alert",
+                mEncoder.contentType(), Arrays.copyOf(mEncoder.buffer(), length));
+    }
+
+    public void testRecordAlert_keysOnAlertNotRelayId() throws Exception {
+        long now = System.currentTimeMillis();
+        RelayProtocol.Alert first = alert(5, 0x1111, 0, now, 1, 0);
+        mJournal.recordAlert(NODE, first, now);
+        // renvoyée par la montre sous un autre identifiant de relais : ignorée
+        mJournal.recordAlert(NODE, alert(6, 0x1111, 0, now, 1, 0), now);
+        // nouvelle alerte après réinstallation, même identifiant de relais : enregistrée
+        RelayProtocol.Alert second = alert(5, 0x2222, 0, now, 1, 0);
+        mJournal.recordAlert(NODE, second, now);
+        mJournal.recordAlert(NODE, alert(7, 0x1111, 1, now, 1, 0), now);
+        mJournal.recordOutcome(NODE, second, new RelayProtocol.Ack(5, 201, 3, 40), now + 50);
+        mJournal.sync();
+
+        Cursor cursor = mJournal.queryAlerts(now - MINUTE_MS, now + MINUTE_MS, 10);
+        try {
+            assertEquals(3, cursor.getCount());
+            int alertId = cursor.getColumnIndexOrThrow(AlertJournal.COLUMN_ALERT_ID);
+            int updateSeq = cursor.getColumnIndexOrThrow("update_seq");
+            int status = cursor.getColumnIndexOrThrow("http_status");
+            while (cursor.moveToNext()) {
+                if (cursor.getLong(alertId) == 0x2222) {
+                    assertEquals(201, cursor.getInt(status));
+                } else {
+                    assertTrue(cursor.isNull(status));
+                    assertTrue(cursor.getLong(alertId) == 0x1111 && cursor.getInt(updateSeq) < 2);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testRecordOutcome_unreadableAlertUsesLatestRelayId() throws Exception {
+        long now = System.currentTimeMillis();
+        RelayProtocol.Alert unreadable = new RelayProtocol.Alert(3, "http://localhost/alert",
+                "text/plain", new byte[]{1, 2, 3});
+        mJournal.recordAlert(NODE, unreadable, now - 1000);
+        mJournal.recordAlert(NODE, unreadable, now);
+        mJournal.recordOutcome(NODE, unreadable, new RelayProtocol.Ack(3, 200, 0, 10), now);
+        mJournal.sync();
+
+        Cursor cursor = mJournal.queryAlerts(now - MINUTE_MS, now + MINUTE_MS, 10);
+        try {
+            // sans clé, rien n'est regroupé ; le résultat va à la plus récente
+            assertEquals(2, cursor.getCount());
+            int status = cursor.getColumnIndexOrThrow("http_status");
+            assertTrue(cursor.moveToFirst());
+            assertEquals(200, cursor.getInt(status));
+            assertTrue(cursor.moveToNext());
+            assertTrue(cursor.isNull(status));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testCompact_keepsOneFixPerAlertAndMinute() throws Exception {
+        long now = System.currentTimeMillis();
+        long old = (now - AlertJournal.COMPACT_AFTER_MS - DAY_MS) / MINUTE_MS * MINUTE_MS;
+        long recent = (now - DAY_MS) / MINUTE_MS * MINUTE_MS;
+        long expired = now - AlertJournal.RETENTION_MS - DAY_MS;
+        // trois minutes, une position toutes les 10 s
+        mJournal.recordAlert(NODE, alert(1, 0xa, 0, old, 18, 10000), old);
+        // même minute, autre alerte : gardée
+        mJournal.recordAlert(NODE, alert(2, 0xb, 0, old + 5000, 1, 0), old);
+        mJournal.recordAlert(NODE, alert(3, 0xc, 0, recent, 18, 10000), recent);
+        mJournal.recordAlert(NODE, alert(4, 0xd, 0, expired, 6, 1000), expired);
+        mJournal.sync();
+        mJournal.compact(now);
+
+        assertEquals(3, count(mJournal.queryFixes(old, old + 10 * MINUTE_MS, 100), 0xa));
+        Cursor cursor = mJournal.queryFixes(old, old + 10 * MINUTE_MS, 100);
+        try {
+            int time = cursor.getColumnIndexOrThrow(AlertJournal.COLUMN_TIME);
+            int alertId = cursor.getColumnIndexOrThrow(AlertJournal.COLUMN_ALERT_ID);
+            while (cursor.moveToNext()) {
+                if (cursor.getLong(alertId) == 0xa) {
+                    // la première position de chaque minute
+                    assertEquals(0, (cursor.getLong(time) - old) % MINUTE_MS);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        assertEquals(1, count(mJournal.queryFixes(old, old + 10 * MINUTE_MS, 100), 0xb));
+        assertEquals(18, count(mJournal.queryFixes(recent, recent + 10 * MINUTE_MS, 100), 0xc));
+        assertEquals(0, count(mJournal.queryFixes(expired, expired + MINUTE_MS, 100), 0xd));
+        Cursor alerts = mJournal.queryAlerts(expired - 1, expired + 1, 10);
+        try {
+            assertEquals(0, alerts.getCount());
+        } finally {
+            alerts.close();
+        }
+        assertEquals(3 + 1 + 18, mJournal.countFixes());
+    }
+
+    /**
+     * @return nombre de positions de l'alerte, le curseur est fermé
+     */
+    private static int count(Cursor cursor, long alertId) {
+        try {
+            int column = cursor.getColumnIndexOrThrow(AlertJournal.COLUMN_ALERT_ID);
+            int count = 0;
+            while (cursor.moveToNext()) {
+                if (cursor.getLong(column) == alertId) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package com.example.mpl_hackathon.watchapp;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.android.volley.toolbox.Volley;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Description : Singleton relayant vers le web serveur les alertes reçues de la montre, en
+ * utilisant la connexion du téléphone. Les messages reçus en rafale sont regroupés : une alerte
+ * renvoyée par la montre alors qu'elle est déjà en attente (ou déjà acquittée par le serveur)
+ * n'est pas envoyée une seconde fois. Les alertes sont reconnues à leur clé d'idempotence
+ * ({@link RelayProtocol#idempotencyKey(RelayProtocol.Alert)}) et non à leur identifiant de
+ * relais, qui repart de zéro quand la boîte d'envoi de la montre est recréée. Chaque alerte
+ * donne lieu à un accusé de réception vers la montre contenant le statut HTTP et les temps
+ * passés sur le téléphone. Les mesures de la chaîne d'alerte de la montre peuvent aussi être
+ * récupérées ({@link #requestMetrics()}), et le profil du porteur lui est publié via la DataApi
+ * ({@link #publishProfile(UserProfile)}). Les alertes reçues et le résultat de leur envoi sont
+ * conservés dans l'{@link AlertJournal}.
+ * </p>
+ *
+ * @version 1.0
+ */
+public class AlertForwarder implements GoogleApiClient.ConnectionCallbacks,
+        GoogleApiClient.OnConnectionFailedListener {
+
+    /**
+     * Tag pour les logs.
+     */
+    private static final String TAG = AlertForwarder.class.getSimpleName();
+    /**
+     * Délai de regroupement des messages arrivés en rafale.
+     */
+    private static final long BATCH_DELAY_MS = 50;
+    /**
+     * Délai d'expiration d'une requête vers le web serveur.
+     */
+    private static final int FORWARD_TIMEOUT_MS = 10000;
+    /**
+     * Nombre d'alertes acquittées dont on garde la trace pour ignorer les doublons.
+     */
+    private static final int RECENT_ACKS = 64;
+    /**
+     * Nom du fichier contenant les dernières mesures reçues de la montre.
+     */
+    public static final String METRICS_FILE_NAME = "watch-metrics.bin";
+
+    /**
+     * Instance du singleton.
+     */
+    private static AlertForwarder mInstance;
+
+    /**
+     * Ecouteur des alertes relayées (affichage).
+     */
+    public interface Listener {
+        /**
+         * @param alertId        identifiant de l'alerte sur la montre
+         * @param httpStatus     statut HTTP renvoyé par le serveur (0 si pas de réponse)
+         * @param phoneQueueMs   attente sur le téléphone
+         * @param phoneForwardMs durée de l'envoi au serveur
+         */
+        void onAlertForwarded(long alertId, int httpStatus, int phoneQueueMs,
+                              int phoneForwardMs);
+
+        /**
+         * @param snapshot mesures de la chaîne d'alerte reçues de la montre
+         */
+        void onMetricsReceived(MetricsSnapshot snapshot);
+    }
+
+    private final Context mCtx;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final RequestQueue mRequestQueue;
+    private final GoogleApiClient mGoogleApiClient;
+    private final AlertJournal mJournal;
+    /**
+     * Alertes reçues en attente d'envoi, par montre et clé d'idempotence.
+     */
+    private final Map<String, Incoming> mQueued = new LinkedHashMap<>();
+    /**
+     * Alertes en cours d'envoi.
+     */
+    private final Map<String, Incoming> mInFlight = new LinkedHashMap<>();
+    /**
+     * Dernières alertes acquittées par le serveur et leur accusé de réception.
+     */
+    private final Map<String, RelayProtocol.Ack> mRecentAcks =
+            new LinkedHashMap<String, RelayProtocol.Ack>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, RelayProtocol.Ack> eldest) {
+                    return size() > RECENT_ACKS;
+                }
+            };
+    /**
+     * Accusés de réception en attente de la connexion à la montre.
+     */
+    private final List<Reply> mPendingReplies = new ArrayList<>();
+    private Listener mListener;
+    /**
+     * Indique qu'une demande de mesures attend la connexion à la montre.
+     */
+    private boolean mMetricsRequested;
+    /**
+     * Profil à publier dès la connexion aux services Google Play, null si aucun.
+     */
+    private UserProfile mPendingProfile;
+    /**
+     * Numéro des alertes sans clé d'idempotence, qui ne sont jamais regroupées.
+     */
+    private long mUnkeyedCount;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private static final class Incoming {
+        final String nodeId;
+        final RelayProtocol.Alert alert;
+        final long receivedAt;
+
+        Incoming(String nodeId, RelayProtocol.Alert alert, long receivedAt) {
+            this.nodeId = nodeId;
+            this.alert = alert;
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    private static final class Reply {
+        final String nodeId;
+        final String path;
+        final byte[] data;
+
+        Reply(String nodeId, String path, byte[] data) {
+            this.nodeId = nodeId;
+            this.path = path;
+            this.data = data;
+        }
+    }
+
+    private AlertForwarder(Context context) {
+        mCtx = context.getApplicationContext();
+        mRequestQueue = Volley.newRequestQueue(mCtx);
+        mJournal = AlertJournal.getInstance(mCtx);
+        mGoogleApiClient = new GoogleApiClient.Builder(mCtx)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .build();
+        mGoogleApiClient.connect();
+    }
+
+    /**
+     * Renvoie l'instance du singleton.
+     *
+     * @param context contexte
+     * @return instance du singleton relayant les alertes de la montre
+     */
+    public static synchronized AlertForwarder getInstance(Context context) {
+        if (mInstance == null) {
+            mInstance = new AlertForwarder(context);
+        }
+        return mInstance;
+    }
+
+    /**
+     * Définit l'écouteur des alertes relayées.
+     *
+     * @param listener écouteur, ou null
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Traite un message de la montre (appelé sur un thread de la MessageApi).
+     *
+     * @param messageEvent message reçu
+     */
+    public void onMessageReceived(final MessageEvent messageEvent) {
+        final long receivedAt = SystemClock.elapsedRealtime();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (RelayProtocol.PATH_PING.equals(messageEvent.getPath())) {
+                        reply(messageEvent.getSourceNodeId(), RelayProtocol.PATH_PONG,
+                                messageEvent.getData());
+                    } else if (RelayProtocol.PATH_ALERT.equals(messageEvent.getPath())) {
+                        enqueue(messageEvent.getSourceNodeId(),
+                                RelayProtocol.decodeAlert(messageEvent.getData()), receivedAt);
+                    } else if (RelayProtocol.PATH_METRICS.equals(messageEvent.getPath())) {
+                        onMetricsReceived(messageEvent.getData());
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Invalid relay message", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Demande leurs mesures aux montres connectées ; la réponse est transmise à l'écouteur.
+     */
+    public void requestMetrics() {
+        if (!mGoogleApiClient.isConnected()) {
+            mMetricsRequested = true;
+            mGoogleApiClient.connect();
+            return;
+        }
+        mMetricsRequested = false;
+        Wearable.NodeApi.getConnectedNodes(mGoogleApiClient).setResultCallback(
+                new ResultCallback<NodeApi.GetConnectedNodesResult>() {
+                    @Override
+                    public void onResult(NodeApi.GetConnectedNodesResult result) {
+                        for (Node node : result.getNodes()) {
+                            Wearable.MessageApi.sendMessage(mGoogleApiClient, node.getId(),
+                                    RelayProtocol.PATH_METRICS_PULL, new byte[0]);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Publie le profil du porteur à la montre. La DataApi conserve le profil et le synchronise
+     * quand la montre se connecte ; la montre le garde pour toutes ses alertes.
+     *
+     * @param profile profil du porteur
+     */
+    public void publishProfile(final UserProfile profile) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mGoogleApiClient.isConnected()) {
+                    mPendingProfile = profile;
+                    mGoogleApiClient.connect();
+                    return;
+                }
+                mPendingProfile = null;
+                PutDataRequest request = PutDataRequest.create(RelayProtocol.PATH_PROFILE);
+                request.setData(RelayProtocol.encodeProfile(profile));
+                Wearable.DataApi.putDataItem(mGoogleApiClient, request);
+            }
+        });
+    }
+
+    /**
+     * Conserve les mesures reçues de la montre et les transmet à l'écouteur.
+     *
+     * @param data photographie des mesures
+     * @throws IOException si les mesures sont invalides
+     */
+    private void onMetricsReceived(byte[] data) throws IOException {
+        MetricsSnapshot snapshot = MetricsSnapshot.decode(data);
+        FileOutputStream out = new FileOutputStream(new File(mCtx.getFilesDir(),
+                METRICS_FILE_NAME));
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        if (mListener != null) {
+            mListener.onMetricsReceived(snapshot);
+        }
+    }
+
+    private void enqueue(String nodeId, RelayProtocol.Alert alert, long receivedAt) {
+        String alertKey = RelayProtocol.idempotencyKey(alert);
+        // sans clé (ancienne version de la montre), l'alerte est relayée sans regroupement
+        String key = nodeId + '/' + (alertKey != null ? alertKey : "#" + mUnkeyedCount++);
+        RelayProtocol.Ack ack = mRecentAcks.get(key);
+        if (ack != null) {
+            // la montre n'a pas reçu l'accusé : on le renvoie sans relayer à nouveau, sous
+            // l'identifiant de relais du message reçu
+            reply(nodeId, RelayProtocol.PATH_ACK, RelayProtocol.encodeAck(new RelayProtocol.Ack(
+                    alert.id, ack.httpStatus, ack.phoneQueueMs, ack.phoneForwardMs)));
+            return;
+        }
+        if (mInFlight.containsKey(key)) {
+            return;
+        }
+        mJournal.recordAlert(nodeId, alert, System.currentTimeMillis());
+        // une alerte déjà en attente est remplacée par sa version la plus récente
+        mQueued.put(key, new Incoming(nodeId, alert, receivedAt));
+        mHandler.removeCallbacks(mFlushRunnable);
+        mHandler.postDelayed(mFlushRunnable, BATCH_DELAY_MS);
+    }
+
+    /**
+     * Envoie en une fois toutes les alertes en attente.
+     */
+    private void flush() {
+        Log.i(TAG, "Forwarding " + mQueued.size() + " alert(s)");
+        for (Map.Entry<String, Incoming> entry : mQueued.entrySet()) {
+            mInFlight.put(entry.getKey(), entry.getValue());
+            forward(entry.getKey(), entry.getValue());
+        }
+        mQueued.clear();
+    }
+
+    private void forward(final String key, final Incoming incoming) {
+        final long forwardStart = SystemClock.elapsedRealtime();
+        final int queueMs = (int) (forwardStart - incoming.receivedAt);
+        Request<Integer> request = new Request<Integer>(Request.Method.POST, incoming.alert.url,
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        int status = error.networkResponse != null
+                                ? error.networkResponse.statusCode : 0;
+                        onForwarded(key, incoming, status, queueMs, forwardStart);
+                    }
+                }) {
+            @Override
+            public String getBodyContentType() {
+                return incoming.alert.contentType;
+            }
+
+            @Override
+            public byte[] getBody() {
+                return incoming.alert.payload;
+            }
+
+            @Override
+            protected Response<Integer> parseNetworkResponse(NetworkResponse response) {
+                return Response.success(response.statusCode,
+                        HttpHeaderParser.parseCacheHeaders(response));
+            }
+
+            @Override
+            protected void deliverResponse(Integer status) {
+                onForwarded(key, incoming, status, queueMs, forwardStart);
+            }
+        };
+        request.setShouldCache(false);
+        request.setRetryPolicy(new DefaultRetryPolicy(FORWARD_TIMEOUT_MS, 0, 1f));
+        mRequestQueue.add(request);
+    }
+
+    private void onForwarded(String key, Incoming incoming, int status, int queueMs,
+                             long forwardStart) {
+        mInFlight.remove(key);
+        int forwardMs = (int) (SystemClock.elapsedRealtime() - forwardStart);
+        Log.i(TAG, "Alert " + incoming.alert.id + " forwarded status=" + status + " queue="
+                + queueMs + "ms forward=" + forwardMs + "ms");
+        RelayProtocol.Ack ack = new RelayProtocol.Ack(incoming.alert.id, status, queueMs,
+                forwardMs);
+        if (ack.isSuccess()) {
+            mRecentAcks.put(key, ack);
+        }
+        reply(incoming.nodeId, RelayProtocol.PATH_ACK, RelayProtocol.encodeAck(ack));
+        mJournal.recordOutcome(incoming.nodeId, incoming.alert, ack, System.currentTimeMillis());
+        if (mListener != null) {
+            mListener.onAlertForwarded(incoming.alert.id, status, queueMs, forwardMs);
+        }
+    }
+
+    private void reply(String nodeId, String path, byte[] data) {
+        if (!mGoogleApiClient.isConnected()) {
+            mPendingReplies.add(new Reply(nodeId, path, data));
+            mGoogleApiClient.connect();
+            return;
+        }
+        Wearable.MessageApi.sendMessage(mGoogleApiClient, nodeId, path, data);
+    }
+
+    @Override
+    public void onConnected(Bundle bundle) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Reply reply : mPendingReplies) {
+                    Wearable.MessageApi.sendMessage(mGoogleApiClient, reply.nodeId, reply.path,
+                            reply.data);
+                }
+                mPendingReplies.clear();
+                if (mMetricsRequested) {
+                    requestMetrics();
+                }
+                if (mPendingProfile != null) {
+                    publishProfile(mPendingProfile);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onConnectionSuspended(int i) {
+        Log.i(TAG, "Connection suspended");
+    }
+
+    @Override
+    public void onConnectionFailed(ConnectionResult connectionResult) {
+        Log.i(TAG, "Connection failed: ConnectionResult.getErrorCode() = "
+                + connectionResult.getErrorCode());
+    }
+}
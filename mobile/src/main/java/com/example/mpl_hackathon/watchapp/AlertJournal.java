@@ -0,0 +1,642 @@
+package com.example.mpl_hackathon.watchapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * <p>
+ * Description : Journal des alertes relayées par le téléphone, de leurs positions et du résultat
+ * de leur envoi au web serveur, conservé dans une base SQLite en mode WAL : l'écriture ne bloque
+ * pas les lectures de l'écran d'historique.
+ * </p>
+ * <p>
+ * Les écritures sont faites par un thread dédié : les messages reçus de la montre sont mis en
+ * file puis écrits par lots, dans une seule transaction et avec des requêtes compilées une fois
+ * pour toutes, au plus tard {@link #BATCH_DELAY_MS} après leur arrivée. Une mise à jour renvoyée
+ * par la montre n'est enregistrée qu'une fois (même montre, même alerte et même numéro de mise
+ * à jour ; même alerte et même date de position). L'identifiant de relais n'est pas une clé :
+ * il repart de zéro quand la boîte d'envoi de la montre est recréée.
+ * </p>
+ * <p>
+ * Les positions sont lues par intervalle de temps ou par zone géographique, chacune servie par
+ * un index ; les coordonnées sont stockées en entiers (degrés x 1e7, précision en décimètres).
+ * Une fois par jour, le journal est compacté par lots : les positions de plus de
+ * {@link #COMPACT_AFTER_MS} sont réduites à une par alerte et par minute, et les données de plus
+ * de {@link #RETENTION_MS} sont supprimées ; les pages libérées sont rendues au système.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class AlertJournal {
+
+    /**
+     * Tag pour les logs.
+     */
+    private static final String TAG = AlertJournal.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "alert-journal";
+    private static final int DATABASE_VERSION = 2;
+    /**
+     * Délai maximal entre la réception d'un message et son écriture.
+     */
+    public static final long BATCH_DELAY_MS = 200;
+    /**
+     * Nombre de messages au-delà duquel un lot est écrit sans attendre.
+     */
+    private static final int BATCH_SIZE = 256;
+    /**
+     * Age au-delà duquel les positions d'une alerte sont réduites à une par minute.
+     */
+    public static final long COMPACT_AFTER_MS = 30L * 24 * 60 * 60 * 1000;
+    /**
+     * Durée de conservation des alertes et de leurs positions.
+     */
+    public static final long RETENTION_MS = 365L * 24 * 60 * 60 * 1000;
+    private static final long COMPACT_INTERVAL_MS = 24 * 60 * 60 * 1000;
+    /**
+     * Nombre de lignes supprimées par transaction lors du compactage, pour ne pas bloquer les
+     * écritures trop longtemps.
+     */
+    private static final int COMPACT_CHUNK = 5000;
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final double FIXED_POINT_SCALE = 1e7;
+
+    private static final String KEY_LAST_COMPACTION = "last_compaction";
+    /**
+     * Date jusqu'à laquelle les positions ont déjà été réduites.
+     */
+    private static final String KEY_COMPACTED_UNTIL = "compacted_until";
+
+    public static final String TABLE_ALERTS = "alerts";
+    public static final String TABLE_FIXES = "fixes";
+    public static final String COLUMN_ALERT_ID = "alert_id";
+    public static final String COLUMN_TIME = "time";
+    public static final String COLUMN_LATITUDE_E7 = "lat_e7";
+    public static final String COLUMN_LONGITUDE_E7 = "lon_e7";
+    public static final String COLUMN_ACCURACY_DM = "accuracy_dm";
+
+    private static final String[] FIX_COLUMNS = {COLUMN_ALERT_ID, COLUMN_TIME,
+            COLUMN_LATITUDE_E7, COLUMN_LONGITUDE_E7, COLUMN_ACCURACY_DM};
+
+    /**
+     * Instance du singleton.
+     */
+    private static AlertJournal mInstance;
+
+    private final OpenHelper mHelper;
+    private final SharedPreferences mPreferences;
+    private final Handler mHandler;
+    /**
+     * Messages en attente d'écriture (protégé par this).
+     */
+    private List<Entry> mQueued = new ArrayList<>();
+    private List<Entry> mWriting = new ArrayList<>();
+    private final AlertPayload mPayload = new AlertPayload();
+    private SQLiteStatement mInsertAlert;
+    private SQLiteStatement mInsertFix;
+    private SQLiteStatement mUpdateOutcome;
+    private SQLiteStatement mUpdateUnreadableOutcome;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Message en attente d'écriture : une alerte relayée ou le résultat de son envoi.
+     */
+    private static final class Entry {
+        final String nodeId;
+        final long atMs;
+        final RelayProtocol.Alert alert;
+        /**
+         * Accusé de réception renvoyé à la montre, null pour une alerte reçue.
+         */
+        final RelayProtocol.Ack ack;
+
+        Entry(String nodeId, long atMs, RelayProtocol.Alert alert, RelayProtocol.Ack ack) {
+            this.nodeId = nodeId;
+            this.atMs = atMs;
+            this.alert = alert;
+            this.ack = ack;
+        }
+    }
+
+    private static final class OpenHelper extends SQLiteOpenHelper {
+
+        OpenHelper(Context context, String name) {
+            super(context, name + ".db", null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            // avant la création des tables : les pages libérées pourront être rendues
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("CREATE TABLE " + TABLE_ALERTS + " ("
+                    + "_id INTEGER PRIMARY KEY, "
+                    + "node TEXT NOT NULL, "
+                    + "relay_id INTEGER NOT NULL, "
+                    + COLUMN_ALERT_ID + " INTEGER, "
+                    + "update_seq INTEGER, "
+                    + "received_at INTEGER NOT NULL, "
+                    + "content_type TEXT, "
+                    + "size INTEGER NOT NULL, "
+                    + "http_status INTEGER, "
+                    + "phone_queue_ms INTEGER, "
+                    + "phone_forward_ms INTEGER, "
+                    + "forwarded_at INTEGER)");
+            createAlertIndexes(db);
+            db.execSQL("CREATE INDEX alerts_received_at ON " + TABLE_ALERTS + " (received_at)");
+            db.execSQL("CREATE TABLE " + TABLE_FIXES + " ("
+                    + COLUMN_ALERT_ID + " INTEGER NOT NULL, "
+                    + COLUMN_TIME + " INTEGER NOT NULL, "
+                    + COLUMN_LATITUDE_E7 + " INTEGER NOT NULL, "
+                    + COLUMN_LONGITUDE_E7 + " INTEGER NOT NULL, "
+                    + COLUMN_ACCURACY_DM + " INTEGER NOT NULL, "
+                    + "UNIQUE (" + COLUMN_ALERT_ID + ", " + COLUMN_TIME + "))");
+            db.execSQL("CREATE INDEX fixes_time ON " + TABLE_FIXES + " (" + COLUMN_TIME + ")");
+            // zone géographique : parcours de la bande de latitude dans l'index, longitude et
+            // date filtrées sans lire la table
+            db.execSQL("CREATE INDEX fixes_position ON " + TABLE_FIXES + " ("
+                    + COLUMN_LATITUDE_E7 + ", " + COLUMN_LONGITUDE_E7 + ", " + COLUMN_TIME
+                    + ")");
+        }
+
+        @Override
+        public void onOpen(SQLiteDatabase db) {
+            super.onOpen(db);
+            if (!db.isReadOnly()) {
+                db.enableWriteAheadLogging();
+            }
+        }
+
+        /**
+         * Index des alertes : une ligne par montre, alerte et numéro de mise à jour (les
+         * alertes illisibles, sans identifiant, ne sont pas regroupées) ; l'identifiant de
+         * relais retrouve le résultat de l'envoi d'une alerte illisible.
+         */
+        private static void createAlertIndexes(SQLiteDatabase db) {
+            db.execSQL("CREATE UNIQUE INDEX alerts_alert ON " + TABLE_ALERTS + " (node, "
+                    + COLUMN_ALERT_ID + ", update_seq)");
+            db.execSQL("CREATE INDEX alerts_relay ON " + TABLE_ALERTS + " (node, relay_id)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            if (oldVersion < 2) {
+                // version 1 : lignes uniques par identifiant de relais ; une même alerte a pu
+                // être enregistrée sous plusieurs identifiants, seule la première est gardée
+                db.execSQL("DROP INDEX alerts_relay");
+                db.execSQL("DELETE FROM " + TABLE_ALERTS + " WHERE " + COLUMN_ALERT_ID
+                        + " IS NOT NULL AND _id NOT IN (SELECT MIN(_id) FROM " + TABLE_ALERTS
+                        + " WHERE " + COLUMN_ALERT_ID + " IS NOT NULL GROUP BY node, "
+                        + COLUMN_ALERT_ID + ", update_seq)");
+                createAlertIndexes(db);
+            }
+        }
+    }
+
+    /**
+     * @param context contexte
+     * @param name    nom de la base et des préférences associées
+     */
+    AlertJournal(Context context, String name) {
+        Context appContext = context.getApplicationContext();
+        mHelper = new OpenHelper(appContext, name);
+        mPreferences = appContext.getSharedPreferences(name, Context.MODE_PRIVATE);
+        HandlerThread thread = new HandlerThread("alert-journal",
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Renvoie l'instance du singleton.
+     *
+     * @param context contexte
+     * @return journal des alertes relayées
+     */
+    public static synchronized AlertJournal getInstance(Context context) {
+        if (mInstance == null) {
+            mInstance = new AlertJournal(context, DATABASE_NAME);
+        }
+        return mInstance;
+    }
+
+    /**
+     * Enregistre une alerte reçue de la montre (appelable depuis n'importe quel thread).
+     *
+     * @param nodeId     montre émettrice
+     * @param alert      alerte relayée
+     * @param receivedAt date de réception (ms depuis epoch)
+     */
+    public void recordAlert(String nodeId, RelayProtocol.Alert alert, long receivedAt) {
+        enqueue(new Entry(nodeId, receivedAt, alert, null));
+    }
+
+    /**
+     * Enregistre le résultat de l'envoi d'une alerte au web serveur (appelable depuis n'importe
+     * quel thread).
+     *
+     * @param nodeId      montre émettrice
+     * @param alert       alerte envoyée
+     * @param ack         accusé de réception renvoyé à la montre
+     * @param forwardedAt date de la réponse (ms depuis epoch)
+     */
+    public void recordOutcome(String nodeId, RelayProtocol.Alert alert, RelayProtocol.Ack ack,
+                              long forwardedAt) {
+        enqueue(new Entry(nodeId, forwardedAt, alert, ack));
+    }
+
+    private void enqueue(Entry entry) {
+        boolean full;
+        boolean first;
+        synchronized (this) {
+            mQueued.add(entry);
+            full = mQueued.size() >= BATCH_SIZE;
+            first = mQueued.size() == 1;
+        }
+        if (full) {
+            mHandler.removeCallbacks(mFlushRunnable);
+            mHandler.post(mFlushRunnable);
+        } else if (first) {
+            mHandler.postDelayed(mFlushRunnable, BATCH_DELAY_MS);
+        }
+    }
+
+    /**
+     * Attend l'écriture des messages déjà reçus.
+     *
+     * @throws InterruptedException si l'attente est interrompue
+     */
+    public void sync() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+                done.countDown();
+            }
+        });
+        done.await();
+    }
+
+    /**
+     * Ecrit les messages en attente en une transaction (thread du journal).
+     */
+    private void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        List<Entry> batch;
+        synchronized (this) {
+            batch = mQueued;
+            mQueued = mWriting;
+            mWriting = batch;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = SystemClock.elapsedRealtime();
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        if (mInsertAlert == null) {
+            mInsertAlert = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_ALERTS
+                    + " (node, relay_id, " + COLUMN_ALERT_ID + ", update_seq, received_at,"
+                    + " content_type, size) VALUES (?, ?, ?, ?, ?, ?, ?)");
+            mInsertFix = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_FIXES + " ("
+                    + COLUMN_ALERT_ID + ", " + COLUMN_TIME + ", " + COLUMN_LATITUDE_E7 + ", "
+                    + COLUMN_LONGITUDE_E7 + ", " + COLUMN_ACCURACY_DM
+                    + ") VALUES (?, ?, ?, ?, ?)");
+            String setOutcome = "UPDATE " + TABLE_ALERTS + " SET http_status = ?,"
+                    + " phone_queue_ms = ?, phone_forward_ms = ?, forwarded_at = ?";
+            mUpdateOutcome = db.compileStatement(setOutcome + " WHERE node = ? AND "
+                    + COLUMN_ALERT_ID + " = ? AND update_seq = ?");
+            // alerte illisible : la dernière reçue sous cet identifiant de relais
+            mUpdateUnreadableOutcome = db.compileStatement(setOutcome + " WHERE _id ="
+                    + " (SELECT MAX(_id) FROM " + TABLE_ALERTS + " WHERE node = ? AND"
+                    + " relay_id = ? AND " + COLUMN_ALERT_ID + " IS NULL)");
+        }
+        int fixes = 0;
+        db.beginTransactionNonExclusive();
+        try {
+            for (Entry entry : batch) {
+                if (entry.ack == null) {
+                    fixes += insertAlert(entry);
+                } else {
+                    updateOutcome(entry);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "Journaled " + batch.size() + " message(s), " + fixes + " fix(es) in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+        batch.clear();
+        if (System.currentTimeMillis() - mPreferences.getLong(KEY_LAST_COMPACTION, 0)
+                >= COMPACT_INTERVAL_MS) {
+            compact(System.currentTimeMillis());
+        }
+    }
+
+    private void updateOutcome(Entry entry) {
+        RelayProtocol.Ack ack = entry.ack;
+        SQLiteStatement statement;
+        if (decode(entry.alert)) {
+            statement = mUpdateOutcome;
+            statement.bindString(5, entry.nodeId);
+            statement.bindLong(6, mPayload.getAlertId());
+            statement.bindLong(7, mPayload.getUpdateSeq());
+        } else {
+            statement = mUpdateUnreadableOutcome;
+            statement.bindString(5, entry.nodeId);
+            statement.bindLong(6, entry.alert.id);
+        }
+        statement.bindLong(1, ack.httpStatus);
+        statement.bindLong(2, ack.phoneQueueMs);
+        statement.bindLong(3, ack.phoneForwardMs);
+        statement.bindLong(4, entry.atMs);
+        statement.executeUpdateDelete();
+    }
+
+    /**
+     * @return nombre de positions enregistrées
+     */
+    private int insertAlert(Entry entry) {
+        RelayProtocol.Alert alert = entry.alert;
+        boolean decoded = decode(alert);
+        mInsertAlert.bindString(1, entry.nodeId);
+        mInsertAlert.bindLong(2, alert.id);
+        if (decoded) {
+            mInsertAlert.bindLong(3, mPayload.getAlertId());
+            mInsertAlert.bindLong(4, mPayload.getUpdateSeq());
+        } else {
+            mInsertAlert.bindNull(3);
+            mInsertAlert.bindNull(4);
+        }
+        mInsertAlert.bindLong(5, entry.atMs);
+        mInsertAlert.bindString(6, alert.contentType);
+        mInsertAlert.bindLong(7, alert.payload.length);
+        mInsertAlert.executeInsert();
+        if (!decoded) {
+            return 0;
+        }
+        int fixes = 0;
+        long alertId = mPayload.getAlertId();
+        if (mPayload.hasLocation()) {
+            insertFix(alertId, mPayload.getTimestampPosition(), mPayload.getLatitude(),
+                    mPayload.getLongitude(), mPayload.getAccuracy());
+            fixes++;
+        }
+        for (int i = 0; i < mPayload.getTrailSize(); i++) {
+            insertFix(alertId, mPayload.getTrailTime(i), mPayload.getTrailLatitude(i),
+                    mPayload.getTrailLongitude(i), mPayload.getTrailAccuracy(i));
+            fixes++;
+        }
+        return fixes;
+    }
+
+    private void insertFix(long alertId, long time, double latitude, double longitude,
+                           float accuracy) {
+        mInsertFix.bindLong(1, alertId);
+        mInsertFix.bindLong(2, time);
+        mInsertFix.bindLong(3, Math.round(latitude * FIXED_POINT_SCALE));
+        mInsertFix.bindLong(4, Math.round(longitude * FIXED_POINT_SCALE));
+        mInsertFix.bindLong(5, accuracy > 0 ? Math.round(accuracy * 10.0) : 0);
+        mInsertFix.executeInsert();
+    }
+
+    /**
+     * Décode une alerte relayée dans {@link #mPayload}.
+     *
+     * @return faux si le format est inconnu ou l'alerte invalide
+     */
+    private boolean decode(RelayProtocol.Alert alert) {
+        try {
+            if (BinaryAlertEncoder.CONTENT_TYPE.equals(alert.contentType)) {
+                BinaryAlertEncoder.decode(alert.payload, 0, alert.payload.length, mPayload);
+                return true;
+            }
+            if (alert.contentType.startsWith("application/json")) {
+                decodeJson(new JSONObject(new String(alert.payload, "UTF-8")));
+                return true;
+            }
+        } catch (IllegalArgumentException | JSONException | IOException e) {
+            Log.w(TAG, "Unreadable alert " + alert.id + " : " + e.getMessage());
+        }
+        return false;
+    }
+
+    private void decodeJson(JSONObject json) throws JSONException {
+        mPayload.reset();
+        mPayload.setAlertId(parseHex(json.getString("alert_id")));
+        mPayload.setUpdateSeq(json.optInt("update_seq"));
+        mPayload.setTimestampCurrent(json.optLong("timestamp_current"));
+        if (json.has("latitude")) {
+            mPayload.setLocation(json.getDouble("latitude"), json.getDouble("longitude"),
+                    json.optLong("timestamp_position"), (float) json.optDouble("accuracy", 0),
+                    AlertPayload.SOURCE_NONE);
+        }
+        JSONArray trail = json.optJSONArray("trail");
+        for (int i = 0; trail != null && i < trail.length(); i++) {
+            JSONObject point = trail.getJSONObject(i);
+            mPayload.addTrailPoint(point.getLong("timestamp_position"),
+                    point.getDouble("latitude"), point.getDouble("longitude"),
+                    (float) point.optDouble("accuracy", 0));
+        }
+    }
+
+    /**
+     * Lit un identifiant écrit en hexadécimal non signé.
+     */
+    private static long parseHex(String hex) {
+        if (hex.isEmpty() || hex.length() > 16) {
+            throw new IllegalArgumentException("Invalid alert id " + hex);
+        }
+        long value = 0;
+        for (int i = 0; i < hex.length(); i++) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid alert id " + hex);
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Positions enregistrées dans un intervalle de temps, par date croissante (index
+     * {@code fixes_time}).
+     *
+     * @param fromMs début de l'intervalle (inclus, ms depuis epoch)
+     * @param toMs   fin de l'intervalle (exclue)
+     * @param limit  nombre maximal de positions
+     * @return curseur sur les colonnes {@link #COLUMN_ALERT_ID}, {@link #COLUMN_TIME},
+     * {@link #COLUMN_LATITUDE_E7}, {@link #COLUMN_LONGITUDE_E7}, {@link #COLUMN_ACCURACY_DM}
+     */
+    public Cursor queryFixes(long fromMs, long toMs, int limit) {
+        return mHelper.getReadableDatabase().query(TABLE_FIXES, FIX_COLUMNS,
+                COLUMN_TIME + " >= ? AND " + COLUMN_TIME + " < ?",
+                new String[]{Long.toString(fromMs), Long.toString(toMs)}, null, null,
+                COLUMN_TIME, Integer.toString(limit));
+    }
+
+    /**
+     * Positions enregistrées dans une zone et un intervalle de temps (index
+     * {@code fixes_position}).
+     *
+     * @param south  latitude minimale (degrés)
+     * @param west   longitude minimale (degrés)
+     * @param north  latitude maximale (degrés)
+     * @param east   longitude maximale (degrés)
+     * @param fromMs début de l'intervalle (inclus, ms depuis epoch)
+     * @param toMs   fin de l'intervalle (exclue)
+     * @param limit  nombre maximal de positions
+     * @return curseur sur les mêmes colonnes que {@link #queryFixes(long, long, int)}, sans
+     * ordre particulier
+     */
+    public Cursor queryFixesInBox(double south, double west, double north, double east,
+                                  long fromMs, long toMs, int limit) {
+        return mHelper.getReadableDatabase().query(TABLE_FIXES + " INDEXED BY fixes_position",
+                FIX_COLUMNS, COLUMN_LATITUDE_E7 + " BETWEEN ? AND ? AND " + COLUMN_LONGITUDE_E7
+                        + " BETWEEN ? AND ? AND " + COLUMN_TIME + " >= ? AND " + COLUMN_TIME
+                        + " < ?",
+                new String[]{Long.toString(Math.round(south * FIXED_POINT_SCALE)),
+                        Long.toString(Math.round(north * FIXED_POINT_SCALE)),
+                        Long.toString(Math.round(west * FIXED_POINT_SCALE)),
+                        Long.toString(Math.round(east * FIXED_POINT_SCALE)),
+                        Long.toString(fromMs), Long.toString(toMs)}, null, null, null,
+                Integer.toString(limit));
+    }
+
+    /**
+     * Alertes relayées dans un intervalle de temps, les plus récentes d'abord (index
+     * {@code alerts_received_at}).
+     *
+     * @param fromMs début de l'intervalle (inclus, ms depuis epoch)
+     * @param toMs   fin de l'intervalle (exclue)
+     * @param limit  nombre maximal d'alertes
+     * @return curseur sur toutes les colonnes de la table des alertes
+     */
+    public Cursor queryAlerts(long fromMs, long toMs, int limit) {
+        return mHelper.getReadableDatabase().query(TABLE_ALERTS, null,
+                "received_at >= ? AND received_at < ?",
+                new String[]{Long.toString(fromMs), Long.toString(toMs)}, null, null,
+                "received_at DESC", Integer.toString(limit));
+    }
+
+    /**
+     * @return nombre de positions enregistrées
+     */
+    long countFixes() {
+        return DatabaseUtils.queryNumEntries(mHelper.getReadableDatabase(), TABLE_FIXES);
+    }
+
+    /**
+     * Compacte le journal (thread du journal) : réduction des anciennes positions, suppression
+     * des données expirées, puis restitution des pages libérées.
+     *
+     * @param nowMs date courante (ms depuis epoch)
+     */
+    void compact(long nowMs) {
+        long start = SystemClock.elapsedRealtime();
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        long expired = nowMs - RETENTION_MS;
+        int deleted = deleteInChunks(db, "DELETE FROM " + TABLE_FIXES + " WHERE rowid IN"
+                + " (SELECT rowid FROM " + TABLE_FIXES + " WHERE " + COLUMN_TIME + " < "
+                + expired + " LIMIT " + COMPACT_CHUNK + ")");
+        deleted += deleteInChunks(db, "DELETE FROM " + TABLE_ALERTS + " WHERE _id IN"
+                + " (SELECT _id FROM " + TABLE_ALERTS + " WHERE received_at < " + expired
+                + " LIMIT " + COMPACT_CHUNK + ")");
+        // une position par alerte et par minute : on retire celles précédées d'une autre
+        // position de la même alerte dans la même minute ; seules les positions devenues
+        // anciennes depuis le compactage précédent sont parcourues
+        long from = Math.max(expired, mPreferences.getLong(KEY_COMPACTED_UNTIL, 0));
+        long until = nowMs - COMPACT_AFTER_MS;
+        if (until > from) {
+            deleted += deleteInChunks(db, "DELETE FROM " + TABLE_FIXES + " WHERE rowid IN"
+                    + " (SELECT f.rowid FROM " + TABLE_FIXES + " f WHERE f." + COLUMN_TIME
+                    + " >= " + from + " AND f." + COLUMN_TIME + " < " + until
+                    + " AND EXISTS (SELECT 1 FROM " + TABLE_FIXES + " g WHERE g."
+                    + COLUMN_ALERT_ID + " = f." + COLUMN_ALERT_ID + " AND g." + COLUMN_TIME
+                    + " < f." + COLUMN_TIME + " AND g." + COLUMN_TIME + " >= f." + COLUMN_TIME
+                    + " - f." + COLUMN_TIME + " % " + MINUTE_MS + ") LIMIT " + COMPACT_CHUNK
+                    + ")");
+        }
+        if (deleted > 0) {
+            // rawQuery : les pragmas renvoient des lignes, qui doivent être lues
+            Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum", null);
+            try {
+                while (cursor.moveToNext()) {
+                    // une ligne par page libérée
+                }
+            } finally {
+                cursor.close();
+            }
+            db.execSQL("ANALYZE");
+        }
+        mPreferences.edit()
+                .putLong(KEY_LAST_COMPACTION, nowMs)
+                .putLong(KEY_COMPACTED_UNTIL, Math.max(from, until))
+                .apply();
+        Log.i(TAG, "Compacted journal : " + deleted + " row(s) removed in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+    }
+
+    /**
+     * Exécute une suppression bornée jusqu'à ce qu'elle ne supprime plus rien, une transaction
+     * par lot.
+     *
+     * @return nombre de lignes supprimées
+     */
+    private static int deleteInChunks(SQLiteDatabase db, String sql) {
+        SQLiteStatement statement = db.compileStatement(sql);
+        int total = 0;
+        try {
+            int deleted;
+            do {
+                db.beginTransactionNonExclusive();
+                try {
+                    deleted = statement.executeUpdateDelete();
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                total += deleted;
+            } while (deleted >= COMPACT_CHUNK);
+        } finally {
+            statement.close();
+        }
+        return total;
+    }
+
+    /**
+     * Ferme la base après l'écriture des messages en attente (tests).
+     *
+     * @throws InterruptedException si l'attente est interrompue
+     */
+    void close() throws InterruptedException {
+        sync();
+        mHandler.getLooper().quit();
+        mHelper.close();
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.mpl_hackathon.watchapp;
+
+import android.util.Log;
+
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.WearableListenerService;
+
+/**
+ * <p>
+ * Description : Service recevant les messages de la montre, y compris lorsque l'application
+ * n'est pas au premier plan : les alertes sont confiées à l'{@link AlertForwarder}, les pings
+ * sont renvoyés immédiatement pour permettre à la montre de mesurer le lien.
+ * </p>
+ *
+ * @version 1.0
+ */
+public class AlertRelayService extends WearableListenerService {
+
+    /**
+     * Tag pour les logs.
+     */
+    private static final String TAG = AlertRelayService.class.getSimpleName();
+
+    @Override
+    public void onMessageReceived(MessageEvent messageEvent) {
+        String path = messageEvent.getPath();
+        if (RelayProtocol.PATH_ALERT.equals(path) || RelayProtocol.PATH_PING.equals(path)) {
+            AlertForwarder.getInstance(this).onMessageReceived(messageEvent);
+        } else {
+            Log.d(TAG, "Ignored message on " + path);
+        }
+    }
+}
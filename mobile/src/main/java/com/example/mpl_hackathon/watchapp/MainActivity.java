@@ -2,33 +2,56 @@ package com.example.mpl_hackathon.watchapp;
 
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
-import com.google.android.gms.wearable.MessageApi;
-import com.google.android.gms.wearable.MessageEvent;
+import android.text.format.DateFormat;
+import android.widget.TextView;
 
-public class MainActivity extends AppCompatActivity implements MessageApi.MessageListener {
+import java.util.Date;
+
+/**
+ * <p>
+ * Description : Ecran principal du téléphone. Les alertes de la montre sont relayées en
+ * arrière-plan par l'{@link AlertRelayService} ; cet écran affiche les temps de la dernière
+ * alerte relayée et les mesures de la chaîne d'alerte de la montre.
+ * </p>
+ */
+public class MainActivity extends AppCompatActivity implements AlertForwarder.Listener {
+
+    private TextView mRelayStatusView;
+    private TextView mMetricsView;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        mRelayStatusView = (TextView) findViewById(R.id.relay_status);
+        mMetricsView = (TextView) findViewById(R.id.watch_metrics);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        AlertForwarder forwarder = AlertForwarder.getInstance(this);
+        forwarder.setListener(this);
+        forwarder.requestMetrics();
     }
 
     @Override
-    public void onMessageReceived(MessageEvent messageEvent) {
+    protected void onStop() {
+        AlertForwarder.getInstance(this).setListener(null);
+        super.onStop();
+    }
 
+    @Override
+    public void onAlertForwarded(long alertId, int httpStatus, int phoneQueueMs,
+                                 int phoneForwardMs) {
+        mRelayStatusView.setText(getString(R.string.relay_status, alertId, httpStatus,
+                phoneQueueMs, phoneForwardMs));
+    }
+
+    @Override
+    public void onMetricsReceived(MetricsSnapshot snapshot) {
+        mMetricsView.setText(getString(R.string.watch_metrics,
+                DateFormat.getTimeFormat(this).format(new Date(snapshot.getCreatedAtMs())),
+                snapshot.summary()));
     }
-/*
-    protected void initMessageListener() {
-        // Create MessageListener
-        MessageApi.MessageListener messageListener = new MessageApi.MessageListener() {
-            @Override
-            public void onMessageReceived(MessageEvent messageEvent) {
-                // To execute when a message is received
-
-            }
-        };
-
-        // Register MessageListener
-        Wearable.MessageApi.addListener(googleApiClient, messageListener);
-    }*/
 }
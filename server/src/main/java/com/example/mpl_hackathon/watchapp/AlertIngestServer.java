@@ -0,0 +1,538 @@
+package com.example.mpl_hackathon.watchapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Description : Serveur local de substitution du web service des alertes
+ * ({@link AlertEndpoint#NEW_ALERT_PATH}), pour tester la chaîne d'alerte hors ligne et en
+ * charge. Il accepte les deux formats de la montre : le format binaire est décodé
+ * ({@link BinaryAlertEncoder}), le JSON n'est lu que pour les champs de regroupement
+ * ({@code alert_id}, {@code update_seq}, {@code trail_start} et la taille de {@code trail}).
+ * Chaque réponse annonce les formats acceptés ({@link BinaryAlertEncoder#ACCEPT_HEADER}) ; un
+ * format inconnu est refusé avec le code 415, comme le ferait le serveur de production.
+ * </p>
+ * <p>
+ * Des pannes peuvent être simulées ({@link Faults}) : réponse retardée, pour toutes les
+ * alertes ou pour une partie d'entre elles (queue de latence), erreur 503, ou connexion fermée
+ * sans réponse. Plusieurs serveurs peuvent partager le même {@link AlertStore}, comme les
+ * points d'accès d'un même service : un message doublé vers deux d'entre eux n'est enregistré
+ * qu'une fois.
+ * </p>
+ * <p>
+ * Les enregistrements joints aux alertes sont reçus par morceaux
+ * ({@link AlertEndpoint#EVIDENCE_PATH}, PUT avec {@link EvidenceUpload#OFFSET_HEADER}) et
+ * peuvent être lus pendant leur envoi (GET), comme le lien {@code drive_link} de l'alerte. Les
+ * pannes simulées s'y appliquent aussi : une connexion fermée l'est après l'enregistrement du
+ * morceau, comme une réponse perdue.
+ * </p>
+ * <p>
+ * Chaque nouvelle alerte est prise en charge par un centre de secours simulé
+ * ({@link DispatchBoard}), dont les événements sont poussés aux montres par le canal permanent
+ * ({@link PushServer}, avec {@code --push-port}) ; les alertes peuvent aussi arriver par ce
+ * canal.
+ * </p>
+ * <pre>
+ * java AlertIngestServer [--port 8080] [--threads 16] [--delay-ms 0] [--slow-rate 0]
+ *                        [--slow-ms 0] [--error-rate 0] [--drop-rate 0] [--json-only]
+ *                        [--push-port 8090 [--idle-timeout-ms 0]] [--dispatch-ms 30000]
+ * </pre>
+ *
+ * @version 1.0
+ */
+public final class AlertIngestServer {
+
+    /**
+     * Pannes simulées, modifiables pendant l'exécution.
+     */
+    public static final class Faults {
+        /**
+         * Délai ajouté avant chaque réponse (ms).
+         */
+        public volatile long delayMs;
+        /**
+         * Proportion des alertes retardées de {@link #slowDelayMs} en plus de {@link #delayMs}.
+         */
+        public volatile double slowRate;
+        public volatile long slowDelayMs;
+        /**
+         * Proportion des alertes refusées avec une erreur 503.
+         */
+        public volatile double errorRate;
+        /**
+         * Proportion des alertes dont la connexion est fermée sans réponse.
+         */
+        public volatile double dropRate;
+    }
+
+    /**
+     * Réponse du web service à une alerte.
+     */
+    static final class Reply {
+        final int code;
+        /**
+         * Identifiant de l'alerte, -1 si elle n'a pas été décodée.
+         */
+        final long alertId;
+        /**
+         * Corps JSON, null si aucun.
+         */
+        final String json;
+
+        Reply(int code, long alertId, String json) {
+            this.code = code;
+            this.alertId = alertId;
+            this.json = json;
+        }
+    }
+
+    /**
+     * Pannes tirées pour une alerte ({@link #injectFault()}).
+     */
+    static final int FAULT_NONE = 0;
+    static final int FAULT_DROP = 1;
+    static final int FAULT_ERROR = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_BAD_REQUEST = 400;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_METHOD_NOT_ALLOWED = 405;
+    private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
+    static final int HTTP_UNAVAILABLE = 503;
+
+    /**
+     * Délai par défaut entre la prise en charge d'une alerte et l'envoi des secours.
+     */
+    public static final long DEFAULT_DISPATCH_DELAY_MS = 30 * 1000;
+
+    static {
+        // sans TCP_NODELAY, l'algorithme de Nagle et l'accusé de réception différé du client
+        // ajoutent environ 40 ms à chaque réponse et faussent les mesures de latence
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+    private final AlertStore mStore;
+    private final EvidenceStore mEvidence = new EvidenceStore();
+    private final DispatchBoard mDispatch = new DispatchBoard(DEFAULT_DISPATCH_DELAY_MS);
+    private final Faults mFaults;
+    private final boolean mBinaryAccepted;
+    private final AtomicLong mDropped = new AtomicLong();
+    private final AtomicLong mRejected = new AtomicLong();
+
+    /**
+     * Décodage des alertes binaires, une instance par thread de traitement.
+     */
+    private final ThreadLocal<AlertPayload> mPayloads = new ThreadLocal<AlertPayload>() {
+        @Override
+        protected AlertPayload initialValue() {
+            return new AlertPayload();
+        }
+    };
+
+    /**
+     * @param address        adresse d'écoute (port 0 pour un port libre)
+     * @param threads        nombre de threads de traitement
+     * @param faults         pannes simulées
+     * @param binaryAccepted faux pour simuler un serveur qui ne connaît que le JSON
+     * @throws IOException si le port ne peut pas être ouvert
+     */
+    public AlertIngestServer(InetSocketAddress address, int threads, Faults faults,
+                             boolean binaryAccepted) throws IOException {
+        this(address, threads, faults, binaryAccepted, new AlertStore());
+    }
+
+    /**
+     * @param address        adresse d'écoute (port 0 pour un port libre)
+     * @param threads        nombre de threads de traitement
+     * @param faults         pannes simulées
+     * @param binaryAccepted faux pour simuler un serveur qui ne connaît que le JSON
+     * @param store          alertes reçues, éventuellement partagées avec d'autres serveurs
+     * @throws IOException si le port ne peut pas être ouvert
+     */
+    public AlertIngestServer(InetSocketAddress address, int threads, Faults faults,
+                             boolean binaryAccepted, AlertStore store) throws IOException {
+        mFaults = faults;
+        mStore = store;
+        mBinaryAccepted = binaryAccepted;
+        mServer = HttpServer.create(address, 0);
+        mExecutor = Executors.newFixedThreadPool(threads);
+        mServer.setExecutor(mExecutor);
+        mServer.createContext(AlertEndpoint.NEW_ALERT_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleAlert(exchange);
+            }
+        });
+        mServer.createContext(AlertEndpoint.EVIDENCE_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleEvidence(exchange);
+            }
+        });
+        // préchauffage de la connexion par la montre (HEAD /)
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(HTTP_OK, -1);
+                exchange.close();
+            }
+        });
+    }
+
+    public void start() {
+        mServer.start();
+    }
+
+    /**
+     * Arrête le serveur, sans attendre les requêtes en cours.
+     */
+    public void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+        mDispatch.stop();
+    }
+
+    /**
+     * @return port d'écoute
+     */
+    public int getPort() {
+        return mServer.getAddress().getPort();
+    }
+
+    public AlertStore getStore() {
+        return mStore;
+    }
+
+    public EvidenceStore getEvidence() {
+        return mEvidence;
+    }
+
+    /**
+     * @return centre de secours simulé, qui prend en charge chaque nouvelle alerte
+     */
+    public DispatchBoard getDispatch() {
+        return mDispatch;
+    }
+
+    /**
+     * @return résumé lisible des alertes reçues et des pannes simulées
+     */
+    public String summary() {
+        return mStore.summary() + " rejected=" + mRejected.get() + " dropped=" + mDropped.get()
+                + " dispatch events=" + mDispatch.getEventCount() + " evidence: "
+                + mEvidence.summary();
+    }
+
+    private void handleAlert(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, HTTP_METHOD_NOT_ALLOWED, null);
+                return;
+            }
+            byte[] body = readFully(exchange.getRequestBody());
+            int fault = injectFault();
+            if (fault == FAULT_DROP) {
+                // fermeture sans réponse : le client voit une fin de flux inattendue
+                return;
+            }
+            if (fault == FAULT_ERROR) {
+                respond(exchange, HTTP_UNAVAILABLE, "{\"status\":\"unavailable\"}");
+                return;
+            }
+            Reply reply = ingest(exchange.getRequestHeaders().getFirst("Content-Type"), body);
+            respond(exchange, reply.code, reply.json);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Applique les pannes simulées à une alerte : attend le délai de réponse, puis tire la
+     * panne éventuelle.
+     *
+     * @return {@link #FAULT_NONE}, {@link #FAULT_DROP} ou {@link #FAULT_ERROR}
+     * @throws InterruptedException si l'attente est interrompue
+     */
+    int injectFault() throws InterruptedException {
+        long delay = mFaults.delayMs;
+        if (ThreadLocalRandom.current().nextDouble() < mFaults.slowRate) {
+            delay += mFaults.slowDelayMs;
+        }
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+        double draw = ThreadLocalRandom.current().nextDouble();
+        if (draw < mFaults.dropRate) {
+            mDropped.incrementAndGet();
+            return FAULT_DROP;
+        }
+        if (draw < mFaults.dropRate + mFaults.errorRate) {
+            mRejected.incrementAndGet();
+            return FAULT_ERROR;
+        }
+        return FAULT_NONE;
+    }
+
+    /**
+     * Enregistre une alerte, qu'elle soit arrivée en HTTP ou par le canal permanent.
+     *
+     * @param contentType type de contenu, null si absent
+     * @param body        alerte sérialisée
+     * @return réponse du web service
+     */
+    Reply ingest(String contentType, byte[] body) {
+        try {
+            if (contentType == null) {
+                return new Reply(HTTP_UNSUPPORTED_MEDIA_TYPE, -1, null);
+            }
+            if (mBinaryAccepted && contentType.startsWith(BinaryAlertEncoder.CONTENT_TYPE)) {
+                AlertPayload payload = mPayloads.get();
+                BinaryAlertEncoder.decode(body, 0, body.length, payload);
+                return accept(payload.getAlertId(), payload.getUpdateSeq(),
+                        payload.getTrailStartIndex(), payload.getTrailSize());
+            }
+            if (contentType.startsWith("application/json")) {
+                return acceptJson(new String(body, UTF_8));
+            }
+            return new Reply(HTTP_UNSUPPORTED_MEDIA_TYPE, -1, null);
+        } catch (IllegalArgumentException e) {
+            return new Reply(HTTP_BAD_REQUEST, -1, null);
+        }
+    }
+
+    private void handleEvidence(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            long alertId = Long.parseLong(
+                    path.substring(AlertEndpoint.EVIDENCE_PATH.length()), 16);
+            if ("GET".equals(exchange.getRequestMethod())) {
+                EvidenceStore.Clip clip = mEvidence.get(alertId);
+                if (clip == null) {
+                    respond(exchange, HTTP_NOT_FOUND, null);
+                    return;
+                }
+                byte[] data = clip.toByteArray();
+                setEvidenceHeaders(exchange, data.length, clip.isComplete());
+                exchange.getResponseHeaders().set("Content-Type", AdpcmCodec.CONTENT_TYPE);
+                exchange.sendResponseHeaders(HTTP_OK, data.length == 0 ? -1 : data.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(data);
+                out.close();
+                return;
+            }
+            if (!"PUT".equals(exchange.getRequestMethod())) {
+                respond(exchange, HTTP_METHOD_NOT_ALLOWED, null);
+                return;
+            }
+            String offsetHeader =
+                    exchange.getRequestHeaders().getFirst(EvidenceUpload.OFFSET_HEADER);
+            if (offsetHeader == null) {
+                respond(exchange, HTTP_BAD_REQUEST, null);
+                return;
+            }
+            long offset = Long.parseLong(offsetHeader);
+            boolean last = "true".equals(
+                    exchange.getRequestHeaders().getFirst(EvidenceUpload.COMPLETE_HEADER));
+            byte[] body = readFully(exchange.getRequestBody());
+            if (mFaults.delayMs > 0) {
+                Thread.sleep(mFaults.delayMs);
+            }
+            double draw = ThreadLocalRandom.current().nextDouble();
+            if (draw < mFaults.errorRate) {
+                mRejected.incrementAndGet();
+                respond(exchange, HTTP_UNAVAILABLE, null);
+                return;
+            }
+            EvidenceStore.Clip clip;
+            try {
+                clip = mEvidence.append(alertId, offset, body, last);
+            } catch (IllegalStateException e) {
+                EvidenceStore.Clip current = mEvidence.get(alertId);
+                setEvidenceHeaders(exchange, current == null ? 0 : current.size(), false);
+                respond(exchange, EvidenceUpload.HTTP_CONFLICT, null);
+                return;
+            }
+            if (draw < mFaults.errorRate + mFaults.dropRate) {
+                mDropped.incrementAndGet();
+                return;
+            }
+            setEvidenceHeaders(exchange, clip.size(), clip.isComplete());
+            respond(exchange, HTTP_OK, null);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, HTTP_BAD_REQUEST, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void setEvidenceHeaders(HttpExchange exchange, long size, boolean complete) {
+        exchange.getResponseHeaders().set(EvidenceUpload.OFFSET_HEADER, Long.toString(size));
+        exchange.getResponseHeaders().set(EvidenceUpload.COMPLETE_HEADER,
+                Boolean.toString(complete));
+    }
+
+    private Reply acceptJson(String json) {
+        String alertId = jsonValue(json, "alert_id");
+        String updateSeq = jsonValue(json, "update_seq");
+        if (alertId == null || updateSeq == null) {
+            // alerte sans identifiant (ancienne version de la montre) : acceptée sans
+            // regroupement
+            return accept(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 0, 0, 0);
+        }
+        String trailStart = jsonValue(json, "trail_start");
+        int trail = json.indexOf("\"trail\":[");
+        int points = 0;
+        for (int i = json.indexOf("{", trail); trail >= 0 && i >= 0; i = json.indexOf("{", i + 1)) {
+            points++;
+        }
+        try {
+            return accept(Long.parseLong(alertId, 16), Integer.parseInt(updateSeq),
+                    trailStart == null ? 0 : Integer.parseInt(trailStart), points);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid alert identifier", e);
+        }
+    }
+
+    private Reply accept(long alertId, int updateSeq, int trailStart, int trailSize) {
+        boolean fresh = mStore.merge(alertId, updateSeq, trailStart, trailSize);
+        if (fresh && updateSeq == 0) {
+            mDispatch.onAlert(alertId);
+        }
+        return new Reply(HTTP_OK, alertId, "{\"status\":\"" + (fresh ? "ok" : "duplicate")
+                + "\",\"alert_id\":\"" + Long.toHexString(alertId) + "\",\"update_seq\":"
+                + updateSeq + "}");
+    }
+
+    /**
+     * @return formats d'alerte acceptés ({@link BinaryAlertEncoder#ACCEPT_HEADER})
+     */
+    String acceptedFormats() {
+        return mBinaryAccepted
+                ? BinaryAlertEncoder.CONTENT_TYPE + ", " + JsonAlertEncoder.CONTENT_TYPE
+                : JsonAlertEncoder.CONTENT_TYPE;
+    }
+
+    private void respond(HttpExchange exchange, int code, String json) throws IOException {
+        exchange.getResponseHeaders().set(BinaryAlertEncoder.ACCEPT_HEADER, acceptedFormats());
+        if (json == null) {
+            exchange.sendResponseHeaders(code, -1);
+            return;
+        }
+        byte[] body = json.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JsonAlertEncoder.CONTENT_TYPE);
+        exchange.sendResponseHeaders(code, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    /**
+     * @return valeur brute (sans guillemets) d'un champ de premier niveau, null si absent
+     */
+    static String jsonValue(String json, String key) {
+        String prefix = "\"" + key + "\":";
+        int start = json.indexOf(prefix);
+        if (start < 0) {
+            return null;
+        }
+        start += prefix.length();
+        if (start < json.length() && json.charAt(start) == '"') {
+            int end = json.indexOf('"', start + 1);
+            return end < 0 ? null : json.substring(start + 1, end);
+        }
+        int end = start;
+        while (end < json.length() && ",}]".indexOf(json.charAt(end)) < 0) {
+            end++;
+        }
+        return json.substring(start, end).trim();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 8080;
+        int threads = 16;
+        boolean binaryAccepted = true;
+        Faults faults = new Faults();
+        int pushPort = -1;
+        long idleTimeoutMs = 0;
+        long dispatchMs = DEFAULT_DISPATCH_DELAY_MS;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--port".equals(arg)) {
+                port = Integer.parseInt(args[++i]);
+            } else if ("--threads".equals(arg)) {
+                threads = Integer.parseInt(args[++i]);
+            } else if ("--delay-ms".equals(arg)) {
+                faults.delayMs = Long.parseLong(args[++i]);
+            } else if ("--slow-rate".equals(arg)) {
+                faults.slowRate = Double.parseDouble(args[++i]);
+            } else if ("--slow-ms".equals(arg)) {
+                faults.slowDelayMs = Long.parseLong(args[++i]);
+            } else if ("--error-rate".equals(arg)) {
+                faults.errorRate = Double.parseDouble(args[++i]);
+            } else if ("--drop-rate".equals(arg)) {
+                faults.dropRate = Double.parseDouble(args[++i]);
+            } else if ("--json-only".equals(arg)) {
+                binaryAccepted = false;
+            } else if ("--push-port".equals(arg)) {
+                pushPort = Integer.parseInt(args[++i]);
+            } else if ("--idle-timeout-ms".equals(arg)) {
+                idleTimeoutMs = Long.parseLong(args[++i]);
+            } else if ("--dispatch-ms".equals(arg)) {
+                dispatchMs = Long.parseLong(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        final AlertIngestServer server = new AlertIngestServer(new InetSocketAddress(port),
+                threads, faults, binaryAccepted);
+        server.getDispatch().setDispatchDelayMs(dispatchMs);
+        server.start();
+        System.out.println("Listening on http://localhost:" + server.getPort()
+                + AlertEndpoint.NEW_ALERT_PATH);
+        PushServer push = null;
+        if (pushPort >= 0) {
+            push = new PushServer(new InetSocketAddress(pushPort), server, idleTimeoutMs);
+            push.start();
+            System.out.println("Push channel on " + push.getUrl());
+        }
+        while (true) {
+            TimeUnit.SECONDS.sleep(10);
+            System.out.println(server.summary() + (push == null ? "" : " push: "
+                    + push.summary()));
+        }
+    }
+}
@@ -0,0 +1,1053 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Description : Générateur de charge simulant des milliers de montres. Chaque montre construit
+ * ses alertes comme {@code MainActivity} (suivi de position, trajectoire simplifiée, encodeur
+ * binaire ou JSON selon le format annoncé par le serveur) et les envoie avec la politique de la
+ * boîte d'envoi de {@code NetworkManager} : délai d'expiration de 10 s sans nouvelle tentative
+ * immédiate, puis nouvelles tentatives espacées par un {@link Backoff}, conversion en JSON
+ * après un refus 415. L'alerte initiale est suivie de mises à jour portant la suite de la
+ * trajectoire, comme pendant la fenêtre de l'{@link AlertRefiner}. Avec {@code --taps}, la
+ * montre simule des appuis répétés juste après l'alerte : comme sur la montre, ils sont envoyés
+ * en mises à jour de la même alerte, sans trajectoire, et ne créent pas de nouvel épisode.
+ * </p>
+ * <p>
+ * Avec {@code --hedge}, les messages sont envoyés comme par {@code NetworkManager} lorsque
+ * plusieurs points d'accès sont configurés : doublés vers un autre point d'accès faute de
+ * réponse au-delà du 95e centile des durées observées, et renvoyés aussitôt vers un autre
+ * point d'accès après un échec ({@link EndpointPool}). L'état des points d'accès est partagé
+ * par toutes les montres simulées. Sans cette option, seul le premier point d'accès est
+ * utilisé.
+ * </p>
+ * <p>
+ * Avec {@code --evidence-seconds}, chaque montre enregistre aussi un son, comme
+ * {@code EvidenceRecorder} : compression ADPCM au rythme réel par morceaux de 500 ms dans un
+ * nombre fixe de tampons, lien vers l'enregistrement dans l'alerte, puis envoi reprenable des
+ * morceaux une fois l'alerte acquittée ({@link EvidenceUpload}). Le rapport donne alors le
+ * délai entre l'appui et l'accusé du premier morceau, et le plus grand nombre d'octets en
+ * attente d'envoi pour un enregistrement.
+ * </p>
+ * <p>
+ * Avec {@code --push}, chaque montre ouvre le canal permanent ({@link PushConnection}) avant son
+ * alerte, comme la montre qui le garde ouvert, et y envoie tous ses messages : la connexion est
+ * déjà établie au moment de l'alerte. Avec {@code --await-dispatch}, la montre attend ensuite
+ * sur ce canal l'envoi des secours ({@link PushProtocol#STATE_DISPATCHED}). Avec
+ * {@code --cold}, chaque requête HTTP ouvre une nouvelle connexion, comme pour une montre dont
+ * la connexion persistante a expiré entre deux alertes : c'est la référence du canal permanent.
+ * </p>
+ * <p>
+ * Le rapport donne le débit, les quantiles de la durée des requêtes et du délai de remise
+ * (nouvelles tentatives comprises), et le nombre de délais dépassés, erreurs HTTP, connexions
+ * coupées et alertes abandonnées.
+ * </p>
+ * <pre>
+ * java AlertLoadGenerator [--url http://localhost:8080/...[,http://...]] [--watches 2000]
+ *                         [--concurrency 64] [--updates 3] [--taps 0] [--json]
+ *                         [--timeout-ms 10000] [--evidence-seconds 0] [--cold]
+ *                         [--push [--await-dispatch] [--dispatch-ms 1000]]
+ *                         [--retry-ms 2000] [--max-attempts 5] [--hedge [--hedge-min-ms 10]]
+ *                         [--embedded [--endpoints 1] [--delay-ms 0] [--slow-rate 0]
+ *                                     [--slow-ms 0] [--error-rate 0] [--drop-rate 0]]
+ * </pre>
+ *
+ * @version 1.0
+ */
+public final class AlertLoadGenerator {
+
+    /**
+     * Paramètres d'une exécution.
+     */
+    public static final class Options {
+        /**
+         * Adresses du web service, séparées par des virgules.
+         */
+        public String url = AlertEndpoint.newAlertUrl("localhost:8080");
+        public int watches = 2000;
+        public int concurrency = 64;
+        public int updates = 3;
+        /**
+         * Appuis répétés après l'appui initial, rattachés à la même alerte.
+         */
+        public int taps;
+        public boolean binary = true;
+        /**
+         * Délai d'expiration d'une requête, comme {@code NetworkManager.ALERT_TIMEOUT_MS}.
+         */
+        public int timeoutMs = 10000;
+        /**
+         * Délais entre deux tentatives, comme ceux de la boîte d'envoi de la montre.
+         */
+        public long retryInitialDelayMs = 2000;
+        public long retryMaxDelayMs = 5 * 60 * 1000;
+        /**
+         * Nombre de tentatives avant d'abandonner une alerte (la montre, elle, n'abandonne
+         * jamais).
+         */
+        public int maxAttempts = 5;
+        /**
+         * Requêtes doublées et secours vers les autres adresses.
+         */
+        public boolean hedge;
+        /**
+         * Bornes du délai avant de doubler une requête (la montre attend au moins 200 ms ;
+         * la borne est plus basse ici, les serveurs locaux répondant en quelques millisecondes).
+         */
+        public long minHedgeDelayMs = 10;
+        public long maxHedgeDelayMs = 5000;
+        /**
+         * Durée de l'enregistrement joint à chaque alerte (0 : aucun).
+         */
+        public int evidenceSeconds;
+        /**
+         * Morceaux d'enregistrement gardés en mémoire en attendant leur envoi.
+         */
+        public int evidenceBufferChunks = 8;
+        /**
+         * Adresse du canal permanent, null pour envoyer les messages en HTTP.
+         */
+        public String pushUrl;
+        /**
+         * Attente de l'envoi des secours sur le canal permanent après les messages.
+         */
+        public boolean awaitDispatch;
+        /**
+         * Nouvelle connexion pour chaque requête HTTP.
+         */
+        public boolean coldConnections;
+    }
+
+    private static final int TRAIL_CAPACITY = 32;
+    private static final int TRAIL_MAX_POINTS = 16;
+    private static final int TRAJECTORY_CAPACITY = 64;
+    private static final long FIX_INTERVAL_MS = 15000;
+    private static final long UPDATE_FIX_INTERVAL_MS = 1000;
+    private static final int FIXES_PER_UPDATE = 10;
+    private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
+    private static final int EVIDENCE_CHUNK_MS = 500;
+    private static final int EVIDENCE_CHUNK_SAMPLES =
+            AdpcmCodec.SAMPLE_RATE * EVIDENCE_CHUNK_MS / 1000;
+
+    static {
+        configureHttpClient();
+    }
+
+    private final Options mOptions;
+    private final URL[] mUrls;
+    private final EndpointPool mPool;
+    private ExecutorService mAttemptExecutor;
+
+    /**
+     * Durée des requêtes (µs).
+     */
+    private final LatencyHistogram mRequestLatency = new LatencyHistogram();
+    /**
+     * Délai entre la construction d'un message et son acquittement, nouvelles tentatives
+     * comprises (ms).
+     */
+    private final LatencyHistogram mDeliveryLatency = new LatencyHistogram();
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mDelivered = new AtomicLong();
+    private final AtomicLong mTimeouts = new AtomicLong();
+    private final AtomicLong mHttpErrors = new AtomicLong();
+    private final AtomicLong mConnectionErrors = new AtomicLong();
+    private final AtomicLong mRetries = new AtomicLong();
+    private final AtomicLong mAbandoned = new AtomicLong();
+    private final AtomicLong mJsonFallbacks = new AtomicLong();
+    private final AtomicLong mBytesSent = new AtomicLong();
+    private final AtomicLong mHedgedRequests = new AtomicLong();
+    private final AtomicLong mHedgeWins = new AtomicLong();
+    private final AtomicLong mFailovers = new AtomicLong();
+    /**
+     * Délai entre l'appui et l'accusé du premier morceau d'enregistrement (ms).
+     */
+    private final LatencyHistogram mEvidenceFirstChunk = new LatencyHistogram();
+    private final AtomicLong mEvidenceClips = new AtomicLong();
+    private final AtomicLong mEvidenceComplete = new AtomicLong();
+    private final AtomicLong mEvidenceChunks = new AtomicLong();
+    private final AtomicLong mEvidenceDropped = new AtomicLong();
+    private final AtomicLong mEvidenceResumes = new AtomicLong();
+    private final AtomicLong mEvidencePeakBytes = new AtomicLong();
+    /**
+     * Durée de l'ouverture et de la négociation du canal permanent (µs).
+     */
+    private final LatencyHistogram mPushHandshake = new LatencyHistogram();
+    /**
+     * Délai entre l'acquittement de l'alerte et l'événement d'envoi des secours (ms).
+     */
+    private final LatencyHistogram mDispatchLatency = new LatencyHistogram();
+    private final AtomicLong mPushConnections = new AtomicLong();
+    private final AtomicLong mDispatchUpdates = new AtomicLong();
+    private final AtomicLong mDispatchMissed = new AtomicLong();
+    private long mElapsedMs;
+
+    public AlertLoadGenerator(Options options) throws IOException {
+        mOptions = options;
+        String[] urls = options.url.split(",");
+        mUrls = new URL[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = urls[i].trim();
+            mUrls[i] = new URL(urls[i]);
+        }
+        mPool = new EndpointPool(urls, options.minHedgeDelayMs, options.maxHedgeDelayMs);
+    }
+
+    /**
+     * Lance toutes les montres et attend la fin de leurs envois.
+     *
+     * @throws InterruptedException si l'attente est interrompue
+     */
+    public void run() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(mOptions.concurrency);
+        // requêtes d'un message envoyées en parallèle ; les perdantes se terminent en arrière-plan
+        mAttemptExecutor = Executors.newCachedThreadPool();
+        long start = System.nanoTime();
+        for (int i = 0; i < mOptions.watches; i++) {
+            executor.execute(new Watch(i));
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        mElapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        mAttemptExecutor.shutdown();
+        mAttemptExecutor.awaitTermination(mOptions.timeoutMs * 2L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Une montre : une alerte puis ses mises à jour, envoyées l'une après l'autre.
+     */
+    private final class Watch implements Runnable {
+
+        private final Random mRandom;
+        private final FixTracker mTracker = new FixTracker(TRAIL_CAPACITY, new SamplingContext(),
+                new SamplingStats(0));
+        private final Trajectory mTrajectory = new Trajectory(TRAJECTORY_CAPACITY,
+                Trajectory.DEFAULT_TOLERANCE_METERS);
+        private final AlertPayload mPayload = new AlertPayload();
+        private final BinaryAlertEncoder mBinaryEncoder = new BinaryAlertEncoder();
+        private final JsonAlertEncoder mJsonEncoder = new JsonAlertEncoder();
+        /**
+         * Format annoncé par le serveur, mis à jour par les requêtes en parallèle.
+         */
+        private volatile boolean mBinary = mOptions.binary;
+        private final Backoff mBackoff = new Backoff(mOptions.retryInitialDelayMs,
+                mOptions.retryMaxDelayMs);
+        private double mLatitude;
+        private double mLongitude;
+        private long mTimeMs;
+        /**
+         * Canal permanent de la montre (null s'il est fermé) et état de son abonnement.
+         */
+        private PushConnection mPush;
+        private long mNextRequestId;
+        private long mLastEventSeq;
+        private long mAlertId = -1;
+        private long mAlertAckedAtMs;
+        private boolean mDispatched;
+
+        Watch(int index) {
+            mRandom = new Random(index);
+            mLatitude = 43.6 + mRandom.nextDouble() * 0.1;
+            mLongitude = 3.8 + mRandom.nextDouble() * 0.1;
+            mTimeMs = System.currentTimeMillis() - TRAIL_CAPACITY * FIX_INTERVAL_MS;
+        }
+
+        @Override
+        public void run() {
+            // quelques minutes de marche avant l'alerte
+            for (int i = 0; i < TRAIL_CAPACITY; i++) {
+                walk(FIX_INTERVAL_MS, false);
+            }
+            if (mOptions.pushUrl != null) {
+                // canal ouvert avant l'alerte, comme sur la montre
+                openPush();
+            }
+            try {
+                sendAlert();
+                if (mOptions.pushUrl != null && mOptions.awaitDispatch && mAlertId >= 0) {
+                    awaitDispatch();
+                }
+            } finally {
+                closePush();
+            }
+        }
+
+        /**
+         * Envoie l'alerte et ses mises à jour, puis attend la fin de l'envoi de
+         * l'enregistrement.
+         */
+        private void sendAlert() {
+            long alertId = mRandom.nextLong() & Long.MAX_VALUE;
+            long now = mTimeMs;
+            mPayload.reset();
+            mPayload.setAlertId(alertId);
+            mPayload.setProfile(UserProfile.PLACEHOLDER);
+            mPayload.setTimestampCurrent(now);
+            mTracker.fillLocation(mPayload, now * 1000000L, now);
+            mPayload.setDriveLink("");
+            mTrajectory.reset();
+            mTrajectory.addTrail(mTracker.getTrail(), TRAIL_MAX_POINTS);
+            mTrajectory.flushTo(mPayload);
+            EvidenceUpload evidence = null;
+            Future<?> upload = null;
+            if (mOptions.evidenceSeconds > 0) {
+                // l'enregistrement commence à l'appui, son envoi après l'acquittement de l'alerte
+                evidence = new EvidenceUpload(alertId, nowMs(), mOptions.evidenceBufferChunks,
+                        AdpcmCodec.blockBytes(EVIDENCE_CHUNK_SAMPLES));
+                mPayload.setDriveLink(AlertEndpoint.evidenceUrl(mUrls[0].toString(), alertId));
+                mAttemptExecutor.execute(new EvidenceProducer(evidence, mRandom.nextLong()));
+            }
+            if (!deliver()) {
+                if (evidence != null) {
+                    evidence.abandon();
+                }
+                return;
+            }
+            mAlertId = alertId;
+            mAlertAckedAtMs = nowMs();
+            if (evidence != null) {
+                upload = mAttemptExecutor.submit(new EvidenceSender(evidence));
+            }
+            int seq = 0;
+            for (int tap = 0; tap < mOptions.taps; tap++) {
+                walk(UPDATE_FIX_INTERVAL_MS, true);
+                mPayload.reset();
+                mPayload.setAlertId(alertId);
+                mPayload.setUpdateSeq(++seq);
+                mPayload.setProfile(UserProfile.PLACEHOLDER);
+                mPayload.setTimestampCurrent(mTimeMs);
+                mTracker.fillLocation(mPayload, mTimeMs * 1000000L, mTimeMs);
+                mPayload.setDriveLink("");
+                if (!deliver()) {
+                    return;
+                }
+            }
+            for (int update = 0; update < mOptions.updates; update++) {
+                for (int i = 0; i < FIXES_PER_UPDATE; i++) {
+                    walk(UPDATE_FIX_INTERVAL_MS, true);
+                }
+                mPayload.reset();
+                mPayload.setAlertId(alertId);
+                mPayload.setUpdateSeq(++seq);
+                mPayload.setProfile(UserProfile.PLACEHOLDER);
+                mPayload.setTimestampCurrent(mTimeMs);
+                mPayload.setLocation(mTracker.getLatitude(), mTracker.getLongitude(), mTimeMs,
+                        mTracker.getAccuracy(), AlertPayload.SOURCE_FUSED);
+                mPayload.setDriveLink("");
+                mTrajectory.flushTo(mPayload);
+                if (!deliver()) {
+                    return;
+                }
+            }
+            if (upload != null) {
+                try {
+                    upload.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        }
+
+        private void walk(long intervalMs, boolean alertActive) {
+            mTimeMs += intervalMs;
+            mLatitude += (mRandom.nextDouble() - 0.3) * 1e-5 * intervalMs / 1000;
+            mLongitude += (mRandom.nextDouble() - 0.3) * 1e-5 * intervalMs / 1000;
+            float accuracy = 5f + mRandom.nextFloat() * 15f;
+            mTracker.onFix(mTimeMs, mTimeMs * 1000000L, mLatitude, mLongitude, accuracy,
+                    Float.NaN);
+            if (alertActive) {
+                mTrajectory.add(mTimeMs, mLatitude, mLongitude, accuracy);
+            }
+        }
+
+        /**
+         * Envoie le message courant jusqu'à son acquittement ou l'abandon.
+         *
+         * @return faux si le message a été abandonné
+         */
+        private boolean deliver() {
+            long start = System.nanoTime();
+            mBackoff.reset();
+            for (int attempt = 1; ; attempt++) {
+                AlertEncoder encoder = mBinary ? mBinaryEncoder : mJsonEncoder;
+                int length = encoder.encode(mPayload);
+                int code;
+                try {
+                    code = mOptions.pushUrl != null
+                            ? push(encoder.buffer(), length, encoder.contentType())
+                            : mOptions.hedge
+                            ? postHedged(Arrays.copyOf(encoder.buffer(), length),
+                            encoder.contentType())
+                            : post(mUrls[0], encoder.buffer(), length, encoder.contentType());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                if (code >= 200 && code < 300) {
+                    mDelivered.incrementAndGet();
+                    mDeliveryLatency.record(
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    return true;
+                }
+                if (code == HTTP_UNSUPPORTED_MEDIA_TYPE && mBinary) {
+                    // comme NetworkManager : conversion immédiate en JSON
+                    mJsonFallbacks.incrementAndGet();
+                    mBinary = false;
+                    continue;
+                }
+                if (attempt >= mOptions.maxAttempts) {
+                    mAbandoned.incrementAndGet();
+                    return false;
+                }
+                mRetries.incrementAndGet();
+                try {
+                    Thread.sleep(mBackoff.nextDelayMs());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Envoie le message au premier point d'accès, le double vers un autre faute de réponse
+         * et le renvoie vers un autre après un échec. Le corps ne doit plus être modifié : une
+         * requête perdante peut encore l'envoyer après le retour.
+         *
+         * @return code HTTP de la première réponse positive, sinon de la dernière réponse, -1
+         * si aucune réponse
+         */
+        private int postHedged(byte[] body, String contentType) throws InterruptedException {
+            CompletionService<Integer> attempts =
+                    new ExecutorCompletionService<Integer>(mAttemptExecutor);
+            int primary = mPool.primary(nowMs());
+            Future<Integer> first = attempts.submit(attempt(primary, body, contentType));
+            int pending = 1;
+            boolean hedged = false;
+            Future<Integer> done = attempts.poll(mPool.hedgeDelayMs(), TimeUnit.MILLISECONDS);
+            if (done == null) {
+                int endpoint = mPool.alternate(primary, nowMs());
+                if (endpoint >= 0) {
+                    hedged = true;
+                    mHedgedRequests.incrementAndGet();
+                    attempts.submit(attempt(endpoint, body, contentType));
+                    pending++;
+                }
+            }
+            int code = -1;
+            while (pending > 0) {
+                if (done == null) {
+                    done = attempts.take();
+                }
+                pending--;
+                try {
+                    code = done.get();
+                } catch (ExecutionException e) {
+                    code = -1;
+                }
+                if (code >= 200 && code < 300 || code == HTTP_UNSUPPORTED_MEDIA_TYPE) {
+                    if (done != first && code < 300) {
+                        mHedgeWins.incrementAndGet();
+                    }
+                    return code;
+                }
+                done = null;
+                // une erreur 4xx serait la même sur un autre point d'accès
+                boolean answered = code > 0 && code < 500;
+                int endpoint = pending > 0 || hedged || answered ? -1
+                        : mPool.alternate(primary, nowMs());
+                if (endpoint >= 0) {
+                    hedged = true;
+                    mFailovers.incrementAndGet();
+                    attempts.submit(attempt(endpoint, body, contentType));
+                    pending++;
+                }
+            }
+            return code;
+        }
+
+        private Callable<Integer> attempt(final int endpoint, final byte[] body,
+                                          final String contentType) {
+            return new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    long start = nowMs();
+                    int code = post(mUrls[endpoint], body, body.length, contentType);
+                    // une erreur 4xx est une réponse : le point d'accès reste en bonne santé
+                    mPool.record(endpoint, nowMs() - start, code > 0 && code < 500, nowMs());
+                    return code;
+                }
+            };
+        }
+
+        /**
+         * @return code HTTP, -1 si aucune réponse
+         */
+        private int post(URL url, byte[] body, int length, String contentType) {
+            mRequests.incrementAndGet();
+            long start = System.nanoTime();
+            HttpURLConnection connection = null;
+            try {
+                connection = (HttpURLConnection) url.openConnection();
+                connection.setRequestMethod("POST");
+                connection.setConnectTimeout(mOptions.timeoutMs);
+                connection.setReadTimeout(mOptions.timeoutMs);
+                connection.setDoOutput(true);
+                // corps mis en tampon et écrit avec les en-têtes : en flux à longueur fixe, les
+                // en-têtes partent seuls et, sur une connexion réutilisée, Nagle retient le corps
+                // jusqu'à l'accusé retardé du serveur
+                connection.setRequestProperty("Content-Type", contentType);
+                connection.setRequestProperty("Connection", "keep-alive");
+                OutputStream out = connection.getOutputStream();
+                out.write(body, 0, length);
+                out.close();
+                mBytesSent.addAndGet(length);
+                int code = connection.getResponseCode();
+                // la lecture complète de la réponse rend la connexion au pool
+                InputStream in = code < 400 ? connection.getInputStream()
+                        : connection.getErrorStream();
+                if (in != null) {
+                    byte[] buffer = new byte[512];
+                    while (in.read(buffer) != -1) {
+                        // réponse ignorée
+                    }
+                    in.close();
+                }
+                if (mOptions.coldConnections) {
+                    // fermée par le client : le serveur ne répond pas « Connection: close » et
+                    // le client réutiliserait une connexion déjà refermée
+                    connection.disconnect();
+                }
+                String accepted = connection.getHeaderField(BinaryAlertEncoder.ACCEPT_HEADER);
+                if (accepted != null && code < 400) {
+                    mBinary = accepted.contains(BinaryAlertEncoder.CONTENT_TYPE);
+                }
+                if (code >= 300) {
+                    mHttpErrors.incrementAndGet();
+                }
+                return code;
+            } catch (SocketTimeoutException e) {
+                mTimeouts.incrementAndGet();
+                connection.disconnect();
+                return -1;
+            } catch (IOException e) {
+                mConnectionErrors.incrementAndGet();
+                if (connection != null) {
+                    connection.disconnect();
+                }
+                return -1;
+            } finally {
+                mRequestLatency.record(
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            }
+        }
+
+        /**
+         * Envoie le message sur le canal permanent et attend son accusé ; le canal est rouvert
+         * s'il a été perdu. Les événements de secours reçus entre-temps sont pris en compte.
+         *
+         * @return code HTTP de l'accusé, -1 si aucun
+         */
+        private int push(byte[] body, int length, String contentType) {
+            mRequests.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                if (mPush == null && !openPush()) {
+                    return -1;
+                }
+                long requestId = ++mNextRequestId;
+                mPush.setReadTimeout(mOptions.timeoutMs);
+                mPush.send(PushProtocol.encodeAlert(new PushProtocol.Alert(requestId,
+                        contentType, Arrays.copyOf(body, length))));
+                mBytesSent.addAndGet(length);
+                while (true) {
+                    if (receive() != PushProtocol.TYPE_ACK) {
+                        continue;
+                    }
+                    PushProtocol.Ack ack = PushProtocol.decodeAck(mPush.data(), mPush.length());
+                    if (ack.requestId != requestId) {
+                        continue;
+                    }
+                    if (ack.isSuccess()) {
+                        mBinary = ack.acceptedFormats.contains(BinaryAlertEncoder.CONTENT_TYPE);
+                    } else {
+                        mHttpErrors.incrementAndGet();
+                    }
+                    return ack.httpStatus;
+                }
+            } catch (SocketTimeoutException e) {
+                mTimeouts.incrementAndGet();
+                closePush();
+                return -1;
+            } catch (IOException e) {
+                mConnectionErrors.incrementAndGet();
+                closePush();
+                return -1;
+            } finally {
+                mRequestLatency.record(
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            }
+        }
+
+        /**
+         * Attend l'envoi des secours de l'alerte, en rouvrant le canal s'il est perdu.
+         */
+        private void awaitDispatch() {
+            long deadline = nowMs() + mOptions.timeoutMs;
+            while (!mDispatched && nowMs() < deadline) {
+                try {
+                    if (mPush == null && !openPush()) {
+                        Thread.sleep(mBackoff.nextDelayMs());
+                        continue;
+                    }
+                    mPush.setReadTimeout((int) Math.max(1, deadline - nowMs()));
+                    receive();
+                } catch (SocketTimeoutException e) {
+                    break;
+                } catch (IOException e) {
+                    closePush();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (!mDispatched) {
+                mDispatchMissed.incrementAndGet();
+            }
+        }
+
+        /**
+         * Lit le message suivant du canal ; un événement de secours est pris en compte.
+         *
+         * @return type du message
+         */
+        private int receive() throws IOException {
+            int opcode;
+            while ((opcode = mPush.receive()) != PushProtocol.OPCODE_BINARY) {
+                if (opcode < 0) {
+                    throw new EOFException("Push channel closed");
+                }
+            }
+            int type = PushProtocol.typeOf(mPush.data(), mPush.length());
+            if (type == PushProtocol.TYPE_DISPATCH) {
+                PushProtocol.Dispatch dispatch =
+                        PushProtocol.decodeDispatch(mPush.data(), mPush.length());
+                mDispatchUpdates.incrementAndGet();
+                mLastEventSeq = Math.max(mLastEventSeq, dispatch.seq);
+                if (dispatch.alertId == mAlertId && !mDispatched
+                        && dispatch.state == PushProtocol.STATE_DISPATCHED) {
+                    mDispatched = true;
+                    mDispatchLatency.record(nowMs() - mAlertAckedAtMs);
+                }
+            }
+            return type;
+        }
+
+        /**
+         * Ouvre le canal permanent ; après une coupure, la montre se réabonne à son alerte
+         * pour recevoir les événements manqués.
+         *
+         * @return faux si le canal n'a pas pu être ouvert
+         */
+        private boolean openPush() {
+            long start = System.nanoTime();
+            try {
+                mPush = PushConnection.open(mOptions.pushUrl, mOptions.timeoutMs);
+                mPushHandshake.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                mPushConnections.incrementAndGet();
+                if (mAlertId >= 0) {
+                    mPush.send(PushProtocol.encodeSubscribe(new PushProtocol.Subscribe(
+                            mLastEventSeq, new long[]{mAlertId})));
+                }
+                return true;
+            } catch (IOException e) {
+                mConnectionErrors.incrementAndGet();
+                closePush();
+                return false;
+            }
+        }
+
+        private void closePush() {
+            if (mPush != null) {
+                mPush.close();
+                mPush = null;
+            }
+        }
+    }
+
+    /**
+     * Enregistrement simulé : un morceau compressé toutes les 500 ms, abandonné si tous les
+     * tampons attendent leur envoi.
+     */
+    private final class EvidenceProducer implements Runnable {
+
+        private final EvidenceUpload mUpload;
+        private final Random mRandom;
+        private final AdpcmCodec mCodec = new AdpcmCodec();
+        private final short[] mPcm = new short[EVIDENCE_CHUNK_SAMPLES];
+
+        EvidenceProducer(EvidenceUpload upload, long seed) {
+            mUpload = upload;
+            mRandom = new Random(seed);
+        }
+
+        @Override
+        public void run() {
+            long start = nowMs();
+            int chunks = mOptions.evidenceSeconds * 1000 / EVIDENCE_CHUNK_MS;
+            try {
+                for (int i = 0; i < chunks && !mUpload.isDone(); i++) {
+                    long due = start + (i + 1) * (long) EVIDENCE_CHUNK_MS;
+                    Thread.sleep(Math.max(0, due - nowMs()));
+                    for (int s = 0; s < mPcm.length; s++) {
+                        // voix approximée : ton modulé et bruit
+                        mPcm[s] = (short) (4000 * Math.sin(2 * Math.PI * (200 + i % 7 * 30)
+                                * s / AdpcmCodec.SAMPLE_RATE) + mRandom.nextGaussian() * 500);
+                    }
+                    EvidenceUpload.Chunk chunk = mUpload.obtain();
+                    if (chunk == null) {
+                        mUpload.drop();
+                        continue;
+                    }
+                    int length = mCodec.encodeBlock(mPcm, 0, mPcm.length, chunk.data(), 0);
+                    mUpload.submit(chunk, length, i == chunks - 1);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mUpload.finish();
+        }
+    }
+
+    /**
+     * Envoi des morceaux d'un enregistrement, l'un après l'autre, avec reprise à la position
+     * indiquée par le serveur.
+     */
+    private final class EvidenceSender implements Callable<Void> {
+
+        private final EvidenceUpload mUpload;
+        private final Backoff mBackoff = new Backoff(mOptions.retryInitialDelayMs,
+                mOptions.retryMaxDelayMs);
+        private URL mUrl;
+
+        EvidenceSender(EvidenceUpload upload) {
+            mUpload = upload;
+        }
+
+        @Override
+        public Void call() throws IOException, InterruptedException {
+            mUrl = new URL(AlertEndpoint.evidenceUrl(mUrls[0].toString(), mUpload.getAlertId()));
+            mEvidenceClips.incrementAndGet();
+            while (!mUpload.isDone()) {
+                EvidenceUpload.Chunk chunk = mUpload.awaitNext(mOptions.timeoutMs);
+                if (chunk != null && !send(chunk)
+                        && mUpload.onFailed(mOptions.maxAttempts)) {
+                    Thread.sleep(mBackoff.nextDelayMs());
+                }
+            }
+            if (mUpload.isComplete()) {
+                mEvidenceComplete.incrementAndGet();
+            }
+            long firstChunkMs = mUpload.getTimeToFirstChunkMs();
+            if (firstChunkMs >= 0) {
+                mEvidenceFirstChunk.record(firstChunkMs);
+            }
+            mEvidenceDropped.addAndGet(mUpload.getDroppedChunks());
+            long peak = mUpload.getPeakBufferedBytes();
+            long current;
+            while ((current = mEvidencePeakBytes.get()) < peak
+                    && !mEvidencePeakBytes.compareAndSet(current, peak)) {
+                // nouvel essai
+            }
+            return null;
+        }
+
+        /**
+         * @return faux si le morceau doit être renvoyé
+         */
+        private boolean send(EvidenceUpload.Chunk chunk) {
+            mRequests.incrementAndGet();
+            HttpURLConnection connection = null;
+            try {
+                connection = (HttpURLConnection) mUrl.openConnection();
+                connection.setRequestMethod("PUT");
+                connection.setConnectTimeout(mOptions.timeoutMs);
+                connection.setReadTimeout(mOptions.timeoutMs);
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(chunk.length());
+                connection.setRequestProperty("Content-Type", AdpcmCodec.CONTENT_TYPE);
+                connection.setRequestProperty(EvidenceUpload.OFFSET_HEADER,
+                        Long.toString(chunk.offset()));
+                if (chunk.isLast()) {
+                    connection.setRequestProperty(EvidenceUpload.COMPLETE_HEADER, "true");
+                }
+                OutputStream out = connection.getOutputStream();
+                out.write(chunk.data(), 0, chunk.length());
+                out.close();
+                mBytesSent.addAndGet(chunk.length());
+                int code = connection.getResponseCode();
+                InputStream in = code < 400 ? connection.getInputStream()
+                        : connection.getErrorStream();
+                if (in != null) {
+                    while (in.read() != -1) {
+                        // réponse vide
+                    }
+                    in.close();
+                }
+                String received = connection.getHeaderField(EvidenceUpload.OFFSET_HEADER);
+                if ((code == 200 || code == EvidenceUpload.HTTP_CONFLICT) && received != null) {
+                    if (code == EvidenceUpload.HTTP_CONFLICT) {
+                        mEvidenceResumes.incrementAndGet();
+                    } else {
+                        mEvidenceChunks.incrementAndGet();
+                    }
+                    mBackoff.reset();
+                    mUpload.onAcknowledged(Long.parseLong(received), "true".equals(
+                            connection.getHeaderField(EvidenceUpload.COMPLETE_HEADER)), nowMs());
+                    return true;
+                }
+                mHttpErrors.incrementAndGet();
+                return false;
+            } catch (IOException | NumberFormatException e) {
+                mConnectionErrors.incrementAndGet();
+                if (connection != null) {
+                    connection.disconnect();
+                }
+                return false;
+            }
+        }
+    }
+
+    private static long nowMs() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    public long getDeliveredCount() {
+        return mDelivered.get();
+    }
+
+    public long getAbandonedCount() {
+        return mAbandoned.get();
+    }
+
+    public long getRetryCount() {
+        return mRetries.get();
+    }
+
+    public long getHedgedRequestCount() {
+        return mHedgedRequests.get();
+    }
+
+    public long getHedgeWinCount() {
+        return mHedgeWins.get();
+    }
+
+    public long getEvidenceCompleteCount() {
+        return mEvidenceComplete.get();
+    }
+
+    /**
+     * @return plus grand nombre d'octets d'un enregistrement en attente d'envoi
+     */
+    public long getEvidencePeakBytes() {
+        return mEvidencePeakBytes.get();
+    }
+
+    /**
+     * @param quantile quantile (0.5 pour la médiane)
+     * @return délai entre l'appui et l'accusé du premier morceau d'enregistrement (ms)
+     */
+    public long getEvidenceFirstChunkMs(double quantile) {
+        return mEvidenceFirstChunk.getPercentile(quantile);
+    }
+
+    /**
+     * @return nombre de connexions du canal permanent ouvertes
+     */
+    public long getPushConnectionCount() {
+        return mPushConnections.get();
+    }
+
+    /**
+     * @return nombre d'alertes dont l'envoi des secours a été reçu
+     */
+    public long getDispatchedCount() {
+        return mDispatchLatency.getCount();
+    }
+
+    /**
+     * @param quantile quantile (0.5 pour la médiane)
+     * @return durée des requêtes d'envoi d'un message, accusé compris (µs)
+     */
+    public long getRequestMicros(double quantile) {
+        return mRequestLatency.getPercentile(quantile);
+    }
+
+    /**
+     * @return rapport lisible de l'exécution
+     */
+    public String report() {
+        double seconds = Math.max(1, mElapsedMs) / 1000.0;
+        return String.format(java.util.Locale.US,
+                "watches=%d requests=%d delivered=%d elapsed=%.1fs throughput=%.0f msg/s"
+                        + " sent=%.1f kB%n"
+                        + "request (ms) p50=%.2f p99=%.2f p999=%.2f max=%.2f%n"
+                        + "delivery (ms) p50=%d p99=%d p999=%d max=%d%n"
+                        + "timeouts=%d httpErrors=%d connectionErrors=%d retries=%d"
+                        + " jsonFallbacks=%d abandoned=%d%n"
+                        + "hedged=%d hedgeWins=%d failovers=%d hedgeDelay=%d ms%n"
+                        + "evidence clips=%d complete=%d chunks=%d dropped=%d resumes=%d"
+                        + " firstChunk (ms) p50=%d p99=%d max=%d peakBuffered=%d B%n"
+                        + "push connections=%d handshake (ms) p50=%.2f p99=%.2f"
+                        + " dispatchUpdates=%d dispatched=%d missed=%d"
+                        + " dispatch (ms) p50=%d p99=%d",
+                mOptions.watches, mRequests.get(), mDelivered.get(), seconds,
+                mDelivered.get() / seconds, mBytesSent.get() / 1024.0,
+                mRequestLatency.getPercentile(0.5) / 1000.0,
+                mRequestLatency.getPercentile(0.99) / 1000.0,
+                mRequestLatency.getPercentile(0.999) / 1000.0,
+                mRequestLatency.getMax() / 1000.0,
+                mDeliveryLatency.getPercentile(0.5), mDeliveryLatency.getPercentile(0.99),
+                mDeliveryLatency.getPercentile(0.999), mDeliveryLatency.getMax(),
+                mTimeouts.get(), mHttpErrors.get(), mConnectionErrors.get(), mRetries.get(),
+                mJsonFallbacks.get(), mAbandoned.get(), mHedgedRequests.get(), mHedgeWins.get(),
+                mFailovers.get(), mPool.hedgeDelayMs(), mEvidenceClips.get(),
+                mEvidenceComplete.get(), mEvidenceChunks.get(), mEvidenceDropped.get(),
+                mEvidenceResumes.get(), mEvidenceFirstChunk.getPercentile(0.5),
+                mEvidenceFirstChunk.getPercentile(0.99), mEvidenceFirstChunk.getMax(),
+                mEvidencePeakBytes.get(), mPushConnections.get(),
+                mPushHandshake.getPercentile(0.5) / 1000.0,
+                mPushHandshake.getPercentile(0.99) / 1000.0, mDispatchUpdates.get(),
+                mDispatchLatency.getCount(), mDispatchMissed.get(),
+                mDispatchLatency.getPercentile(0.5), mDispatchLatency.getPercentile(0.99));
+    }
+
+    /**
+     * Empêche le client HTTP de renvoyer de lui-même un POST resté sans réponse sur une connexion
+     * réutilisée : le corps étant mis en tampon, il le ferait sans le signaler, et les nouvelles
+     * tentatives doivent rester celles du générateur, comptées et espacées. Le client lit ce
+     * réglage à sa première connexion.
+     */
+    static void configureHttpClient() {
+        if (System.getProperty("sun.net.http.retryPost") == null) {
+            System.setProperty("sun.net.http.retryPost", "false");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        boolean embedded = false;
+        int endpoints = 1;
+        boolean push = false;
+        long dispatchMs = 1000;
+        AlertIngestServer.Faults faults = new AlertIngestServer.Faults();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--url".equals(arg)) {
+                options.url = args[++i];
+            } else if ("--watches".equals(arg)) {
+                options.watches = Integer.parseInt(args[++i]);
+            } else if ("--concurrency".equals(arg)) {
+                options.concurrency = Integer.parseInt(args[++i]);
+            } else if ("--updates".equals(arg)) {
+                options.updates = Integer.parseInt(args[++i]);
+            } else if ("--taps".equals(arg)) {
+                options.taps = Integer.parseInt(args[++i]);
+            } else if ("--json".equals(arg)) {
+                options.binary = false;
+            } else if ("--timeout-ms".equals(arg)) {
+                options.timeoutMs = Integer.parseInt(args[++i]);
+            } else if ("--retry-ms".equals(arg)) {
+                options.retryInitialDelayMs = Long.parseLong(args[++i]);
+            } else if ("--max-attempts".equals(arg)) {
+                options.maxAttempts = Integer.parseInt(args[++i]);
+            } else if ("--hedge".equals(arg)) {
+                options.hedge = true;
+            } else if ("--hedge-min-ms".equals(arg)) {
+                options.minHedgeDelayMs = Long.parseLong(args[++i]);
+            } else if ("--evidence-seconds".equals(arg)) {
+                options.evidenceSeconds = Integer.parseInt(args[++i]);
+            } else if ("--cold".equals(arg)) {
+                options.coldConnections = true;
+            } else if ("--push".equals(arg)) {
+                push = true;
+            } else if ("--await-dispatch".equals(arg)) {
+                options.awaitDispatch = true;
+            } else if ("--dispatch-ms".equals(arg)) {
+                dispatchMs = Long.parseLong(args[++i]);
+            } else if ("--embedded".equals(arg)) {
+                embedded = true;
+            } else if ("--endpoints".equals(arg)) {
+                endpoints = Integer.parseInt(args[++i]);
+            } else if ("--slow-rate".equals(arg)) {
+                faults.slowRate = Double.parseDouble(args[++i]);
+            } else if ("--slow-ms".equals(arg)) {
+                faults.slowDelayMs = Long.parseLong(args[++i]);
+            } else if ("--delay-ms".equals(arg)) {
+                faults.delayMs = Long.parseLong(args[++i]);
+            } else if ("--error-rate".equals(arg)) {
+                faults.errorRate = Double.parseDouble(args[++i]);
+            } else if ("--drop-rate".equals(arg)) {
+                faults.dropRate = Double.parseDouble(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        AlertIngestServer[] servers = new AlertIngestServer[embedded ? endpoints : 0];
+        if (embedded) {
+            // serveurs locaux dans la même JVM, sur des ports libres, partageant leurs alertes
+            AlertStore store = new AlertStore();
+            StringBuilder urls = new StringBuilder();
+            for (int i = 0; i < servers.length; i++) {
+                servers[i] = new AlertIngestServer(new InetSocketAddress("localhost", 0),
+                        options.concurrency, faults, true, store);
+                servers[i].getDispatch().setDispatchDelayMs(dispatchMs);
+                servers[i].start();
+                urls.append(i == 0 ? "" : ",")
+                        .append(AlertEndpoint.newAlertUrl("localhost:" + servers[i].getPort()));
+            }
+            options.url = urls.toString();
+        }
+        PushServer pushServer = null;
+        if (push && embedded) {
+            pushServer = new PushServer(new InetSocketAddress("localhost", 0), servers[0], 0);
+            pushServer.start();
+            options.pushUrl = pushServer.getUrl();
+        } else if (push) {
+            options.pushUrl = AlertEndpoint.pushUrl(new URL(options.url.split(",")[0].trim())
+                    .getAuthority());
+        }
+        AlertLoadGenerator generator = new AlertLoadGenerator(options);
+        generator.run();
+        System.out.println(generator.report());
+        if (pushServer != null) {
+            System.out.println("push : " + pushServer.summary());
+            pushServer.stop();
+        }
+        for (AlertIngestServer server : servers) {
+            System.out.println("server " + server.getPort() + " : " + server.summary());
+            server.stop();
+        }
+    }
+}
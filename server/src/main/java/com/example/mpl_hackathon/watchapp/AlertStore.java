@@ -0,0 +1,167 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Description : Alertes reçues par le serveur de substitution. L'alerte initiale et ses mises à
+ * jour sont regroupées par {@code alert_id} ; une mise à jour déjà reçue (même
+ * {@code update_seq}, renvoyée par la montre faute d'accusé de réception) est reconnue comme un
+ * doublon et n'est pas comptée deux fois, quel que soit le nombre de mises à jour de l'alerte.
+ * Les morceaux de trajectoire sont fusionnés d'après le rang de leurs points : la longueur
+ * connue de la trajectoire ne dépend pas de l'ordre d'arrivée.
+ * </p>
+ * <p>
+ * L'alerte initiale ouvre un épisode ; les appuis répétés rattachés à l'alerte par la montre
+ * arrivent en mises à jour et n'en ouvrent pas de nouveau. Chaque épisode n'est donc compté
+ * qu'une fois, quels que soient les renvois et les appuis ({@link #getEpisodeCount()}).
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class AlertStore {
+
+    /**
+     * Etat d'une alerte, modifié sous son verrou.
+     */
+    public static final class Alert {
+        /**
+         * Mises à jour reçues : masque des 64 premiers numéros, ensemble des suivants (créé au
+         * besoin, épisodes de nombreux appuis).
+         */
+        private long mSeenUpdates;
+        private Set<Integer> mSeenLateUpdates;
+        private int mLastUpdateSeq = -1;
+        private int mUpdateCount;
+        private int mTrajectoryLength;
+
+        public synchronized int getLastUpdateSeq() {
+            return mLastUpdateSeq;
+        }
+
+        /**
+         * @return nombre de messages distincts reçus (alerte initiale comprise)
+         */
+        public synchronized int getUpdateCount() {
+            return mUpdateCount;
+        }
+
+        /**
+         * @return nombre de points de la trajectoire couverts par les morceaux reçus
+         */
+        public synchronized int getTrajectoryLength() {
+            return mTrajectoryLength;
+        }
+    }
+
+    private final ConcurrentMap<Long, Alert> mAlerts = new ConcurrentHashMap<Long, Alert>();
+    private final AtomicLong mEpisodes = new AtomicLong();
+    private final AtomicLong mMessages = new AtomicLong();
+    private final AtomicLong mDuplicates = new AtomicLong();
+    private final AtomicLong mTrajectoryPoints = new AtomicLong();
+
+    /**
+     * Enregistre un message.
+     *
+     * @param alertId         identifiant de l'alerte
+     * @param updateSeq       numéro de mise à jour (0 pour l'alerte initiale)
+     * @param trailStartIndex rang du premier point du morceau de trajectoire
+     * @param trailSize       nombre de points du morceau
+     * @return faux si le message avait déjà été reçu
+     */
+    public boolean merge(long alertId, int updateSeq, int trailStartIndex, int trailSize) {
+        Alert alert = mAlerts.get(alertId);
+        if (alert == null) {
+            Alert created = new Alert();
+            alert = mAlerts.putIfAbsent(alertId, created);
+            if (alert == null) {
+                alert = created;
+            }
+        }
+        synchronized (alert) {
+            if (!markSeen(alert, updateSeq)) {
+                mDuplicates.incrementAndGet();
+                return false;
+            }
+            alert.mUpdateCount++;
+            alert.mLastUpdateSeq = Math.max(alert.mLastUpdateSeq, updateSeq);
+            alert.mTrajectoryLength = Math.max(alert.mTrajectoryLength,
+                    trailStartIndex + trailSize);
+        }
+        if (updateSeq == 0) {
+            mEpisodes.incrementAndGet();
+        }
+        // les morceaux de trajectoire des messages distincts ne se recouvrent pas
+        mTrajectoryPoints.addAndGet(trailSize);
+        mMessages.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return faux si la mise à jour avait déjà été reçue
+     */
+    private static boolean markSeen(Alert alert, int updateSeq) {
+        if (updateSeq >= 0 && updateSeq < Long.SIZE) {
+            long bit = 1L << updateSeq;
+            if ((alert.mSeenUpdates & bit) != 0) {
+                return false;
+            }
+            alert.mSeenUpdates |= bit;
+            return true;
+        }
+        if (alert.mSeenLateUpdates == null) {
+            alert.mSeenLateUpdates = new HashSet<Integer>();
+        }
+        return alert.mSeenLateUpdates.add(updateSeq);
+    }
+
+    /**
+     * @param alertId identifiant de l'alerte
+     * @return état de l'alerte, null si elle n'a pas été reçue
+     */
+    public Alert get(long alertId) {
+        return mAlerts.get(alertId);
+    }
+
+    public int getAlertCount() {
+        return mAlerts.size();
+    }
+
+    /**
+     * @return nombre d'épisodes ouverts, c'est-à-dire d'alertes initiales distinctes reçues
+     */
+    public long getEpisodeCount() {
+        return mEpisodes.get();
+    }
+
+    /**
+     * @return nombre de messages distincts reçus
+     */
+    public long getMessageCount() {
+        return mMessages.get();
+    }
+
+    public long getDuplicateCount() {
+        return mDuplicates.get();
+    }
+
+    /**
+     * @return nombre de points de trajectoire reçus, toutes alertes confondues
+     */
+    public long getTrajectoryPointCount() {
+        return mTrajectoryPoints.get();
+    }
+
+    /**
+     * @return résumé lisible
+     */
+    public String summary() {
+        return "alerts=" + getAlertCount() + " episodes=" + getEpisodeCount() + " messages="
+                + getMessageCount() + " duplicates=" + getDuplicateCount() + " trajectoryPoints="
+                + getTrajectoryPointCount();
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Description : Centre de secours simulé par le serveur de substitution. Chaque nouvelle alerte
+ * est prise en charge aussitôt ({@link PushProtocol#STATE_ACKNOWLEDGED}), puis des secours sont
+ * envoyés après un délai réglable ({@link PushProtocol#STATE_DISPATCHED}), avec une arrivée
+ * estimée. Les événements sont numérotés dans l'ordre de leur création et conservés : un
+ * abonné qui se réabonne après une coupure reçoit ceux qu'il a manqués, dans l'ordre, avant les
+ * suivants.
+ * </p>
+ * <p>
+ * Les abonnés sont notifiés sous le verrou du tableau, ce qui garantit l'ordre des événements
+ * et qu'aucun ne soit perdu ou reçu deux fois pendant un réabonnement ; leur notification doit
+ * donc être brève.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class DispatchBoard {
+
+    /**
+     * Abonné aux événements de secours de quelques alertes.
+     */
+    public interface Subscriber {
+        void onDispatch(PushProtocol.Dispatch dispatch);
+    }
+
+    private static final int MIN_ETA_SECONDS = 5 * 60;
+    private static final int MAX_ETA_SECONDS = 15 * 60;
+
+    private final ScheduledExecutorService mScheduler =
+            Executors.newSingleThreadScheduledExecutor();
+    /**
+     * Délai entre la prise en charge et l'envoi des secours (ms).
+     */
+    private volatile long mDispatchDelayMs;
+
+    private final Map<Long, List<PushProtocol.Dispatch>> mEvents =
+            new HashMap<Long, List<PushProtocol.Dispatch>>();
+    private final Map<Long, Set<Subscriber>> mSubscribers = new HashMap<Long, Set<Subscriber>>();
+    private long mLastSeq;
+
+    /**
+     * @param dispatchDelayMs délai entre la prise en charge et l'envoi des secours
+     */
+    public DispatchBoard(long dispatchDelayMs) {
+        mDispatchDelayMs = dispatchDelayMs;
+    }
+
+    public void setDispatchDelayMs(long dispatchDelayMs) {
+        mDispatchDelayMs = dispatchDelayMs;
+    }
+
+    /**
+     * Prend en charge une nouvelle alerte.
+     *
+     * @param alertId identifiant de l'alerte
+     */
+    public void onAlert(final long alertId) {
+        publish(alertId, PushProtocol.STATE_ACKNOWLEDGED, -1,
+                "Alert received by the call centre");
+        mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                int eta = ThreadLocalRandom.current().nextInt(MIN_ETA_SECONDS, MAX_ETA_SECONDS);
+                publish(alertId, PushProtocol.STATE_DISPATCHED, eta, "Help is on the way");
+            }
+        }, mDispatchDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void publish(long alertId, byte state, int etaSeconds, String message) {
+        PushProtocol.Dispatch dispatch =
+                new PushProtocol.Dispatch(++mLastSeq, alertId, state, etaSeconds, message);
+        List<PushProtocol.Dispatch> events = mEvents.get(alertId);
+        if (events == null) {
+            events = new ArrayList<PushProtocol.Dispatch>(2);
+            mEvents.put(alertId, events);
+        }
+        events.add(dispatch);
+        Set<Subscriber> subscribers = mSubscribers.get(alertId);
+        if (subscribers != null) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.onDispatch(dispatch);
+            }
+        }
+    }
+
+    /**
+     * Abonne aux événements de quelques alertes, et renvoie aussitôt ceux postérieurs au
+     * dernier événement reçu.
+     *
+     * @param subscriber   abonné
+     * @param alertIds     alertes suivies
+     * @param lastEventSeq numéro du dernier événement reçu par l'abonné, 0 si aucun
+     */
+    public synchronized void subscribe(Subscriber subscriber, long[] alertIds,
+                                       long lastEventSeq) {
+        List<PushProtocol.Dispatch> missed = new ArrayList<PushProtocol.Dispatch>();
+        for (long alertId : alertIds) {
+            Set<Subscriber> subscribers = mSubscribers.get(alertId);
+            if (subscribers == null) {
+                subscribers = new HashSet<Subscriber>(2);
+                mSubscribers.put(alertId, subscribers);
+            }
+            if (!subscribers.add(subscriber)) {
+                continue;
+            }
+            List<PushProtocol.Dispatch> events = mEvents.get(alertId);
+            if (events != null) {
+                for (PushProtocol.Dispatch dispatch : events) {
+                    if (dispatch.seq > lastEventSeq) {
+                        missed.add(dispatch);
+                    }
+                }
+            }
+        }
+        // événements de plusieurs alertes : renvoyés dans l'ordre global
+        PushProtocol.Dispatch[] ordered = missed.toArray(new PushProtocol.Dispatch[0]);
+        Arrays.sort(ordered, new Comparator<PushProtocol.Dispatch>() {
+            @Override
+            public int compare(PushProtocol.Dispatch a, PushProtocol.Dispatch b) {
+                return a.seq < b.seq ? -1 : a.seq == b.seq ? 0 : 1;
+            }
+        });
+        for (PushProtocol.Dispatch dispatch : ordered) {
+            subscriber.onDispatch(dispatch);
+        }
+    }
+
+    /**
+     * Retire un abonné de toutes les alertes.
+     */
+    public synchronized void unsubscribe(Subscriber subscriber) {
+        for (Set<Subscriber> subscribers : mSubscribers.values()) {
+            subscribers.remove(subscriber);
+        }
+    }
+
+    /**
+     * @return nombre d'événements publiés
+     */
+    public synchronized long getEventCount() {
+        return mLastSeq;
+    }
+
+    public void stop() {
+        mScheduler.shutdownNow();
+    }
+}
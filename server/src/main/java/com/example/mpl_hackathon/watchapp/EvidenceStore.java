@@ -0,0 +1,135 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Description : Enregistrements joints aux alertes, reçus par morceaux par le serveur de
+ * substitution ({@link EvidenceUpload}). Un morceau n'est accepté que s'il suit ou recouvre les
+ * octets déjà reçus : un morceau renvoyé faute d'accusé de réception n'ajoute que ce qui
+ * manquait, et un morceau arrivé trop tôt est refusé avec la position d'où reprendre.
+ * L'enregistrement peut être lu à tout moment, avant même son dernier morceau.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class EvidenceStore {
+
+    /**
+     * Enregistrement d'une alerte, modifié sous son verrou.
+     */
+    public static final class Clip {
+        private final ByteArrayOutputStream mData = new ByteArrayOutputStream();
+        private boolean mComplete;
+
+        /**
+         * @param offset position du morceau dans l'enregistrement
+         * @param data   morceau
+         * @param last   vrai pour le dernier morceau
+         * @return faux si le morceau ne suit pas les octets déjà reçus
+         */
+        synchronized boolean append(long offset, byte[] data, boolean last) {
+            long size = mData.size();
+            if (offset > size) {
+                return false;
+            }
+            long overlap = size - offset;
+            if (overlap < data.length) {
+                mData.write(data, (int) overlap, (int) (data.length - overlap));
+            }
+            mComplete |= last && offset + data.length >= size;
+            return true;
+        }
+
+        public synchronized int size() {
+            return mData.size();
+        }
+
+        public synchronized boolean isComplete() {
+            return mComplete;
+        }
+
+        public synchronized byte[] toByteArray() {
+            return mData.toByteArray();
+        }
+    }
+
+    private final ConcurrentMap<Long, Clip> mClips = new ConcurrentHashMap<Long, Clip>();
+    private final AtomicLong mChunks = new AtomicLong();
+    private final AtomicLong mConflicts = new AtomicLong();
+
+    /**
+     * Ajoute un morceau à l'enregistrement d'une alerte.
+     *
+     * @param alertId identifiant de l'alerte
+     * @param offset  position du morceau
+     * @param data    morceau
+     * @param last    vrai pour le dernier morceau
+     * @return enregistrement de l'alerte
+     * @throws IllegalStateException si le morceau ne suit pas les octets déjà reçus
+     */
+    public Clip append(long alertId, long offset, byte[] data, boolean last) {
+        Clip clip = mClips.get(alertId);
+        if (clip == null) {
+            Clip created = new Clip();
+            clip = mClips.putIfAbsent(alertId, created);
+            if (clip == null) {
+                clip = created;
+            }
+        }
+        if (!clip.append(offset, data, last)) {
+            mConflicts.incrementAndGet();
+            throw new IllegalStateException("Evidence chunk at " + offset + " after "
+                    + clip.size() + " bytes");
+        }
+        mChunks.incrementAndGet();
+        return clip;
+    }
+
+    /**
+     * @return enregistrement de l'alerte, null si aucun morceau n'a été reçu
+     */
+    public Clip get(long alertId) {
+        return mClips.get(alertId);
+    }
+
+    public int getClipCount() {
+        return mClips.size();
+    }
+
+    public int getCompleteCount() {
+        int complete = 0;
+        for (Clip clip : mClips.values()) {
+            if (clip.isComplete()) {
+                complete++;
+            }
+        }
+        return complete;
+    }
+
+    public long getChunkCount() {
+        return mChunks.get();
+    }
+
+    /**
+     * @return nombre de morceaux refusés car arrivés trop tôt
+     */
+    public long getConflictCount() {
+        return mConflicts.get();
+    }
+
+    /**
+     * @return résumé lisible des enregistrements reçus
+     */
+    public String summary() {
+        long bytes = 0;
+        for (Clip clip : mClips.values()) {
+            bytes += clip.size();
+        }
+        return "clips=" + getClipCount() + " complete=" + getCompleteCount() + " chunks="
+                + getChunkCount() + " conflicts=" + getConflictCount() + " bytes=" + bytes;
+    }
+}
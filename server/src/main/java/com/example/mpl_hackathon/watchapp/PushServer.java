@@ -0,0 +1,267 @@
+package com.example.mpl_hackathon.watchapp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Description : Canal permanent du serveur de substitution ({@link PushProtocol}), sur son
+ * propre port : le serveur HTTP du JDK ne sait pas changer de protocole en cours de connexion.
+ * Les alertes reçues sont traitées comme celles du web service
+ * ({@link AlertIngestServer#ingest(String, byte[])}), pannes simulées comprises : une connexion
+ * « fermée sans réponse » est réellement fermée, comme une coupure du réseau. Une connexion
+ * suit automatiquement les secours des alertes qu'elle a apportées, et ceux des alertes
+ * auxquelles elle s'abonne ({@link DispatchBoard}).
+ * </p>
+ * <p>
+ * Une connexion restée inactive plus longtemps que le délai annoncé est fermée, comme le ferait
+ * un équipement réseau : c'est ce délai que les pings de la montre doivent respecter. Un thread
+ * par connexion, ce qui suffit pour les essais.
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class PushServer {
+
+    private static final int HANDSHAKE_TIMEOUT_MS = 10000;
+
+    private final ServerSocket mSocket;
+    private final AlertIngestServer mIngest;
+    private final long mIdleTimeoutMs;
+    private final ExecutorService mConnections = Executors.newCachedThreadPool();
+    private final AtomicLong mConnectionCount = new AtomicLong();
+    private final AtomicLong mAlerts = new AtomicLong();
+    private final AtomicLong mDispatched = new AtomicLong();
+    private final AtomicLong mPings = new AtomicLong();
+    private final AtomicLong mIdleClosed = new AtomicLong();
+
+    /**
+     * @param address       adresse d'écoute (port 0 pour un port libre)
+     * @param ingest        serveur des alertes, dont les pannes simulées s'appliquent
+     * @param idleTimeoutMs délai d'inactivité après lequel une connexion est fermée, 0 pour
+     *                      aucun
+     * @throws IOException si le port ne peut pas être ouvert
+     */
+    public PushServer(InetSocketAddress address, AlertIngestServer ingest, long idleTimeoutMs)
+            throws IOException {
+        mSocket = new ServerSocket();
+        mSocket.setReuseAddress(true);
+        mSocket.bind(address);
+        mIngest = ingest;
+        mIdleTimeoutMs = idleTimeoutMs;
+    }
+
+    public void start() {
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!mSocket.isClosed()) {
+                    try {
+                        mConnections.execute(new Connection(mSocket.accept()));
+                    } catch (IOException e) {
+                        // serveur arrêté
+                    }
+                }
+            }
+        }, "push-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Arrête le serveur et ferme les connexions.
+     */
+    public void stop() {
+        try {
+            mSocket.close();
+        } catch (IOException e) {
+            // déjà fermé
+        }
+        mConnections.shutdownNow();
+    }
+
+    public int getPort() {
+        return mSocket.getLocalPort();
+    }
+
+    /**
+     * @return adresse du canal, pour un client local
+     */
+    public String getUrl() {
+        return AlertEndpoint.pushUrl("localhost:" + getPort());
+    }
+
+    /**
+     * @return nombre de connexions négociées
+     */
+    public long getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    /**
+     * @return nombre de connexions fermées pour inactivité
+     */
+    public long getIdleClosedCount() {
+        return mIdleClosed.get();
+    }
+
+    /**
+     * @return résumé lisible de l'activité du canal
+     */
+    public String summary() {
+        return "connections=" + mConnectionCount.get() + " alerts=" + mAlerts.get()
+                + " dispatched=" + mDispatched.get() + " pings=" + mPings.get()
+                + " idleClosed=" + mIdleClosed.get();
+    }
+
+    /**
+     * Connexion d'une montre, lue par son propre thread. Les écritures (accusés, secours
+     * publiés par le {@link DispatchBoard}) sont faites sous le verrou de la connexion.
+     */
+    private final class Connection implements Runnable, DispatchBoard.Subscriber {
+
+        private final Socket mClient;
+        private OutputStream mOut;
+
+        Connection(Socket client) {
+            mClient = client;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mClient.setTcpNoDelay(true);
+                mClient.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+                InputStream in = new BufferedInputStream(mClient.getInputStream());
+                mOut = new BufferedOutputStream(mClient.getOutputStream());
+                if (!handshake(in)) {
+                    return;
+                }
+                mConnectionCount.incrementAndGet();
+                mClient.setSoTimeout((int) mIdleTimeoutMs);
+                PushProtocol.FrameReader reader = new PushProtocol.FrameReader();
+                while (true) {
+                    int opcode;
+                    try {
+                        opcode = reader.read(in);
+                    } catch (SocketTimeoutException e) {
+                        mIdleClosed.incrementAndGet();
+                        return;
+                    }
+                    if (opcode == PushProtocol.OPCODE_PING) {
+                        mPings.incrementAndGet();
+                        write(PushProtocol.OPCODE_PONG, reader.data(), reader.length());
+                    } else if (opcode == PushProtocol.OPCODE_BINARY) {
+                        if (!onMessage(reader.data(), reader.length())) {
+                            return;
+                        }
+                    } else if (opcode == PushProtocol.OPCODE_CLOSE || opcode < 0) {
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                // connexion coupée par la montre
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                mIngest.getDispatch().unsubscribe(this);
+                try {
+                    mClient.close();
+                } catch (IOException e) {
+                    // déjà fermée
+                }
+            }
+        }
+
+        private boolean handshake(InputStream in) throws IOException {
+            Map<String, String> request = new HashMap<String, String>(8);
+            String line = PushProtocol.readHead(in, request);
+            String key = request.get("sec-websocket-key");
+            if (!line.equals("GET " + AlertEndpoint.PUSH_PATH + " HTTP/1.1") || key == null
+                    || !"websocket".equalsIgnoreCase(request.get("upgrade"))) {
+                PushProtocol.writeHead(mOut, "HTTP/1.1 400 Bad Request",
+                        new HashMap<String, String>());
+                return false;
+            }
+            Map<String, String> headers = PushProtocol.upgradeHeaders();
+            headers.put("Sec-WebSocket-Accept", PushProtocol.acceptKey(key));
+            if (mIdleTimeoutMs > 0) {
+                headers.put(PushProtocol.IDLE_TIMEOUT_HEADER, Long.toString(mIdleTimeoutMs));
+            }
+            synchronized (this) {
+                PushProtocol.writeHead(mOut, "HTTP/1.1 101 Switching Protocols", headers);
+            }
+            return true;
+        }
+
+        /**
+         * @return faux si la connexion doit être fermée
+         */
+        private boolean onMessage(byte[] data, int length)
+                throws IOException, InterruptedException {
+            int type = PushProtocol.typeOf(data, length);
+            if (type == PushProtocol.TYPE_SUBSCRIBE) {
+                PushProtocol.Subscribe subscribe = PushProtocol.decodeSubscribe(data, length);
+                mIngest.getDispatch().subscribe(this, subscribe.alertIds,
+                        subscribe.lastEventSeq);
+                return true;
+            }
+            if (type != PushProtocol.TYPE_ALERT) {
+                throw new IOException("Unexpected push message " + type);
+            }
+            PushProtocol.Alert alert = PushProtocol.decodeAlert(data, length);
+            mAlerts.incrementAndGet();
+            int fault = mIngest.injectFault();
+            if (fault == AlertIngestServer.FAULT_DROP) {
+                // coupure : l'accusé est perdu, la montre renverra l'alerte
+                return false;
+            }
+            AlertIngestServer.Reply reply = fault == AlertIngestServer.FAULT_ERROR
+                    ? new AlertIngestServer.Reply(AlertIngestServer.HTTP_UNAVAILABLE, -1, null)
+                    : mIngest.ingest(alert.contentType, alert.payload);
+            write(PushProtocol.OPCODE_BINARY, PushProtocol.encodeAck(new PushProtocol.Ack(
+                    alert.requestId, reply.alertId, reply.code, mIngest.acceptedFormats(),
+                    reply.json == null ? "" : reply.json)));
+            if (reply.alertId >= 0) {
+                // la prise en charge a été publiée avant l'abonnement : renvoyée ici
+                mIngest.getDispatch().subscribe(this, new long[]{reply.alertId}, 0);
+            }
+            return true;
+        }
+
+        @Override
+        public void onDispatch(PushProtocol.Dispatch dispatch) {
+            try {
+                write(PushProtocol.OPCODE_BINARY, PushProtocol.encodeDispatch(dispatch));
+                mDispatched.incrementAndGet();
+            } catch (IOException e) {
+                // connexion coupée : l'événement sera renvoyé au réabonnement
+                try {
+                    mClient.close();
+                } catch (IOException ignored) {
+                    // déjà fermée
+                }
+            }
+        }
+
+        private void write(int opcode, byte[] data) throws IOException {
+            write(opcode, data, data.length);
+        }
+
+        private synchronized void write(int opcode, byte[] data, int length) throws IOException {
+            PushProtocol.writeFrame(mOut, opcode, data, length, 0);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package com.example.mpl_hackathon.watchapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AlertIngestServerTest {
+
+    static {
+        // avant la première connexion de la classe
+        AlertLoadGenerator.configureHttpClient();
+    }
+
+    private AlertIngestServer.Faults mFaults;
+    private AlertIngestServer mServer;
+    private URL mUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        mFaults = new AlertIngestServer.Faults();
+        mServer = new AlertIngestServer(new InetSocketAddress("localhost", 0), 4, mFaults, true);
+        mServer.start();
+        mUrl = new URL(AlertEndpoint.newAlertUrl("localhost:" + mServer.getPort()));
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    private static AlertPayload payload(long alertId, int updateSeq, int trailStart,
+                                        int trailSize) {
+        AlertPayload payload = new AlertPayload();
+        payload.setAlertId(alertId);
+        payload.setUpdateSeq(updateSeq);
+        payload.setProfile(UserProfile.PLACEHOLDER);
+        payload.setTimestampCurrent(1000);
+        payload.setLocation(43.6, 3.87, 1000, 8f, AlertPayload.SOURCE_FUSED);
+        payload.setDriveLink("");
+        payload.setTrailStartIndex(trailStart);
+        for (int i = 0; i < trailSize; i++) {
+            payload.addTrailPoint(1000 + i, 43.6 + i * 1e-4, 3.87, 8f);
+        }
+        return payload;
+    }
+
+    private int post(AlertEncoder encoder, AlertPayload payload) throws IOException {
+        int length = encoder.encode(payload);
+        HttpURLConnection connection = (HttpURLConnection) mUrl.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setReadTimeout(5000);
+        connection.setRequestProperty("Content-Type", encoder.contentType());
+        OutputStream out = connection.getOutputStream();
+        out.write(encoder.buffer(), 0, length);
+        out.close();
+        int code = connection.getResponseCode();
+        InputStream in = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (in != null) {
+            while (in.read() != -1) {
+                // réponse ignorée
+            }
+            in.close();
+        }
+        assertNotNull(connection.getHeaderField(BinaryAlertEncoder.ACCEPT_HEADER));
+        return code;
+    }
+
+    @Test
+    public void binaryAndJsonUpdates_areMergedPerAlert() throws IOException {
+        assertEquals(200, post(new BinaryAlertEncoder(), payload(0xabcL, 0, 0, 4)));
+        assertEquals(200, post(new JsonAlertEncoder(), payload(0xabcL, 1, 4, 3)));
+        assertEquals(200, post(new BinaryAlertEncoder(), payload(0xdefL, 0, 0, 2)));
+
+        AlertStore store = mServer.getStore();
+        assertEquals(2, store.getAlertCount());
+        AlertStore.Alert alert = store.get(0xabcL);
+        assertEquals(2, alert.getUpdateCount());
+        assertEquals(1, alert.getLastUpdateSeq());
+        assertEquals(7, alert.getTrajectoryLength());
+        assertEquals(9, store.getTrajectoryPointCount());
+    }
+
+    @Test
+    public void resentUpdate_isCountedOnce() throws IOException {
+        AlertPayload update = payload(42L, 1, 0, 5);
+        assertEquals(200, post(new BinaryAlertEncoder(), update));
+        assertEquals(200, post(new BinaryAlertEncoder(), update));
+        assertEquals(1, mServer.getStore().getMessageCount());
+        assertEquals(1, mServer.getStore().getDuplicateCount());
+        assertEquals(5, mServer.getStore().getTrajectoryPointCount());
+    }
+
+    @Test
+    public void store_recognizesDuplicatesBeyondSixtyFourUpdates() {
+        AlertStore store = new AlertStore();
+        for (int seq = 0; seq < 200; seq++) {
+            assertTrue(store.merge(7L, seq, seq, 1));
+        }
+        assertFalse(store.merge(7L, 3, 3, 1));
+        assertFalse(store.merge(7L, 100, 100, 1));
+        assertEquals(200, store.get(7L).getUpdateCount());
+        assertEquals(2, store.getDuplicateCount());
+        assertEquals(1, store.getEpisodeCount());
+    }
+
+    @Test
+    public void jsonOnlyServer_rejectsBinaryWith415() throws IOException {
+        mServer.stop();
+        mServer = new AlertIngestServer(new InetSocketAddress("localhost", 0), 1, mFaults, false);
+        mServer.start();
+        mUrl = new URL(AlertEndpoint.newAlertUrl("localhost:" + mServer.getPort()));
+        assertEquals(415, post(new BinaryAlertEncoder(), payload(1L, 0, 0, 0)));
+        assertEquals(200, post(new JsonAlertEncoder(), payload(1L, 0, 0, 0)));
+    }
+
+    @Test
+    public void faults_surfaceAsErrorsOrClosedConnections() throws IOException {
+        mFaults.errorRate = 1;
+        assertEquals(503, post(new BinaryAlertEncoder(), payload(1L, 0, 0, 0)));
+        mFaults.errorRate = 0;
+        mFaults.dropRate = 1;
+        try {
+            post(new BinaryAlertEncoder(), payload(1L, 0, 0, 0));
+            fail("connection should have been closed without a response");
+        } catch (IOException expected) {
+            // fin de flux inattendue, comme une coupure réseau
+        }
+        assertEquals(0, mServer.getStore().getMessageCount());
+    }
+
+    @Test
+    public void loadGenerator_deliversEveryAlertDespiteDrops() throws Exception {
+        mFaults.dropRate = 0.2;
+        AlertLoadGenerator.Options options = new AlertLoadGenerator.Options();
+        options.url = mUrl.toString();
+        options.watches = 20;
+        options.concurrency = 4;
+        options.updates = 2;
+        options.retryInitialDelayMs = 1;
+        options.retryMaxDelayMs = 4;
+        options.maxAttempts = 50;
+        AlertLoadGenerator generator = new AlertLoadGenerator(options);
+        generator.run();
+        assertEquals(60, generator.getDeliveredCount());
+        assertEquals(0, generator.getAbandonedCount());
+        assertTrue(generator.getRetryCount() > 0);
+        assertEquals(20, mServer.getStore().getAlertCount());
+        assertEquals(60, mServer.getStore().getMessageCount());
+    }
+
+    @Test
+    public void repeatedTaps_openOneEpisodePerAlert() throws Exception {
+        mFaults.dropRate = 0.2;
+        AlertLoadGenerator.Options options = new AlertLoadGenerator.Options();
+        options.url = mUrl.toString();
+        options.watches = 20;
+        options.concurrency = 4;
+        options.updates = 1;
+        options.taps = 3;
+        options.retryInitialDelayMs = 1;
+        options.retryMaxDelayMs = 4;
+        options.maxAttempts = 50;
+        AlertLoadGenerator generator = new AlertLoadGenerator(options);
+        generator.run();
+        assertEquals(100, generator.getDeliveredCount());
+        AlertStore store = mServer.getStore();
+        // renvois et appuis répétés compris, un seul épisode par montre
+        assertEquals(20, store.getEpisodeCount());
+        assertEquals(20, store.getAlertCount());
+        assertEquals(100, store.getMessageCount());
+    }
+
+    private HttpURLConnection evidence(String method, long alertId) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(AlertEndpoint.evidenceUrl(
+                mUrl.toString(), alertId)).openConnection();
+        connection.setRequestMethod(method);
+        connection.setReadTimeout(5000);
+        return connection;
+    }
+
+    /**
+     * @return octets reçus par le serveur, après vérification du code HTTP
+     */
+    private long putChunk(long alertId, long offset, int length, boolean last, int expectedCode)
+            throws IOException {
+        HttpURLConnection connection = evidence("PUT", alertId);
+        connection.setDoOutput(true);
+        connection.setRequestProperty(EvidenceUpload.OFFSET_HEADER, Long.toString(offset));
+        if (last) {
+            connection.setRequestProperty(EvidenceUpload.COMPLETE_HEADER, "true");
+        }
+        OutputStream out = connection.getOutputStream();
+        for (int i = 0; i < length; i++) {
+            out.write((int) (offset + i));
+        }
+        out.close();
+        assertEquals(expectedCode, connection.getResponseCode());
+        return Long.parseLong(connection.getHeaderField(EvidenceUpload.OFFSET_HEADER));
+    }
+
+    @Test
+    public void evidenceChunks_resumeFromReceivedOffsetAndAreReadableDuringUpload()
+            throws IOException {
+        assertEquals(10, putChunk(0x42, 0, 10, false, 200));
+        // morceau arrivé trop tôt : refusé avec la position d'où reprendre
+        assertEquals(10, putChunk(0x42, 20, 10, false, EvidenceUpload.HTTP_CONFLICT));
+
+        HttpURLConnection get = evidence("GET", 0x42);
+        assertEquals(200, get.getResponseCode());
+        assertEquals("false", get.getHeaderField(EvidenceUpload.COMPLETE_HEADER));
+        InputStream in = get.getInputStream();
+        int read = 0;
+        while (in.read() != -1) {
+            read++;
+        }
+        in.close();
+        assertEquals(10, read);
+
+        // morceau renvoyé qui recouvre les octets reçus : seule la suite est ajoutée
+        assertEquals(15, putChunk(0x42, 5, 10, true, 200));
+        EvidenceStore.Clip clip = mServer.getEvidence().get(0x42);
+        assertTrue(clip.isComplete());
+        byte[] data = clip.toByteArray();
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(i, data[i]);
+        }
+        assertEquals(404, evidence("GET", 0x43).getResponseCode());
+    }
+
+    @Test
+    public void loadGenerator_streamsEvidenceWithBoundedMemory() throws Exception {
+        mFaults.dropRate = 0.2;
+        AlertLoadGenerator.Options options = new AlertLoadGenerator.Options();
+        options.url = mUrl.toString();
+        options.watches = 8;
+        options.concurrency = 8;
+        options.updates = 0;
+        options.evidenceSeconds = 2;
+        options.retryInitialDelayMs = 1;
+        options.retryMaxDelayMs = 4;
+        options.maxAttempts = 50;
+        AlertLoadGenerator generator = new AlertLoadGenerator(options);
+        generator.run();
+        assertEquals(8, generator.getEvidenceCompleteCount());
+        EvidenceStore evidence = mServer.getEvidence();
+        assertEquals(8, evidence.getCompleteCount());
+        int chunkBytes = AdpcmCodec.blockBytes(AdpcmCodec.SAMPLE_RATE / 2);
+        // un morceau toutes les 500 ms : le premier ne peut être acquitté avant
+        assertTrue(generator.getEvidenceFirstChunkMs(0.5) >= 500);
+        assertTrue(generator.getEvidencePeakBytes() <= options.evidenceBufferChunks * chunkBytes);
+        assertTrue(generator.getEvidencePeakBytes() > 0);
+        assertEquals(8, mServer.getStore().getAlertCount());
+    }
+
+    @Test
+    public void hedgedRequests_cutTailLatencyAndAreDeduplicated() throws Exception {
+        // deux points d'accès du même service : une requête sur dix attend 1 s
+        mFaults.slowRate = 0.1;
+        mFaults.slowDelayMs = 1000;
+        AlertIngestServer second = new AlertIngestServer(new InetSocketAddress("localhost", 0),
+                4, mFaults, true, mServer.getStore());
+        second.start();
+        try {
+            AlertLoadGenerator.Options options = new AlertLoadGenerator.Options();
+            options.url = mUrl + "," + AlertEndpoint.newAlertUrl("localhost:" + second.getPort());
+            options.watches = 40;
+            options.concurrency = 4;
+            options.updates = 1;
+            options.hedge = true;
+            options.maxHedgeDelayMs = 100;
+            AlertLoadGenerator generator = new AlertLoadGenerator(options);
+            generator.run();
+            assertEquals(80, generator.getDeliveredCount());
+            assertTrue(generator.getHedgedRequestCount() > 0);
+            assertTrue(generator.getHedgeWinCount() > 0);
+            // chaque message n'est enregistré qu'une fois, même reçu par les deux serveurs
+            assertEquals(80, mServer.getStore().getMessageCount());
+            assertEquals(40, mServer.getStore().getAlertCount());
+        } finally {
+            second.stop();
+        }
+    }
+
+    private static PushProtocol.Dispatch receiveDispatch(PushConnection connection)
+            throws IOException {
+        assertEquals(PushProtocol.OPCODE_BINARY, connection.receive());
+        return PushProtocol.decodeDispatch(connection.data(), connection.length());
+    }
+
+    @Test
+    public void pushChannel_acknowledgesAlertAndReplaysMissedDispatchAfterDrop()
+            throws Exception {
+        mServer.getDispatch().setDispatchDelayMs(300);
+        PushServer push = new PushServer(new InetSocketAddress("localhost", 0), mServer, 0);
+        push.start();
+        try {
+            PushConnection connection = PushConnection.open(push.getUrl(), 5000);
+            connection.setReadTimeout(5000);
+            BinaryAlertEncoder encoder = new BinaryAlertEncoder();
+            int length = encoder.encode(payload(0xabcL, 0, 0, 2));
+            connection.send(PushProtocol.encodeAlert(new PushProtocol.Alert(1,
+                    encoder.contentType(), Arrays.copyOf(encoder.buffer(), length))));
+            assertEquals(PushProtocol.OPCODE_BINARY, connection.receive());
+            PushProtocol.Ack ack = PushProtocol.decodeAck(connection.data(),
+                    connection.length());
+            assertEquals(1, ack.requestId);
+            assertEquals(200, ack.httpStatus);
+            assertEquals(0xabcL, ack.alertId);
+            PushProtocol.Dispatch acknowledged = receiveDispatch(connection);
+            assertEquals(PushProtocol.STATE_ACKNOWLEDGED, acknowledged.state);
+            // coupure avant l'envoi des secours
+            connection.close();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (mServer.getDispatch().getEventCount() < 2
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            connection = PushConnection.open(push.getUrl(), 5000);
+            connection.setReadTimeout(5000);
+            connection.send(PushProtocol.encodeSubscribe(new PushProtocol.Subscribe(
+                    acknowledged.seq, new long[]{0xabcL})));
+            PushProtocol.Dispatch dispatched = receiveDispatch(connection);
+            assertEquals(PushProtocol.STATE_DISPATCHED, dispatched.state);
+            assertEquals(0xabcL, dispatched.alertId);
+            assertTrue(dispatched.seq > acknowledged.seq);
+            assertTrue(dispatched.etaSeconds > 0);
+            connection.close();
+            assertEquals(2, push.getConnectionCount());
+            assertEquals(1, mServer.getStore().getAlertCount());
+        } finally {
+            push.stop();
+        }
+    }
+
+    @Test
+    public void pushChannel_closesIdleConnectionsButNotPingedOnes() throws Exception {
+        PushServer push = new PushServer(new InetSocketAddress("localhost", 0), mServer, 300);
+        push.start();
+        try {
+            PushConnection connection = PushConnection.open(push.getUrl(), 5000);
+            assertEquals(300, connection.getIdleTimeoutMs());
+            connection.setReadTimeout(5000);
+            for (int i = 0; i < 6; i++) {
+                Thread.sleep(100);
+                connection.ping();
+                assertEquals(PushProtocol.OPCODE_PONG, connection.receive());
+            }
+            // sans ping, la connexion est fermée par le serveur
+            assertEquals(-1, connection.receive());
+            connection.close();
+            assertEquals(1, push.getIdleClosedCount());
+        } finally {
+            push.stop();
+        }
+    }
+
+    @Test
+    public void loadGenerator_pushesAlertsAndAwaitsDispatchDespiteDrops() throws Exception {
+        mFaults.dropRate = 0.2;
+        mServer.getDispatch().setDispatchDelayMs(50);
+        PushServer push = new PushServer(new InetSocketAddress("localhost", 0), mServer, 0);
+        push.start();
+        try {
+            AlertLoadGenerator.Options options = new AlertLoadGenerator.Options();
+            options.url = mUrl.toString();
+            options.pushUrl = push.getUrl();
+            options.awaitDispatch = true;
+            options.watches = 10;
+            options.concurrency = 4;
+            options.updates = 2;
+            options.retryInitialDelayMs = 1;
+            options.retryMaxDelayMs = 4;
+            options.maxAttempts = 50;
+            AlertLoadGenerator generator = new AlertLoadGenerator(options);
+            generator.run();
+            assertEquals(30, generator.getDeliveredCount());
+            assertEquals(10, generator.getDispatchedCount());
+            // une connexion par montre, rouverte après chaque coupure
+            assertTrue(generator.getPushConnectionCount() > 10);
+            assertEquals(generator.getPushConnectionCount(), push.getConnectionCount());
+            assertEquals(30, mServer.getStore().getMessageCount());
+        } finally {
+            push.stop();
+        }
+    }
+}
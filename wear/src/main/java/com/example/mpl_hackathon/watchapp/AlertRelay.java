@@ -0,0 +1,332 @@
+package com.example.mpl_hackathon.watchapp;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Description : Relais des alertes par le téléphone appairé. Les alertes sont transmises au
+ * téléphone via la MessageApi ; celui-ci les envoie au web serveur et renvoie un accusé de
+ * réception contenant le statut HTTP et ses propres temps de traitement. Le temps d'aller-retour
+ * du lien montre-téléphone est mesuré régulièrement (ping) pour alimenter le
+ * {@link DeliveryRouteSelector}. Il répond aussi aux demandes de mesures du téléphone
+ * ({@link AlertMetrics}) et reçoit le profil du porteur publié par le téléphone via la DataApi
+ * ({@link ProfileStore}).
+ * </p>
+ *
+ * @version 1.0
+ */
+public class AlertRelay implements GoogleApiClient.ConnectionCallbacks,
+        GoogleApiClient.OnConnectionFailedListener, MessageApi.MessageListener,
+        DataApi.DataListener {
+
+    /**
+     * Tag pour les logs.
+     */
+    private static final String TAG = AlertRelay.class.getSimpleName();
+    /**
+     * Délai au-delà duquel une alerte relayée sans accusé de réception est considérée en échec.
+     */
+    private static final long RELAY_TIMEOUT_MS = 15000;
+    /**
+     * Intervalle entre deux mesures du lien montre-téléphone.
+     */
+    private static final long PING_INTERVAL_MS = 5 * 60 * 1000;
+
+    /**
+     * Résultat de l'envoi d'une alerte relayée.
+     */
+    public interface Callback {
+        /**
+         * @param ack   accusé de réception du téléphone
+         * @param rttMs durée totale entre l'envoi au téléphone et la réception de l'accusé
+         */
+        void onRelayed(RelayProtocol.Ack ack, long rttMs);
+
+        /**
+         * Le téléphone n'a pas pu être joint ou n'a pas répondu à temps.
+         */
+        void onRelayFailed();
+    }
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final DeliveryRouteSelector mRouteSelector;
+    private final ProfileStore mProfileStore;
+    /**
+     * Handler du thread sur lequel les résultats et les accusés de réception sont traités.
+     */
+    private final Handler mHandler;
+    /**
+     * Identifiant du téléphone connecté, null si aucun.
+     */
+    private volatile String mNodeId;
+    /**
+     * Alertes en attente d'accusé de réception, par identifiant.
+     */
+    private final Map<Long, Pending> mPending = new HashMap<>();
+    private long mPingNonce;
+    private long mPingSentAt;
+
+    private final Runnable mPingRunnable = new Runnable() {
+        @Override
+        public void run() {
+            ping();
+            mHandler.postDelayed(this, PING_INTERVAL_MS);
+        }
+    };
+
+    private static final class Pending {
+        final long sentAt;
+        final Callback callback;
+        final Runnable timeout;
+
+        Pending(long sentAt, Callback callback, Runnable timeout) {
+            this.sentAt = sentAt;
+            this.callback = callback;
+            this.timeout = timeout;
+        }
+    }
+
+    /**
+     * @param context       contexte de l'application
+     * @param routeSelector sélecteur alimenté par les mesures du lien montre-téléphone
+     * @param looper        looper du thread qui reçoit les résultats des envois
+     */
+    public AlertRelay(Context context, DeliveryRouteSelector routeSelector, Looper looper) {
+        mRouteSelector = routeSelector;
+        mProfileStore = ProfileStore.getInstance(context);
+        mHandler = new Handler(looper);
+        mGoogleApiClient = new GoogleApiClient.Builder(context.getApplicationContext())
+                .addApi(Wearable.API)
+                .setHandler(mHandler)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .build();
+        mGoogleApiClient.connect();
+    }
+
+    /**
+     * @return vrai si un téléphone est connecté et peut relayer les alertes
+     */
+    public boolean isAvailable() {
+        return mGoogleApiClient.isConnected() && mNodeId != null;
+    }
+
+    /**
+     * Transmet une alerte au téléphone.
+     *
+     * @param alert    alerte à relayer
+     * @param callback résultat de l'envoi (appelé sur le thread du looper du relais)
+     */
+    public void send(final RelayProtocol.Alert alert, final Callback callback) {
+        String nodeId = mNodeId;
+        if (nodeId == null || !mGoogleApiClient.isConnected()) {
+            callback.onRelayFailed();
+            return;
+        }
+        Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+                if (mPending.remove(alert.id) != null) {
+                    Log.i(TAG, "Relay timeout for alert " + alert.id);
+                    callback.onRelayFailed();
+                }
+            }
+        };
+        mPending.put(alert.id, new Pending(SystemClock.elapsedRealtime(), callback, timeout));
+        mHandler.postDelayed(timeout, RELAY_TIMEOUT_MS);
+        Wearable.MessageApi.sendMessage(mGoogleApiClient, nodeId, RelayProtocol.PATH_ALERT,
+                RelayProtocol.encodeAlert(alert)).setResultCallback(
+                new ResultCallback<MessageApi.SendMessageResult>() {
+                    @Override
+                    public void onResult(MessageApi.SendMessageResult result) {
+                        if (!result.getStatus().isSuccess()) {
+                            Log.i(TAG, "Unable to send alert to phone : " + result.getStatus());
+                            refreshNode();
+                            Pending pending = mPending.remove(alert.id);
+                            if (pending != null) {
+                                mHandler.removeCallbacks(pending.timeout);
+                                callback.onRelayFailed();
+                            }
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Mesure le temps d'aller-retour du lien montre-téléphone.
+     */
+    private void ping() {
+        String nodeId = mNodeId;
+        if (!mGoogleApiClient.isConnected()) {
+            return;
+        }
+        if (nodeId == null) {
+            refreshNode();
+            return;
+        }
+        mPingNonce++;
+        mPingSentAt = SystemClock.elapsedRealtime();
+        Wearable.MessageApi.sendMessage(mGoogleApiClient, nodeId, RelayProtocol.PATH_PING,
+                RelayProtocol.encodePing(mPingNonce));
+    }
+
+    /**
+     * Recherche le téléphone connecté.
+     */
+    private void refreshNode() {
+        Wearable.NodeApi.getConnectedNodes(mGoogleApiClient).setResultCallback(
+                new ResultCallback<NodeApi.GetConnectedNodesResult>() {
+                    @Override
+                    public void onResult(NodeApi.GetConnectedNodesResult result) {
+                        String nodeId = null;
+                        for (Node node : result.getNodes()) {
+                            if (node.isNearby()) {
+                                nodeId = node.getId();
+                                break;
+                            }
+                        }
+                        mNodeId = nodeId;
+                        Log.i(TAG, "Relay node : " + nodeId);
+                        // sans téléphone, le ping suivant relancera la recherche
+                        mHandler.removeCallbacks(mPingRunnable);
+                        mHandler.postDelayed(mPingRunnable, nodeId != null ? 0
+                                : PING_INTERVAL_MS);
+                    }
+                });
+    }
+
+    @Override
+    public void onMessageReceived(MessageEvent messageEvent) {
+        final String path = messageEvent.getPath();
+        final byte[] data = messageEvent.getData();
+        if (RelayProtocol.PATH_METRICS_PULL.equals(path)) {
+            // photographie prise sur le thread de la MessageApi
+            Wearable.MessageApi.sendMessage(mGoogleApiClient, messageEvent.getSourceNodeId(),
+                    RelayProtocol.PATH_METRICS,
+                    AlertMetrics.get().snapshot(System.currentTimeMillis()).encode());
+            return;
+        }
+        // les messages sont reçus sur un thread de la MessageApi
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (RelayProtocol.PATH_ACK.equals(path)) {
+                        onAck(RelayProtocol.decodeAck(data));
+                    } else if (RelayProtocol.PATH_PONG.equals(path)
+                            && RelayProtocol.decodePing(data) == mPingNonce) {
+                        long rtt = SystemClock.elapsedRealtime() - mPingSentAt;
+                        mRouteSelector.recordLinkRtt(rtt, SystemClock.elapsedRealtime());
+                        Log.i(TAG, "Relay link rtt : " + rtt + " ms");
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Invalid relay message on " + path, e);
+                }
+            }
+        });
+    }
+
+    private void onAck(RelayProtocol.Ack ack) {
+        Pending pending = mPending.remove(ack.id);
+        if (pending == null) {
+            return;
+        }
+        mHandler.removeCallbacks(pending.timeout);
+        long rtt = SystemClock.elapsedRealtime() - pending.sentAt;
+        // temps par étape : lien montre-téléphone (aller + retour), attente et envoi sur le
+        // téléphone
+        Log.i(TAG, "Relayed alert " + ack.id + " status=" + ack.httpStatus + " total=" + rtt
+                + "ms link=" + (rtt - ack.phoneQueueMs - ack.phoneForwardMs) + "ms phoneQueue="
+                + ack.phoneQueueMs + "ms phoneForward=" + ack.phoneForwardMs + "ms");
+        pending.callback.onRelayed(ack, rtt);
+    }
+
+    @Override
+    public void onDataChanged(DataEventBuffer dataEvents) {
+        for (DataEvent event : dataEvents) {
+            if (event.getType() == DataEvent.TYPE_CHANGED) {
+                onDataItem(event.getDataItem());
+            }
+        }
+    }
+
+    /**
+     * Prend en compte un élément de la DataApi : seul le profil du porteur est attendu.
+     */
+    private void onDataItem(DataItem item) {
+        if (!RelayProtocol.PATH_PROFILE.equals(item.getUri().getPath())) {
+            return;
+        }
+        try {
+            mProfileStore.update(RelayProtocol.decodeProfile(item.getData()));
+        } catch (IOException e) {
+            Log.e(TAG, "Invalid profile", e);
+        }
+    }
+
+    /**
+     * Lit le profil publié par le téléphone pendant que la montre était déconnectée.
+     */
+    private void refreshProfile() {
+        Uri uri = new Uri.Builder().scheme(PutDataRequest.WEAR_URI_SCHEME)
+                .path(RelayProtocol.PATH_PROFILE).build();
+        Wearable.DataApi.getDataItems(mGoogleApiClient, uri).setResultCallback(
+                new ResultCallback<DataItemBuffer>() {
+                    @Override
+                    public void onResult(DataItemBuffer items) {
+                        try {
+                            for (DataItem item : items) {
+                                onDataItem(item);
+                            }
+                        } finally {
+                            items.release();
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public void onConnected(Bundle bundle) {
+        Wearable.MessageApi.addListener(mGoogleApiClient, this);
+        Wearable.DataApi.addListener(mGoogleApiClient, this);
+        refreshNode();
+        refreshProfile();
+    }
+
+    @Override
+    public void onConnectionSuspended(int i) {
+        mNodeId = null;
+        mHandler.removeCallbacks(mPingRunnable);
+    }
+
+    @Override
+    public void onConnectionFailed(ConnectionResult result) {
+        Log.i(TAG, "Wearable connection failed : " + result.getErrorCode());
+        mNodeId = null;
+    }
+}
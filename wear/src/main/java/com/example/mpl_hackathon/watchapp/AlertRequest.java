@@ -0,0 +1,100 @@
+package com.example.mpl_hackathon.watchapp;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * <p>
+ * Description : Requête POST envoyant au web serveur une alerte déjà sérialisée (issue de la
+ * boîte d'envoi). La réponse du serveur est interprétée comme un objet JSON.
+ * </p>
+ *
+ * @version 1.0
+ */
+public class AlertRequest extends Request<JSONObject> {
+
+    private final byte[] mBody;
+    private final String mContentType;
+    private final Response.Listener<JSONObject> mListener;
+    /**
+     * Formats d'alerte annoncés par le serveur dans sa réponse (en-tête
+     * {@link BinaryAlertEncoder#ACCEPT_HEADER}).
+     */
+    private volatile String mAcceptedFormats;
+
+    /**
+     * @param url           adresse du web service
+     * @param body          corps de la requête
+     * @param contentType   type de contenu du corps
+     * @param listener      écouteur appelé à la réception de la réponse
+     * @param errorListener écouteur appelé en cas d'erreur
+     */
+    public AlertRequest(String url, byte[] body, String contentType,
+                        Response.Listener<JSONObject> listener,
+                        Response.ErrorListener errorListener) {
+        super(Method.POST, url, errorListener);
+        mBody = body;
+        mContentType = contentType;
+        mListener = listener;
+        setShouldCache(false);
+    }
+
+    @Override
+    public Priority getPriority() {
+        return Priority.IMMEDIATE;
+    }
+
+    @Override
+    public String getBodyContentType() {
+        return mContentType;
+    }
+
+    @Override
+    public byte[] getBody() {
+        return mBody;
+    }
+
+    @Override
+    protected Response<JSONObject> parseNetworkResponse(NetworkResponse response) {
+        if (response.headers != null) {
+            mAcceptedFormats = response.headers.get(BinaryAlertEncoder.ACCEPT_HEADER);
+        }
+        try {
+            // le serveur a accepté l'alerte : une réponse vide reste un accusé de réception
+            if (response.data == null || response.data.length == 0) {
+                return Response.success(new JSONObject(),
+                        HttpHeaderParser.parseCacheHeaders(response));
+            }
+            String json = new String(response.data,
+                    HttpHeaderParser.parseCharset(response.headers, "utf-8"));
+            return Response.success(new JSONObject(json),
+                    HttpHeaderParser.parseCacheHeaders(response));
+        } catch (UnsupportedEncodingException e) {
+            return Response.error(new ParseError(e));
+        } catch (JSONException e) {
+            // le code HTTP indique que l'alerte a été reçue, seul le corps est illisible
+            return Response.success(new JSONObject(),
+                    HttpHeaderParser.parseCacheHeaders(response));
+        }
+    }
+
+    /**
+     * @return formats d'alerte annoncés par le serveur, null s'il n'en annonce aucun
+     */
+    public String getAcceptedFormats() {
+        return mAcceptedFormats;
+    }
+
+    @Override
+    protected void deliverResponse(JSONObject response) {
+        mListener.onResponse(response);
+    }
+}
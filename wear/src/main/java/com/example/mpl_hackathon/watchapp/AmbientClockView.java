@@ -0,0 +1,109 @@
+package com.example.mpl_hackathon.watchapp;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+import java.util.TimeZone;
+
+/**
+ * <p>
+ * Description : Heure affichée en mode ambiant. Le rafraîchissement ne fait aucune allocation :
+ * le texte est calculé par l'{@link AmbientClock} dans un tableau réutilisé et dessiné
+ * directement, sans passer par une {@link android.widget.TextView}. La vue a une taille fixe,
+ * celle du texte le plus large : un changement d'heure n'invalide que sa propre zone, sans
+ * nouvelle mise en page, et un rafraîchissement sans changement de minute ne redessine rien.
+ * </p>
+ *
+ * @version 1.0
+ */
+public class AmbientClockView extends View {
+
+    /**
+     * Taille du texte (sp).
+     */
+    private static final float TEXT_SIZE_SP = 16;
+
+    private final AmbientClock mClock = new AmbientClock();
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+    private TimeZone mTimeZone = TimeZone.getDefault();
+    /**
+     * Mesure du rafraîchissement en cours, terminée après le dessin ; null si aucune.
+     */
+    private AmbientUpdateMeter mMeter;
+
+    public AmbientClockView(Context context) {
+        this(context, null);
+    }
+
+    public AmbientClockView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mPaint.setColor(Color.WHITE);
+        mPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SP,
+                getResources().getDisplayMetrics()));
+        mPaint.getFontMetrics(mFontMetrics);
+    }
+
+    /**
+     * Adapte le dessin à un écran ambiant à faible nombre de couleurs (pas d'anticrénelage).
+     *
+     * @param lowBit vrai si l'écran ambiant n'affiche que quelques couleurs
+     */
+    public void setLowBitAmbient(boolean lowBit) {
+        mPaint.setAntiAlias(!lowBit);
+    }
+
+    /**
+     * Relit le fuseau horaire, qui peut avoir changé hors du mode ambiant (alloue).
+     */
+    public void refreshTimeZone() {
+        mTimeZone = TimeZone.getDefault();
+    }
+
+    /**
+     * Met à jour l'heure affichée ; seule la zone de la vue est redessinée, et seulement si la
+     * minute a changé.
+     *
+     * @param nowMs date courante (ms depuis epoch)
+     * @param meter mesure du rafraîchissement, terminée après le dessin ou aussitôt si rien
+     *              n'est à redessiner ; null si le rafraîchissement n'est pas mesuré
+     * @return vrai si l'heure doit être redessinée
+     */
+    public boolean setTime(long nowMs, AmbientUpdateMeter meter) {
+        boolean changed = mClock.update(nowMs, mTimeZone.getOffset(nowMs));
+        if (changed && getVisibility() == VISIBLE) {
+            mMeter = meter;
+            invalidate();
+            return true;
+        }
+        if (meter != null) {
+            meter.finish(false);
+        }
+        return false;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = (int) Math.ceil(mPaint.measureText(AmbientClock.WIDEST_TEXT))
+                + getPaddingLeft() + getPaddingRight();
+        int height = (int) Math.ceil(mFontMetrics.descent - mFontMetrics.ascent)
+                + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec),
+                resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        canvas.drawText(mClock.text(), 0, mClock.length(), getPaddingLeft(),
+                getPaddingTop() - mFontMetrics.ascent, mPaint);
+        if (mMeter != null) {
+            mMeter.finish(true);
+            mMeter = null;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.mpl_hackathon.watchapp;
+
+import android.os.Debug;
+
+/**
+ * <p>
+ * Description : Mesure du coût d'un rafraîchissement du mode ambiant, du rappel
+ * {@code onUpdateAmbient()} à la fin du dessin : temps processeur du thread principal et, dans
+ * les compilations de débogage, nombre d'objets alloués. Les mesures alimentent
+ * {@link AlertMetrics} ({@link MetricsSnapshot#HISTOGRAM_AMBIENT_UPDATE_CPU_US},
+ * {@link MetricsSnapshot#HISTOGRAM_AMBIENT_UPDATE_ALLOCATIONS}). Toutes les méthodes doivent
+ * être appelées depuis le thread principal.
+ * </p>
+ * <p>
+ * Le comptage des allocations ralentit toute l'application : il n'est actif qu'en mode ambiant
+ * et dans les compilations de débogage.
+ * </p>
+ *
+ * @version 1.0
+ */
+public class AmbientUpdateMeter {
+
+    private static final boolean COUNT_ALLOCATIONS = BuildConfig.DEBUG;
+
+    private long mCpuStartNanos;
+    private int mAllocStart;
+    private boolean mRunning;
+
+    /**
+     * Active le comptage des allocations, à l'entrée en mode ambiant.
+     */
+    @SuppressWarnings("deprecation")
+    public void onEnterAmbient() {
+        if (COUNT_ALLOCATIONS) {
+            Debug.startAllocCounting();
+        }
+    }
+
+    /**
+     * Désactive le comptage des allocations, à la sortie du mode ambiant.
+     */
+    @SuppressWarnings("deprecation")
+    public void onExitAmbient() {
+        mRunning = false;
+        if (COUNT_ALLOCATIONS) {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    /**
+     * Commence la mesure d'un rafraîchissement.
+     */
+    @SuppressWarnings("deprecation")
+    public void start() {
+        mRunning = true;
+        if (COUNT_ALLOCATIONS) {
+            mAllocStart = Debug.getThreadAllocCount();
+        }
+        mCpuStartNanos = Debug.threadCpuTimeNanos();
+    }
+
+    /**
+     * Termine la mesure du rafraîchissement en cours.
+     *
+     * @param redrawn vrai si l'heure a été redessinée
+     */
+    @SuppressWarnings("deprecation")
+    public void finish(boolean redrawn) {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        long cpuUs = (Debug.threadCpuTimeNanos() - mCpuStartNanos) / 1000;
+        AlertMetrics metrics = AlertMetrics.get();
+        metrics.increment(MetricsSnapshot.COUNTER_AMBIENT_UPDATES);
+        if (redrawn) {
+            metrics.increment(MetricsSnapshot.COUNTER_AMBIENT_REDRAWS);
+        }
+        metrics.record(MetricsSnapshot.HISTOGRAM_AMBIENT_UPDATE_CPU_US, cpuUs);
+        if (COUNT_ALLOCATIONS) {
+            metrics.record(MetricsSnapshot.HISTOGRAM_AMBIENT_UPDATE_ALLOCATIONS,
+                    Debug.getThreadAllocCount() - mAllocStart);
+        }
+    }
+}
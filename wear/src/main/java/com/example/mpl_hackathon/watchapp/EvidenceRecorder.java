@@ -0,0 +1,180 @@
+package com.example.mpl_hackathon.watchapp;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * <p>
+ * Description : Enregistrement du son ambiant au moment d'une alerte, joint à l'alerte par un
+ * lien ({@code drive_link}) que le serveur résout au fur et à mesure de l'envoi. Le son est
+ * compressé par morceaux de {@link #CHUNK_MS} ms ({@link AdpcmCodec}) dans un nombre fixe de
+ * tampons, et chaque morceau est envoyé dès qu'il est prêt
+ * ({@link NetworkManager#uploadEvidence(EvidenceUpload)}) : l'enregistrement n'est jamais gardé
+ * entier en mémoire, et un envoi en retard fait abandonner des morceaux plutôt que de faire
+ * grossir la mémoire.
+ * </p>
+ * <p>
+ * L'alerte n'attend pas l'enregistrement : le lien est calculé d'après l'identifiant de
+ * l'alerte ({@link #prepare(long, long)}), et l'enregistrement ne démarre qu'une fois l'alerte
+ * confiée à la boîte d'envoi ({@link #start()}). Un seul enregistrement a lieu à la fois ; il
+ * continue si l'activité est détruite. L'autorisation d'enregistrer est demandée par
+ * {@link MainActivity} au lancement ; refusée (ou retirée depuis les réglages), elle est
+ * vérifiée à chaque alerte et l'alerte part sans lien : {@link #prepare(long, long)} rend une
+ * chaîne vide.
+ * </p>
+ *
+ * @version 1.0
+ */
+public class EvidenceRecorder {
+
+    /**
+     * Tag pour les logs.
+     */
+    private static final String TAG = EvidenceRecorder.class.getSimpleName();
+    /**
+     * Durée de l'enregistrement.
+     */
+    public static final long DURATION_MS = 30 * 1000;
+    /**
+     * Durée d'un morceau : délai minimal avant la réception du premier morceau par le serveur.
+     */
+    public static final int CHUNK_MS = 500;
+    private static final int CHUNK_SAMPLES = AdpcmCodec.SAMPLE_RATE * CHUNK_MS / 1000;
+    /**
+     * Morceaux gardés en mémoire en attendant leur envoi (4 s de retard).
+     */
+    private static final int BUFFER_CHUNKS = 8;
+
+    private final Context mCtx;
+    private final AdpcmCodec mCodec = new AdpcmCodec();
+    private final short[] mPcm = new short[CHUNK_SAMPLES];
+    /**
+     * Enregistrement préparé, en attente de démarrage (protégé par this).
+     */
+    private EvidenceUpload mPrepared;
+    /**
+     * Indique qu'un enregistrement est en cours (protégé par this).
+     */
+    private boolean mRecording;
+
+    /**
+     * @param context contexte
+     */
+    public EvidenceRecorder(Context context) {
+        mCtx = context.getApplicationContext();
+    }
+
+    /**
+     * Prépare l'enregistrement joint à une nouvelle alerte.
+     *
+     * @param alertId identifiant de l'alerte
+     * @param tapMs   date de l'appui (horloge monotone)
+     * @return lien vers l'enregistrement, chaîne vide si aucun enregistrement n'est possible
+     */
+    public synchronized String prepare(long alertId, long tapMs) {
+        // Context.checkSelfPermission() n'existe qu'à partir d'Android 6.0
+        if (mRecording || mPrepared != null
+                || mCtx.checkPermission(Manifest.permission.RECORD_AUDIO, Process.myPid(),
+                Process.myUid()) != PackageManager.PERMISSION_GRANTED) {
+            return "";
+        }
+        mPrepared = new EvidenceUpload(alertId, tapMs, BUFFER_CHUNKS,
+                AdpcmCodec.blockBytes(CHUNK_SAMPLES));
+        return NetworkManager.evidenceUrl(alertId);
+    }
+
+    /**
+     * Démarre l'enregistrement préparé, s'il y en a un. L'enregistrement est retiré de l'attente
+     * avant le démarrage : un second appel (appuis répétés) ne fait rien.
+     */
+    public synchronized void start() {
+        final EvidenceUpload upload = mPrepared;
+        if (upload == null) {
+            return;
+        }
+        mPrepared = null;
+        mRecording = true;
+        NetworkManager.getInstance(mCtx).uploadEvidence(upload);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                capture(upload);
+            }
+        }, "evidence-capture").start();
+    }
+
+    /**
+     * Enregistre le son et le confie morceau par morceau à l'envoi (thread d'enregistrement).
+     *
+     * @param upload envoi de l'enregistrement
+     */
+    private void capture(EvidenceUpload upload) {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        NetworkManager network = NetworkManager.getInstance(mCtx);
+        AudioRecord recorder = null;
+        try {
+            // tampon du système de deux morceaux : la compression d'un morceau ne fait pas
+            // perdre d'échantillons
+            int bufferBytes = Math.max(AudioRecord.getMinBufferSize(AdpcmCodec.SAMPLE_RATE,
+                    AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT),
+                    CHUNK_SAMPLES * 2 * 2);
+            recorder = new AudioRecord(MediaRecorder.AudioSource.MIC, AdpcmCodec.SAMPLE_RATE,
+                    AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, bufferBytes);
+            if (recorder.getState() != AudioRecord.STATE_INITIALIZED) {
+                Log.w(TAG, "Microphone unavailable, alert " + upload.getAlertId()
+                        + " sent without evidence");
+                return;
+            }
+            mCodec.reset();
+            recorder.startRecording();
+            long end = SystemClock.elapsedRealtime() + DURATION_MS;
+            while (SystemClock.elapsedRealtime() < end && !upload.isAbandoned()) {
+                if (!read(recorder)) {
+                    break;
+                }
+                EvidenceUpload.Chunk chunk = upload.obtain();
+                if (chunk == null) {
+                    upload.drop();
+                    continue;
+                }
+                int length = mCodec.encodeBlock(mPcm, 0, CHUNK_SAMPLES, chunk.data(), 0);
+                upload.submit(chunk, length, false);
+                network.onEvidenceChunk(upload);
+            }
+        } finally {
+            if (recorder != null) {
+                recorder.release();
+            }
+            upload.finish();
+            network.onEvidenceChunk(upload);
+            synchronized (this) {
+                mRecording = false;
+            }
+        }
+    }
+
+    /**
+     * Lit un morceau complet dans {@link #mPcm}.
+     *
+     * @return faux si la lecture a échoué
+     */
+    private boolean read(AudioRecord recorder) {
+        int read = 0;
+        while (read < CHUNK_SAMPLES) {
+            int count = recorder.read(mPcm, read, CHUNK_SAMPLES - read);
+            if (count < 0) {
+                Log.w(TAG, "Audio capture failed : " + count);
+                return false;
+            }
+            read += count;
+        }
+        return true;
+    }
+}
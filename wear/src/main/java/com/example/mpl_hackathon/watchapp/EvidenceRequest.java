@@ -0,0 +1,111 @@
+package com.example.mpl_hackathon.watchapp;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Description : Requête PUT envoyant au web serveur un morceau de l'enregistrement joint à une
+ * alerte ({@link EvidenceUpload}). La réponse est le nombre d'octets de l'enregistrement reçus
+ * par le serveur ; un refus {@link EvidenceUpload#HTTP_CONFLICT} porte la même information
+ * ({@link #receivedBytes(VolleyError)}).
+ * </p>
+ *
+ * @version 1.0
+ */
+public class EvidenceRequest extends Request<Long> {
+
+    private final byte[] mBody;
+    private final Map<String, String> mHeaders = new HashMap<String, String>(4);
+    private final Response.Listener<Long> mListener;
+    /**
+     * Indique que le serveur a reçu tout l'enregistrement.
+     */
+    private volatile boolean mComplete;
+
+    /**
+     * @param url           adresse de l'enregistrement
+     * @param chunk         morceau à envoyer ; le tampon n'est pas copié s'il est plein
+     * @param listener      écouteur appelé à la réception de la réponse
+     * @param errorListener écouteur appelé en cas d'erreur
+     */
+    public EvidenceRequest(String url, EvidenceUpload.Chunk chunk,
+                           Response.Listener<Long> listener,
+                           Response.ErrorListener errorListener) {
+        super(Method.PUT, url, errorListener);
+        mBody = chunk.length() == chunk.data().length ? chunk.data()
+                : Arrays.copyOf(chunk.data(), chunk.length());
+        mHeaders.put(EvidenceUpload.OFFSET_HEADER, Long.toString(chunk.offset()));
+        if (chunk.isLast()) {
+            mHeaders.put(EvidenceUpload.COMPLETE_HEADER, "true");
+        }
+        mListener = listener;
+        setShouldCache(false);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return mHeaders;
+    }
+
+    @Override
+    public String getBodyContentType() {
+        return AdpcmCodec.CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] getBody() {
+        return mBody;
+    }
+
+    @Override
+    protected Response<Long> parseNetworkResponse(NetworkResponse response) {
+        long received = receivedBytes(response);
+        if (received < 0) {
+            return Response.error(new ParseError(response));
+        }
+        mComplete = "true".equals(response.headers.get(EvidenceUpload.COMPLETE_HEADER));
+        return Response.success(received, HttpHeaderParser.parseCacheHeaders(response));
+    }
+
+    /**
+     * @return vrai si le serveur a reçu tout l'enregistrement
+     */
+    public boolean isComplete() {
+        return mComplete;
+    }
+
+    /**
+     * @param error erreur de la requête
+     * @return octets reçus par le serveur si la requête a été refusée car elle ne suivait pas
+     * ces octets, -1 sinon
+     */
+    public static long receivedBytes(VolleyError error) {
+        return error.networkResponse != null
+                && error.networkResponse.statusCode == EvidenceUpload.HTTP_CONFLICT
+                ? receivedBytes(error.networkResponse) : -1;
+    }
+
+    private static long receivedBytes(NetworkResponse response) {
+        String received = response.headers != null
+                ? response.headers.get(EvidenceUpload.OFFSET_HEADER) : null;
+        try {
+            return received == null ? -1 : Long.parseLong(received);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    protected void deliverResponse(Long received) {
+        mListener.onResponse(received);
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.mpl_hackathon.watchapp;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * <p>
+ * Description : Alimente le {@link FallDetector} avec l'accéléromètre et le gyroscope. Les
+ * capteurs sont enregistrés avec un délai de remise ({@link #MAX_REPORT_LATENCY_US}) : les
+ * échantillons sont accumulés dans la FIFO du capteur et remis par lots, sans réveiller le
+ * processeur à chaque échantillon. Les variantes "wake-up" des capteurs sont préférées afin que
+ * la FIFO soit vidée même quand la montre est en veille.
+ * </p>
+ * <p>
+ * Dès qu'un choc est détecté, les capteurs sont réenregistrés sans délai de remise le temps de
+ * vérifier l'immobilité du porteur, afin que la confirmation de la chute ne soit pas retardée
+ * par l'accumulation des lots. Le traitement est fait sur un thread dédié ; son temps processeur
+ * et le délai entre le choc et l'alerte sont enregistrés dans les {@link AlertMetrics}.
+ * </p>
+ *
+ * @version 1.0
+ */
+public class FallMonitor implements SensorEventListener, FallDetector.Listener {
+
+    /**
+     * Tag pour les logs.
+     */
+    private static final String TAG = FallMonitor.class.getSimpleName();
+    /**
+     * Période d'échantillonnage demandée (50 Hz).
+     */
+    private static final int SAMPLING_PERIOD_US = 20000;
+    /**
+     * Délai maximal de remise des échantillons accumulés dans la FIFO des capteurs.
+     */
+    private static final int MAX_REPORT_LATENCY_US = 5 * 1000000;
+    /**
+     * Intervalle entre deux relevés du temps processeur (horloge arrêtée pendant la veille).
+     */
+    private static final long CPU_REPORT_INTERVAL_MS = 60 * 1000;
+
+    /**
+     * Chute confirmée, appelé sur le thread principal.
+     */
+    public interface OnFallListener {
+        void onFallDetected();
+    }
+
+    private final SensorManager mSensorManager;
+    private final Sensor mAccelerometer;
+    private final Sensor mGyroscope;
+    private final OnFallListener mOnFallListener;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final FallDetector mDetector;
+
+    private HandlerThread mThread;
+    private Handler mHandler;
+    /**
+     * Indique si les capteurs sont enregistrés sans délai de remise. Lu et modifié sur le thread
+     * de traitement uniquement.
+     */
+    private boolean mUnbatched;
+    /**
+     * Faux une fois la détection arrêtée : les lots encore en cours de traitement ne doivent pas
+     * réenregistrer les capteurs.
+     */
+    private volatile boolean mRunning;
+    private long mStartedAtMs;
+    private long mTotalCpuNanos;
+    private long mReportedCpuNanos;
+    private long mReportedSamples;
+
+    private final Runnable mReportCpu = new Runnable() {
+        @Override
+        public void run() {
+            reportCpu();
+            mHandler.postDelayed(this, CPU_REPORT_INTERVAL_MS);
+        }
+    };
+
+    /**
+     * @param context        contexte de l'application
+     * @param onFallListener destinataire des chutes détectées
+     */
+    public FallMonitor(Context context, OnFallListener onFallListener) {
+        mSensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        mAccelerometer = getSensor(Sensor.TYPE_ACCELEROMETER);
+        mGyroscope = getSensor(Sensor.TYPE_GYROSCOPE);
+        mOnFallListener = onFallListener;
+        mDetector = new FallDetector(this, mGyroscope != null);
+    }
+
+    private Sensor getSensor(int type) {
+        Sensor sensor = mSensorManager.getDefaultSensor(type, true);
+        return sensor != null ? sensor : mSensorManager.getDefaultSensor(type);
+    }
+
+    /**
+     * Démarre la détection.
+     *
+     * @return faux si la montre n'a pas d'accéléromètre
+     */
+    public boolean start() {
+        if (mAccelerometer == null) {
+            Log.w(TAG, "No accelerometer, fall detection disabled");
+            return false;
+        }
+        if (mThread != null) {
+            return true;
+        }
+        Log.i(TAG, "Fall detection with " + mAccelerometer.getName() + " (fifo "
+                + mAccelerometer.getFifoMaxEventCount() + ", wake-up "
+                + mAccelerometer.isWakeUpSensor() + ")"
+                + (mGyroscope != null ? " and " + mGyroscope.getName() : ", no gyroscope"));
+        mThread = new HandlerThread("fall-detection");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mStartedAtMs = SystemClock.elapsedRealtime();
+        mRunning = true;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mReportedCpuNanos = Debug.threadCpuTimeNanos();
+            }
+        });
+        register(false);
+        mHandler.postDelayed(mReportCpu, CPU_REPORT_INTERVAL_MS);
+        return true;
+    }
+
+    /**
+     * Arrête la détection.
+     */
+    public void stop() {
+        if (mThread == null) {
+            return;
+        }
+        mRunning = false;
+        mSensorManager.unregisterListener(this);
+        mHandler.removeCallbacks(mReportCpu);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                reportCpu();
+                long minutes = Math.max(1, (SystemClock.elapsedRealtime() - mStartedAtMs)
+                        / 60000);
+                Log.i(TAG, "Fall detection stopped after " + minutes + " min : "
+                        + mDetector.getSampleCount() + " samples, cpu "
+                        + mTotalCpuNanos / 1000000 + " ms ("
+                        + mTotalCpuNanos / 1000000 * 60 / minutes + " ms/h)");
+            }
+        });
+        mThread.quitSafely();
+        mThread = null;
+    }
+
+    /**
+     * Enregistre les capteurs, avec ou sans accumulation dans la FIFO.
+     */
+    private void register(boolean unbatched) {
+        mUnbatched = unbatched;
+        int latencyUs = unbatched ? 0 : MAX_REPORT_LATENCY_US;
+        mSensorManager.unregisterListener(this);
+        mSensorManager.registerListener(this, mAccelerometer, SAMPLING_PERIOD_US, latencyUs,
+                mHandler);
+        if (mGyroscope != null) {
+            mSensorManager.registerListener(this, mGyroscope, SAMPLING_PERIOD_US, latencyUs,
+                    mHandler);
+        }
+    }
+
+    /**
+     * Enregistre le temps processeur du thread de traitement depuis le dernier relevé. Appelé
+     * sur le thread de traitement.
+     */
+    private void reportCpu() {
+        long cpuNanos = Debug.threadCpuTimeNanos();
+        long samples = mDetector.getSampleCount();
+        long elapsedNanos = cpuNanos - mReportedCpuNanos;
+        mTotalCpuNanos += elapsedNanos;
+        AlertMetrics metrics = AlertMetrics.get();
+        metrics.add(MetricsSnapshot.COUNTER_SENSOR_CPU_US, elapsedNanos / 1000);
+        metrics.add(MetricsSnapshot.COUNTER_SENSOR_SAMPLES, samples - mReportedSamples);
+        mReportedCpuNanos = cpuNanos;
+        mReportedSamples = samples;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        float[] values = event.values;
+        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
+            mDetector.onAccelerometer(event.timestamp, values[0], values[1], values[2]);
+        } else {
+            mDetector.onGyroscope(event.timestamp, values[0], values[1], values[2]);
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+
+    @Override
+    public void onImpact(long impactNanos) {
+        Log.i(TAG, "Impact " + mDetector.getImpactPeak() + "g, checking stillness");
+        if (!mUnbatched && mRunning) {
+            register(true);
+        }
+    }
+
+    @Override
+    public void onImpactDismissed(long impactNanos) {
+        Log.i(TAG, "Impact dismissed, wearer moved");
+        if (mUnbatched && mRunning) {
+            register(false);
+        }
+    }
+
+    @Override
+    public void onFallDetected(long impactNanos, long confirmedNanos) {
+        // les dates des échantillons sont sur l'horloge monotone
+        long latencyMs = Math.max(0, (SystemClock.elapsedRealtimeNanos() - impactNanos)
+                / 1000000);
+        Log.i(TAG, "Fall detected, " + latencyMs + " ms after impact (peak "
+                + mDetector.getImpactPeak() + "g)");
+        AlertMetrics.get().increment(MetricsSnapshot.COUNTER_FALLS_DETECTED);
+        AlertMetrics.get().record(MetricsSnapshot.HISTOGRAM_FALL_DETECTION, latencyMs);
+        if (mUnbatched && mRunning) {
+            register(false);
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mOnFallListener.onFallDetected();
+            }
+        });
+    }
+}
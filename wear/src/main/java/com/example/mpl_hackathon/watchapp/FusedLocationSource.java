@@ -0,0 +1,365 @@
+package com.example.mpl_hackathon.watchapp;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.IntentSender;
+import android.location.Location;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.PendingResult;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.location.LocationAvailability;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.LocationSettingsRequest;
+import com.google.android.gms.location.LocationSettingsResult;
+import com.google.android.gms.location.LocationSettingsStatusCodes;
+
+/**
+ * <p>
+ * Description : {@link LocationSource} du fournisseur fusionné des services Google Play :
+ * connexion du client, vérification des réglages de localisation (boîte de dialogue ouverte
+ * depuis l'activité définie par {@link #setResolutionActivity(Activity)}) et mises à jour de la
+ * position. Les mises à jour ne démarrent qu'une fois les réglages vérifiés ; les demandes
+ * antérieures sont conservées jusque-là. Les positions regroupées sont livrées ensemble, sur le
+ * thread principal.
+ * </p>
+ *
+ * @version 1.0
+ */
+final class FusedLocationSource extends LocationCallback implements LocationSource,
+        GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener,
+        ResultCallback<LocationSettingsResult> {
+
+    /**
+     * Prévenu de la connexion aux services Google Play.
+     */
+    interface OnConnectedListener {
+        /**
+         * @param lastLocation dernière position connue du fournisseur, null si aucune
+         */
+        void onConnected(Location lastLocation);
+    }
+
+    private static final String TAG = FusedLocationSource.class.getSimpleName();
+
+    private final Context mContext;
+    private final OnConnectedListener mOnConnectedListener;
+    /**
+     * Client Google Play Services, null tant que {@link #init(SamplingDecision)} n'est pas
+     * terminée.
+     */
+    private GoogleApiClient mGoogleApiClient;
+    /**
+     * Définie les parmètres pour la mise à jour de la position.
+     */
+    private LocationRequest mLocationRequest;
+    /**
+     * Définie le type de service utilisé pour la géolocalisation. Utilisé pour vérifier les
+     * réglages pour déterminer si l'appareil présente les réglages optimaux concernant la
+     * localisation.
+     */
+    private LocationSettingsRequest mLocationSettingsRequest;
+    /**
+     * Indique si la mise à jour de la position est en cours.
+     */
+    private boolean mRequestingLocationUpdates;
+    /**
+     * Destinataire des positions, null sans demande de mises à jour.
+     */
+    private LocationSource.Listener mListener;
+    /**
+     * Activité affichée, utilisée pour modifier les réglages de localisation, null si aucune.
+     */
+    private Activity mResolutionActivity;
+    /**
+     * Réglages de localisation à modifier, en attente d'une activité pour afficher la boîte de
+     * dialogue.
+     */
+    private Status mPendingResolution;
+
+    /**
+     * @param context   contexte du service propriétaire
+     * @param listener  prévenu de la connexion, sur le thread principal
+     */
+    FusedLocationSource(Context context, OnConnectedListener listener) {
+        mContext = context;
+        mOnConnectedListener = listener;
+    }
+
+    /**
+     * Crée le client et les requêtes ; peut être appelée depuis un thread d'initialisation.
+     *
+     * @param decision paramètres de mise à jour initiaux
+     */
+    synchronized void init(SamplingDecision decision) {
+        mGoogleApiClient = new GoogleApiClient.Builder(mContext)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .addApi(LocationServices.API)
+                .build();
+        mLocationRequest = new LocationRequest();
+        applySamplingDecision(decision);
+        LocationSettingsRequest.Builder builder = new LocationSettingsRequest.Builder();
+        builder.setAlwaysShow(true);
+        builder.addLocationRequest(mLocationRequest);
+        mLocationSettingsRequest = builder.build();
+    }
+
+    /**
+     * @return vrai si le client est connecté aux services Google Play
+     */
+    boolean isConnected() {
+        return mGoogleApiClient != null && mGoogleApiClient.isConnected();
+    }
+
+    /**
+     * Se connecte aux services Google Play et vérifie que les réglages de l'appareil concernant
+     * la localisation sont suffisants ; les mises à jour démarrent si c'est le cas.
+     */
+    void connect() {
+        if (!mGoogleApiClient.isConnected()) {
+            mGoogleApiClient.connect();
+        }
+        PendingResult<LocationSettingsResult> result =
+                LocationServices.SettingsApi.checkLocationSettings(
+                        mGoogleApiClient,
+                        mLocationSettingsRequest
+                );
+        result.setResultCallback(this);
+    }
+
+    /**
+     * Se déconnecte des services Google Play.
+     */
+    void disconnect() {
+        // le résultat de la suppression des mises à jour n'est pas reçu après la déconnexion
+        mRequestingLocationUpdates = false;
+        mGoogleApiClient.disconnect();
+        Log.i(TAG, "Disconnected from GoogleApiClient");
+    }
+
+    /**
+     * @return dernière position connue du fournisseur, null si aucune ou sans connexion. Peut
+     * être appelée depuis n'importe quel thread.
+     */
+    Location getLastLocation() {
+        if (!isConnected()) {
+            return null;
+        }
+        try {
+            return LocationServices.FusedLocationApi.getLastLocation(mGoogleApiClient);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Erreur permission securité LocationManager");
+            return null;
+        }
+    }
+
+    /**
+     * Définit l'activité depuis laquelle les réglages de localisation peuvent être modifiés.
+     * Si une modification est en attente, la boîte de dialogue est ouverte immédiatement.
+     *
+     * @param activity activité affichée, null si aucune
+     */
+    void setResolutionActivity(Activity activity) {
+        mResolutionActivity = activity;
+        if (activity != null && mPendingResolution != null) {
+            Status status = mPendingResolution;
+            mPendingResolution = null;
+            startResolution(status);
+        }
+    }
+
+    /**
+     * Démarre la mise à jour de la position si elle n'est pas en cours (réglages modifiés par
+     * l'utilisateur).
+     */
+    void tryStartingLocationUpdates() {
+        if (isConnected() && !mRequestingLocationUpdates) {
+            startLocationUpdates();
+        }
+    }
+
+    @Override
+    public long elapsedRealtimeMs() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public long currentTimeMs() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void requestUpdates(SamplingDecision decision, LocationSource.Listener listener) {
+        mListener = listener;
+        if (mLocationRequest == null) {
+            // appliqué par init()
+            return;
+        }
+        applySamplingDecision(decision);
+        if (mRequestingLocationUpdates && isConnected()) {
+            // une nouvelle requête avec le même callback remplace la précédente
+            startLocationUpdates();
+        }
+    }
+
+    @Override
+    public void removeUpdates() {
+        if (isConnected()) {
+            LocationServices.FusedLocationApi.removeLocationUpdates(mGoogleApiClient, this)
+                    .setResultCallback(new ResultCallback<Status>() {
+                        @Override
+                        public void onResult(Status status) {
+                            Log.i(TAG, "Location updates stopped");
+                            mRequestingLocationUpdates = false;
+                        }
+                    });
+        }
+        mListener = null;
+    }
+
+    @Override
+    public void flush() {
+        if (isConnected()) {
+            LocationServices.FusedLocationApi.flushLocations(mGoogleApiClient);
+        }
+    }
+
+    /**
+     * Applique des paramètres de mise à jour à la requête de position.
+     *
+     * @param decision paramètres à appliquer
+     */
+    private void applySamplingDecision(SamplingDecision decision) {
+        mLocationRequest.setInterval(decision.getIntervalMs());
+        mLocationRequest.setFastestInterval(decision.getFastestIntervalMs());
+        mLocationRequest.setPriority(decision.getPriority());
+        mLocationRequest.setMaxWaitTime(decision.getMaxWaitTimeMs());
+    }
+
+    /**
+     * Démarre la mise à jour de la position courante à intervalles réguliers.
+     */
+    private void startLocationUpdates() {
+        try {
+            LocationServices.FusedLocationApi.requestLocationUpdates(
+                    mGoogleApiClient,
+                    mLocationRequest,
+                    this,
+                    Looper.getMainLooper()
+            ).setResultCallback(new ResultCallback<Status>() {
+                @Override
+                public void onResult(Status status) {
+                    Log.i(TAG, "Location updates started");
+                    mRequestingLocationUpdates = true;
+                }
+            });
+        } catch (SecurityException s) {
+            Log.e(TAG, "Erreur permission securité LocationManager");
+        }
+    }
+
+    @Override
+    public void onLocationResult(LocationResult result) {
+        if (mListener == null) {
+            return;
+        }
+        // un lot de positions regroupées, dans l'ordre chronologique
+        for (Location location : result.getLocations()) {
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "onLocationChanged : " + "lat : " + location.getLatitude()
+                        + ", lon : " + location.getLongitude());
+            }
+            mListener.onFix(location.getTime(), location.getElapsedRealtimeNanos(),
+                    location.getLatitude(), location.getLongitude(),
+                    location.hasAccuracy() ? location.getAccuracy() : Float.NaN,
+                    location.hasSpeed() ? location.getSpeed() : Float.NaN);
+            if (mListener == null) {
+                // mises à jour arrêtées pendant la livraison
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onLocationAvailability(LocationAvailability availability) {
+        Log.i(TAG, "Location available : " + availability.isLocationAvailable());
+        if (mListener != null) {
+            mListener.onAvailabilityChanged(availability.isLocationAvailable());
+        }
+    }
+
+    @Override
+    public void onConnected(Bundle bundle) {
+        Log.i(TAG, "Connected to GoogleApiClient");
+        mOnConnectedListener.onConnected(getLastLocation());
+    }
+
+    @Override
+    public void onConnectionSuspended(int i) {
+        Log.i(TAG, "Connection suspended");
+    }
+
+    @Override
+    public void onConnectionFailed(ConnectionResult connectionResult) {
+        Log.i(TAG, "Connection failed: ConnectionResult.getErrorCode() = "
+                + connectionResult.getErrorCode());
+    }
+
+    /**
+     * The callback invoked when
+     * {@link com.google.android.gms.location.SettingsApi#checkLocationSettings(GoogleApiClient,
+     * LocationSettingsRequest)} is called. Examines the
+     * {@link LocationSettingsResult} object and determines if
+     * location settings are adequate. If they are not, begins the process of presenting a location
+     * settings dialog to the user.
+     */
+    @Override
+    public void onResult(LocationSettingsResult locationSettingsResult) {
+        final Status status = locationSettingsResult.getStatus();
+        switch (status.getStatusCode()) {
+            case LocationSettingsStatusCodes.SUCCESS:
+                Log.i(TAG, "All location settings are satisfied.");
+                startLocationUpdates();
+                break;
+            case LocationSettingsStatusCodes.RESOLUTION_REQUIRED:
+                Log.i(TAG, "Location settings are not satisfied. Show the user a dialog to" +
+                        "upgrade location settings ");
+
+                if (mResolutionActivity != null) {
+                    startResolution(status);
+                } else {
+                    // la boîte de dialogue sera ouverte par la prochaine activité affichée
+                    mPendingResolution = status;
+                }
+                break;
+            case LocationSettingsStatusCodes.SETTINGS_CHANGE_UNAVAILABLE:
+                Log.i(TAG, "Location settings are inadequate, and cannot be fixed here. Dialog " +
+                        "not created.");
+                break;
+        }
+    }
+
+    /**
+     * Ouvre la boîte de dialogue de modification des réglages de localisation.
+     */
+    private void startResolution(Status status) {
+        try {
+            // Show the dialog by calling startResolutionForResult(), and check the result
+            // in onActivityResult().
+            status.startResolutionForResult(mResolutionActivity,
+                    LocationManager.REQUEST_CHECK_SETTINGS);
+        } catch (IntentSender.SendIntentException e) {
+            Log.i(TAG, "PendingIntent unable to execute request.");
+        }
+    }
+}
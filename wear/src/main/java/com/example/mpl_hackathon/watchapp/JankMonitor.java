@@ -0,0 +1,87 @@
+package com.example.mpl_hackathon.watchapp;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+/**
+ * <p>
+ * Description : Mesure de la fluidité de l'affichage pendant une courte fenêtre après une
+ * alerte. Une image est en retard lorsque l'intervalle depuis la précédente dépasse une fois et
+ * demie la période de rafraîchissement : le thread principal était occupé lors d'une
+ * synchronisation verticale. Les images et les retards sont comptés dans {@link AlertMetrics}.
+ * </p>
+ * <p>
+ * La mesure n'est pas permanente : chaque rappel de {@link Choreographer} réveille le processeur
+ * à chaque synchronisation verticale. Toutes les méthodes doivent être appelées depuis le thread
+ * principal.
+ * </p>
+ *
+ * @version 1.0
+ */
+public class JankMonitor implements Choreographer.FrameCallback {
+
+    /**
+     * Tag pour les logs.
+     */
+    private static final String TAG = JankMonitor.class.getSimpleName();
+
+    private final long mFramePeriodNanos;
+    private long mDeadlineNanos;
+    private long mLastFrameNanos;
+    private boolean mRunning;
+    private int mFrames;
+    private int mJankyFrames;
+
+    /**
+     * @param refreshRate fréquence de rafraîchissement de l'écran (Hz)
+     */
+    public JankMonitor(float refreshRate) {
+        mFramePeriodNanos = (long) (1000000000L / (refreshRate > 0 ? refreshRate : 60f));
+    }
+
+    /**
+     * Mesure les images affichées pendant une durée, prolongée si une mesure est en cours.
+     *
+     * @param durationMs durée de la mesure
+     */
+    public void watch(long durationMs) {
+        mDeadlineNanos = System.nanoTime() + durationMs * 1000000L;
+        if (!mRunning) {
+            mRunning = true;
+            mLastFrameNanos = 0;
+            mFrames = 0;
+            mJankyFrames = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Arrête la mesure en cours.
+     */
+    public void stop() {
+        if (mRunning) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mRunning = false;
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (mLastFrameNanos != 0) {
+            mFrames++;
+            if (frameTimeNanos - mLastFrameNanos > mFramePeriodNanos * 3 / 2) {
+                mJankyFrames++;
+            }
+        }
+        mLastFrameNanos = frameTimeNanos;
+        if (frameTimeNanos < mDeadlineNanos) {
+            Choreographer.getInstance().postFrameCallback(this);
+            return;
+        }
+        mRunning = false;
+        AlertMetrics metrics = AlertMetrics.get();
+        metrics.add(MetricsSnapshot.COUNTER_FRAMES, mFrames);
+        metrics.add(MetricsSnapshot.COUNTER_FRAMES_JANKY, mJankyFrames);
+        Log.i(TAG, "Frames after alert : " + mFrames + ", janky : " + mJankyFrames);
+    }
+}
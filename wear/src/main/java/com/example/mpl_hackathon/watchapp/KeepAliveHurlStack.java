@@ -0,0 +1,42 @@
+package com.example.mpl_hackathon.watchapp;
+
+import com.android.volley.toolbox.HurlStack;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * <p>
+ * Description : Pile HTTP de Volley réutilisant les connexions persistantes (keep-alive) du pool
+ * de {@link HttpURLConnection}, avec des délais de connexion adaptés à une montre. Le corps de
+ * la requête reste mis en tampon (pas de flux à longueur fixe) : il part avec les en-têtes, sans
+ * quoi Nagle le retient sur une connexion réutilisée jusqu'à l'accusé retardé du serveur.
+ * </p>
+ *
+ * @version 1.0
+ */
+public class KeepAliveHurlStack extends HurlStack {
+
+    /**
+     * Nombre de connexions inactives conservées par hôte.
+     */
+    private static final String MAX_IDLE_CONNECTIONS = "4";
+    /**
+     * Délai maximal d'établissement d'une connexion.
+     */
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    static {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", MAX_IDLE_CONNECTIONS);
+    }
+
+    @Override
+    protected HttpURLConnection createConnection(URL url) throws IOException {
+        HttpURLConnection connection = super.createConnection(url);
+        connection.setRequestProperty("Connection", "keep-alive");
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        return connection;
+    }
+}
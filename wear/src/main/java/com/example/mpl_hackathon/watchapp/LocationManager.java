@@ -2,29 +2,28 @@ package com.example.mpl_hackathon.watchapp;
 
 import android.app.Activity;
 import android.content.Context;
-import android.content.IntentSender;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.location.Location;
-import android.os.Bundle;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.PendingResult;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.common.api.Status;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationServices;
-import com.google.android.gms.location.LocationSettingsRequest;
-import com.google.android.gms.location.LocationSettingsResult;
-import com.google.android.gms.location.LocationSettingsStatusCodes;
-
 /**
  * <p/>
- * Description : Assure la gestion de la géolocalisation du mobile. Celui-ci est lié
- * à une activité. Les appels aux fonctions onStart(), onResume(), onPause() et onStop() doivent
- * être faits respectivement dans les fonctions onStart(), onResume(), onPause() et onStop() de
- * l'activité. ATTENTION : Cette activité doit gérer les résultats de retour d'une autre
- * activité pour la gestion des réglages concernant le localisation :
+ * Description : Assure la gestion de la géolocalisation du mobile. Celui-ci appartient au
+ * {@link LocationService}, qui le démarre ({@link #start()}) et l'arrête ({@link #stop()}) : les
+ * positions continuent d'être reçues lorsque l'écran d'alerte n'est plus affiché, à faible
+ * fréquence et regroupées ({@link #setForeground(boolean)}). L'échantillonnage et le suivi des
+ * positions sont confiés à un {@link LocationController}, alimenté par le fournisseur fusionné
+ * ({@link FusedLocationSource}) ; seules la batterie et la conversion des positions en
+ * {@link Location} restent ici. Si les réglages de localisation doivent être modifiés, la boîte
+ * de dialogue est ouverte depuis l'activité définie par
+ * {@link #setResolutionActivity(Activity)}. ATTENTION : Cette activité doit gérer les
+ * résultats de retour d'une autre activité pour la gestion des réglages concernant le
+ * localisation :
  * <pre>
  * {@code
  *
@@ -50,9 +49,7 @@ import com.google.android.gms.location.LocationSettingsStatusCodes;
  * </pre>
  * </p>
  */
-public class LocationManager implements GoogleApiClient.ConnectionCallbacks,
-        GoogleApiClient.OnConnectionFailedListener, com.google.android.gms.location
-                .LocationListener, ResultCallback<LocationSettingsResult> {
+public class LocationManager implements LocationController.Listener {
 
     /**
      * Constante utilisée dans la boîte de dialogue pour les réglages concernant la localisation.
@@ -63,261 +60,354 @@ public class LocationManager implements GoogleApiClient.ConnectionCallbacks,
      */
     private static final String TAG = LocationManager.class.getSimpleName();
     /**
-     * Intervalles désirée pour la fréquence des mises à jour de la position.
+     * Intervalle minimal entre deux lectures du niveau de batterie.
+     */
+    private static final long BATTERY_REFRESH_INTERVAL_IN_MILLISECONDS = 60 * 1000;
+
+    /**
+     * Reçoit chaque nouvelle position fournie par les mises à jour.
+     */
+    public interface OnFixListener {
+        /**
+         * @param location nouvelle position
+         */
+        void onFix(Location location);
+    }
+
+    /**
+     * Prévenu de la fin de l'initialisation asynchrone.
+     */
+    public interface OnReadyListener {
+        /**
+         * Appelé sur le thread principal lorsque les services Google Play sont initialisés.
+         */
+        void onLocationManagerReady();
+    }
+
+    /**
+     * Contexte du service propriétaire.
      */
-    private static final long UPDATE_INTERVAL_IN_MILLISECONDS = 10000;
+    private final Context mContext;
     /**
-     * Fréquence maximale des mises à jour de la position.
+     * Fournisseur fusionné des services Google Play.
      */
-    private static final long FASTEST_UPDATE_INTERVAL_IN_MILLISECONDS =
-            UPDATE_INTERVAL_IN_MILLISECONDS / 2;
+    private final FusedLocationSource mFusedSource;
     /**
-     * Activité liée au LocationManager.
+     * Echantillonnage de la position et suivi des positions reçues.
      */
-    private Activity mActivity;
+    private final LocationController mController;
     /**
-     * Client Google Play Services.
+     * Indique si l'initialisation est terminée (écrit sur le thread principal, lu aussi par le
+     * pipeline d'alerte).
      */
-    private GoogleApiClient mGoogleApiClient;
+    private volatile boolean mReady;
     /**
-     * Position courante.
+     * Indique si le LocationManager est arrêté, pour ne pas se connecter après un stop()
+     * survenu pendant l'initialisation asynchrone.
+     */
+    private boolean mStopped = true;
+    /**
+     * Position courante : estimation filtrée de la dernière position reçue, ou dernière position
+     * connue au démarrage.
      */
     private Location mCurrentLocation;
     /**
-     * Définie les parmètres pour la mise à jour de la position.
+     * Estimation filtrée, réutilisée d'une position à l'autre.
      */
-    private LocationRequest mLocationRequest;
+    private final Location mFilteredLocation = new Location("filtered");
     /**
-     * Définie le type de service utilisé pour la géolocalisation. Utilisé pour vérifier les
-     * réglages pour déterminer si l'appareil présente les réglages optimaux concernant la
-     * localisation.
+     * Ecouteur des nouvelles positions, null si aucun.
      */
-    private LocationSettingsRequest mLocationSettingsRequest;
+    private OnFixListener mOnFixListener;
     /**
-     * Indique si la mise à jour de la position est en cours.
+     * Date de la dernière lecture du niveau de batterie.
      */
-    private boolean mRequestingLocationUpdates;
+    private long mLastBatteryReadMs = Long.MIN_VALUE;
 
     /**
-     * @param activity activité qui a besoin de connaître la position
+     * Crée un LocationManager dont l'initialisation des services Google Play (création du
+     * client, de la requête de position et vérification des réglages) est faite sur le thread
+     * de {@code initLooper}, afin de ne pas retarder l'affichage de l'activité. Tant que
+     * l'initialisation n'est pas terminée, la position n'est disponible que via
+     * {@link #fillLastKnownLocation(AlertPayload, long)} (dernière position du réseau).
+     * Les mises à jour démarrent en arrière-plan ({@link #setForeground(boolean)}).
+     *
+     * @param context    contexte du service propriétaire
+     * @param initLooper looper du thread d'initialisation
+     * @param listener   prévenu sur le thread principal à la fin de l'initialisation
      */
-    public LocationManager(Activity activity) {
-        mActivity = activity;
-        mRequestingLocationUpdates = false;
-        buildGoogleApiClient(activity);
-        createLocationRequest();
-        buildLocationSettingsRequest();
-        checkLocationSettings();
+    public LocationManager(Context context, Looper initLooper,
+                           final OnReadyListener listener) {
+        mContext = context;
+        mFusedSource = new FusedLocationSource(context,
+                new FusedLocationSource.OnConnectedListener() {
+                    @Override
+                    public void onConnected(Location lastLocation) {
+                        onLastLocation(lastLocation);
+                    }
+                });
+        mController = new LocationController(mFusedSource, this);
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        new Handler(initLooper).post(new Runnable() {
+            @Override
+            public void run() {
+                mFusedSource.init(mController.getSamplingDecision());
+                // la connexion et la vérification des réglages, dont le résultat peut ouvrir une
+                // boîte de dialogue, sont lancées depuis le thread principal
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mReady = true;
+                        // start() applique la décision courante, prise éventuellement pendant
+                        // l'initialisation (alerte déjà déclenchée)
+                        if (!mStopped) {
+                            mController.start();
+                            mFusedSource.connect();
+                        }
+                        listener.onLocationManagerReady();
+                    }
+                });
+            }
+        });
     }
 
     /**
-     * Etablie la connexion avec les services Google Play.
-     *
-     * @param context contexte utilisé pour la connexion avec les services Google Play
+     * @return vrai si l'initialisation des services Google Play est terminée
      */
-    private synchronized void buildGoogleApiClient(Context context) {
-        mGoogleApiClient = new GoogleApiClient.Builder(context)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .addApi(LocationServices.API)
-                .build();
+    public boolean isReady() {
+        return mReady;
     }
 
     /**
-     * Définie les paramètres pour la mise à jour de la position.
+     * Remplace la politique d'échantillonnage de la position.
+     *
+     * @param policy nouvelle politique
      */
-    private void createLocationRequest() {
-        mLocationRequest = new LocationRequest();
-        mLocationRequest.setInterval(UPDATE_INTERVAL_IN_MILLISECONDS);
-        mLocationRequest.setFastestInterval(FASTEST_UPDATE_INTERVAL_IN_MILLISECONDS);
-        mLocationRequest.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+    public void setSamplingPolicy(SamplingPolicy policy) {
+        mController.setSamplingPolicy(policy);
     }
 
     /**
-     * Uses a {@link LocationSettingsRequest.Builder} to build
-     * a {@link LocationSettingsRequest} that is used for checking
-     * if a device has the needed location settings.
+     * Renvoie les mesures de l'échantillonnage de la position.
+     *
+     * @return mesures de l'échantillonnage
      */
-    private void buildLocationSettingsRequest() {
-        LocationSettingsRequest.Builder builder = new LocationSettingsRequest.Builder();
-        builder.setAlwaysShow(true);
-        builder.addLocationRequest(mLocationRequest);
-        mLocationSettingsRequest = builder.build();
+    public SamplingStats getSamplingStats() {
+        return mController.getSamplingStats();
     }
 
     /**
-     * Vérifie que les réglages de l'appareil concernant la localisation sont suffisants pour les
-     * besoins de l'application.
+     * Signale le déclenchement d'une alerte : la position est mise à jour à la fréquence maximale
+     * pendant {@link LocationController#ALERT_BOOST_WINDOW_MS}.
      */
-    private void checkLocationSettings() {
-        if (!mGoogleApiClient.isConnected()) {
-            mGoogleApiClient.connect();
-        }
-        PendingResult<LocationSettingsResult> result =
-                LocationServices.SettingsApi.checkLocationSettings(
-                        mGoogleApiClient,
-                        mLocationSettingsRequest
-                );
-        result.setResultCallback(this);
+    public void onAlertDetected() {
+        mController.onAlertDetected();
+        Log.i(TAG, "Sampling stats : "
+                + mController.getSamplingStats().summary(SystemClock.elapsedRealtime()));
     }
 
     /**
-     * Renvoie la position courante.
+     * Indique si l'écran d'alerte est au premier plan. Au premier plan, les positions sont
+     * demandées selon le mouvement et livrées immédiatement ; en arrière-plan, elles sont
+     * peu fréquentes et regroupées. Au passage au premier plan, les positions regroupées en
+     * attente sont livrées sans attendre.
      *
-     * @return la position courante.
+     * @param foreground vrai si l'écran d'alerte est affiché
      */
-    public Location getCurrentLocation() {
-        return mCurrentLocation;
+    public void setForeground(boolean foreground) {
+        mController.setForeground(foreground);
+    }
+
+    @Override
+    public void onSampling(SamplingContext context, long nowMs) {
+        readBatteryLevel(context, nowMs);
+    }
+
+    @Override
+    public void onSamplingChanged(SamplingDecision decision) {
+        Log.i(TAG, "Sampling changed : " + decision);
     }
 
     /**
-     * Réalise les actions qui doivent être faite dans l'appel à onStart d'une activité.
+     * Met à jour le niveau de batterie à partir de la dernière diffusion (sticky) de l'état de la
+     * batterie.
+     *
+     * @param context état transmis à la politique d'échantillonnage
+     * @param now     date courante
      */
-    public void onStart() {
-        if (!mGoogleApiClient.isConnected()) {
-            mGoogleApiClient.connect();
+    private void readBatteryLevel(SamplingContext context, long now) {
+        if (now - mLastBatteryReadMs < BATTERY_REFRESH_INTERVAL_IN_MILLISECONDS) {
+            return;
+        }
+        mLastBatteryReadMs = now;
+        Intent battery = mContext.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) {
+            return;
         }
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if (level >= 0 && scale > 0) {
+            context.setBatteryPercent(level * 100 / scale);
+        }
+        int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        context.setCharging(status == BatteryManager.BATTERY_STATUS_CHARGING
+                || status == BatteryManager.BATTERY_STATUS_FULL);
     }
 
     /**
-     * Réalise les actions qui doivent être faite dans l'appel à onResume d'une activité.
+     * Renvoie la position courante, filtrée. L'objet renvoyé est réutilisé à chaque nouvelle
+     * position : il ne doit pas être conservé.
+     *
+     * @return la position courante.
      */
-    public void onResume() {
-        // on démarre la mise à jour de la position si besoin
-        tryStartingLocationUpdates();
+    public Location getCurrentLocation() {
+        return mCurrentLocation;
     }
 
     /**
-     * Démarre la mise à jour de la position à intervalles réguliers si possible.
+     * Renseigne la position d'une alerte avec la position courante extrapolée à la date de
+     * l'alerte. Doit être appelée depuis le thread principal, qui reçoit les positions. En
+     * arrière-plan, seule la livraison des positions regroupées est demandée, sans attente : elles
+     * arrivent ensuite sur le thread principal et partent en mises à jour de l'alerte, avant les
+     * positions en haute précision demandées par {@link #onAlertDetected()}.
+     *
+     * @param payload        contenu de l'alerte
+     * @param alertElapsedMs date de l'alerte (horloge monotone)
+     * @return vrai si une position courante est connue
      */
-    public void tryStartingLocationUpdates() {
-        if (mGoogleApiClient.isConnected() && !mRequestingLocationUpdates) {
-            startLocationUpdates();
-        }
+    public boolean captureLocation(AlertPayload payload, long alertElapsedMs) {
+        return mController.captureLocation(payload, alertElapsedMs);
     }
 
     /**
-     * Démarre la mise à jour de la position courante à intervalles réguliers.
+     * Renseigne la position d'une alerte sans position courante : dernière position connue du
+     * fournisseur fusionné, sinon dernière position connue du réseau. Ces appels aux services
+     * système peuvent être lents : la méthode est destinée au thread du pipeline d'alerte et
+     * peut être appelée depuis n'importe quel thread.
+     *
+     * @param payload        contenu de l'alerte
+     * @param alertElapsedMs date de l'alerte (horloge monotone)
+     * @return vrai si une position a été trouvée
      */
-    private void startLocationUpdates() {
-        try {
-
-            LocationServices.FusedLocationApi.requestLocationUpdates(
-                    mGoogleApiClient,
-                    mLocationRequest,
-                    this
-            ).setResultCallback(new ResultCallback<Status>() {
-                @Override
-                public void onResult(Status status) {
-                    Log.i(TAG, "Location updates started");
-                    mRequestingLocationUpdates = true;
-                }
-            });
-        }catch(SecurityException s){
-            Log.e(TAG, "Erreur permission securité LocationManager");
-
+    public boolean fillLastKnownLocation(AlertPayload payload, long alertElapsedMs) {
+        long nowNanos = alertElapsedMs * 1000000L;
+        long nowMs = System.currentTimeMillis() - (SystemClock.elapsedRealtime() - alertElapsedMs);
+        Location location = mReady ? mFusedSource.getLastLocation() : null;
+        int source = AlertPayload.SOURCE_LAST_KNOWN;
+        if (location == null) {
+            try {
+                android.location.LocationManager system = (android.location.LocationManager)
+                        mContext.getSystemService(Context.LOCATION_SERVICE);
+                location = system.getLastKnownLocation(
+                        android.location.LocationManager.NETWORK_PROVIDER);
+                source = AlertPayload.SOURCE_NETWORK;
+            } catch (SecurityException | IllegalArgumentException e) {
+                Log.i(TAG, "No network location : " + e.getMessage());
+            }
+        }
+        if (location == null) {
+            AlertMetrics.get().increment(MetricsSnapshot.COUNTER_ALERTS_WITHOUT_LOCATION);
+            return false;
         }
+        FixTracker.fillLocation(payload, location.getLatitude(), location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : Float.NaN,
+                location.getElapsedRealtimeNanos(), source, nowNanos, nowMs);
+        return true;
     }
 
     /**
-     * Réalise les actions qui doivent être faite dans l'appel à onPause d'une activité.
+     * Définit l'écouteur des nouvelles positions.
+     *
+     * @param listener écouteur, null pour le retirer
      */
-    public void onPause() {
-        // on arrête la mise à jour de la position pour économiser la batterie
-        if (mGoogleApiClient.isConnected()) {
-            stopLocationUpdates();
-        }
+    public void setOnFixListener(OnFixListener listener) {
+        mOnFixListener = listener;
     }
 
     /**
-     * Arrête la mise à jour de la position courante à intervalles réguliers.
+     * Renvoie les dernières positions reçues.
+     *
+     * @return trace des dernières positions
      */
-    private void stopLocationUpdates() {
-        LocationServices.FusedLocationApi.removeLocationUpdates(
-                mGoogleApiClient,
-                this
-        ).setResultCallback(new ResultCallback<Status>() {
-            @Override
-            public void onResult(Status status) {
-                Log.i(TAG, "Location updates stopped");
-                mRequestingLocationUpdates = false;
-            }
-        });
+    public FixRingBuffer getTrail() {
+        return mController.getFixTracker().getTrail();
     }
 
     /**
-     * Réalise les actions qui doivent être faite dans l'appel à onStop d'une activité.
+     * Démarre la connexion aux services Google Play, puis les mises à jour de la position une
+     * fois les réglages vérifiés.
      */
-    public void onStop() {
-        mGoogleApiClient.disconnect();
-        Log.i(TAG, "Disconnected from GoogleApiClient");
-    }
-
-    @Override
-    public void onConnected(Bundle bundle) {
-        Log.i(TAG, "Connected to GoogleApiClient");
-        try {
-            if (mCurrentLocation == null) {
-                mCurrentLocation = LocationServices.FusedLocationApi.getLastLocation(
-                        mGoogleApiClient);
-            }
-        }
-        catch (SecurityException e)
-        {
-            Log.e(TAG, "Erreur permission securité LocationManager");
+    public void start() {
+        mStopped = false;
+        if (mReady && !mFusedSource.isConnected()) {
+            mController.start();
+            mFusedSource.connect();
         }
     }
 
-    @Override
-    public void onConnectionSuspended(int i) {
-        Log.i(TAG, "Connection suspended");
+    /**
+     * Définit l'activité depuis laquelle les réglages de localisation peuvent être modifiés.
+     * Si une modification est en attente, la boîte de dialogue est ouverte immédiatement.
+     *
+     * @param activity activité affichée, null si aucune
+     */
+    public void setResolutionActivity(Activity activity) {
+        mFusedSource.setResolutionActivity(activity);
     }
 
-    @Override
-    public void onConnectionFailed(ConnectionResult connectionResult) {
-        Log.i(TAG, "Connection failed: ConnectionResult.getErrorCode() = "
-                + connectionResult.getErrorCode());
+    /**
+     * Démarre la mise à jour de la position à intervalles réguliers si possible.
+     */
+    public void tryStartingLocationUpdates() {
+        if (mReady) {
+            mFusedSource.tryStartingLocationUpdates();
+        }
     }
 
-    @Override
-    public void onLocationChanged(Location location) {
-        Log.d(TAG, "onLocationChanged : " + "lat : " + location.getLatitude() + ", lon : " +
-                location.getLongitude());
-        mCurrentLocation = location;
+    /**
+     * Arrête les mises à jour de la position et se déconnecte des services Google Play.
+     */
+    public void stop() {
+        mStopped = true;
+        if (!mReady) {
+            return;
+        }
+        mController.stop();
+        mFusedSource.disconnect();
     }
 
     /**
-     * The callback invoked when
-     * {@link com.google.android.gms.location.SettingsApi#checkLocationSettings(GoogleApiClient,
-     * LocationSettingsRequest)} is called. Examines the
-     * {@link LocationSettingsResult} object and determines if
-     * location settings are adequate. If they are not, begins the process of presenting a location
-     * settings dialog to the user.
+     * Position courante au démarrage : dernière position connue du fournisseur fusionné, si
+     * aucune position n'a encore été reçue.
      */
-    @Override
-    public void onResult(LocationSettingsResult locationSettingsResult) {
-        final Status status = locationSettingsResult.getStatus();
-        switch (status.getStatusCode()) {
-            case LocationSettingsStatusCodes.SUCCESS:
-                Log.i(TAG, "All location settings are satisfied.");
-                startLocationUpdates();
-                break;
-            case LocationSettingsStatusCodes.RESOLUTION_REQUIRED:
-                Log.i(TAG, "Location settings are not satisfied. Show the user a dialog to" +
-                        "upgrade location settings ");
+    private void onLastLocation(Location location) {
+        if (mCurrentLocation != null || location == null) {
+            return;
+        }
+        if (mController.setLastKnown(location.getElapsedRealtimeNanos(), location.getLatitude(),
+                location.getLongitude(), location.hasAccuracy() ? location.getAccuracy()
+                        : Float.NaN)) {
+            mCurrentLocation = location;
+        }
+    }
 
-                try {
-                    // Show the dialog by calling startResolutionForResult(), and check the result
-                    // in onActivityResult().
-                    status.startResolutionForResult(mActivity, REQUEST_CHECK_SETTINGS);
-                } catch (IntentSender.SendIntentException e) {
-                    Log.i(TAG, "PendingIntent unable to execute request.");
-                }
-                break;
-            case LocationSettingsStatusCodes.SETTINGS_CHANGE_UNAVAILABLE:
-                Log.i(TAG, "Location settings are inadequate, and cannot be fixed here. Dialog " +
-                        "not created.");
-                break;
+    @Override
+    public void onFix(long timeMs, long elapsedRealtimeNanos, float speed) {
+        FixTracker tracker = mController.getFixTracker();
+        mFilteredLocation.setTime(timeMs);
+        mFilteredLocation.setElapsedRealtimeNanos(elapsedRealtimeNanos);
+        mFilteredLocation.setLatitude(tracker.getLatitude());
+        mFilteredLocation.setLongitude(tracker.getLongitude());
+        mFilteredLocation.setAccuracy(tracker.getAccuracy());
+        if (Float.isNaN(speed)) {
+            mFilteredLocation.removeSpeed();
+        } else {
+            mFilteredLocation.setSpeed(speed);
+        }
+        mCurrentLocation = mFilteredLocation;
+        if (mOnFixListener != null) {
+            mOnFixListener.onFix(mFilteredLocation);
         }
     }
 }
@@ -0,0 +1,127 @@
+package com.example.mpl_hackathon.watchapp;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.util.Log;
+
+/**
+ * <p>
+ * Description : Service propriétaire du {@link LocationManager}. Démarré par l'activité, il
+ * continue de recevoir des positions lorsque celle-ci est en pause ou détruite : en
+ * arrière-plan, les positions sont demandées en précision équilibrée, peu souvent, et livrées
+ * par lots ({@link AdaptiveSamplingPolicy}), ce qui borne l'âge de la position au moment d'une
+ * alerte sans le coût d'un suivi permanent en haute précision.
+ * </p>
+ * <p>
+ * L'activité se lie au service ({@link LocalBinder}) et indique quand elle est au premier plan
+ * ({@link #setForeground(boolean)}) : la haute précision est alors demandée immédiatement et
+ * les positions regroupées en attente sont livrées. Toutes les méthodes doivent être appelées
+ * depuis le thread principal.
+ * </p>
+ *
+ * @version 1.0
+ */
+public class LocationService extends Service {
+
+    /**
+     * Tag pour les logs.
+     */
+    private static final String TAG = LocationService.class.getSimpleName();
+
+    /**
+     * Accès au service depuis une activité du même processus.
+     */
+    public class LocalBinder extends Binder {
+        public LocationService getService() {
+            return LocationService.this;
+        }
+    }
+
+    private final IBinder mBinder = new LocalBinder();
+    private LocationManager mLocationManager;
+    /**
+     * Thread d'initialisation des services Google Play, arrêté une fois celle-ci terminée.
+     */
+    private HandlerThread mInitThread;
+    private boolean mReady;
+    private LocationManager.OnReadyListener mOnReadyListener;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mInitThread = new HandlerThread("location-startup");
+        mInitThread.start();
+        mLocationManager = new LocationManager(this, mInitThread.getLooper(),
+                new LocationManager.OnReadyListener() {
+                    @Override
+                    public void onLocationManagerReady() {
+                        mInitThread.quitSafely();
+                        mReady = true;
+                        if (mOnReadyListener != null) {
+                            mOnReadyListener.onLocationManagerReady();
+                        }
+                    }
+                });
+        mLocationManager.start();
+        Log.i(TAG, "Location service created");
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // relancé par le système s'il a été arrêté : la position reste disponible
+        return START_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mBinder;
+    }
+
+    @Override
+    public void onDestroy() {
+        if (!mReady) {
+            mInitThread.quitSafely();
+        }
+        mLocationManager.stop();
+        Log.i(TAG, "Location service destroyed");
+        super.onDestroy();
+    }
+
+    /**
+     * @return gestionnaire de la position, dont l'initialisation peut être en cours
+     */
+    public LocationManager getLocationManager() {
+        return mLocationManager;
+    }
+
+    /**
+     * @return vrai si l'initialisation des services Google Play est terminée
+     */
+    public boolean isReady() {
+        return mReady;
+    }
+
+    /**
+     * Définit l'écouteur de la fin de l'initialisation, appelé immédiatement si elle est déjà
+     * terminée.
+     *
+     * @param listener écouteur, null pour le retirer
+     */
+    public void setOnReadyListener(LocationManager.OnReadyListener listener) {
+        mOnReadyListener = listener;
+        if (mReady && listener != null) {
+            listener.onLocationManagerReady();
+        }
+    }
+
+    /**
+     * @param foreground vrai si l'écran d'alerte est affiché
+     * @see LocationManager#setForeground(boolean)
+     */
+    public void setForeground(boolean foreground) {
+        mLocationManager.setForeground(foreground);
+    }
+}
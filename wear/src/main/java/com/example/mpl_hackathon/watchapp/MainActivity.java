@@ -1,48 +1,200 @@
 package com.example.mpl_hackathon.watchapp;
 
+import android.Manifest;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
 import android.location.Location;
+import android.os.Build;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Process;
+import android.os.SystemClock;
 import android.support.wearable.activity.WearableActivity;
 import android.support.wearable.view.BoxInsetLayout;
-import com.google.android.gms.wearable.MessageApi;
 import android.util.Log;
 import android.view.View;
-import android.widget.TextView;
+import android.view.ViewTreeObserver;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import java.security.SecureRandom;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import android.widget.ImageView;
-import android.widget.TextView;
 import android.widget.Toast;
 
 import android.os.Handler;
 
-import com.android.volley.Request;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.Response;
 import com.android.volley.VolleyError;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
 public class MainActivity extends WearableActivity {
 
-    private static final SimpleDateFormat AMBIENT_DATE_FORMAT =
-            new SimpleDateFormat("HH:mm", Locale.US);
+    /**
+     * Nombre maximal de positions de la trace jointe à une alerte.
+     */
+    private static final int TRAIL_MAX_POINTS = 16;
+    /**
+     * Nombre maximal de positions de la trajectoire en attente d'envoi.
+     */
+    private static final int TRAJECTORY_CAPACITY = 64;
+    /**
+     * Délai au-delà duquel une alerte déclenchée pendant l'initialisation est envoyée sans
+     * attendre la fin de celle-ci.
+     */
+    private static final long ALERT_READY_TIMEOUT_MS = 3000;
+    /**
+     * Durée de la mesure de la fluidité de l'affichage après une alerte.
+     */
+    private static final long JANK_WINDOW_MS = 2000;
+    /**
+     * Code de la demande d'autorisation d'enregistrer le son.
+     */
+    private static final int REQUEST_RECORD_AUDIO = 2;
+    /**
+     * Préférence indiquant que l'autorisation d'enregistrer le son a déjà été demandée.
+     */
+    private static final String PREF_RECORD_AUDIO_ASKED = "record_audio_asked";
 
     private BoxInsetLayout mContainerView;
-    private TextView mTextView;
-    private TextView mClockView;
-
-    private boolean mAlertDetected = false;
+    /**
+     * Heure du mode ambiant, seule vue mise à jour par les rafraîchissements du mode ambiant.
+     */
+    private AmbientClockView mClockView;
+    private final AmbientUpdateMeter mAmbientMeter = new AmbientUpdateMeter();
+    /**
+     * Fond du mode ambiant, lu une seule fois.
+     */
+    private int mAmbientBackgroundColor;
+
+    /**
+     * Service de localisation et son gestionnaire de position, null tant que l'activité n'y est
+     * pas liée.
+     */
+    private LocationService mLocationService;
     private LocationManager mLocationManager;
+    /**
+     * Indique si l'activité est au premier plan (entre onResume() et onPause()).
+     */
+    private boolean mResumed;
+    private final ServiceConnection mLocationConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            onLocationServiceConnected(((LocationService.LocalBinder) service).getService());
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            mLocationService = null;
+            mLocationManager = null;
+        }
+    };
+    /**
+     * Détection automatique des chutes, qui déclenche l'alerte sans appui.
+     */
+    private FallMonitor mFallMonitor;
+
+    /**
+     * Construction, sérialisation et enregistrement des alertes, sur un thread dédié : le
+     * thread principal ne fait que prendre en compte l'appui.
+     */
+    private HandlerThread mPipelineThread;
+    private AlertPipeline mPipeline;
+    /**
+     * Sélection des positions envoyées en mise à jour de l'alerte en cours (thread du
+     * pipeline).
+     */
+    private final AlertRefiner mRefiner = new AlertRefiner();
+    /**
+     * Trajectoire de l'alerte en cours, envoyée par morceaux avec les mises à jour (thread du
+     * pipeline).
+     */
+    private final Trajectory mTrajectory = new Trajectory(TRAJECTORY_CAPACITY,
+            Trajectory.DEFAULT_TOLERANCE_METERS);
+    private final SecureRandom mRandom = new SecureRandom();
+    /**
+     * Enregistrement du son joint aux nouvelles alertes, et lien vers l'enregistrement de
+     * l'alerte en cours, repris par ses mises à jour (thread du pipeline).
+     */
+    private EvidenceRecorder mEvidenceRecorder;
+    private String mEvidenceLink = "";
+    /**
+     * Boîte d'envoi vue par le pipeline. Le gestionnaire du réseau est obtenu sur le thread du
+     * pipeline, qui attend si besoin la fin de son initialisation.
+     */
+    private final AlertPipeline.Sink mAlertSink = new AlertPipeline.Sink() {
+        @Override
+        public boolean isBinaryAlertAccepted() {
+            return NetworkManager.getInstance(getApplicationContext()).isBinaryAlertAccepted();
+        }
+
+        @Override
+        public long sendAlert(byte kind, byte[] data, int length, long tapMs,
+                              long replacedId) {
+            return NetworkManager.getInstance(getApplicationContext())
+                    .sendAlert(kind, data, length, tapMs, replacedId);
+        }
+    };
+    private final AlertPipeline.Listener mAlertListener = new AlertPipeline.Listener() {
+        @Override
+        public void onAlertQueued(long outboxId) {
+            Log.i("Watch:", "Alert queued in outbox : " + outboxId);
+        }
+
+        @Override
+        public void onAlertFailed(Throwable error) {
+            Log.e("Watch:", "Unable to queue alert", error);
+        }
+    };
+    /**
+     * Mesure de la fluidité de l'affichage après une alerte.
+     */
+    private JankMonitor mJankMonitor;
+
+    /**
+     * Mesure du démarrage à froid.
+     */
+    private StartupTrace mStartupTrace;
+    /**
+     * Thread d'initialisation des services (réseau, localisation), arrêté une fois celle-ci
+     * terminée.
+     */
+    private HandlerThread mStartupThread;
+    private final Handler mHandler = new Handler();
+    /**
+     * Indique si les services sont initialisés et qu'une alerte peut être envoyée directement.
+     */
+    private boolean mAlertReady;
+    /**
+     * Indiquent si la boîte d'envoi est ouverte et si la localisation est initialisée.
+     */
+    private boolean mNetworkReady;
+    private boolean mLocationReady;
+    /**
+     * Date (ms depuis epoch) de l'alerte déclenchée pendant l'initialisation, -1 si aucune.
+     */
+    private long mPendingAlertTimeMs = -1;
+    /**
+     * Date de l'appui de l'alerte mise en attente (horloge monotone).
+     */
+    private long mPendingAlertTapMs;
+    private final Runnable mAlertReadyTimeout = new Runnable() {
+        @Override
+        public void run() {
+            Log.w("Watch:", "Services not ready after " + ALERT_READY_TIMEOUT_MS
+                    + "ms, sending queued alert anyway");
+            flushPendingAlert();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        mStartupTrace = new StartupTrace(SystemClock.elapsedRealtime());
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         setAmbientEnabled();
@@ -50,44 +202,293 @@ public class MainActivity extends WearableActivity {
         initTopButton();
 
         mContainerView = (BoxInsetLayout) findViewById(R.id.container);
-        mTextView = (TextView) findViewById(R.id.text);
-        mClockView = (TextView) findViewById(R.id.clock);
+        mClockView = (AmbientClockView) findViewById(R.id.clock);
+        mAmbientBackgroundColor = getResources().getColor(android.R.color.black);
+
+        traceFirstFrame();
+
+        mPipelineThread = new HandlerThread("alert-pipeline", Process.THREAD_PRIORITY_FOREGROUND);
+        mPipelineThread.start();
+        mPipeline = new AlertPipeline(executorFor(new Handler(mPipelineThread.getLooper())),
+                executorFor(mHandler), mAlertSink);
+        mJankMonitor = new JankMonitor(getWindowManager().getDefaultDisplay().getRefreshRate());
+        mEvidenceRecorder = new EvidenceRecorder(this);
+
+        // le bouton est utilisable dès la première image : l'ouverture de la boîte d'envoi est
+        // faite sur un thread dédié, l'initialisation des services Google Play par le service
+        // de localisation
+        mStartupThread = new HandlerThread("watch-startup");
+        mStartupThread.start();
+        new Handler(mStartupThread.getLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                NetworkManager.getInstance(getApplicationContext());
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mNetworkReady = true;
+                        onServicesReady();
+                    }
+                });
+            }
+        });
+        // la localisation est assurée par un service qui survit à l'activité : démarré pour
+        // continuer en arrière-plan, lié pour être piloté depuis l'activité
+        Intent locationIntent = new Intent(this, LocationService.class);
+        startService(locationIntent);
+        bindService(locationIntent, mLocationConnection, Context.BIND_AUTO_CREATE);
+
+        mFallMonitor = new FallMonitor(this, new FallMonitor.OnFallListener() {
+            @Override
+            public void onFallDetected() {
+                Log.i("Watch:", "Fall detected, raising alert");
+                onAlertDetected();
+            }
+        });
+        mFallMonitor.start();
+
+        requestEvidencePermission();
+    }
+
+    /**
+     * Demande, avant la première alerte, l'autorisation d'enregistrer le son joint aux alertes
+     * ({@link EvidenceRecorder}), en expliquant pourquoi. Si l'utilisateur a refusé en
+     * demandant de ne plus être sollicité, rien n'est demandé. Sans autorisation, les alertes
+     * partent sans enregistrement.
+     */
+    private void requestEvidencePermission() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M || checkSelfPermission(
+                Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED) {
+            // accordée à l'installation avant Android 6.0
+            return;
+        }
+        SharedPreferences preferences = getPreferences(Context.MODE_PRIVATE);
+        boolean asked = preferences.getBoolean(PREF_RECORD_AUDIO_ASKED, false);
+        if (asked && !shouldShowRequestPermissionRationale(Manifest.permission.RECORD_AUDIO)) {
+            Log.i("Watch:", "Record audio permission denied, alerts sent without evidence");
+            return;
+        }
+        preferences.edit().putBoolean(PREF_RECORD_AUDIO_ASKED, true).apply();
+        Toast.makeText(this, R.string.record_audio_rationale, Toast.LENGTH_LONG).show();
+        requestPermissions(new String[]{Manifest.permission.RECORD_AUDIO}, REQUEST_RECORD_AUDIO);
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions,
+                                           int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode == REQUEST_RECORD_AUDIO) {
+            boolean granted = grantResults.length > 0
+                    && grantResults[0] == PackageManager.PERMISSION_GRANTED;
+            // vérifiée à chaque alerte par EvidenceRecorder.prepare() : rien à mémoriser ici
+            Log.i("Watch:", "Record audio permission " + (granted ? "granted" : "denied"));
+        }
+    }
 
-        mLocationManager = new LocationManager(this);
+    /**
+     * Appelé sur le thread principal une fois l'activité liée au service de localisation.
+     *
+     * @param service service de localisation
+     */
+    private void onLocationServiceConnected(LocationService service) {
+        mLocationService = service;
+        mLocationManager = service.getLocationManager();
+        mLocationManager.setResolutionActivity(this);
+        mLocationManager.setOnFixListener(new LocationManager.OnFixListener() {
+            @Override
+            public void onFix(Location location) {
+                sendLocationUpdate(location);
+            }
+        });
+        if (mPendingAlertTimeMs >= 0) {
+            // alerte déclenchée avant la liaison
+            mLocationManager.onAlertDetected();
+        }
+        updateLocationMode();
+        service.setOnReadyListener(new LocationManager.OnReadyListener() {
+            @Override
+            public void onLocationManagerReady() {
+                mLocationReady = true;
+                onServicesReady();
+            }
+        });
+    }
 
+    /**
+     * Demande la haute précision tant que l'écran d'alerte est affiché (hors mode ambiant), des
+     * positions peu fréquentes et regroupées sinon.
+     */
+    private void updateLocationMode() {
+        if (mLocationService != null) {
+            mLocationService.setForeground(mResumed && !isAmbient());
+        }
+    }
+
+    /**
+     * @param handler handler du thread d'exécution
+     * @return exécuteur postant les tâches sur le thread du handler
+     */
+    private static Executor executorFor(final Handler handler) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (!handler.post(command)) {
+                    throw new RejectedExecutionException("Looper has quit");
+                }
+            }
+        };
+    }
+
+    /**
+     * Enregistre la date de la première image dessinée.
+     */
+    private void traceFirstFrame() {
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        mStartupTrace.mark(StartupTrace.PHASE_FIRST_FRAME,
+                                SystemClock.elapsedRealtime());
+                        return true;
+                    }
+                });
+    }
+
+    /**
+     * Appelé sur le thread principal à la fin de chaque initialisation ; une fois la boîte
+     * d'envoi et la localisation prêtes, envoie l'alerte éventuellement déclenchée pendant
+     * l'initialisation.
+     */
+    private void onServicesReady() {
+        if (isDestroyed() || mAlertReady || !mNetworkReady || !mLocationReady) {
+            return;
+        }
+        mAlertReady = true;
+        mStartupThread.quitSafely();
+        mStartupTrace.mark(StartupTrace.PHASE_ALERT_READY, SystemClock.elapsedRealtime());
+        Log.i("Watch:", mStartupTrace.summary());
+        reportFullyDrawn();
+
+        NetworkManager.getInstance(getApplicationContext()).setAlertDeliveryListener(
+                new NetworkManager.AlertDeliveryListener() {
+                    @Override
+                    public void onAlertDelivered(long id, JSONObject response) {
+                        Toast.makeText(MainActivity.this, "Response received : " + response,
+                                Toast.LENGTH_LONG).show();
+                    }
+
+                    @Override
+                    public void onAlertDeliveryFailed(long id, VolleyError error) {
+                        Toast.makeText(MainActivity.this, "Response Error", Toast.LENGTH_LONG)
+                                .show();
+                        error.printStackTrace();
+                    }
+                });
+        NetworkManager.getInstance(getApplicationContext()).setDispatchListener(
+                new NetworkManager.DispatchListener() {
+                    @Override
+                    public void onDispatchUpdate(PushProtocol.Dispatch dispatch) {
+                        String eta = dispatch.etaSeconds < 0 ? ""
+                                : " (" + (dispatch.etaSeconds + 59) / 60 + " min)";
+                        Toast.makeText(MainActivity.this, dispatch.message + eta,
+                                Toast.LENGTH_LONG).show();
+                    }
+                });
+        flushPendingAlert();
+    }
+
+    /**
+     * Envoie l'alerte déclenchée pendant l'initialisation, si besoin.
+     */
+    private void flushPendingAlert() {
+        mHandler.removeCallbacks(mAlertReadyTimeout);
+        if (mPendingAlertTimeMs < 0) {
+            return;
+        }
+        long alertTimeMs = mPendingAlertTimeMs;
+        mPendingAlertTimeMs = -1;
+        sendAlertData(alertTimeMs, mPendingAlertTapMs);
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mResumed = true;
+        updateLocationMode();
+    }
+
+    @Override
+    protected void onPause() {
+        mResumed = false;
+        updateLocationMode();
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        mHandler.removeCallbacks(mAlertReadyTimeout);
+        mFallMonitor.stop();
+        if (!mAlertReady) {
+            mStartupThread.quitSafely();
+        }
+        NetworkManager.getInstance(getApplicationContext()).setAlertDeliveryListener(null);
+        NetworkManager.getInstance(getApplicationContext()).setDispatchListener(null);
+        if (mLocationService != null) {
+            mLocationService.setOnReadyListener(null);
+            mLocationManager.setOnFixListener(null);
+            mLocationManager.setResolutionActivity(null);
+        }
+        // le service continue en arrière-plan
+        unbindService(mLocationConnection);
+        mJankMonitor.stop();
+        // les alertes déjà capturées sont enregistrées avant l'arrêt du pipeline
+        mPipeline.execute(new Runnable() {
+            @Override
+            public void run() {
+                mRefiner.stop();
+            }
+        });
+        mPipelineThread.quitSafely();
+        super.onDestroy();
+    }
+
+    /**
+     * Passage en mode ambiant : la hiérarchie des vues n'est modifiée qu'ici et à la sortie du
+     * mode ambiant.
+     */
     @Override
     public void onEnterAmbient(Bundle ambientDetails) {
         super.onEnterAmbient(ambientDetails);
-        updateDisplay();
+        mContainerView.setBackgroundColor(mAmbientBackgroundColor);
+        mClockView.setLowBitAmbient(ambientDetails != null
+                && ambientDetails.getBoolean(EXTRA_LOWBIT_AMBIENT, false));
+        mClockView.refreshTimeZone();
+        mClockView.setVisibility(View.VISIBLE);
+        mClockView.setTime(System.currentTimeMillis(), null);
+        mAmbientMeter.onEnterAmbient();
+        updateLocationMode();
     }
 
+    /**
+     * Rafraîchissement du mode ambiant (une fois par minute) : seule l'heure est redessinée,
+     * sans allocation.
+     */
     @Override
     public void onUpdateAmbient() {
         super.onUpdateAmbient();
-        updateDisplay();
+        mAmbientMeter.start();
+        mClockView.setTime(System.currentTimeMillis(), mAmbientMeter);
     }
 
     @Override
     public void onExitAmbient() {
-        updateDisplay();
+        mAmbientMeter.onExitAmbient();
+        mContainerView.setBackground(null);
+        mClockView.setVisibility(View.GONE);
         super.onExitAmbient();
-        //MainActivity.Se
-    }
-
-    private void updateDisplay() {
-        if (isAmbient()) {
-            mContainerView.setBackgroundColor(getResources().getColor(android.R.color.black));
-            mTextView.setTextColor(getResources().getColor(android.R.color.white));
-            mClockView.setVisibility(View.VISIBLE);
-
-            mClockView.setText(AMBIENT_DATE_FORMAT.format(new Date()));
-        } else {
-            mContainerView.setBackground(null);
-            mTextView.setTextColor(getResources().getColor(android.R.color.black));
-            mClockView.setVisibility(View.GONE);
-        }
+        updateLocationMode();
     }
 
     // Created code under hackathon
@@ -99,109 +500,205 @@ public class MainActivity extends WearableActivity {
             btnTop.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
+                    AlertMetrics.get().increment(MetricsSnapshot.COUNTER_ALERTS_TAPPED);
                     onAlertDetected();
                 }
             });
         }
     }
 
+    /**
+     * Prend en compte une alerte sur le thread principal : seule la capture est faite ici, la
+     * construction et l'enregistrement de l'alerte sont confiés au pipeline.
+     */
     private void onAlertDetected() {
-        changeLedColor();
-        sendAlertData();
-    }
-
-    private void changeLedColor() {
-        //final TextView textBottom = (TextView) findViewById(R.id.text_bottom);
-//        if (textBottom != null && !mAlertDetected) {
-//            mAlertDetected = true;
-//            Handler handler = new Handler();
-//
-//            handler.postDelayed(new Runnable() {
-//                @Override
-//                public void run() {
-//                    textBottom.setText("OK");
-//                    textBottom.setTextColor(Color.parseColor("#99CC00"));
-//                    mAlertDetected = false;
-//                }
-//            }, 2000);
-//
-//            textBottom.setText("ALERTE !");
-//            textBottom.setTextColor(Color.parseColor("#FF4444"));
-//        }
-        if (!mAlertDetected) {
-            mAlertDetected = true;
-            Handler handler = new Handler();
-
-            handler.postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                    mAlertDetected = false;
-                }
-            }, 2000);
-
-        }
-    }
-
-    private void sendAlertData() {
-        try {
-            Log.i("Watch:", "Enter in sendAlertData");
-
-            final JSONObject jsonObject = getCurrentInformation();
-
-            if (jsonObject != null) {
-                // création de la requête
-                JsonObjectRequest testRequestPost =
-                        new JsonObjectRequest(Request.Method.POST,
-                                "http://" + NetworkManager.HOSTNAME + "app-urgence/web/app.php/api/new-alerte",
-                                jsonObject,
-                                new Response.Listener<JSONObject>() {
-                                    @Override
-                                    public void onResponse(JSONObject response) {
-                                        Toast.makeText(MainActivity.this, "Response received : " + response, Toast
-                                                .LENGTH_LONG).show();
-                                    }
-                                },
-                                new Response.ErrorListener() {
-                                    @Override
-                                    public void onErrorResponse(VolleyError error) {
-                                        Toast.makeText(MainActivity.this, "Response Error", Toast.LENGTH_LONG)
-                                                .show();
-                                        error.printStackTrace();
-                                    }
-                                });
-
-                // envoi de requête
-                Log.i("Watch:", "Enter in testRequestPost");
-
-                NetworkManager.getInstance(getApplicationContext()).addToRequestQueue(testRequestPost);
+        long start = System.nanoTime();
+        long tapMs = SystemClock.elapsedRealtime();
+        mJankMonitor.watch(JANK_WINDOW_MS);
+        if (!mAlertReady) {
+            // une seule alerte est mise en attente : les appuis suivants concernent la même
+            // situation
+            if (mPendingAlertTimeMs < 0) {
+                Log.i("Watch:", "Alert queued until services are ready");
+                mPendingAlertTimeMs = System.currentTimeMillis();
+                mPendingAlertTapMs = tapMs;
+                mHandler.postDelayed(mAlertReadyTimeout, ALERT_READY_TIMEOUT_MS);
             }
-        } catch (JSONException e) {
-            Log.i("Watch:", "error : " + e.getMessage());
-        }
-    }
-
-    private JSONObject getCurrentInformation() throws JSONException {
-        JSONObject jsonBody = null;
-        Location location = mLocationManager.getCurrentLocation();
-
-        if (location != null) {
-            jsonBody = new JSONObject();
-            SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(this);
-            jsonBody.put("lastname", "Paul");//PersonalInformationActivity.LASTNAME, "N/A"));
-            jsonBody.put("firstname", "Jean");//PersonalInformationActivity.FIRSTNAME, "N/A"));
-            jsonBody.put("phone_number", "0645751254");//settings.getString(PersonalInformationActivity.PHONE_NUMBER, "N/A"));
-            jsonBody.put("timestamp_current", new Date().getTime());
-            jsonBody.put("latitude", location.getLatitude());
-            jsonBody.put("longitude", location.getLongitude());
-            jsonBody.put("timestamp_position", location.getTime());
-            jsonBody.put("drive_link", "");
         } else {
-            Log.w("Watch:", "no location !");
+            sendAlertData(System.currentTimeMillis(), tapMs);
+        }
+        // l'échantillonnage de la position est relevé après la capture de l'alerte
+        if (mLocationManager != null) {
+            mLocationManager.onAlertDetected();
         }
+        AlertMetrics.get().record(MetricsSnapshot.HISTOGRAM_TAP_HANDLER_US,
+                (System.nanoTime() - start) / 1000);
+    }
 
-        return jsonBody;
+    /**
+     * Capture l'alerte puis la confie au pipeline.
+     *
+     * @param alertTimeMs date du déclenchement de l'alerte (ms depuis epoch)
+     * @param tapMs       date de l'appui (horloge monotone), pour les mesures
+     */
+    private void sendAlertData(long alertTimeMs, long tapMs) {
+        Log.i("Watch:", "Enter in sendAlertData");
+        // l'alerte part sans attendre de position : les positions suivantes seront envoyées
+        // en mises à jour sous le même identifiant
+        mPipeline.submit(new AlertTask(mLocationManager, alertTimeMs, tapMs), tapMs,
+                mAlertListener);
+        // l'enregistrement ne démarre qu'une fois l'alerte confiée à la boîte d'envoi
+        mPipeline.execute(new Runnable() {
+            @Override
+            public void run() {
+                mEvidenceRecorder.start();
+            }
+        });
     }
 
+    /**
+     * @return profil du porteur, reçu du téléphone (lu une seule fois, puis gardé en mémoire)
+     */
+    private UserProfile getProfile() {
+        return ProfileStore.getInstance(getApplicationContext()).get();
+    }
 
+    /**
+     * Capture une position reçue après l'alerte, envoyée en mise à jour si elle l'améliore.
+     *
+     * @param location nouvelle position, réutilisée par le gestionnaire de position
+     */
+    private void sendLocationUpdate(Location location) {
+        mPipeline.submit(new UpdateTask(location), -1, null);
+    }
+
+    /**
+     * Alerte capturée sur le thread principal, construite sur le thread du pipeline. Un appui
+     * répété peu après le précédent ne crée pas de nouvelle alerte : il est envoyé en mise à
+     * jour de l'alerte en cours, avec la position courante et sans trajectoire, et remplace la
+     * mise à jour d'un appui précédent qui ne serait pas encore partie.
+     */
+    private final class AlertTask implements AlertPipeline.ReplaceableTask {
+
+        private final LocationManager mLocation;
+        private final long mAlertTimeMs;
+        private final long mTapMs;
+        /**
+         * Position courante relevée lors de l'appui ; l'état du filtre de position n'est lisible
+         * que depuis le thread principal.
+         */
+        private final AlertPayload mCaptured = new AlertPayload();
+        private final boolean mHasFix;
+        private long mReplacementKey = -1;
+
+        AlertTask(LocationManager location, long alertTimeMs, long tapMs) {
+            mLocation = location;
+            mAlertTimeMs = alertTimeMs;
+            mTapMs = tapMs;
+            mHasFix = location != null && location.captureLocation(mCaptured, tapMs);
+        }
+
+        @Override
+        public long replacementKey() {
+            return mReplacementKey;
+        }
+
+        @Override
+        public boolean enrich(AlertPayload payload) {
+            if (mRefiner.onRepeatedTap(mTapMs)) {
+                mReplacementKey = mRefiner.getAlertId();
+                payload.setAlertId(mRefiner.getAlertId());
+                payload.setUpdateSeq(mRefiner.getUpdateSeq());
+                payload.setProfile(getProfile());
+                payload.setTimestampCurrent(mAlertTimeMs);
+                fillLocation(payload);
+                payload.setDriveLink(mEvidenceLink);
+                AlertMetrics.get().increment(MetricsSnapshot.COUNTER_TAPS_COALESCED);
+                Log.i("Watch:", "Repeated tap " + mRefiner.getTapCount() + " coalesced into alert "
+                        + mRefiner.getAlertId());
+                return true;
+            }
+            mReplacementKey = -1;
+            long alertId = mRandom.nextLong() & Long.MAX_VALUE;
+            payload.setAlertId(alertId);
+            payload.setProfile(getProfile());
+            payload.setTimestampCurrent(mAlertTimeMs);
+            fillLocation(payload);
+            // lien vers le son enregistré après l'appui, lisible pendant son envoi
+            mEvidenceLink = mEvidenceRecorder.prepare(alertId, mTapMs);
+            payload.setDriveLink(mEvidenceLink);
+            // trace simplifiée des dernières positions, début de la trajectoire de l'alerte ;
+            // la trace peut être lue depuis n'importe quel thread
+            mTrajectory.reset();
+            if (mLocation != null) {
+                mTrajectory.addTrail(mLocation.getTrail(), TRAIL_MAX_POINTS);
+            }
+            mTrajectory.flushTo(payload);
+
+            long now = SystemClock.elapsedRealtime();
+            AlertMetrics.get().record(MetricsSnapshot.HISTOGRAM_TAP_TO_PAYLOAD, now - mTapMs);
+            mRefiner.start(alertId, payload, now);
+            Log.i("Watch:", "Enter in sendAlert");
+            return true;
+        }
 
+        /**
+         * Renseigne la position relevée lors de l'appui, ou à défaut la dernière position
+         * connue.
+         */
+        private void fillLocation(AlertPayload payload) {
+            if (mHasFix) {
+                payload.setLocation(mCaptured.getLatitude(), mCaptured.getLongitude(),
+                        mCaptured.getTimestampPosition(), mCaptured.getAccuracy(),
+                        mCaptured.getLocationSource());
+            } else if (mLocation == null || !mLocation.fillLastKnownLocation(payload, mTapMs)) {
+                // service de localisation pas encore lié : l'alerte part sans position, les
+                // positions suivantes seront envoyées en mises à jour
+                Log.w("Watch:", "no location, alert sent without position");
+            }
+        }
+    }
+
+    /**
+     * Position reçue après l'alerte, copiée sur le thread principal.
+     */
+    private final class UpdateTask implements AlertPipeline.Task {
+
+        private final long mTimeMs;
+        private final double mLatitude;
+        private final double mLongitude;
+        private final float mAccuracy;
+
+        UpdateTask(Location location) {
+            mTimeMs = location.getTime();
+            mLatitude = location.getLatitude();
+            mLongitude = location.getLongitude();
+            mAccuracy = location.hasAccuracy() ? location.getAccuracy() : 0;
+        }
+
+        @Override
+        public boolean enrich(AlertPayload payload) {
+            long now = SystemClock.elapsedRealtime();
+            if (!mRefiner.isActive(now)) {
+                return false;
+            }
+            mTrajectory.add(mTimeMs, mLatitude, mLongitude, mAccuracy);
+            if (!mRefiner.offer(mLatitude, mLongitude, mAccuracy, now)) {
+                return false;
+            }
+            payload.setAlertId(mRefiner.getAlertId());
+            payload.setUpdateSeq(mRefiner.getUpdateSeq());
+            payload.setProfile(getProfile());
+            payload.setTimestampCurrent(System.currentTimeMillis());
+            payload.setLocation(mLatitude, mLongitude, mTimeMs, mAccuracy,
+                    AlertPayload.SOURCE_FUSED);
+            payload.setDriveLink(mEvidenceLink);
+            // positions reçues depuis l'envoi précédent, à la suite de la trajectoire déjà
+            // envoyée
+            mTrajectory.flushTo(payload);
+            Log.i("Watch:", "Alert update " + payload.getUpdateSeq() + " accuracy="
+                    + payload.getAccuracy());
+            return true;
+        }
+    }
 }
@@ -1,15 +1,85 @@
 package com.example.mpl_hackathon.watchapp;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
 
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.ExecutorDelivery;
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
+import com.android.volley.NoConnectionError;
+import com.android.volley.ParseError;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.Volley;
+import com.android.volley.Response;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.NoCache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
  * Description : Singleton assurant la gestion de l'envoi des requêtes HTTP au Web server..
  * </p>
+ * <p>
+ * La boîte d'envoi des alertes est vidée sur un thread dédié ({@code alert-network}) : les
+ * réponses de la file des alertes, les accusés du relais et les nouvelles tentatives y sont
+ * traités, le thread principal n'est sollicité que pour notifier
+ * l'{@link AlertDeliveryListener}. Les alertes sont enregistrées depuis le thread du pipeline
+ * d'alerte ({@link #sendAlert(byte, byte[], int, long)}).
+ * </p>
+ * <p>
+ * Les alertes et les autres requêtes ({@link #addToRequestQueue(Request)}) partent
+ * immédiatement, sur des files distinctes. Le temps d'activité de la radio imputé à
+ * l'application est estimé ({@link RadioActivityMeter}).
+ * </p>
+ * <p>
+ * Plusieurs points d'accès du web service peuvent être configurés ({@link EndpointPool}) : une
+ * alerte sans réponse au-delà du 95e centile des durées observées est doublée vers un point
+ * d'accès de secours, et un point d'accès en échec répété est écarté temporairement.
+ * </p>
+ * <p>
+ * Un message peut en remplacer un autre de la même alerte (appui répété, voir
+ * {@link AlertRefiner#onRepeatedTap(long)}) : le message remplacé est retiré de la boîte d'envoi
+ * et sa requête annulée si elle est en cours, pour que seul l'état le plus récent parte.
+ * </p>
+ * <p>
+ * L'enregistrement joint à une alerte ({@link EvidenceRecorder}) est envoyé par morceaux sur
+ * une troisième file, à un seul thread, pendant sa capture
+ * ({@link #uploadEvidence(EvidenceUpload)}) : il ne retarde ni les alertes ni les autres
+ * requêtes.
+ * </p>
+ * <p>
+ * Si un hôte lui est donné à la compilation (propriété Gradle {@code pushHost}), un canal
+ * permanent ({@link PushChannel}) reste ouvert : le serveur y renvoie l'avancement des secours
+ * des alertes acquittées ({@link DispatchListener}), et les alertes destinées au point d'accès
+ * de même nom d'hôte y partent sans ouverture de connexion. Sans canal ouvert, ou si le canal
+ * est perdu avant l'accusé, l'alerte part en HTTP.
+ * </p>
  *
  * @author Maxime NATUREL
  * @version 1.0
@@ -17,9 +87,124 @@ import com.android.volley.toolbox.Volley;
 public class NetworkManager {
 
     /**
-     * Nom du serveur hôte.
+     * Adresses du web service de création d'une alerte, choisies à la compilation (propriété
+     * Gradle {@code alertHost}, hôtes séparés par des virgules).
+     */
+    private static final String[] ALERT_URLS = AlertEndpoint.newAlertUrls(BuildConfig.ALERT_HOST);
+
+    /**
+     * Adresse principale du web service de création d'une alerte.
+     */
+    public static final String NEW_ALERT_URL = ALERT_URLS[0];
+
+    /**
+     * Adresse du canal permanent, choisie à la compilation (propriété Gradle {@code pushHost}),
+     * null si le canal est désactivé.
+     */
+    private static final String PUSH_URL = BuildConfig.PUSH_HOST.trim().isEmpty() ? null
+            : AlertEndpoint.pushUrl(BuildConfig.PUSH_HOST);
+
+    /**
+     * Point d'accès dont le canal permanent remplace les requêtes HTTP, -1 si aucun : le canal
+     * ne sert alors qu'au suivi des secours.
+     */
+    private static final int PUSH_ENDPOINT = AlertEndpoint.pushEndpoint(BuildConfig.ALERT_HOST,
+            BuildConfig.PUSH_HOST);
+
+    /**
+     * Nombre de threads de la file dédiée aux alertes.
+     */
+    private static final int ALERT_LANE_THREADS = 2;
+
+    /**
+     * Nombre de threads de la file des autres requêtes.
+     */
+    private static final int BULK_LANE_THREADS = 2;
+
+    /**
+     * Nombre de threads de la file des enregistrements : les morceaux d'un enregistrement
+     * partent l'un après l'autre.
+     */
+    private static final int EVIDENCE_LANE_THREADS = 1;
+
+    /**
+     * Nombre d'échecs consécutifs après lequel l'envoi d'un enregistrement est abandonné.
+     */
+    private static final int EVIDENCE_MAX_FAILURES = 5;
+
+    /**
+     * Délai maximal de la requête de préchauffage de la connexion.
+     */
+    private static final int WARM_UP_TIMEOUT_MS = 5000;
+
+    /**
+     * Nom du fichier contenant la boîte d'envoi des alertes.
+     */
+    private static final String OUTBOX_FILE_NAME = "alert-outbox.journal";
+
+    /**
+     * Nom du fichier contenant la dernière photographie des mesures de la chaîne d'alerte.
+     */
+    public static final String METRICS_FILE_NAME = "alert-metrics.bin";
+
+    /**
+     * Intervalle entre deux écritures des mesures (seulement si elles ont changé).
      */
-    public static final String HOSTNAME = "vps237273.ovh.net/";
+    private static final long METRICS_EXPORT_INTERVAL_MS = 60 * 1000;
+
+    /**
+     * Préférences conservant le résultat de la négociation du format des alertes.
+     */
+    private static final String PREFS_NAME = "network";
+    private static final String PREF_BINARY_ALERTS = "binary_alerts";
+
+    /**
+     * Code HTTP renvoyé par un serveur qui ne connaît pas le format binaire.
+     */
+    private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
+
+    /**
+     * Premier code HTTP d'erreur du serveur.
+     */
+    private static final int HTTP_SERVER_ERROR = 500;
+
+    /**
+     * Premier code HTTP d'erreur du client : l'alerte est rejetée et le serait à nouveau, sauf
+     * pour les codes temporaires ci-dessous et {@link #HTTP_UNSUPPORTED_MEDIA_TYPE}.
+     */
+    private static final int HTTP_CLIENT_ERROR = 400;
+
+    /**
+     * Codes HTTP d'erreur du client temporaires : la requête peut être renvoyée plus tard ou
+     * vers un autre point d'accès.
+     */
+    private static final int HTTP_REQUEST_TIMEOUT = 408;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Nombre maximal d'alertes envoyées simultanément lors de la vidange de la boîte d'envoi. Les
+     * nouvelles alertes partent dès leur ajout, hors lot.
+     */
+    private static final int OUTBOX_BATCH_SIZE = 8;
+
+    /**
+     * Délai d'expiration d'une requête d'alerte. Les nouvelles tentatives sont gérées par la boîte
+     * d'envoi et non par Volley.
+     */
+    private static final int ALERT_TIMEOUT_MS = 10000;
+
+    /**
+     * Bornes du délai sans réponse après lequel une requête d'alerte est doublée vers un autre
+     * point d'accès ({@link EndpointPool#hedgeDelayMs()}).
+     */
+    private static final long MIN_HEDGE_DELAY_MS = 200;
+    private static final long MAX_HEDGE_DELAY_MS = ALERT_TIMEOUT_MS / 2;
+
+    /**
+     * Délais minimal et maximal entre deux tentatives de vidange de la boîte d'envoi.
+     */
+    private static final long RETRY_INITIAL_DELAY_MS = 2000;
+    private static final long RETRY_MAX_DELAY_MS = 5 * 60 * 1000;
 
     /**
      * Tag pour les logs.
@@ -37,13 +222,252 @@ public class NetworkManager {
     private static Context mCtx;
 
     /**
-     * File d'attente pour la gestion des requêtes.
+     * File d'attente pour la gestion des requêtes non urgentes.
      */
     private RequestQueue mRequestQueue;
 
+    /**
+     * File d'attente dédiée aux alertes : ses threads ne traitent que des alertes, les autres
+     * requêtes ne peuvent donc jamais les retarder.
+     */
+    private RequestQueue mAlertQueue;
+
+    /**
+     * File d'attente des morceaux d'enregistrement, dont les réponses sont livrées sur le
+     * thread du réseau.
+     */
+    private RequestQueue mEvidenceQueue;
+
+    /**
+     * Pile HTTP partagée par les deux files (pool de connexions persistantes).
+     */
+    private Network mNetwork;
+
+    /**
+     * Indique si la connexion au serveur a été préchauffée.
+     */
+    private volatile boolean mWarm;
+
+    /**
+     * Boîte d'envoi persistante des alertes (null si le journal n'a pas pu être ouvert).
+     */
+    private AlertOutbox mOutbox;
+
+    /**
+     * Progression des délais entre deux tentatives d'envoi.
+     */
+    private final Backoff mBackoff = new Backoff(RETRY_INITIAL_DELAY_MS, RETRY_MAX_DELAY_MS);
+
+    /**
+     * Planifie la vidange de la boîte d'envoi et reçoit les réponses, sur le thread du réseau.
+     */
+    private final Handler mHandler;
+
+    /**
+     * Notifie l'écouteur de l'envoi des alertes sur le thread principal.
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Nombre de requêtes du lot courant en attente de réponse (thread du réseau). Les alertes
+     * envoyées dès leur ajout n'en font pas partie.
+     */
+    private int mInFlight;
+
+    /**
+     * Indique qu'un échec a eu lieu dans le lot courant.
+     */
+    private boolean mBatchFailed;
+
+    /**
+     * Envois directs en cours, par identifiant dans la boîte d'envoi (thread du réseau).
+     */
+    private final Map<Long, AlertDelivery> mDeliveries = new HashMap<Long, AlertDelivery>();
+
+    /**
+     * Ecouteur notifié du résultat de l'envoi des alertes.
+     */
+    private volatile AlertDeliveryListener mDeliveryListener;
+
+    /**
+     * Ecouteur notifié de l'avancement des secours.
+     */
+    private volatile DispatchListener mDispatchListener;
+
+    /**
+     * Canal permanent (thread du réseau), null s'il est désactivé, et envois en attente de leur
+     * accusé sur ce canal, par identifiant de requête.
+     */
+    private final PushChannel mPush;
+    private final Map<Long, AlertDelivery.Attempt> mPushAttempts =
+            new HashMap<Long, AlertDelivery.Attempt>();
+
+    /**
+     * Indique si le serveur a annoncé accepter le format binaire des alertes.
+     */
+    private volatile boolean mBinaryAlertsAccepted;
+
+    /**
+     * Encodeur JSON utilisé pour convertir les alertes binaires refusées par le serveur.
+     */
+    private final JsonAlertEncoder mFallbackEncoder = new JsonAlertEncoder();
+    private final AlertPayload mFallbackPayload = new AlertPayload();
+
+    /**
+     * Points d'accès du web service des alertes et leur état de santé.
+     */
+    private final EndpointPool mEndpoints = new EndpointPool(ALERT_URLS, MIN_HEDGE_DELAY_MS,
+            MAX_HEDGE_DELAY_MS);
+
+    /**
+     * Choix entre l'envoi direct et le relais par le téléphone.
+     */
+    private final DeliveryRouteSelector mRouteSelector = new DeliveryRouteSelector();
+
+    /**
+     * Relais des alertes par le téléphone appairé.
+     */
+    private AlertRelay mRelay;
+
+    /**
+     * Thread d'écriture des mesures, pour ne pas écrire sur le disque depuis le thread principal.
+     */
+    private Handler mMetricsHandler;
+    private long mExportedMetricsVersion = -1;
+
+    private final Runnable mExportMetricsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            exportMetrics();
+            mMetricsHandler.postDelayed(this, METRICS_EXPORT_INTERVAL_MS);
+        }
+    };
+
+    /**
+     * Etat estimé de la radio (thread du réseau).
+     */
+    private final RadioActivityMeter mRadio = new RadioActivityMeter(
+            RadioActivityMeter.DEFAULT_TAIL_MS, SystemClock.elapsedRealtime());
+
+    private final Runnable mRadioActiveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mRadio.onRadioActive(SystemClock.elapsedRealtime());
+            if (mPush != null) {
+                mPush.onRadioActive();
+            }
+        }
+    };
+
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drainOutbox();
+        }
+    };
+
+    /**
+     * Ecouteur du résultat de l'envoi des alertes, appelé sur le thread principal.
+     */
+    public interface AlertDeliveryListener {
+        /**
+         * L'alerte a été acquittée par le serveur et retirée de la boîte d'envoi.
+         *
+         * @param id       identifiant de l'alerte dans la boîte d'envoi
+         * @param response réponse du serveur
+         */
+        void onAlertDelivered(long id, JSONObject response);
+
+        /**
+         * L'envoi a échoué, l'alerte reste dans la boîte d'envoi. Une alerte rejetée par le
+         * serveur (erreur 4xx non temporaire) en est retirée : cet appel est alors le dernier
+         * pour cette alerte.
+         *
+         * @param id    identifiant de l'alerte dans la boîte d'envoi
+         * @param error erreur renvoyée par Volley
+         */
+        void onAlertDeliveryFailed(long id, VolleyError error);
+    }
+
+    /**
+     * Ecouteur de l'avancement des secours des alertes acquittées, appelé sur le thread
+     * principal.
+     */
+    public interface DispatchListener {
+        /**
+         * @param dispatch événement publié par le centre de secours
+         */
+        void onDispatchUpdate(PushProtocol.Dispatch dispatch);
+    }
+
     private NetworkManager(Context context) {
         mCtx = context;
+        HandlerThread networkThread = new HandlerThread("alert-network",
+                Process.THREAD_PRIORITY_FOREGROUND);
+        networkThread.start();
+        mHandler = new Handler(networkThread.getLooper());
+        // créé avant tout envoi : les échanges sur le thread du réseau le sollicitent
+        mPush = PUSH_URL != null ? new PushChannel(PUSH_URL, mHandler, mRadio, new PushListener())
+                : null;
         mRequestQueue = getRequestQueue();
+        // réponses des alertes livrées sur le thread du réseau et non sur le thread principal
+        mAlertQueue = new RequestQueue(new NoCache(), getNetwork(), ALERT_LANE_THREADS,
+                new ExecutorDelivery(mHandler));
+        mAlertQueue.start();
+        mEvidenceQueue = new RequestQueue(new NoCache(), getNetwork(), EVIDENCE_LANE_THREADS,
+                new ExecutorDelivery(mHandler));
+        mEvidenceQueue.start();
+        warmUp();
+        mBinaryAlertsAccepted = getPreferences().getBoolean(PREF_BINARY_ALERTS, false);
+        mRelay = new AlertRelay(mCtx, mRouteSelector, networkThread.getLooper());
+        if (mPush != null) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mPush.start();
+                }
+            });
+        }
+        // réveils de la radio par les autres applications : occasion d'un ping anticipé
+        ConnectivityManager connectivity = (ConnectivityManager) mCtx.getSystemService(
+                Context.CONNECTIVITY_SERVICE);
+        connectivity.addDefaultNetworkActiveListener(
+                new ConnectivityManager.OnNetworkActiveListener() {
+                    @Override
+                    public void onNetworkActive() {
+                        mHandler.post(mRadioActiveRunnable);
+                    }
+                });
+        try {
+            mOutbox = AlertOutbox.open(new File(mCtx.getFilesDir(), OUTBOX_FILE_NAME));
+            Log.i(TAG, "Alert outbox opened, pending alerts : " + mOutbox.pendingCount());
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to open alert outbox", e);
+        }
+        // renvoi des alertes restées en attente lors de l'exécution précédente
+        scheduleDrain(0);
+        HandlerThread metricsThread = new HandlerThread("alert-metrics");
+        metricsThread.start();
+        mMetricsHandler = new Handler(metricsThread.getLooper());
+        mMetricsHandler.postDelayed(mExportMetricsRunnable, METRICS_EXPORT_INTERVAL_MS);
+    }
+
+    /**
+     * Ecrit les mesures de la chaîne d'alerte si elles ont changé depuis la dernière écriture.
+     */
+    private void exportMetrics() {
+        AlertMetrics metrics = AlertMetrics.get();
+        long version = metrics.version();
+        if (version == mExportedMetricsVersion) {
+            return;
+        }
+        try {
+            metrics.writeTo(new File(mCtx.getFilesDir(), METRICS_FILE_NAME),
+                    System.currentTimeMillis());
+            mExportedMetricsVersion = version;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to export alert metrics", e);
+        }
     }
 
     /**
@@ -53,13 +477,67 @@ public class NetworkManager {
      */
     public RequestQueue getRequestQueue() {
         if (mRequestQueue == null) {
-            // getApplicationContext() is key, it keeps you from leaking the
-            // Activity or BroadcastReceiver if someone passes one in.
-            mRequestQueue = Volley.newRequestQueue(mCtx.getApplicationContext());
+            // pas de cache disque : les requêtes envoyées sont des POST
+            mRequestQueue = new RequestQueue(new NoCache(), getNetwork(), BULK_LANE_THREADS);
+            mRequestQueue.start();
         }
         return mRequestQueue;
     }
 
+    private Network getNetwork() {
+        if (mNetwork == null) {
+            mNetwork = new BasicNetwork(new KeepAliveHurlStack());
+        }
+        return mNetwork;
+    }
+
+    /**
+     * Préchauffe les connexions aux points d'accès en arrière-plan : résolution DNS puis
+     * ouverture d'une connexion persistante qui reste dans le pool pour la première alerte, ou
+     * pour la première requête doublée vers un point d'accès de secours.
+     */
+    public void warmUp() {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                onRadioTransfer();
+                for (String alertUrl : ALERT_URLS) {
+                    warmUp(alertUrl);
+                }
+            }
+        }, "network-warm-up").start();
+    }
+
+    private void warmUp(String alertUrl) {
+        long start = SystemClock.elapsedRealtime();
+        HttpURLConnection connection = null;
+        try {
+            URL url = new URL(alertUrl);
+            InetAddress.getAllByName(url.getHost());
+            long dnsMs = SystemClock.elapsedRealtime() - start;
+            connection = (HttpURLConnection) new URL(url.getProtocol(), url.getHost(),
+                    url.getPort(), "/").openConnection();
+            connection.setRequestMethod("HEAD");
+            connection.setConnectTimeout(WARM_UP_TIMEOUT_MS);
+            connection.setReadTimeout(WARM_UP_TIMEOUT_MS);
+            connection.getResponseCode();
+            // la lecture complète de la réponse rend la connexion au pool
+            InputStream in = connection.getInputStream();
+            while (in.read() != -1) {
+                // rien à lire pour une requête HEAD
+            }
+            in.close();
+            mWarm = true;
+            Log.i(TAG, "Connection to " + url.getHost() + " warmed up : dns=" + dnsMs
+                    + "ms total=" + (SystemClock.elapsedRealtime() - start) + "ms");
+        } catch (IOException e) {
+            Log.i(TAG, "Connection warm-up failed : " + e.getMessage());
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
     /**
      * Renvoie une instance du singleton assurant la gestion de l'envoi des requêtes HTTPS au Web
      * server.
@@ -75,12 +553,907 @@ public class NetworkManager {
     }
 
     /**
-     * Ajoute une nouvelle requête dans la file d'attente.
+     * Ajoute une nouvelle requête dans la file d'attente ; elle part immédiatement.
      *
      * @param req
      * @param <T>
      */
     public <T> void addToRequestQueue(Request<T> req) {
+        onRadioTransfer();
         getRequestQueue().add(req);
     }
+
+    /**
+     * Signale un échange avec le serveur, qui maintient la radio active. Peut être appelée
+     * depuis n'importe quel thread.
+     */
+    private void onRadioTransfer() {
+        if (Looper.myLooper() != mHandler.getLooper()) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onRadioTransfer();
+                }
+            });
+            return;
+        }
+        mRadio.onTransfer(SystemClock.elapsedRealtime());
+        // la radio vient d'être réveillée : le ping proche de son échéance part dans la même
+        // queue
+        if (mPush != null) {
+            mPush.onRadioActive();
+        }
+    }
+
+    /**
+     * Définit l'écouteur notifié du résultat de l'envoi des alertes, sur le thread principal.
+     *
+     * @param listener écouteur, ou null
+     */
+    public void setAlertDeliveryListener(AlertDeliveryListener listener) {
+        mDeliveryListener = listener;
+    }
+
+    /**
+     * Définit l'écouteur notifié de l'avancement des secours, sur le thread principal.
+     *
+     * @param listener écouteur, ou null
+     */
+    public void setDispatchListener(DispatchListener listener) {
+        mDispatchListener = listener;
+    }
+
+    /**
+     * Indique si les alertes peuvent être envoyées au format binaire : le serveur doit l'avoir
+     * annoncé dans une réponse précédente.
+     *
+     * @return vrai si le format binaire est accepté par le serveur
+     */
+    public boolean isBinaryAlertAccepted() {
+        return mBinaryAlertsAccepted;
+    }
+
+    private SharedPreferences getPreferences() {
+        return mCtx.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private void setBinaryAlertsAccepted(boolean accepted) {
+        if (accepted != mBinaryAlertsAccepted) {
+            Log.i(TAG, "Binary alert format " + (accepted ? "accepted" : "refused") + " by server");
+            mBinaryAlertsAccepted = accepted;
+            getPreferences().edit().putBoolean(PREF_BINARY_ALERTS, accepted).apply();
+        }
+    }
+
+    /**
+     * Enregistre une alerte dans la boîte d'envoi persistante puis déclenche son envoi. L'alerte
+     * est renvoyée jusqu'à ce que le serveur en accuse réception. Les données sont copiées : le
+     * tampon peut être réutilisé dès le retour.
+     *
+     * @param kind    type de contenu (voir {@link AlertOutbox})
+     * @param payload alerte sérialisée
+     * @param length  longueur de l'alerte au début du tampon
+     * @return identifiant de l'alerte dans la boîte d'envoi, -1 si elle n'a pas pu être
+     * enregistrée (elle est alors envoyée une seule fois)
+     */
+    public long sendAlert(byte kind, byte[] payload, int length) {
+        return sendAlert(kind, payload, length, -1);
+    }
+
+    /**
+     * Enregistre une alerte dans la boîte d'envoi et commence son suivi
+     * ({@link AlertMetrics#trackAlert(long, long)}) avant que sa vidange ne soit planifiée.
+     * Peut être appelée depuis n'importe quel thread (en pratique, le thread du pipeline
+     * d'alerte).
+     *
+     * @param kind    type de contenu (voir {@link AlertOutbox})
+     * @param payload alerte sérialisée
+     * @param length  longueur de l'alerte au début du tampon
+     * @param tapMs   date de l'appui (horloge monotone), -1 si l'alerte n'est pas suivie
+     * @return identifiant de l'alerte dans la boîte d'envoi, -1 si elle n'a pas pu être
+     * enregistrée
+     */
+    public long sendAlert(byte kind, byte[] payload, int length, long tapMs) {
+        return sendAlert(kind, payload, length, tapMs, -1);
+    }
+
+    /**
+     * Enregistre une alerte qui remplace un message précédent : celui-ci est abandonné s'il n'a
+     * pas encore été acquitté, et sa requête est annulée si elle est en cours.
+     *
+     * @param kind       type de contenu (voir {@link AlertOutbox})
+     * @param payload    alerte sérialisée
+     * @param length     longueur de l'alerte au début du tampon
+     * @param tapMs      date de l'appui (horloge monotone), -1 si l'alerte n'est pas suivie
+     * @param replacedId identifiant du message remplacé dans la boîte d'envoi, -1 si aucun
+     * @return identifiant de l'alerte dans la boîte d'envoi, -1 si elle n'a pas pu être
+     * enregistrée
+     */
+    public long sendAlert(byte kind, byte[] payload, int length, long tapMs,
+                          final long replacedId) {
+        if (mOutbox != null) {
+            try {
+                long id = mOutbox.append(kind, payload, 0, length);
+                if (tapMs >= 0) {
+                    AlertMetrics.get().trackAlert(id, tapMs);
+                }
+                if (replacedId >= 0) {
+                    // avant la vidange : le message remplacé ne part plus
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            supersede(replacedId);
+                        }
+                    });
+                }
+                final long freshId = id;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendFresh(freshId);
+                    }
+                });
+                // le réseau est peut-être revenu : les alertes en attente sont renvoyées aussi
+                mBackoff.reset();
+                scheduleDrain(0);
+                return id;
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to store alert in outbox", e);
+            }
+        }
+        final byte[] copy = Arrays.copyOf(payload, length);
+        final byte alertKind = kind;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                sendDirect(-1, alertKind, copy, false);
+            }
+        });
+        return -1;
+    }
+
+    /**
+     * @param alertId identifiant de l'alerte
+     * @return adresse de l'enregistrement joint à l'alerte, sur le point d'accès principal
+     */
+    public static String evidenceUrl(long alertId) {
+        return AlertEndpoint.evidenceUrl(NEW_ALERT_URL, alertId);
+    }
+
+    /**
+     * Commence l'envoi d'un enregistrement ; ses morceaux partent à mesure que le producteur les
+     * signale ({@link #onEvidenceChunk(EvidenceUpload)}). Peut être appelée depuis n'importe
+     * quel thread.
+     *
+     * @param upload enregistrement à envoyer
+     */
+    public void uploadEvidence(EvidenceUpload upload) {
+        Log.i(TAG, "Uploading evidence of alert " + Long.toHexString(upload.getAlertId()));
+        onEvidenceChunk(upload);
+    }
+
+    /**
+     * Signale un nouveau morceau, ou la fin de l'enregistrement. Peut être appelée depuis
+     * n'importe quel thread.
+     *
+     * @param upload enregistrement en cours d'envoi
+     */
+    public void onEvidenceChunk(final EvidenceUpload upload) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                sendEvidence(upload);
+            }
+        });
+    }
+
+    /**
+     * Envoie le prochain morceau d'un enregistrement, sauf si un morceau est déjà en cours
+     * d'envoi (thread du réseau).
+     */
+    private void sendEvidence(EvidenceUpload upload) {
+        EvidenceUpload.Chunk chunk = upload.next();
+        if (chunk == null) {
+            return;
+        }
+        onRadioTransfer();
+        mEvidenceQueue.add(new EvidenceAttempt(upload, chunk).mRequest);
+    }
+
+    /**
+     * Prend en compte les octets reçus par le serveur, puis envoie le morceau suivant (thread
+     * du réseau).
+     */
+    private void onEvidenceAcknowledged(EvidenceUpload upload, long received, boolean complete) {
+        upload.onAcknowledged(received, complete, SystemClock.elapsedRealtime());
+        if (upload.isDone()) {
+            onEvidenceDone(upload);
+        } else {
+            sendEvidence(upload);
+        }
+    }
+
+    private void onEvidenceDone(EvidenceUpload upload) {
+        AlertMetrics metrics = AlertMetrics.get();
+        metrics.add(MetricsSnapshot.COUNTER_EVIDENCE_CHUNKS_DROPPED, upload.getDroppedChunks());
+        if (upload.getTimeToFirstChunkMs() >= 0) {
+            metrics.record(MetricsSnapshot.HISTOGRAM_EVIDENCE_FIRST_CHUNK,
+                    upload.getTimeToFirstChunkMs());
+        }
+        metrics.record(MetricsSnapshot.HISTOGRAM_EVIDENCE_PEAK_BYTES,
+                upload.getPeakBufferedBytes());
+        Log.i(TAG, "Evidence of alert " + Long.toHexString(upload.getAlertId())
+                + (upload.isComplete() ? " uploaded" : " abandoned") + " : "
+                + upload.getAcknowledgedBytes() + " bytes, first chunk after "
+                + upload.getTimeToFirstChunkMs() + " ms, peak buffered "
+                + upload.getPeakBufferedBytes() + " bytes, dropped "
+                + upload.getDroppedChunks() + " chunks");
+    }
+
+    /**
+     * Envoi d'un morceau d'enregistrement, dont la réponse est traitée sur le thread du réseau.
+     * Un refus indiquant les octets reçus par le serveur fait reprendre l'envoi à cette
+     * position ; un échec fait renvoyer le morceau après un délai.
+     */
+    private final class EvidenceAttempt implements Response.Listener<Long>,
+            Response.ErrorListener {
+
+        private final EvidenceUpload mUpload;
+        private final EvidenceRequest mRequest;
+
+        EvidenceAttempt(EvidenceUpload upload, EvidenceUpload.Chunk chunk) {
+            mUpload = upload;
+            mRequest = new EvidenceRequest(evidenceUrl(upload.getAlertId()), chunk, this, this);
+            mRequest.setRetryPolicy(new DefaultRetryPolicy(ALERT_TIMEOUT_MS, 0, 1f));
+        }
+
+        @Override
+        public void onResponse(Long received) {
+            AlertMetrics.get().increment(MetricsSnapshot.COUNTER_EVIDENCE_CHUNKS);
+            onEvidenceAcknowledged(mUpload, received, mRequest.isComplete());
+        }
+
+        @Override
+        public void onErrorResponse(VolleyError error) {
+            long received = EvidenceRequest.receivedBytes(error);
+            if (received >= 0) {
+                AlertMetrics.get().increment(MetricsSnapshot.COUNTER_EVIDENCE_RESUMES);
+                onEvidenceAcknowledged(mUpload, received, false);
+            } else if (mUpload.onFailed(EVIDENCE_MAX_FAILURES)) {
+                mHandler.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendEvidence(mUpload);
+                    }
+                }, RETRY_INITIAL_DELAY_MS);
+            } else {
+                onEvidenceDone(mUpload);
+            }
+        }
+    }
+
+    /**
+     * Abandonne un message remplacé par un message plus récent : sa requête est annulée si elle
+     * est en cours, et il est retiré de la boîte d'envoi (thread du réseau).
+     *
+     * @param id identifiant du message dans la boîte d'envoi
+     */
+    private void supersede(long id) {
+        AlertDelivery delivery = mDeliveries.get(id);
+        if (delivery != null) {
+            delivery.cancel();
+        }
+        if (mOutbox.ack(id)) {
+            AlertMetrics.get().increment(MetricsSnapshot.COUNTER_REQUESTS_SUPERSEDED);
+            AlertMetrics.get().moveAlert(id, -1);
+            Log.i(TAG, "Alert " + id + " superseded before delivery");
+        }
+    }
+
+    /**
+     * Planifie la vidange de la boîte d'envoi.
+     *
+     * @param delayMs délai avant la vidange
+     */
+    private void scheduleDrain(long delayMs) {
+        mHandler.removeCallbacks(mDrainRunnable);
+        mHandler.postDelayed(mDrainRunnable, delayMs);
+    }
+
+    /**
+     * Envoie une alerte dès son ajout à la boîte d'envoi, sans attendre les réponses du lot
+     * en cours (thread du réseau).
+     *
+     * @param id identifiant de l'alerte dans la boîte d'envoi
+     */
+    private void sendFresh(long id) {
+        AlertOutbox.Entry entry = mOutbox.claim(id);
+        if (entry == null) {
+            // remplacée, ou déjà prise par une vidange
+            return;
+        }
+        deliver(entry, false, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Envoie le prochain lot d'alertes en attente, restées d'un envoi précédent. Le lot suivant
+     * n'est envoyé qu'une fois toutes les réponses du lot courant reçues.
+     */
+    private void drainOutbox() {
+        if (mOutbox == null || mInFlight > 0) {
+            return;
+        }
+        List<AlertOutbox.Entry> batch = mOutbox.nextBatch(OUTBOX_BATCH_SIZE);
+        if (batch.isEmpty()) {
+            return;
+        }
+        mBatchFailed = false;
+        mInFlight = batch.size();
+        long now = SystemClock.elapsedRealtime();
+        for (AlertOutbox.Entry entry : batch) {
+            deliver(entry, true, now);
+        }
+    }
+
+    /**
+     * Envoie une alerte de la boîte d'envoi par la route choisie.
+     *
+     * @param entry   alerte à envoyer
+     * @param batched vrai si l'alerte fait partie du lot courant
+     * @param now     date courante (horloge monotone)
+     */
+    private void deliver(AlertOutbox.Entry entry, boolean batched, long now) {
+        if (mRelay.isAvailable() && mRouteSelector.select(true, now)
+                == DeliveryRouteSelector.ROUTE_RELAY) {
+            relayAlert(entry, batched);
+        } else {
+            sendDirect(entry.id, entry.kind, entry.payload, batched);
+        }
+    }
+
+    /**
+     * Fin de l'envoi d'une alerte de la boîte d'envoi (thread du réseau).
+     *
+     * @param batched vrai si l'alerte faisait partie du lot courant
+     * @param failed  vrai si l'alerte reste en attente après un échec
+     */
+    private void onOutboxRequestDone(boolean batched, boolean failed) {
+        if (batched) {
+            mBatchFailed |= failed;
+            onBatchRequestDone();
+        } else if (mInFlight == 0) {
+            // sans lot en cours, l'alerte en échec est renvoyée par la vidange suivante
+            if (failed) {
+                long delay = mBackoff.nextDelayMs();
+                Log.i(TAG, "Alert delivery failed, retrying in " + delay + " ms");
+                scheduleDrain(delay);
+            } else if (mOutbox.readyCount() > 0) {
+                mBackoff.reset();
+                scheduleDrain(0);
+            }
+        }
+    }
+
+    /**
+     * Envoie directement une alerte au web serveur, par la file dédiée aux alertes.
+     *
+     * @param id      identifiant de l'alerte dans la boîte d'envoi, -1 si aucun
+     * @param kind    type de contenu (voir {@link AlertOutbox})
+     * @param payload alerte sérialisée
+     * @param batched vrai si l'alerte fait partie du lot courant
+     */
+    private void sendDirect(long id, byte kind, byte[] payload, boolean batched) {
+        AlertMetrics.get().onAlertEnqueued(id, SystemClock.elapsedRealtime());
+        AlertDelivery delivery = new AlertDelivery(id, kind, payload, batched);
+        if (id >= 0) {
+            mDeliveries.put(id, delivery);
+        }
+        delivery.start();
+    }
+
+    private static String contentTypeFor(byte kind) {
+        return kind == AlertOutbox.KIND_BINARY ? BinaryAlertEncoder.CONTENT_TYPE
+                : JsonAlertEncoder.CONTENT_TYPE;
+    }
+
+    /**
+     * Envoie une alerte de la boîte d'envoi par l'intermédiaire du téléphone. En cas d'échec du
+     * relais, l'alerte est aussitôt envoyée directement.
+     *
+     * @param entry   alerte à envoyer
+     * @param batched vrai si l'alerte fait partie du lot courant
+     */
+    private void relayAlert(final AlertOutbox.Entry entry, final boolean batched) {
+        String url = mEndpoints.getUrl(mEndpoints.primary(SystemClock.elapsedRealtime()));
+        mRelay.send(new RelayProtocol.Alert(entry.id, url, contentTypeFor(entry.kind),
+                entry.payload), new AlertRelay.Callback() {
+            @Override
+            public void onRelayed(RelayProtocol.Ack ack, long rttMs) {
+                long now = SystemClock.elapsedRealtime();
+                mRouteSelector.record(DeliveryRouteSelector.ROUTE_RELAY, rttMs, ack.isSuccess(),
+                        now);
+                if (ack.isSuccess()) {
+                    AlertMetrics.get().onAlertDelivered(entry.id, rttMs, now);
+                    mOutbox.ack(entry.id);
+                    onOutboxRequestDone(batched, false);
+                    notifyDelivered(entry.id, new JSONObject());
+                } else {
+                    sendDirect(entry.id, entry.kind, entry.payload, batched);
+                }
+            }
+
+            @Override
+            public void onRelayFailed() {
+                mRouteSelector.record(DeliveryRouteSelector.ROUTE_RELAY, 0, false,
+                        SystemClock.elapsedRealtime());
+                sendDirect(entry.id, entry.kind, entry.payload, batched);
+            }
+        });
+    }
+
+    /**
+     * Envoi direct d'une alerte (thread du réseau). La requête part vers le point d'accès
+     * principal ; sans réponse au bout de {@link EndpointPool#hedgeDelayMs()}, elle est doublée
+     * vers un autre point d'accès, et la première réponse l'emporte. Une requête en échec est
+     * aussitôt renvoyée vers un autre point d'accès si elle n'a pas déjà été doublée. Le
+     * serveur reconnaît les doublons à la clé d'idempotence de l'alerte. Les requêtes portent
+     * l'envoi comme étiquette Volley, ce qui permet de les annuler ensemble.
+     */
+    private final class AlertDelivery implements Runnable {
+
+        private final long mId;
+        private final byte mKind;
+        private final byte[] mPayload;
+        /**
+         * Vrai si l'alerte fait partie du lot courant de la vidange.
+         */
+        private final boolean mBatched;
+        private final long mStartedAt = SystemClock.elapsedRealtime();
+        private final List<Attempt> mAttempts = new ArrayList<Attempt>(2);
+        private int mPending;
+        private boolean mHedged;
+        private boolean mDone;
+
+        AlertDelivery(long id, byte kind, byte[] payload, boolean batched) {
+            mId = id;
+            mKind = kind;
+            mPayload = payload;
+            mBatched = batched;
+        }
+
+        void start() {
+            send(mEndpoints.primary(mStartedAt));
+            if (mEndpoints.size() > 1) {
+                mHandler.postDelayed(this, mEndpoints.hedgeDelayMs());
+            }
+        }
+
+        /**
+         * Double la requête restée sans réponse.
+         */
+        @Override
+        public void run() {
+            if (mDone || mHedged) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            int endpoint = mEndpoints.alternate(mAttempts.get(0).mEndpoint, now);
+            if (endpoint < 0) {
+                return;
+            }
+            mHedged = true;
+            AlertMetrics.get().increment(MetricsSnapshot.COUNTER_HEDGED_REQUESTS);
+            Log.i(TAG, "Alert " + mId + " unanswered after " + (now - mStartedAt)
+                    + " ms, hedging to " + mEndpoints.getUrl(endpoint));
+            send(endpoint);
+        }
+
+        private void send(int endpoint) {
+            send(endpoint, true);
+        }
+
+        /**
+         * @param allowPush vrai si la requête peut partir sur le canal permanent
+         */
+        private void send(int endpoint, boolean allowPush) {
+            Attempt attempt = null;
+            if (allowPush && endpoint == PUSH_ENDPOINT && mPush != null && mPush.isConnected()) {
+                long requestId = mPush.sendAlert(contentTypeFor(mKind), mPayload);
+                if (requestId >= 0) {
+                    attempt = new Attempt(endpoint, requestId);
+                }
+            }
+            if (attempt == null) {
+                attempt = new Attempt(endpoint);
+                mAlertQueue.add(attempt.mRequest);
+            }
+            mAttempts.add(attempt);
+            mPending++;
+            onRadioTransfer();
+        }
+
+        /**
+         * Termine l'envoi : la minuterie et les requêtes encore en cours sont annulées (une
+         * requête annulée n'est plus notifiée).
+         */
+        private void finish() {
+            mDone = true;
+            mHandler.removeCallbacks(this);
+            mAlertQueue.cancelAll(this);
+            for (Attempt attempt : mAttempts) {
+                attempt.cancelPush();
+            }
+            mDeliveries.remove(mId);
+        }
+
+        /**
+         * Abandonne l'envoi d'un message remplacé.
+         */
+        void cancel() {
+            if (mDone) {
+                return;
+            }
+            finish();
+            if (mId >= 0) {
+                onOutboxRequestDone(mBatched, false);
+            }
+        }
+
+        void onAttemptDelivered(Attempt attempt, JSONObject response) {
+            mPending--;
+            long now = SystemClock.elapsedRealtime();
+            onRadioTransfer();
+            mEndpoints.record(attempt.mEndpoint, now - attempt.mStartedAt, true, now);
+            if (mDone) {
+                return;
+            }
+            finish();
+            if (attempt != mAttempts.get(0)) {
+                AlertMetrics.get().increment(MetricsSnapshot.COUNTER_HEDGE_WINS);
+            }
+            Log.i(TAG, "Alert " + mId + " delivered in " + (now - mStartedAt) + " ms by "
+                    + mEndpoints.getUrl(attempt.mEndpoint) + (attempt.isPush() ? " over push"
+                    : " (warm=" + mWarm + ")"));
+            mRouteSelector.record(DeliveryRouteSelector.ROUTE_DIRECT, now - mStartedAt, true,
+                    now);
+            AlertMetrics.get().onAlertDelivered(mId, now - mStartedAt, now);
+            String accepted = attempt.getAcceptedFormats();
+            if (accepted != null) {
+                setBinaryAlertsAccepted(accepted.contains(BinaryAlertEncoder.CONTENT_TYPE));
+            }
+            if (mId >= 0) {
+                mOutbox.ack(mId);
+                onOutboxRequestDone(mBatched, false);
+            }
+            long alertId = attempt.mAlertId >= 0 ? attempt.mAlertId : alertIdOf(response);
+            if (alertId >= 0 && mPush != null) {
+                mPush.follow(alertId, attempt.isPush());
+            }
+            notifyDelivered(mId, response);
+        }
+
+        void onAttemptFailed(Attempt attempt, VolleyError error) {
+            mPending--;
+            long now = SystemClock.elapsedRealtime();
+            if (error.networkResponse != null) {
+                onRadioTransfer();
+            }
+            // une erreur 4xx est une réponse : le point d'accès reste en bonne santé, et un autre
+            // point d'accès renverrait la même erreur, sauf pour une erreur temporaire
+            int status = error.networkResponse != null ? error.networkResponse.statusCode : -1;
+            boolean answered = status >= 0 && status < HTTP_SERVER_ERROR
+                    && status != HTTP_REQUEST_TIMEOUT && status != HTTP_TOO_MANY_REQUESTS;
+            mEndpoints.record(attempt.mEndpoint, now - attempt.mStartedAt, answered, now);
+            AlertMetrics.get().increment(MetricsSnapshot.COUNTER_REQUESTS_FAILED);
+            if (mDone) {
+                return;
+            }
+            if (mKind == AlertOutbox.KIND_BINARY && status == HTTP_UNSUPPORTED_MEDIA_TYPE) {
+                // le serveur ne connaît plus le format binaire : conversion en JSON
+                finish();
+                mRouteSelector.record(DeliveryRouteSelector.ROUTE_DIRECT, now - mStartedAt,
+                        false, now);
+                setBinaryAlertsAccepted(false);
+                if (requeueAsJson()) {
+                    return;
+                }
+                fail(error);
+                return;
+            }
+            if (mPending > 0) {
+                // la requête doublée est encore en cours
+                return;
+            }
+            if (attempt.isPush() && error.networkResponse == null) {
+                // canal perdu ou muet : renvoi aussitôt en HTTP vers le même point d'accès
+                send(attempt.mEndpoint, false);
+                return;
+            }
+            int endpoint = mHedged || answered ? -1
+                    : mEndpoints.alternate(attempt.mEndpoint, now);
+            if (endpoint >= 0) {
+                mHedged = true;
+                mHandler.removeCallbacks(this);
+                AlertMetrics.get().increment(MetricsSnapshot.COUNTER_FAILOVERS);
+                Log.i(TAG, "Alert " + mId + " failed on " + mEndpoints.getUrl(attempt.mEndpoint)
+                        + ", failing over to " + mEndpoints.getUrl(endpoint));
+                send(endpoint);
+                return;
+            }
+            finish();
+            mRouteSelector.record(DeliveryRouteSelector.ROUTE_DIRECT, now - mStartedAt, false,
+                    now);
+            if (answered && status >= HTTP_CLIENT_ERROR && status != HTTP_UNSUPPORTED_MEDIA_TYPE) {
+                reject(status, error);
+                return;
+            }
+            fail(error);
+        }
+
+        private void fail(VolleyError error) {
+            if (mId >= 0) {
+                mOutbox.release(mId);
+                onOutboxRequestDone(mBatched, true);
+            }
+            notifyFailed(mId, error);
+        }
+
+        /**
+         * Retire de la boîte d'envoi une alerte rejetée par le serveur (doublon, requête
+         * invalide) : renvoyée, elle le serait à nouveau, et bloquerait les lots suivants.
+         *
+         * @param status code HTTP de la réponse
+         */
+        private void reject(int status, VolleyError error) {
+            Log.w(TAG, "Alert " + mId + " rejected with HTTP " + status + ", dropped from outbox");
+            if (mId >= 0) {
+                mOutbox.ack(mId);
+                AlertMetrics.get().moveAlert(mId, -1);
+                onOutboxRequestDone(mBatched, false);
+            }
+            notifyFailed(mId, error);
+        }
+
+        /**
+         * Remplace l'alerte binaire par son équivalent JSON dans la boîte d'envoi.
+         *
+         * @return vrai si l'alerte a été convertie
+         */
+        private boolean requeueAsJson() {
+            try {
+                BinaryAlertEncoder.decode(mPayload, 0, mPayload.length, mFallbackPayload);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Unable to convert binary alert", e);
+                return false;
+            }
+            int length = mFallbackEncoder.encode(mFallbackPayload);
+            if (mId >= 0) {
+                mOutbox.ack(mId);
+            }
+            long id = sendAlert(mFallbackEncoder.outboxKind(), mFallbackEncoder.buffer(), length);
+            AlertMetrics.get().moveAlert(mId, id);
+            if (mId >= 0) {
+                onOutboxRequestDone(mBatched, false);
+            }
+            return true;
+        }
+
+        /**
+         * Requête vers un point d'accès, dont la réponse est traitée sur le thread du réseau :
+         * requête Volley, ou message sur le canal permanent dont l'accusé est attendu au plus
+         * {@link NetworkManager#ALERT_TIMEOUT_MS}.
+         */
+        private final class Attempt implements Response.Listener<JSONObject>,
+                Response.ErrorListener, Runnable {
+
+            private final int mEndpoint;
+            private final long mStartedAt = SystemClock.elapsedRealtime();
+            /**
+             * Requête Volley, null pour un envoi sur le canal permanent.
+             */
+            private final AlertRequest mRequest;
+            private final long mPushRequestId;
+            private String mAcceptedFormats;
+            /**
+             * Identifiant de l'alerte donné par l'accusé du canal, -1 si inconnu.
+             */
+            private long mAlertId = -1;
+
+            Attempt(int endpoint) {
+                mEndpoint = endpoint;
+                mPushRequestId = -1;
+                mRequest = new AlertRequest(mEndpoints.getUrl(endpoint), mPayload,
+                        contentTypeFor(mKind), this, this);
+                mRequest.setRetryPolicy(new DefaultRetryPolicy(ALERT_TIMEOUT_MS, 0, 1f));
+                mRequest.setTag(AlertDelivery.this);
+            }
+
+            Attempt(int endpoint, long pushRequestId) {
+                mEndpoint = endpoint;
+                mPushRequestId = pushRequestId;
+                mRequest = null;
+                mPushAttempts.put(pushRequestId, this);
+                mHandler.postDelayed(this, ALERT_TIMEOUT_MS);
+            }
+
+            boolean isPush() {
+                return mRequest == null;
+            }
+
+            String getAcceptedFormats() {
+                return isPush() ? mAcceptedFormats : mRequest.getAcceptedFormats();
+            }
+
+            /**
+             * Accusé reçu sur le canal permanent.
+             */
+            void onAck(PushProtocol.Ack ack) {
+                mHandler.removeCallbacks(this);
+                mAcceptedFormats = ack.acceptedFormats;
+                mAlertId = ack.alertId;
+                if (!ack.isSuccess()) {
+                    onAttemptFailed(this, new ServerError(new NetworkResponse(ack.httpStatus,
+                            ack.body.getBytes(StandardCharsets.UTF_8),
+                            new HashMap<String, String>(), false)));
+                    return;
+                }
+                try {
+                    onAttemptDelivered(this, ack.body.isEmpty() ? new JSONObject()
+                            : new JSONObject(ack.body));
+                } catch (JSONException e) {
+                    onAttemptFailed(this, new ParseError(e));
+                }
+            }
+
+            /**
+             * Canal perdu avant l'accusé.
+             */
+            void onPushLost() {
+                mHandler.removeCallbacks(this);
+                onAttemptFailed(this, new NoConnectionError());
+            }
+
+            /**
+             * Abandonne l'attente de l'accusé ; un accusé tardif est ignoré.
+             */
+            void cancelPush() {
+                if (isPush()) {
+                    mPushAttempts.remove(mPushRequestId);
+                    mHandler.removeCallbacks(this);
+                }
+            }
+
+            /**
+             * Accusé non reçu à temps sur le canal permanent.
+             */
+            @Override
+            public void run() {
+                mPushAttempts.remove(mPushRequestId);
+                onAttemptFailed(this, new TimeoutError());
+            }
+
+            @Override
+            public void onResponse(JSONObject response) {
+                onAttemptDelivered(this, response);
+            }
+
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                onAttemptFailed(this, error);
+            }
+        }
+    }
+
+    /**
+     * @param response réponse du serveur à une alerte
+     * @return identifiant de l'alerte donné par la réponse, -1 s'il est absent
+     */
+    private static long alertIdOf(JSONObject response) {
+        String alertId = response.optString("alert_id", null);
+        if (alertId == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(alertId, 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Ecouteur du canal permanent (thread du réseau).
+     */
+    private final class PushListener implements PushChannel.Listener {
+
+        @Override
+        public void onPushAck(PushProtocol.Ack ack) {
+            AlertDelivery.Attempt attempt = mPushAttempts.remove(ack.requestId);
+            if (attempt != null) {
+                attempt.onAck(ack);
+            }
+        }
+
+        @Override
+        public void onPushDispatch(PushProtocol.Dispatch dispatch) {
+            Log.i(TAG, "Alert " + Long.toHexString(dispatch.alertId) + " : " + dispatch.message
+                    + " (eta " + dispatch.etaSeconds + " s)");
+            notifyDispatch(dispatch);
+        }
+
+        @Override
+        public void onPushLost() {
+            List<AlertDelivery.Attempt> lost =
+                    new ArrayList<AlertDelivery.Attempt>(mPushAttempts.values());
+            mPushAttempts.clear();
+            for (AlertDelivery.Attempt attempt : lost) {
+                attempt.onPushLost();
+            }
+        }
+
+        @Override
+        public void onPushHeartbeat() {
+            mRadio.onTransfer(SystemClock.elapsedRealtime());
+        }
+    }
+
+    private void notifyDispatch(final PushProtocol.Dispatch dispatch) {
+        if (mDispatchListener == null) {
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                DispatchListener listener = mDispatchListener;
+                if (listener != null) {
+                    listener.onDispatchUpdate(dispatch);
+                }
+            }
+        });
+    }
+
+    private void notifyDelivered(final long id, final JSONObject response) {
+        if (mDeliveryListener == null) {
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                AlertDeliveryListener listener = mDeliveryListener;
+                if (listener != null) {
+                    listener.onAlertDelivered(id, response);
+                }
+            }
+        });
+    }
+
+    private void notifyFailed(final long id, final VolleyError error) {
+        if (mDeliveryListener == null) {
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                AlertDeliveryListener listener = mDeliveryListener;
+                if (listener != null) {
+                    listener.onAlertDeliveryFailed(id, error);
+                }
+            }
+        });
+    }
+
+    private void onBatchRequestDone() {
+        if (--mInFlight > 0) {
+            return;
+        }
+        if (mBatchFailed) {
+            long delay = mBackoff.nextDelayMs();
+            Log.i(TAG, "Alert delivery failed, retrying in " + delay + " ms");
+            scheduleDrain(delay);
+        } else {
+            mBackoff.reset();
+            if (mOutbox.readyCount() > 0) {
+                scheduleDrain(0);
+            }
+        }
+    }
 }
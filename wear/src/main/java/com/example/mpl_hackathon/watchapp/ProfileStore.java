@@ -0,0 +1,91 @@
+package com.example.mpl_hackathon.watchapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+/**
+ * <p>
+ * Description : Singleton conservant le profil du porteur joint aux alertes. Le profil est
+ * publié par le téléphone via la DataApi ({@link RelayProtocol#PATH_PROFILE}, reçu par
+ * l'{@link AlertRelay}) et enregistré sur la montre : il est lu une seule fois au démarrage, et
+ * les alertes utilisent ensuite l'instance en mémoire, lisible depuis n'importe quel thread. Tant
+ * qu'aucun profil n'a été reçu, {@link UserProfile#PLACEHOLDER} est utilisé.
+ * </p>
+ * <p>
+ * Un nouveau profil est une nouvelle instance : l'encodeur JSON reconstruit alors son modèle
+ * d'alerte ({@link JsonAlertEncoder}).
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class ProfileStore {
+
+    /**
+     * Tag pour les logs.
+     */
+    private static final String TAG = ProfileStore.class.getSimpleName();
+    /**
+     * Fichier de préférences contenant le profil reçu du téléphone.
+     */
+    private static final String PREFS_NAME = "profile";
+    private static final String KEY_LASTNAME = "lastname";
+    private static final String KEY_FIRSTNAME = "firstname";
+    private static final String KEY_PHONE_NUMBER = "phone_number";
+
+    /**
+     * Instance du singleton.
+     */
+    private static ProfileStore mInstance;
+
+    private final SharedPreferences mPreferences;
+    private volatile UserProfile mProfile;
+
+    private ProfileStore(Context context) {
+        mPreferences = context.getApplicationContext().getSharedPreferences(PREFS_NAME,
+                Context.MODE_PRIVATE);
+        String lastname = mPreferences.getString(KEY_LASTNAME, null);
+        String firstname = mPreferences.getString(KEY_FIRSTNAME, null);
+        String phoneNumber = mPreferences.getString(KEY_PHONE_NUMBER, null);
+        mProfile = lastname != null && firstname != null && phoneNumber != null
+                ? new UserProfile(lastname, firstname, phoneNumber) : UserProfile.PLACEHOLDER;
+    }
+
+    /**
+     * Renvoie l'instance du singleton ; le premier appel lit le profil enregistré.
+     *
+     * @param context contexte
+     * @return instance du singleton
+     */
+    public static synchronized ProfileStore getInstance(Context context) {
+        if (mInstance == null) {
+            mInstance = new ProfileStore(context);
+        }
+        return mInstance;
+    }
+
+    /**
+     * @return profil courant du porteur
+     */
+    public UserProfile get() {
+        return mProfile;
+    }
+
+    /**
+     * Remplace le profil courant et l'enregistre, s'il a changé.
+     *
+     * @param profile profil reçu du téléphone
+     */
+    public void update(UserProfile profile) {
+        if (profile.getId() == mProfile.getId()) {
+            return;
+        }
+        mProfile = profile;
+        mPreferences.edit()
+                .putString(KEY_LASTNAME, profile.getLastname())
+                .putString(KEY_FIRSTNAME, profile.getFirstname())
+                .putString(KEY_PHONE_NUMBER, profile.getPhoneNumber())
+                .apply();
+        Log.i(TAG, "Profile updated : " + profile.getId());
+    }
+}
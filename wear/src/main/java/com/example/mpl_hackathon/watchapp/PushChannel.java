@@ -0,0 +1,451 @@
+package com.example.mpl_hackathon.watchapp;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Description : Canal permanent vers le serveur des alertes ({@link PushConnection}). Les
+ * alertes y partent sur une connexion déjà ouverte ; le serveur y renvoie leur accusé, puis
+ * l'avancement des secours des alertes suivies ({@link PushProtocol.Dispatch}). Après une
+ * coupure, le canal est rouvert (délais {@link Backoff}) et se réabonne aux alertes suivies en
+ * indiquant le dernier événement reçu : le serveur renvoie ceux qui ont été manqués.
+ * </p>
+ * <p>
+ * Les pings suivent {@link PushHeartbeat} : l'intervalle est allongé jusqu'à la limite
+ * d'inactivité du réseau, et un ping proche de son échéance part avec un autre échange quand
+ * la radio est déjà active ({@link #onRadioActive()}). Un ping sans pong ferme la connexion.
+ * </p>
+ * <p>
+ * Chaque connexion est ouverte puis lue par son propre thread ; tout le reste, notifications
+ * de l'écouteur comprises, a lieu sur le thread du handler (thread du réseau).
+ * </p>
+ *
+ * @version 1.0
+ */
+final class PushChannel {
+
+    /**
+     * Ecouteur du canal, appelé sur le thread du réseau.
+     */
+    interface Listener {
+        void onPushAck(PushProtocol.Ack ack);
+
+        void onPushDispatch(PushProtocol.Dispatch dispatch);
+
+        /**
+         * La connexion est perdue : les alertes envoyées sans accusé doivent être renvoyées.
+         */
+        void onPushLost();
+
+        /**
+         * Un ping vient de réveiller la radio.
+         */
+        void onPushHeartbeat();
+    }
+
+    /**
+     * Délai maximal de la connexion et de la négociation.
+     */
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+
+    /**
+     * Délai d'attente du pong, après lequel la connexion est considérée comme perdue.
+     */
+    private static final long PONG_TIMEOUT_MS = 10000;
+
+    /**
+     * Bornes et pas de l'intervalle des pings : les équipements NAT des opérateurs gardent une
+     * connexion inactive entre quelques minutes et une demi-heure.
+     */
+    private static final long MIN_HEARTBEAT_MS = 60 * 1000;
+    private static final long MAX_HEARTBEAT_MS = 28 * 60 * 1000;
+    private static final long HEARTBEAT_STEP_MS = 2 * 60 * 1000;
+
+    /**
+     * Délais minimal et maximal entre deux tentatives d'ouverture du canal.
+     */
+    private static final long RECONNECT_INITIAL_DELAY_MS = 2000;
+    private static final long RECONNECT_MAX_DELAY_MS = 5 * 60 * 1000;
+
+    private static final String TAG = PushChannel.class.getSimpleName();
+
+    private final String mUrl;
+    private final Handler mHandler;
+    private final RadioActivityMeter mRadio;
+    private final Listener mListener;
+    private final PushHeartbeat mHeartbeat = new PushHeartbeat(MIN_HEARTBEAT_MS,
+            MAX_HEARTBEAT_MS, HEARTBEAT_STEP_MS);
+    private final Backoff mBackoff = new Backoff(RECONNECT_INITIAL_DELAY_MS,
+            RECONNECT_MAX_DELAY_MS);
+
+    /**
+     * Alertes suivies, dans l'ordre de leur suivi ; vrai si l'un de leurs événements a été reçu.
+     */
+    private final Map<Long, Boolean> mFollowed = new LinkedHashMap<Long, Boolean>();
+    private long mLastEventSeq;
+
+    private PushConnection mConnection;
+    private boolean mConnecting;
+    private boolean mStarted;
+    private long mNextRequestId = 1;
+    private long mLastActivityMs;
+    /**
+     * Date du ping en attente de son pong, -1 si aucun.
+     */
+    private long mPingSentAtMs = -1;
+    private long mPingIdleMs;
+
+    private final Runnable mConnectRunnable = new Runnable() {
+        @Override
+        public void run() {
+            connect();
+        }
+    };
+
+    private final Runnable mHeartbeatRunnable = new Runnable() {
+        @Override
+        public void run() {
+            checkHeartbeat();
+        }
+    };
+
+    private final Runnable mPongTimeout = new Runnable() {
+        @Override
+        public void run() {
+            if (mConnection != null) {
+                Log.i(TAG, "Push channel ping unanswered after " + mPingIdleMs + " ms idle");
+                // le thread de lecture signale la perte
+                mConnection.close();
+            }
+        }
+    };
+
+    /**
+     * @param url      adresse du canal ({@link AlertEndpoint#pushUrl(String)})
+     * @param handler  handler du thread du réseau
+     * @param radio    état de la radio, lu sur le thread du réseau
+     * @param listener écouteur du canal
+     */
+    PushChannel(String url, Handler handler, RadioActivityMeter radio, Listener listener) {
+        mUrl = url;
+        mHandler = handler;
+        mRadio = radio;
+        mListener = listener;
+    }
+
+    /**
+     * Ouvre le canal, puis le rouvre après chaque coupure.
+     */
+    void start() {
+        mStarted = true;
+        connect();
+    }
+
+    /**
+     * Ferme le canal.
+     */
+    void stop() {
+        mStarted = false;
+        mHandler.removeCallbacks(mConnectRunnable);
+        mHandler.removeCallbacks(mHeartbeatRunnable);
+        mHandler.removeCallbacks(mPongTimeout);
+        if (mConnection != null) {
+            mConnection.close();
+        }
+    }
+
+    boolean isConnected() {
+        return mConnection != null;
+    }
+
+    /**
+     * Envoie une alerte sur le canal ; l'accusé est signalé par
+     * {@link Listener#onPushAck(PushProtocol.Ack)}.
+     *
+     * @param contentType type de contenu de l'alerte
+     * @param payload     alerte sérialisée
+     * @return identifiant de la requête repris par l'accusé, -1 si le canal n'est pas ouvert
+     */
+    long sendAlert(String contentType, byte[] payload) {
+        if (mConnection == null) {
+            return -1;
+        }
+        long requestId = mNextRequestId++;
+        if (!send(PushProtocol.encodeAlert(new PushProtocol.Alert(requestId, contentType,
+                payload)))) {
+            return -1;
+        }
+        AlertMetrics.get().increment(MetricsSnapshot.COUNTER_PUSH_ALERTS);
+        return requestId;
+    }
+
+    /**
+     * Suit l'avancement des secours d'une alerte acquittée. Une alerte envoyée sur le canal est
+     * suivie d'office par le serveur ; le suivi est aussi conservé pour les réabonnements.
+     *
+     * @param alertId identifiant de l'alerte
+     * @param viaPush vrai si l'alerte a été acquittée sur le canal
+     */
+    void follow(long alertId, boolean viaPush) {
+        if (mFollowed.containsKey(alertId)) {
+            return;
+        }
+        mFollowed.put(alertId, false);
+        if (mFollowed.size() > PushProtocol.MAX_SUBSCRIBED_ALERTS) {
+            Iterator<Long> oldest = mFollowed.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        if (!viaPush && mConnection != null) {
+            // événements déjà publiés renvoyés en entier : leurs numéros peuvent précéder le
+            // dernier reçu
+            send(PushProtocol.encodeSubscribe(new PushProtocol.Subscribe(0,
+                    new long[]{alertId})));
+        }
+    }
+
+    /**
+     * Signale que la radio est active : occasion d'un ping anticipé.
+     */
+    void onRadioActive() {
+        checkHeartbeat();
+    }
+
+    private void connect() {
+        if (!mStarted || mConnection != null || mConnecting) {
+            return;
+        }
+        mConnecting = true;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read();
+            }
+        }, "push-channel").start();
+    }
+
+    /**
+     * Ouvre une connexion et la lit jusqu'à sa fermeture (thread de la connexion).
+     */
+    private void read() {
+        final PushConnection connection;
+        try {
+            connection = PushConnection.open(mUrl, CONNECT_TIMEOUT_MS);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.i(TAG, "Push channel unavailable : " + e.getMessage());
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mConnecting = false;
+                    scheduleReconnect();
+                }
+            });
+            return;
+        }
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                onOpened(connection);
+            }
+        });
+        try {
+            int opcode;
+            while ((opcode = connection.receive()) >= 0) {
+                if (opcode == PushProtocol.OPCODE_PONG) {
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onPong(connection);
+                        }
+                    });
+                } else {
+                    final byte[] data = Arrays.copyOf(connection.data(), connection.length());
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onMessage(connection, data);
+                        }
+                    });
+                }
+            }
+        } catch (IOException e) {
+            // connexion coupée
+        } finally {
+            connection.close();
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onClosed(connection);
+                }
+            });
+        }
+    }
+
+    private void onOpened(PushConnection connection) {
+        mConnecting = false;
+        if (!mStarted) {
+            connection.close();
+            return;
+        }
+        mConnection = connection;
+        mBackoff.reset();
+        AlertMetrics metrics = AlertMetrics.get();
+        metrics.increment(MetricsSnapshot.COUNTER_PUSH_CONNECTS);
+        metrics.record(MetricsSnapshot.HISTOGRAM_PUSH_HANDSHAKE, connection.getHandshakeMs());
+        mHeartbeat.onConnected(connection.getIdleTimeoutMs());
+        Log.i(TAG, "Push channel open in " + connection.getHandshakeMs() + " ms, heartbeat "
+                + mHeartbeat.getIntervalMs() + " ms");
+        resubscribe();
+        onActivity();
+    }
+
+    /**
+     * Réabonne la nouvelle connexion aux alertes suivies : depuis le dernier événement reçu
+     * pour celles qui en ont déjà reçu un, depuis le début pour les autres.
+     */
+    private void resubscribe() {
+        List<Long> resumed = new ArrayList<Long>(mFollowed.size());
+        List<Long> fresh = new ArrayList<Long>(mFollowed.size());
+        for (Map.Entry<Long, Boolean> entry : mFollowed.entrySet()) {
+            (entry.getValue() ? resumed : fresh).add(entry.getKey());
+        }
+        if (!resumed.isEmpty()) {
+            send(PushProtocol.encodeSubscribe(new PushProtocol.Subscribe(mLastEventSeq,
+                    toArray(resumed))));
+        }
+        if (!fresh.isEmpty()) {
+            send(PushProtocol.encodeSubscribe(new PushProtocol.Subscribe(0, toArray(fresh))));
+        }
+    }
+
+    private static long[] toArray(List<Long> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    private void onMessage(PushConnection connection, byte[] data) {
+        if (connection != mConnection) {
+            return;
+        }
+        onActivity();
+        try {
+            int type = PushProtocol.typeOf(data, data.length);
+            if (type == PushProtocol.TYPE_ACK) {
+                mListener.onPushAck(PushProtocol.decodeAck(data, data.length));
+            } else if (type == PushProtocol.TYPE_DISPATCH) {
+                onDispatch(PushProtocol.decodeDispatch(data, data.length));
+            } else {
+                Log.w(TAG, "Unexpected push message " + type);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Invalid push message", e);
+        }
+    }
+
+    private void onDispatch(PushProtocol.Dispatch dispatch) {
+        if (dispatch.seq <= mLastEventSeq && Boolean.TRUE.equals(mFollowed.get(dispatch.alertId))) {
+            // déjà reçu avant une coupure
+            return;
+        }
+        mLastEventSeq = Math.max(mLastEventSeq, dispatch.seq);
+        if (mFollowed.containsKey(dispatch.alertId)) {
+            mFollowed.put(dispatch.alertId, true);
+        }
+        AlertMetrics.get().increment(MetricsSnapshot.COUNTER_DISPATCH_UPDATES);
+        mListener.onPushDispatch(dispatch);
+    }
+
+    private void onPong(PushConnection connection) {
+        if (connection != mConnection || mPingSentAtMs < 0) {
+            return;
+        }
+        mHandler.removeCallbacks(mPongTimeout);
+        mHeartbeat.onPong(mPingIdleMs);
+        mPingSentAtMs = -1;
+        onActivity();
+    }
+
+    private void onClosed(PushConnection connection) {
+        if (connection != mConnection) {
+            return;
+        }
+        long idleMs = mPingSentAtMs >= 0 ? mPingIdleMs
+                : SystemClock.elapsedRealtime() - mLastActivityMs;
+        mHeartbeat.onLost(idleMs);
+        Log.i(TAG, "Push channel lost after " + idleMs + " ms idle, heartbeat "
+                + mHeartbeat.getIntervalMs() + " ms" + (mHeartbeat.isStable() ? " (stable)" : ""));
+        mConnection = null;
+        mPingSentAtMs = -1;
+        mHandler.removeCallbacks(mHeartbeatRunnable);
+        mHandler.removeCallbacks(mPongTimeout);
+        mListener.onPushLost();
+        scheduleReconnect();
+    }
+
+    private void scheduleReconnect() {
+        if (mStarted) {
+            mHandler.postDelayed(mConnectRunnable, mBackoff.nextDelayMs());
+        }
+    }
+
+    /**
+     * @return faux si l'envoi a échoué ; la connexion est alors fermée
+     */
+    private boolean send(byte[] message) {
+        try {
+            mConnection.send(message);
+            onActivity();
+            return true;
+        } catch (IOException e) {
+            Log.i(TAG, "Push channel write failed : " + e.getMessage());
+            mConnection.close();
+            return false;
+        }
+    }
+
+    /**
+     * Un échange a eu lieu : le prochain ping est repoussé.
+     */
+    private void onActivity() {
+        mLastActivityMs = SystemClock.elapsedRealtime();
+        mHandler.removeCallbacks(mHeartbeatRunnable);
+        if (mConnection != null && mPingSentAtMs < 0) {
+            mHandler.postDelayed(mHeartbeatRunnable, mHeartbeat.getIntervalMs());
+        }
+    }
+
+    private void checkHeartbeat() {
+        if (mConnection == null || mPingSentAtMs >= 0) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (!mHeartbeat.isDue(now, mLastActivityMs, mRadio.isWarm(now))) {
+            return;
+        }
+        mPingIdleMs = now - mLastActivityMs;
+        mPingSentAtMs = now;
+        mHandler.removeCallbacks(mHeartbeatRunnable);
+        try {
+            mConnection.ping();
+        } catch (IOException e) {
+            mConnection.close();
+            return;
+        }
+        AlertMetrics.get().increment(MetricsSnapshot.COUNTER_PUSH_HEARTBEATS);
+        mHandler.postDelayed(mPongTimeout, PONG_TIMEOUT_MS);
+        mListener.onPushHeartbeat();
+    }
+}